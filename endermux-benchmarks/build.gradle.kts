@@ -0,0 +1,24 @@
+plugins {
+  alias(libs.plugins.indra)
+  alias(libs.plugins.jmh)
+}
+
+indra {
+  javaVersions().target(25)
+}
+
+dependencies {
+  jmhImplementation(project(":endermux-server"))
+  jmhImplementation(platform(libs.log4jBom))
+  jmhImplementation(libs.log4jApi)
+  jmhImplementation(libs.log4jCore)
+  jmhCompileOnly(libs.jspecify)
+}
+
+jmh {
+  jmhVersion = libs.versions.jmh
+  // Pass e.g. -Pjmh.includes=FrameCodec to run a single suite
+  providers.gradleProperty("jmh.includes").orNull?.let { includes.add(it) }
+  // Pass -Pjmh.profilers=gc to report allocation rates
+  providers.gradleProperty("jmh.profilers").orNull?.let { profilers.addAll(it.split(',')) }
+}
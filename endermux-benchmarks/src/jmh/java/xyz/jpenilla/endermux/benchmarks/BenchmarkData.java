@@ -0,0 +1,129 @@
+package xyz.jpenilla.endermux.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import net.kyori.ansi.ColorLevel;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.message.SimpleMessage;
+import xyz.jpenilla.endermux.protocol.HandshakeRejectReasons;
+import xyz.jpenilla.endermux.protocol.Message;
+import xyz.jpenilla.endermux.protocol.MessageType;
+import xyz.jpenilla.endermux.protocol.Payloads;
+import xyz.jpenilla.endermux.protocol.ProtocolCapabilities;
+import xyz.jpenilla.endermux.protocol.SocketProtocolConstants;
+
+final class BenchmarkData {
+  static final String LOG_LINE = "[12:34:56 INFO] [MinecraftServer]: \u001B[38;2;85;255;85mDone\u001B[m (3.141s)! For help, type \"help\"\n";
+  static final String LEGACY_FORMATTED_LINE = "§aPlayer§r joined the game §7(§#ff5555formerly known as §lNotch§r§7)";
+  static final String ANSI_FORMATTED_LINE = "\u001B[0;32;1mPlayer\u001B[m joined the game \u001B[38;2;170;170;170m(\u001B[38;2;255;85;85mformerly known as \u001B[1mNotch\u001B[m)";
+  static final List<ColorLevel> SESSION_COLOR_LEVELS = List.of(
+    ColorLevel.TRUE_COLOR,
+    ColorLevel.INDEXED_256,
+    ColorLevel.INDEXED_16,
+    ColorLevel.NONE
+  );
+
+  private BenchmarkData() {
+  }
+
+  static byte[] logPayload(final int size) {
+    final StringBuilder builder = new StringBuilder(size + LOG_LINE.length());
+    while (builder.length() < size) {
+      builder.append(LOG_LINE);
+    }
+    builder.setLength(size);
+    return builder.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  static LogEvent logEvent(final Level level, final String message) {
+    return Log4jLogEvent.newBuilder()
+      .setLoggerName("net.minecraft.server.MinecraftServer")
+      .setLoggerFqcn(BenchmarkData.class.getName())
+      .setLevel(level)
+      .setThreadName("Server thread")
+      .setTimeMillis(1_700_000_000_000L)
+      .setMessage(new SimpleMessage(message))
+      .build();
+  }
+
+  static Payloads.Hello hello(final ColorLevel colorLevel) {
+    return new Payloads.Hello(
+      SocketProtocolConstants.CLIENT_SUPPORTED_TRANSPORT_EPOCH_RANGE,
+      colorLevel,
+      ProtocolCapabilities.clientSupportedCapabilities(),
+      ProtocolCapabilities.clientRequiredCapabilities()
+    );
+  }
+
+  static Message<?> sampleMessage(final MessageType type) {
+    final String requestId = "3f2b8c1e-5d4a-4e7b-9c6d-1a2b3c4d5e6f";
+    if (type == MessageType.HELLO) {
+      return Message.response(requestId, type, hello(ColorLevel.TRUE_COLOR));
+    } else if (type == MessageType.WELCOME) {
+      return Message.response(requestId, type, new Payloads.Welcome(
+        SocketProtocolConstants.TRANSPORT_EPOCH,
+        Map.of(
+          ProtocolCapabilities.COMMAND_EXECUTE, ProtocolCapabilities.V1,
+          ProtocolCapabilities.LOG_FORWARD, ProtocolCapabilities.V1,
+          ProtocolCapabilities.INTERACTIVITY_STATUS, ProtocolCapabilities.V1,
+          ProtocolCapabilities.COMPLETION, ProtocolCapabilities.V1,
+          ProtocolCapabilities.SYNTAX_HIGHLIGHT, ProtocolCapabilities.V1,
+          ProtocolCapabilities.PARSE, ProtocolCapabilities.V1
+        )
+      ));
+    } else if (type == MessageType.REJECT) {
+      return Message.response(requestId, type, new Payloads.Reject(
+        HandshakeRejectReasons.MISSING_REQUIRED_CAPABILITIES,
+        "Missing required capabilities",
+        SocketProtocolConstants.TRANSPORT_EPOCH,
+        Set.of(ProtocolCapabilities.INTERACTIVITY_STATUS)
+      ));
+    } else if (type == MessageType.PING) {
+      return Message.response(requestId, type, new Payloads.Ping());
+    } else if (type == MessageType.PONG) {
+      return Message.response(requestId, type, new Payloads.Pong());
+    } else if (type == MessageType.ERROR) {
+      return Message.response(requestId, type, new Payloads.Error("Bad request", "Unknown command"));
+    } else if (type == MessageType.INTERACTIVITY_STATUS) {
+      return Message.unsolicited(type, new Payloads.InteractivityStatus(true));
+    } else if (type == MessageType.COMPLETION_REQUEST) {
+      return Message.response(requestId, type, new Payloads.CompletionRequest("gamemode creative Not", 21));
+    } else if (type == MessageType.COMPLETION_RESPONSE) {
+      return Message.response(requestId, type, new Payloads.CompletionResponse(List.of(
+        new Payloads.CompletionResponse.CandidateInfo("Notch", "Notch", null),
+        new Payloads.CompletionResponse.CandidateInfo("NotchAlt", "NotchAlt", null),
+        new Payloads.CompletionResponse.CandidateInfo("@a", "@a", "All players"),
+        new Payloads.CompletionResponse.CandidateInfo("@p", "@p", "Nearest player")
+      )));
+    } else if (type == MessageType.SYNTAX_HIGHLIGHT_REQUEST) {
+      return Message.response(requestId, type, new Payloads.SyntaxHighlightRequest("gamemode creative Notch"));
+    } else if (type == MessageType.SYNTAX_HIGHLIGHT_RESPONSE) {
+      return Message.response(requestId, type, new Payloads.SyntaxHighlightResponse(
+        "gamemode creative Notch",
+        "gamemode \u001B[38;2;85;255;255mcreative\u001B[m \u001B[38;2;255;255;85mNotch\u001B[m"
+      ));
+    } else if (type == MessageType.PARSE_REQUEST) {
+      return Message.response(requestId, type, new Payloads.ParseRequest("gamemode creative Notch", 23));
+    } else if (type == MessageType.PARSE_RESPONSE) {
+      return Message.response(requestId, type, new Payloads.ParseResponse(
+        "Notch",
+        5,
+        2,
+        List.of("gamemode", "creative", "Notch"),
+        "gamemode creative Notch",
+        23
+      ));
+    } else if (type == MessageType.COMMAND_EXECUTE) {
+      return Message.unsolicited(type, new Payloads.CommandExecute("gamemode creative Notch"));
+    } else if (type == MessageType.LOG_SUBSCRIBE) {
+      return Message.unsolicited(type, new Payloads.LogSubscribe());
+    } else if (type == MessageType.LOG_FORWARD) {
+      return Message.unsolicited(type, new Payloads.LogForward(LOG_LINE));
+    }
+    throw new IllegalArgumentException("No sample message for " + type);
+  }
+}
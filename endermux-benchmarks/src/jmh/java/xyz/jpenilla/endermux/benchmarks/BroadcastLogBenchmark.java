@@ -0,0 +1,218 @@
+package xyz.jpenilla.endermux.benchmarks;
+
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import net.kyori.ansi.ColorLevel;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.config.DefaultConfiguration;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import xyz.jpenilla.endermux.ansi.ColorLevelContext;
+import xyz.jpenilla.endermux.protocol.ChannelFrameCodec;
+import xyz.jpenilla.endermux.protocol.FrameBufferPool;
+import xyz.jpenilla.endermux.protocol.FrameCompressionType;
+import xyz.jpenilla.endermux.protocol.Message;
+import xyz.jpenilla.endermux.protocol.MessageSerializer;
+import xyz.jpenilla.endermux.protocol.MessageType;
+import xyz.jpenilla.endermux.protocol.Payloads;
+import xyz.jpenilla.endermux.server.EndermuxServer;
+
+/**
+ * Measures end-to-end log broadcast throughput: each invocation broadcasts a batch of
+ * lines and waits until every subscribed session has received all of them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BroadcastLogBenchmark {
+  private static final int BATCH_SIZE = 256;
+  private static final String PATTERN = "%EndermuxHighlightError{[%d{HH:mm:ss} %level]: %legacyMinecraftFormatting{%msg}%n%xEx{full}}";
+
+  @Param({"1", "10", "50"})
+  public int sessions;
+
+  private Path tempDir;
+  private EndermuxServer server;
+  private PatternLayout layout;
+  private final List<LogEvent> events = new ArrayList<>();
+  private final List<SubscribedClient> clients = new ArrayList<>();
+
+  @Setup
+  public void setup() throws Exception {
+    this.tempDir = Files.createTempDirectory("endermux-bench");
+    final Path socketPath = this.tempDir.resolve("console.sock");
+    this.server = new EndermuxServer(socketPath, this.sessions);
+    this.server.start();
+
+    this.layout = PatternLayout.newBuilder()
+      .withConfiguration(new DefaultConfiguration())
+      .withPattern(PATTERN)
+      .build();
+    this.events.add(BenchmarkData.logEvent(Level.INFO, BenchmarkData.LEGACY_FORMATTED_LINE));
+    this.events.add(BenchmarkData.logEvent(Level.INFO, "Preparing spawn area: 83%"));
+    this.events.add(BenchmarkData.logEvent(Level.WARN, "Can't keep up! Is the server overloaded? Running 2041ms or 40 ticks behind"));
+    this.events.add(BenchmarkData.logEvent(Level.ERROR, "§cCould not pass event PlayerJoinEvent to §eExamplePlugin v1.0"));
+
+    for (int i = 0; i < this.sessions; i++) {
+      final ColorLevel colorLevel = BenchmarkData.SESSION_COLOR_LEVELS.get(i % BenchmarkData.SESSION_COLOR_LEVELS.size());
+      this.clients.add(SubscribedClient.connect(socketPath, colorLevel));
+    }
+    this.awaitSubscriptions();
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    for (final SubscribedClient client : this.clients) {
+      client.close();
+    }
+    this.clients.clear();
+    this.server.stop();
+    Files.deleteIfExists(this.tempDir.resolve("console.sock"));
+    Files.deleteIfExists(this.tempDir);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public void broadcastLog() {
+    final long[] targets = new long[this.clients.size()];
+    for (int i = 0; i < targets.length; i++) {
+      targets[i] = this.clients.get(i).received() + BATCH_SIZE;
+    }
+    for (int i = 0; i < BATCH_SIZE; i++) {
+      this.broadcast(this.events.get(i % this.events.size()));
+    }
+    for (int i = 0; i < targets.length; i++) {
+      final SubscribedClient client = this.clients.get(i);
+      while (client.received() < targets[i]) {
+        Thread.onSpinWait();
+      }
+    }
+  }
+
+  private void broadcast(final LogEvent event) {
+    this.server.broadcastLog(colorLevel -> {
+      try (final ColorLevelContext.Scope _ = ColorLevelContext.push(colorLevel)) {
+        return this.layout.toSerializable(event);
+      }
+    });
+  }
+
+  // LOG_SUBSCRIBE is processed asynchronously, so probe until every session receives a line.
+  private void awaitSubscriptions() throws InterruptedException {
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (!this.clients.stream().allMatch(client -> client.received() > 0)) {
+      if (System.nanoTime() > deadline) {
+        throw new IllegalStateException("Timed out waiting for log subscriptions");
+      }
+      this.broadcast(this.events.getFirst());
+      Thread.sleep(10);
+    }
+  }
+
+  private static final class SubscribedClient implements AutoCloseable {
+    private final SocketChannel channel;
+    private final AtomicLong received = new AtomicLong();
+    private final Thread reader;
+
+    private SubscribedClient(final SocketChannel channel, final ChannelFrameCodec codec) {
+      this.channel = channel;
+      this.reader = Thread.ofPlatform()
+        .daemon(true)
+        .name("BenchmarkClientReader")
+        .start(() -> this.drain(codec));
+    }
+
+    static SubscribedClient connect(final Path socketPath, final ColorLevel colorLevel) throws IOException {
+      final MessageSerializer serializer = MessageSerializer.createStandard();
+      final SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+      channel.connect(UnixDomainSocketAddress.of(socketPath));
+      final ChannelFrameCodec codec = new ChannelFrameCodec(channel, FrameBufferPool.heap());
+
+      write(codec, serializer, Message.response(UUID.randomUUID().toString(), MessageType.HELLO, BenchmarkData.hello(colorLevel)));
+      final Message<?> welcome = read(codec, serializer);
+      if (welcome.type() != MessageType.WELCOME) {
+        throw new IOException("Handshake failed: " + welcome.type());
+      }
+      final Message<?> status = read(codec, serializer);
+      if (status.type() != MessageType.INTERACTIVITY_STATUS) {
+        throw new IOException("Expected interactivity status, got " + status.type());
+      }
+      write(codec, serializer, Message.unsolicited(MessageType.LOG_SUBSCRIBE, new Payloads.LogSubscribe()));
+      return new SubscribedClient(channel, codec);
+    }
+
+    long received() {
+      return this.received.get();
+    }
+
+    private void drain(final ChannelFrameCodec codec) {
+      try (codec) {
+        while (true) {
+          final ByteBuffer frame = codec.readFrame();
+          if (frame == null) {
+            return;
+          }
+          this.received.incrementAndGet();
+        }
+      } catch (final IOException ignored) {
+      }
+    }
+
+    private static void write(
+      final ChannelFrameCodec codec,
+      final MessageSerializer serializer,
+      final Message<?> message
+    ) throws IOException {
+      codec.writeFrame(serializer.serialize(message).getBytes(StandardCharsets.UTF_8), FrameCompressionType.NONE);
+    }
+
+    private static Message<?> read(final ChannelFrameCodec codec, final MessageSerializer serializer) throws IOException {
+      final ByteBuffer frame = codec.readFrame();
+      if (frame == null) {
+        throw new IOException("Connection closed during handshake");
+      }
+      final Message<?> message = serializer.deserialize(ChannelFrameCodec.decodeUtf8(frame));
+      if (message == null) {
+        throw new IOException("Invalid message during handshake");
+      }
+      return message;
+    }
+
+    @Override
+    public void close() throws IOException {
+      this.channel.close();
+      try {
+        this.reader.join(1000L);
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
@@ -0,0 +1,152 @@
+package xyz.jpenilla.endermux.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import xyz.jpenilla.endermux.protocol.ChannelFrameCodec;
+import xyz.jpenilla.endermux.protocol.FrameBufferPool;
+import xyz.jpenilla.endermux.protocol.FrameCodec;
+import xyz.jpenilla.endermux.protocol.FrameCompressionType;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FrameCodecBenchmark {
+  @Param({"128", "1024", "16384", "262144"})
+  public int payloadSize;
+
+  @Param({"NONE", "GZIP"})
+  public FrameCompressionType compression;
+
+  private byte[] payload;
+  private ByteArrayOutputStream writeBuffer;
+  private DataOutputStream writeOut;
+  private ByteArrayInputStream readBuffer;
+  private DataInputStream readIn;
+  private ChannelFrameCodec channelCodec;
+  private ByteBuffer payloadBuffer;
+
+  @Setup
+  public void setup() throws IOException {
+    this.payload = BenchmarkData.logPayload(this.payloadSize);
+    this.writeBuffer = new ByteArrayOutputStream(this.payloadSize + 5);
+    this.writeOut = new DataOutputStream(this.writeBuffer);
+
+    FrameCodec.writeFrame(this.writeOut, this.payload, this.compression);
+    this.readBuffer = new ByteArrayInputStream(this.writeBuffer.toByteArray());
+    this.readIn = new DataInputStream(this.readBuffer);
+
+    this.channelCodec = new ChannelFrameCodec(
+      new RepeatingChannel(this.writeBuffer.toByteArray()),
+      new DiscardingChannel(),
+      FrameBufferPool.heap()
+    );
+    this.payloadBuffer = ByteBuffer.wrap(this.payload);
+  }
+
+  @Benchmark
+  public int writeFrame() throws IOException {
+    this.writeBuffer.reset();
+    FrameCodec.writeFrame(this.writeOut, this.payload, this.compression);
+    return this.writeBuffer.size();
+  }
+
+  @Benchmark
+  public byte[] readFrame() throws IOException {
+    this.readBuffer.reset();
+    return FrameCodec.readFrame(this.readIn);
+  }
+
+  @Benchmark
+  public int channelWriteFrame() throws IOException {
+    this.channelCodec.writeFrame(this.payloadBuffer.clear(), this.compression);
+    return this.payloadBuffer.position();
+  }
+
+  @Benchmark
+  public int channelReadFrame() throws IOException {
+    final ByteBuffer frame = this.channelCodec.readFrame();
+    return frame == null ? -1 : frame.remaining();
+  }
+
+  private static final class RepeatingChannel implements ReadableByteChannel {
+    private final ByteBuffer frame;
+
+    RepeatingChannel(final byte[] frame) {
+      this.frame = ByteBuffer.wrap(frame);
+    }
+
+    @Override
+    public int read(final ByteBuffer dst) {
+      if (!this.frame.hasRemaining()) {
+        this.frame.clear();
+      }
+      final int count = Math.min(dst.remaining(), this.frame.remaining());
+      dst.put(dst.position(), this.frame, this.frame.position(), count);
+      dst.position(dst.position() + count);
+      this.frame.position(this.frame.position() + count);
+      return count;
+    }
+
+    @Override
+    public boolean isOpen() {
+      return true;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  private static final class DiscardingChannel implements GatheringByteChannel {
+    @Override
+    public long write(final ByteBuffer[] srcs, final int offset, final int length) {
+      long written = 0;
+      for (int i = offset; i < offset + length; i++) {
+        written += this.write(srcs[i]);
+      }
+      return written;
+    }
+
+    @Override
+    public long write(final ByteBuffer[] srcs) {
+      return this.write(srcs, 0, srcs.length);
+    }
+
+    @Override
+    public int write(final ByteBuffer src) {
+      final int remaining = src.remaining();
+      src.position(src.limit());
+      return remaining;
+    }
+
+    @Override
+    public boolean isOpen() {
+      return true;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
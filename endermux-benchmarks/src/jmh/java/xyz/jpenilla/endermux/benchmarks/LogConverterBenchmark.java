@@ -0,0 +1,83 @@
+package xyz.jpenilla.endermux.benchmarks;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import net.kyori.ansi.ColorLevel;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.config.Configuration;
+import org.apache.logging.log4j.core.config.DefaultConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import xyz.jpenilla.endermux.ansi.ColorLevelContext;
+import xyz.jpenilla.endermux.log4j.HexFormattingConverter;
+import xyz.jpenilla.endermux.log4j.HighlightErrorConverter;
+import xyz.jpenilla.endermux.log4j.StripANSIConverter;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LogConverterBenchmark {
+  @Param({"NONE", "INDEXED_16", "INDEXED_256", "TRUE_COLOR"})
+  public ColorLevel colorLevel;
+
+  private HexFormattingConverter hexFormatting;
+  private StripANSIConverter stripAnsi;
+  private HighlightErrorConverter highlightError;
+  private LogEvent legacyFormattedEvent;
+  private LogEvent ansiFormattedEvent;
+  private LogEvent warnEvent;
+  private StringBuilder output;
+
+  @Setup
+  public void setup() {
+    final Configuration config = new DefaultConfiguration();
+    final String[] options = {"%msg"};
+    this.hexFormatting = HexFormattingConverter.newInstance(config, options);
+    this.stripAnsi = StripANSIConverter.newInstance(config, options);
+    this.highlightError = Objects.requireNonNull(HighlightErrorConverter.newInstance(config, options));
+    this.legacyFormattedEvent = BenchmarkData.logEvent(Level.INFO, BenchmarkData.LEGACY_FORMATTED_LINE);
+    this.ansiFormattedEvent = BenchmarkData.logEvent(Level.INFO, BenchmarkData.ANSI_FORMATTED_LINE);
+    this.warnEvent = BenchmarkData.logEvent(Level.WARN, "Can't keep up! Is the server overloaded? Running 2041ms or 40 ticks behind");
+    this.output = new StringBuilder(256);
+  }
+
+  @Benchmark
+  public int hexFormatting() {
+    this.output.setLength(0);
+    try (final ColorLevelContext.Scope _ = ColorLevelContext.push(this.colorLevel)) {
+      this.hexFormatting.format(this.legacyFormattedEvent, this.output);
+    }
+    return this.output.length();
+  }
+
+  @Benchmark
+  public int stripAnsi() {
+    this.output.setLength(0);
+    try (final ColorLevelContext.Scope _ = ColorLevelContext.push(this.colorLevel)) {
+      this.stripAnsi.format(this.ansiFormattedEvent, this.output);
+    }
+    return this.output.length();
+  }
+
+  @Benchmark
+  public int highlightError() {
+    this.output.setLength(0);
+    try (final ColorLevelContext.Scope _ = ColorLevelContext.push(this.colorLevel)) {
+      this.highlightError.format(this.warnEvent, this.output);
+    }
+    return this.output.length();
+  }
+}
@@ -0,0 +1,102 @@
+package xyz.jpenilla.endermux.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import xyz.jpenilla.endermux.protocol.BinaryMessageCodec;
+import xyz.jpenilla.endermux.protocol.Message;
+import xyz.jpenilla.endermux.protocol.MessageBuffer;
+import xyz.jpenilla.endermux.protocol.MessageSerializer;
+import xyz.jpenilla.endermux.protocol.MessageType;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageSerializerBenchmark {
+  @Param({
+    "HELLO",
+    "WELCOME",
+    "REJECT",
+    "PING",
+    "PONG",
+    "ERROR",
+    "INTERACTIVITY_STATUS",
+    "COMPLETION_REQUEST",
+    "COMPLETION_RESPONSE",
+    "SYNTAX_HIGHLIGHT_REQUEST",
+    "SYNTAX_HIGHLIGHT_RESPONSE",
+    "PARSE_REQUEST",
+    "PARSE_RESPONSE",
+    "COMMAND_EXECUTE",
+    "LOG_SUBSCRIBE",
+    "LOG_FORWARD"
+  })
+  public String messageType;
+
+  private MessageSerializer serializer;
+  private Message<?> message;
+  private String json;
+  private MessageBuffer buffer;
+  private ByteBuffer jsonBytes;
+  private BinaryMessageCodec binaryCodec;
+  private ByteBuffer binaryBytes;
+
+  @Setup
+  public void setup() {
+    this.serializer = MessageSerializer.createStandard();
+    this.message = BenchmarkData.sampleMessage(MessageType.byIdOrThrow(this.messageType));
+    this.json = this.serializer.serialize(this.message);
+    this.buffer = new MessageBuffer();
+    this.jsonBytes = ByteBuffer.wrap(this.json.getBytes(StandardCharsets.UTF_8));
+    this.binaryCodec = new BinaryMessageCodec(this.serializer);
+    final MessageBuffer binary = new MessageBuffer();
+    this.binaryCodec.serialize(this.message, binary);
+    this.binaryBytes = ByteBuffer.wrap(binary.toByteArray());
+  }
+
+  @Benchmark
+  public String serialize() {
+    return this.serializer.serialize(this.message);
+  }
+
+  @Benchmark
+  public Message<?> deserialize() {
+    return this.serializer.deserialize(this.json);
+  }
+
+  @Benchmark
+  public int serializeBytes() {
+    this.serializer.serialize(this.message, this.buffer);
+    return this.buffer.size();
+  }
+
+  @Benchmark
+  public Message<?> deserializeBytes() {
+    return this.serializer.deserialize(this.jsonBytes);
+  }
+
+  @Benchmark
+  public int serializeBinary() {
+    this.binaryCodec.serialize(this.message, this.buffer);
+    return this.buffer.size();
+  }
+
+  @Benchmark
+  public Message<?> deserializeBinary() {
+    return this.binaryCodec.deserialize(this.binaryBytes);
+  }
+}
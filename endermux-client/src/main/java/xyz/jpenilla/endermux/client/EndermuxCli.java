@@ -1,5 +1,7 @@
 package xyz.jpenilla.endermux.client;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Callable;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.format.NamedTextColor;
@@ -10,6 +12,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.core.LoggerContext;
 import org.apache.logging.log4j.core.config.LoggerConfig;
 import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import picocli.CommandLine;
@@ -17,6 +20,8 @@ import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
 import xyz.jpenilla.endermux.client.runtime.EndermuxClient;
 import xyz.jpenilla.endermux.client.runtime.StreamRedirection;
+import xyz.jpenilla.endermux.protocol.LogLevel;
+import xyz.jpenilla.endermux.protocol.Payloads;
 
 import static net.kyori.adventure.text.Component.text;
 
@@ -57,6 +62,46 @@ public final class EndermuxCli implements Callable<Integer> {
   )
   private boolean ignoreUnrecoverableHandshake;
 
+  @Option(
+    names = "--replay-lines",
+    defaultValue = "100",
+    description = "Number of recent server log lines to show on first connect, if the server keeps a log backlog."
+  )
+  private int replayLines = 100;
+
+  @Option(
+    names = "--history",
+    defaultValue = "false",
+    description = "On first connect, also show log lines the server spooled before its last restart, if it keeps a log spool."
+  )
+  private boolean history;
+
+  @Option(
+    names = "--min-level",
+    description = "Only show log lines at or above this level (${COMPLETION-CANDIDATES})."
+  )
+  private @Nullable LogLevel minLevel;
+
+  @Option(
+    names = "--logger",
+    split = ",",
+    description = "Only show log lines from loggers whose name starts with one of these prefixes."
+  )
+  private List<String> includeLoggers = new ArrayList<>();
+
+  @Option(
+    names = "--exclude-logger",
+    split = ",",
+    description = "Hide log lines from loggers whose name starts with one of these prefixes."
+  )
+  private List<String> excludeLoggers = new ArrayList<>();
+
+  @Option(
+    names = "--grep",
+    description = "Only show log lines whose message contains a match for this regular expression."
+  )
+  private @Nullable String pattern;
+
   static void main(final String[] args) {
     final int exitCode = new CommandLine(new EndermuxCli()).execute(args);
     System.exit(exitCode);
@@ -72,7 +117,11 @@ public final class EndermuxCli implements Callable<Integer> {
       }
 
       final EndermuxClient client = new EndermuxClient();
-      return client.run(this.socketPath, this.ignoreUnrecoverableHandshake);
+      return client.run(
+        this.socketPath,
+        this.ignoreUnrecoverableHandshake,
+        new Payloads.LogSubscribe(Math.max(this.replayLines, 0), this.history, this.logFilter())
+      );
     } catch (final Exception e) {
       LOGGER.error("Error starting Endermux client", e);
       return 1;
@@ -82,6 +131,13 @@ public final class EndermuxCli implements Callable<Integer> {
     }
   }
 
+  private Payloads.LogSubscribe.@Nullable Filter logFilter() {
+    if (this.minLevel == null && this.includeLoggers.isEmpty() && this.excludeLoggers.isEmpty() && this.pattern == null) {
+      return null;
+    }
+    return new Payloads.LogSubscribe.Filter(this.minLevel, this.includeLoggers, this.excludeLoggers, null, this.pattern);
+  }
+
   private void enableDebugLogging() {
     final LoggerContext context = (LoggerContext) LogManager.getContext(false);
     final LoggerConfig root = context.getConfiguration().getRootLogger();
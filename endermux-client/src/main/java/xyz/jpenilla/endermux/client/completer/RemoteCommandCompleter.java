@@ -40,7 +40,11 @@ public final class RemoteCommandCompleter implements Completer {
     }
 
     try {
-      final Payloads.CompletionRequest requestPayload = new Payloads.CompletionRequest(line.line(), line.cursor());
+      final Payloads.CompletionRequest requestPayload = new Payloads.CompletionRequest(
+        line.line(),
+        line.cursor(),
+        this.socketClient.supersedesRequests()
+      );
       final Message<Payloads.CompletionRequest> request = this.socketClient.createRequest(
         MessageType.COMPLETION_REQUEST,
         requestPayload
@@ -35,7 +35,7 @@ public final class RemoteParser implements Parser {
     }
 
     try {
-      final Payloads.ParseRequest requestPayload = new Payloads.ParseRequest(line, cursor);
+      final Payloads.ParseRequest requestPayload = new Payloads.ParseRequest(line, cursor, this.socketClient.supersedesRequests());
       final Message<Payloads.ParseRequest> request = this.socketClient.createRequest(
         MessageType.PARSE_REQUEST,
         requestPayload
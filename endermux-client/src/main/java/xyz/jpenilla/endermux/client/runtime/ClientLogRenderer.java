@@ -0,0 +1,64 @@
+package xyz.jpenilla.endermux.client.runtime;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.LoggerContext;
+import org.apache.logging.log4j.core.config.Configuration;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+import org.apache.logging.log4j.core.layout.PatternMatch;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.apache.logging.log4j.util.SortedArrayStringMap;
+import org.jspecify.annotations.NullMarked;
+import xyz.jpenilla.endermux.ansi.ColorLevelContext;
+import xyz.jpenilla.endermux.log4j.LoggerNamePatternSelector;
+import xyz.jpenilla.endermux.log4j.RichLogContext;
+import xyz.jpenilla.endermux.protocol.Payloads;
+
+/**
+ * Renders {@code LOG_EVENT}s with the layout the server sent at subscribe time, the same way
+ * the server would have rendered them for this terminal.
+ */
+@NullMarked
+final class ClientLogRenderer {
+  private final PatternLayout layout;
+
+  private ClientLogRenderer(final PatternLayout layout) {
+    this.layout = layout;
+  }
+
+  static ClientLogRenderer create(final Payloads.LogLayout definition) {
+    final Configuration configuration = LoggerContext.getContext(false).getConfiguration();
+    final PatternMatch[] patternMatches = definition.patternMatches().stream()
+      .map(match -> new PatternMatch(match.key(), match.pattern()))
+      .toArray(PatternMatch[]::new);
+    final LoggerNamePatternSelector selector = LoggerNamePatternSelector.createSelector(
+      definition.defaultPattern(),
+      patternMatches,
+      definition.alwaysWriteExceptions(),
+      definition.disableAnsi(),
+      definition.noConsoleNoAnsi(),
+      configuration
+    );
+    return new ClientLogRenderer(PatternLayout.newBuilder()
+      .withConfiguration(configuration)
+      .withPatternSelector(selector)
+      .build());
+  }
+
+  String render(final Payloads.LogEvent event) {
+    final SortedArrayStringMap contextData = new SortedArrayStringMap();
+    final String richMessage = event.richMessage();
+    if (richMessage != null) {
+      // The server picked the rendering for the color level this client announced
+      RichLogContext.putRenderedFor(contextData, ColorLevelContext.current(), richMessage);
+    }
+    return this.layout.toSerializable(Log4jLogEvent.newBuilder()
+      .setLoggerName(event.logger())
+      .setLevel(Level.valueOf(event.level().name()))
+      .setMessage(new SimpleMessage(event.message()))
+      .setThreadName(event.thread())
+      .setTimeMillis(event.timestamp())
+      .setContextData(contextData)
+      .build());
+  }
+}
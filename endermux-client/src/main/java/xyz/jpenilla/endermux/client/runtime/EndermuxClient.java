@@ -10,6 +10,7 @@ import net.kyori.adventure.text.logger.slf4j.ComponentLogger;
 import org.jspecify.annotations.NullMarked;
 import org.jspecify.annotations.Nullable;
 import xyz.jpenilla.endermux.client.EndermuxCli;
+import xyz.jpenilla.endermux.protocol.Payloads;
 
 import static net.kyori.adventure.text.Component.text;
 
@@ -32,6 +33,22 @@ public final class EndermuxClient {
   private volatile @Nullable RemoteConsoleSession activeSession;
 
   public int run(final String socketPath, final boolean ignoreUnrecoverableHandshake) {
+    return this.run(socketPath, ignoreUnrecoverableHandshake, new Payloads.LogSubscribe());
+  }
+
+  /**
+   * Runs the client until the user quits.
+   *
+   * @param socketPath socket to connect to
+   * @param ignoreUnrecoverableHandshake whether to keep retrying after fatal handshake failures
+   * @param logSubscribe subscription for the first connection; later connections keep only its filter
+   * @return exit code
+   */
+  public int run(
+    final String socketPath,
+    final boolean ignoreUnrecoverableHandshake,
+    final Payloads.LogSubscribe logSubscribe
+  ) {
     this.terminalContext = TerminalRuntimeContext.create();
 
     LOGGER.info(EndermuxCli.VERSION_MESSAGE);
@@ -39,15 +56,21 @@ public final class EndermuxClient {
     try {
       this.registerSignalHandlers();
       int retryCount = 0;
+      // Only the first connection replays the backlog; after a reconnect it would mostly repeat lines already shown
+      boolean connectedBefore = false;
       final SocketPathWatcher socketWatcher = new SocketPathWatcher(socketPath, SOCKET_POLL_INTERVAL_MS, LOGGER);
       while (!this.shutdownRequested) {
         if (!socketWatcher.waitForSocket(() -> this.shutdownRequested) || this.shutdownRequested) {
           break;
         }
 
-        final RemoteConsoleSession.SessionOutcome sessionOutcome = this.runSession(socketPath);
+        final RemoteConsoleSession.SessionOutcome sessionOutcome = this.runSession(
+          socketPath,
+          connectedBefore ? new Payloads.LogSubscribe(0, false, logSubscribe.filter()) : logSubscribe
+        );
         this.updateExitReason(sessionOutcome, ignoreUnrecoverableHandshake);
         if (sessionOutcome.didConnect()) {
+          connectedBefore = true;
           LOGGER.info(text("Disconnected from server.", NamedTextColor.RED, TextDecoration.BOLD));
           retryCount = 0;
         }
@@ -83,7 +106,10 @@ public final class EndermuxClient {
     return exitReason == null ? 0 : exitReason.exitCode();
   }
 
-  private RemoteConsoleSession.SessionOutcome runSession(final String socketPath) {
+  private RemoteConsoleSession.SessionOutcome runSession(
+    final String socketPath,
+    final Payloads.LogSubscribe logSubscribe
+  ) {
     final TerminalRuntimeContext context = this.terminalContext;
     if (context == null) {
       throw new IllegalStateException("Terminal context is not initialized");
@@ -92,7 +118,8 @@ public final class EndermuxClient {
       socketPath,
       context,
       this.logExecutor,
-      () -> this.shutdownRequested
+      () -> this.shutdownRequested,
+      logSubscribe
     );
     this.activeSession = session;
     try {
@@ -16,10 +16,12 @@ import org.jspecify.annotations.NullMarked;
 import org.jspecify.annotations.Nullable;
 import xyz.jpenilla.endermux.client.transport.HandshakeFatalException;
 import xyz.jpenilla.endermux.client.transport.SocketTransport;
+import xyz.jpenilla.endermux.protocol.LogTraceCache;
 import xyz.jpenilla.endermux.protocol.Message;
 import xyz.jpenilla.endermux.protocol.MessagePayload;
 import xyz.jpenilla.endermux.protocol.MessageType;
 import xyz.jpenilla.endermux.protocol.Payloads;
+import xyz.jpenilla.endermux.protocol.ProtocolCapabilities;
 
 import static net.kyori.adventure.text.Component.text;
 
@@ -34,22 +36,28 @@ public final class RemoteConsoleSession {
   private final TerminalRuntimeContext terminalContext;
   private final ExecutorService logExecutor;
   private final BooleanSupplier shutdownRequested;
+  private final Payloads.LogSubscribe logSubscribe;
 
   private volatile @Nullable SocketTransport socketClient;
   private volatile boolean interactiveAvailable;
   private volatile boolean suppressNextInterruptHint;
   private volatile @Nullable LineReader lineReader;
+  // Only used on the log executor
+  private @Nullable ClientLogRenderer logRenderer;
+  private final LogTraceCache<String> traceCache = new LogTraceCache<>();
 
   RemoteConsoleSession(
     final String socketPath,
     final TerminalRuntimeContext terminalContext,
     final ExecutorService logExecutor,
-    final BooleanSupplier shutdownRequested
+    final BooleanSupplier shutdownRequested,
+    final Payloads.LogSubscribe logSubscribe
   ) {
     this.socketPath = socketPath;
     this.terminalContext = terminalContext;
     this.logExecutor = logExecutor;
     this.shutdownRequested = shutdownRequested;
+    this.logSubscribe = logSubscribe;
   }
 
   SessionOutcome run() {
@@ -72,7 +80,7 @@ public final class RemoteConsoleSession {
       this.lineReader = this.terminalContext.createLineReader(this, client);
       TerminalOutput.setLineReader(this.lineReader);
 
-      client.sendMessage(Message.unsolicited(MessageType.LOG_SUBSCRIBE, new Payloads.LogSubscribe()));
+      client.sendMessage(Message.unsolicited(MessageType.LOG_SUBSCRIBE, this.negotiatedLogSubscribe(client)));
 
       final AcceptInputResult acceptInputResult = this.acceptInput();
 
@@ -93,6 +101,18 @@ public final class RemoteConsoleSession {
     }
   }
 
+  private Payloads.LogSubscribe negotiatedLogSubscribe(final SocketTransport client) {
+    final Payloads.LogSubscribe requested = this.logSubscribe;
+    final int replayLines = client.supportsCapability(ProtocolCapabilities.LOG_BACKLOG) ? requested.replayLines() : 0;
+    final boolean history = requested.history() && client.supportsCapability(ProtocolCapabilities.LOG_SPOOL);
+    Payloads.LogSubscribe.Filter filter = requested.filter();
+    if (filter != null && !client.supportsCapability(ProtocolCapabilities.LOG_FORWARD, ProtocolCapabilities.V2)) {
+      LOGGER.warn("Server does not support log filters, showing all log lines.");
+      filter = null;
+    }
+    return new Payloads.LogSubscribe(replayLines, history, filter);
+  }
+
   void disconnect() {
     final SocketTransport client = this.socketClient;
     if (client != null) {
@@ -249,6 +269,21 @@ public final class RemoteConsoleSession {
       return;
     }
 
+    if (type == MessageType.LOG_LAYOUT && message.payload() instanceof Payloads.LogLayout logLayout) {
+      this.logExecutor.execute(() -> this.updateLogLayout(logLayout));
+      return;
+    }
+
+    if (type == MessageType.LOG_EVENT && message.payload() instanceof Payloads.LogEvent logEvent) {
+      this.logExecutor.execute(() -> this.processLogEvent(logEvent));
+      return;
+    }
+
+    if (type == MessageType.LOG_TRACE && message.payload() instanceof Payloads.LogTrace logTrace) {
+      this.logExecutor.execute(() -> this.processLogTrace(logTrace));
+      return;
+    }
+
     if (type == MessageType.ERROR && message.payload() instanceof Payloads.Error(String errorMessage, String details)) {
       this.printError(errorMessage, details);
       return;
@@ -276,6 +311,45 @@ public final class RemoteConsoleSession {
     this.printLogMessage(logForward.rendered());
   }
 
+  private void updateLogLayout(final Payloads.LogLayout logLayout) {
+    try {
+      this.logRenderer = ClientLogRenderer.create(logLayout);
+    } catch (final RuntimeException e) {
+      LOGGER.debug("Failed to create log layout", e);
+      LOGGER.warn("Could not use the server's log layout, showing plain log messages.");
+      this.logRenderer = null;
+    }
+  }
+
+  private void processLogEvent(final Payloads.LogEvent logEvent) {
+    final ClientLogRenderer renderer = this.logRenderer;
+    if (renderer == null) {
+      this.printLogMessage(logEvent.message() + System.lineSeparator());
+      return;
+    }
+    this.printLogMessage(renderer.render(logEvent));
+  }
+
+  private void processLogTrace(final Payloads.LogTrace logTrace) {
+    String trace = logTrace.trace();
+    if (trace != null) {
+      this.traceCache.put(logTrace.traceId(), trace);
+    } else {
+      trace = this.traceCache.get(logTrace.traceId());
+      if (trace == null) {
+        // The line that carried it was dropped, or it was evicted
+        trace = "[endermux] stack trace " + logTrace.traceId() + " is no longer cached" + System.lineSeparator();
+      }
+    }
+    final String rendered = logTrace.rendered();
+    final int offset = logTrace.traceOffset();
+    if (offset < 0 || offset > rendered.length()) {
+      this.printLogMessage(rendered + trace);
+      return;
+    }
+    this.printLogMessage(rendered.substring(0, offset) + trace + rendered.substring(offset));
+  }
+
   private void printLogMessage(final String formattedMessage) {
     TerminalOutput.write(formattedMessage);
   }
@@ -0,0 +1,143 @@
+package xyz.jpenilla.endermux.client.transport;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import xyz.jpenilla.endermux.protocol.Message;
+import xyz.jpenilla.endermux.protocol.RequestIds;
+
+/**
+ * Futures awaiting a response, keyed by request id.
+ *
+ * <p>{@link RequestIds Numeric} ids are kept in an open-addressing table with primitive
+ * {@code long} keys, so the per-keystroke request path neither hashes strings nor allocates
+ * map entries. Other ids, such as the UUIDs used when numeric ids were not negotiated, fall
+ * back to a regular map.</p>
+ */
+@NullMarked
+final class PendingRequests {
+  private static final int INITIAL_CAPACITY = 16;
+  private static final long EMPTY = 0L;
+
+  private long[] keys = new long[INITIAL_CAPACITY];
+  private CompletableFuture<Message<?>>[] values = newValues(INITIAL_CAPACITY);
+  private int size;
+  private final Map<String, CompletableFuture<Message<?>>> otherRequests = new HashMap<>();
+
+  synchronized void put(final String requestId, final CompletableFuture<Message<?>> future) {
+    final long id = RequestIds.parse(requestId);
+    if (id == RequestIds.NOT_NUMERIC) {
+      this.otherRequests.put(requestId, future);
+      return;
+    }
+    if ((this.size + 1) * 2 > this.keys.length) {
+      this.resize(this.keys.length * 2);
+    }
+    this.insert(id, future);
+  }
+
+  synchronized @Nullable CompletableFuture<Message<?>> remove(final String requestId) {
+    final long id = RequestIds.parse(requestId);
+    if (id == RequestIds.NOT_NUMERIC) {
+      return this.otherRequests.remove(requestId);
+    }
+    final int mask = this.keys.length - 1;
+    for (int slot = slot(id, mask); this.keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+      if (this.keys[slot] == id) {
+        final CompletableFuture<Message<?>> future = this.values[slot];
+        this.delete(slot);
+        return future;
+      }
+    }
+    return null;
+  }
+
+  synchronized int size() {
+    return this.size + this.otherRequests.size();
+  }
+
+  /**
+   * Removes and returns every pending future.
+   *
+   * @return removed futures
+   */
+  synchronized List<CompletableFuture<Message<?>>> drain() {
+    final List<CompletableFuture<Message<?>>> drained = new ArrayList<>(this.size());
+    for (int slot = 0; slot < this.keys.length; slot++) {
+      if (this.keys[slot] != EMPTY) {
+        drained.add(this.values[slot]);
+      }
+    }
+    drained.addAll(this.otherRequests.values());
+    this.otherRequests.clear();
+    if (this.keys.length > INITIAL_CAPACITY) {
+      this.keys = new long[INITIAL_CAPACITY];
+      this.values = newValues(INITIAL_CAPACITY);
+    } else {
+      Arrays.fill(this.keys, EMPTY);
+      Arrays.fill(this.values, null);
+    }
+    this.size = 0;
+    return drained;
+  }
+
+  private void insert(final long id, final CompletableFuture<Message<?>> future) {
+    final int mask = this.keys.length - 1;
+    int slot = slot(id, mask);
+    while (this.keys[slot] != EMPTY && this.keys[slot] != id) {
+      slot = (slot + 1) & mask;
+    }
+    if (this.keys[slot] == EMPTY) {
+      this.size++;
+    }
+    this.keys[slot] = id;
+    this.values[slot] = future;
+  }
+
+  // Backward-shift deletion keeps probe sequences intact without tombstones
+  private void delete(final int removed) {
+    final int mask = this.keys.length - 1;
+    int gap = removed;
+    int slot = (removed + 1) & mask;
+    while (this.keys[slot] != EMPTY) {
+      final int home = slot(this.keys[slot], mask);
+      if (((slot - home) & mask) >= ((slot - gap) & mask)) {
+        this.keys[gap] = this.keys[slot];
+        this.values[gap] = this.values[slot];
+        gap = slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+    this.keys[gap] = EMPTY;
+    this.values[gap] = null;
+    this.size--;
+  }
+
+  private void resize(final int capacity) {
+    final long[] oldKeys = this.keys;
+    final CompletableFuture<Message<?>>[] oldValues = this.values;
+    this.keys = new long[capacity];
+    this.values = newValues(capacity);
+    this.size = 0;
+    for (int slot = 0; slot < oldKeys.length; slot++) {
+      if (oldKeys[slot] != EMPTY) {
+        this.insert(oldKeys[slot], oldValues[slot]);
+      }
+    }
+  }
+
+  // Ids are sequential per connection, so the low bits alone spread them across slots
+  private static int slot(final long id, final int mask) {
+    return (int) id & mask;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static CompletableFuture<Message<?>>[] newValues(final int capacity) {
+    return new CompletableFuture[capacity];
+  }
+}
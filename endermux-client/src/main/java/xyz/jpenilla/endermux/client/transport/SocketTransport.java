@@ -1,16 +1,11 @@
 package xyz.jpenilla.endermux.client.transport;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.StandardProtocolFamily;
 import java.net.UnixDomainSocketAddress;
-import java.nio.channels.Channels;
+import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SocketChannel;
-import java.nio.charset.StandardCharsets;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
@@ -19,15 +14,20 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import org.jspecify.annotations.NullMarked;
 import org.jspecify.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import xyz.jpenilla.endermux.protocol.CapabilityVersionRange;
+import xyz.jpenilla.endermux.protocol.ChannelFrameCodec;
 import xyz.jpenilla.endermux.protocol.ConnectionState;
-import xyz.jpenilla.endermux.protocol.FrameCodec;
+import xyz.jpenilla.endermux.protocol.FrameBufferPool;
+import xyz.jpenilla.endermux.protocol.FrameCompressionPolicy;
 import xyz.jpenilla.endermux.protocol.Message;
+import xyz.jpenilla.endermux.protocol.MessageBuffer;
+import xyz.jpenilla.endermux.protocol.MessageCodec;
 import xyz.jpenilla.endermux.protocol.MessagePayload;
 import xyz.jpenilla.endermux.protocol.MessageSerializer;
 import xyz.jpenilla.endermux.protocol.MessageType;
@@ -46,22 +46,29 @@ public final class SocketTransport {
   private final String socketPath;
   private final MessageSerializer serializer;
   private final TransportDelaySimulator delaySimulator;
-  private final ConcurrentHashMap<String, CompletableFuture<Message<?>>> pendingRequests = new ConcurrentHashMap<>();
+  private final PendingRequests pendingRequests = new PendingRequests();
+  // Latest superseding request of each type that is still awaiting its response
+  private final Map<MessageType, String> supersedingRequests = new ConcurrentHashMap<>();
+  private final AtomicLong lastRequestId = new AtomicLong();
   private final AtomicReference<ConnectionState> state =
     new AtomicReference<>(ConnectionState.DISCONNECTED);
   private final Object writeLock = new Object();
+  private final MessageBuffer writeBuffer = new MessageBuffer();
 
   private @Nullable SocketChannel socketChannel;
-  private @Nullable DataInputStream reader;
-  private @Nullable DataOutputStream writer;
+  private volatile @Nullable ChannelFrameCodec frameCodec;
   private volatile @Nullable TransportMessageHandler messageHandler;
   private volatile @Nullable Runnable disconnectCallback;
   private volatile boolean interactivityAvailable;
   private volatile Map<String, Integer> negotiatedCapabilities = Map.of();
+  private volatile FrameCompressionPolicy compressionPolicy = FrameCompressionPolicy.defaults();
+  private volatile MessageCodec codec;
+  private volatile boolean numericRequestIds;
 
   public SocketTransport(final String socketPath) {
     this.socketPath = socketPath;
     this.serializer = MessageSerializer.createStandard();
+    this.codec = this.serializer;
     this.delaySimulator = TransportDelaySimulator.fromSystemProperties(LOGGER);
   }
 
@@ -76,8 +83,7 @@ public final class SocketTransport {
       this.socketChannel = SocketChannel.open(StandardProtocolFamily.UNIX);
       this.socketChannel.connect(address);
 
-      this.reader = new DataInputStream(new BufferedInputStream(Channels.newInputStream(this.socketChannel)));
-      this.writer = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(this.socketChannel)));
+      this.frameCodec = new ChannelFrameCodec(this.socketChannel, FrameBufferPool.heap());
 
       this.performHandshake();
 
@@ -123,7 +129,7 @@ public final class SocketTransport {
       return false;
     }
 
-    if (this.writer != null && this.isConnected()) {
+    if (this.frameCodec != null && this.isConnected()) {
       try {
         if (this.delaySimulator.enabled()) {
           this.delaySimulator.enqueueOutbound(message);
@@ -159,21 +165,48 @@ public final class SocketTransport {
 
     final CompletableFuture<Message<?>> future = new CompletableFuture<>();
     this.pendingRequests.put(requestId, future);
+    final boolean supersede = message.payload() instanceof Payloads.SupersedingRequest superseding && superseding.supersede();
+    if (supersede) {
+      final @Nullable String previous = this.supersedingRequests.put(message.type(), requestId);
+      if (previous != null) {
+        this.failSuperseded(previous);
+      }
+    }
 
     try {
-      if (!this.sendMessage(message)) {
+      // Lets the server skip the request if it cannot start on it before we give up
+      final Message<?> sent = message.deadlineMs() == 0 && this.supportsCapability(ProtocolCapabilities.REQUEST_DEADLINE)
+        ? message.withDeadlineMs(timeoutMs)
+        : message;
+      if (!this.sendMessage(sent)) {
         throw new IOException("Not connected");
       }
       return this.awaitResponse(future, expectedResponseType, timeoutMs);
-    } catch (final ExecutionException | TimeoutException e) {
+    } catch (final TimeoutException e) {
+      this.cancelRequest(requestId);
+      throw this.wrapResponseException(expectedResponseType, timeoutMs, e);
+    } catch (final ExecutionException e) {
       throw this.wrapResponseException(expectedResponseType, timeoutMs, e);
     } finally {
       this.pendingRequests.remove(requestId);
+      if (supersede) {
+        this.supersedingRequests.remove(message.type(), requestId);
+      }
     }
   }
 
+  /**
+   * Whether requests should {@linkplain Payloads.SupersedingRequest#supersede() supersede} earlier
+   * requests of their type.
+   *
+   * @return whether the server cancels superseded requests
+   */
+  public boolean supersedesRequests() {
+    return this.supportsCapability(ProtocolCapabilities.REQUEST_CANCEL);
+  }
+
   public String getSyntaxHighlight(final String command) throws IOException, InterruptedException {
-    final Payloads.SyntaxHighlightRequest payload = new Payloads.SyntaxHighlightRequest(command);
+    final Payloads.SyntaxHighlightRequest payload = new Payloads.SyntaxHighlightRequest(command, this.supersedesRequests());
     final Message<Payloads.SyntaxHighlightRequest> request = this.createRequest(MessageType.SYNTAX_HIGHLIGHT_REQUEST, payload);
 
     final Message<?> response = this.sendMessageAndWaitForResponse(
@@ -251,6 +284,11 @@ public final class SocketTransport {
     return this.negotiatedCapabilities.containsKey(capability);
   }
 
+  public boolean supportsCapability(final String capability, final int minVersion) {
+    final Integer version = this.negotiatedCapabilities.get(capability);
+    return version != null && version >= minVersion;
+  }
+
   private void performHandshake() throws IOException, HandshakeFatalException {
     final ClientHandshakeHandler handshake = new ClientHandshakeHandler(
       SocketProtocolConstants.CLIENT_SUPPORTED_TRANSPORT_EPOCH_RANGE,
@@ -271,6 +309,14 @@ public final class SocketTransport {
     }
 
     this.negotiatedCapabilities = handshake.handleHandshakeResponse(helloRequestId, response);
+    final FrameCompressionPolicy policy = FrameCompressionPolicy.negotiated(this.negotiatedCapabilities);
+    final ChannelFrameCodec codec = this.frameCodec;
+    if (codec != null) {
+      codec.setDictionaryId(policy.dictionaryId());
+    }
+    this.compressionPolicy = policy;
+    this.codec = MessageCodec.negotiated(this.serializer, this.negotiatedCapabilities);
+    this.numericRequestIds = this.negotiatedCapabilities.containsKey(ProtocolCapabilities.NUMERIC_REQUEST_ID);
   }
 
   private @Nullable Message<?> readMessageWithTimeout(final long timeoutMs) throws IOException {
@@ -284,18 +330,17 @@ public final class SocketTransport {
   }
 
   private @Nullable Message<?> readMessage() throws IOException {
-    final DataInputStream in = this.reader;
-    if (in == null) {
+    final ChannelFrameCodec codec = this.frameCodec;
+    if (codec == null) {
       return null;
     }
 
-    final byte[] data = FrameCodec.readFrame(in);
+    final ByteBuffer data = codec.readFrame();
     if (data == null) {
       return null;
     }
 
-    final String json = new String(data, StandardCharsets.UTF_8);
-    final Message<?> message = this.serializer.deserialize(json);
+    final Message<?> message = this.codec.deserialize(data);
     if (message == null) {
       throw new IOException("Invalid message payload");
     }
@@ -303,22 +348,25 @@ public final class SocketTransport {
   }
 
   private void writeMessageNow(final Message<?> message) throws IOException {
-    final DataOutputStream out = this.writer;
-    if (out == null) {
+    final ChannelFrameCodec codec = this.frameCodec;
+    if (codec == null) {
       return;
     }
 
-    final byte[] json = this.serializer.serialize(message).getBytes(StandardCharsets.UTF_8);
     synchronized (this.writeLock) {
-      FrameCodec.writeFrame(out, json);
+      this.codec.serialize(message, this.writeBuffer);
+      codec.writeFrame(this.writeBuffer.asByteBuffer(), this.compressionPolicy.select(this.writeBuffer.size()));
     }
   }
 
   public <T extends MessagePayload> Message<T> createRequest(final MessageType type, final T payload) {
-    return Message.<T>builder(type)
-      .requestId(UUID.randomUUID())
-      .payload(payload)
-      .build();
+    final Message.Builder<T> builder = Message.builder(type);
+    if (this.numericRequestIds) {
+      builder.requestId(this.lastRequestId.incrementAndGet());
+    } else {
+      builder.requestId(UUID.randomUUID());
+    }
+    return builder.payload(payload).build();
   }
 
   private Message<?> awaitResponse(
@@ -351,29 +399,27 @@ public final class SocketTransport {
     return new IOException("Timeout waiting for response of type '" + expectedResponseType + "' after " + timeoutMs + "ms", e);
   }
 
+  // The server drops superseded requests without answering them
+  private void failSuperseded(final String requestId) {
+    final @Nullable CompletableFuture<Message<?>> future = this.pendingRequests.remove(requestId);
+    if (future != null) {
+      future.completeExceptionally(new IOException("Superseded by a newer request"));
+    }
+  }
+
+  // Only sent on timeout; writing from an interrupted thread would close the channel
+  private void cancelRequest(final String requestId) {
+    this.sendMessage(Message.unsolicited(MessageType.CANCEL, new Payloads.Cancel(requestId)));
+  }
+
   private void failPendingRequests(final IOException error) {
-    this.pendingRequests.forEach((id, future) -> future.completeExceptionally(error));
-    this.pendingRequests.clear();
+    for (final CompletableFuture<Message<?>> future : this.pendingRequests.drain()) {
+      future.completeExceptionally(error);
+    }
   }
 
   private void closeResources() {
     this.delaySimulator.stop();
-    if (this.writer != null) {
-      try {
-        this.writer.close();
-      } catch (final IOException ignored) {
-        LOGGER.debug("Failed to close socket writer", ignored);
-      }
-      this.writer = null;
-    }
-    if (this.reader != null) {
-      try {
-        this.reader.close();
-      } catch (final IOException ignored) {
-        LOGGER.debug("Failed to close socket reader", ignored);
-      }
-      this.reader = null;
-    }
     if (this.socketChannel != null) {
       try {
         this.socketChannel.close();
@@ -382,7 +428,15 @@ public final class SocketTransport {
       }
       this.socketChannel = null;
     }
+    final ChannelFrameCodec codec = this.frameCodec;
+    if (codec != null) {
+      codec.close();
+      this.frameCodec = null;
+    }
     this.negotiatedCapabilities = Map.of();
+    this.compressionPolicy = FrameCompressionPolicy.defaults();
+    this.codec = this.serializer;
+    this.numericRequestIds = false;
     this.interactivityAvailable = false;
   }
 
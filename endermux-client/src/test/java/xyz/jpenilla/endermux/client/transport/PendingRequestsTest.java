@@ -0,0 +1,67 @@
+package xyz.jpenilla.endermux.client.transport;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.Test;
+import xyz.jpenilla.endermux.protocol.Message;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class PendingRequestsTest {
+
+  @Test
+  void numericAndStringIdsAreTrackedSeparately() {
+    final PendingRequests pending = new PendingRequests();
+    final CompletableFuture<Message<?>> numeric = new CompletableFuture<>();
+    final CompletableFuture<Message<?>> uuid = new CompletableFuture<>();
+    final String uuidId = UUID.randomUUID().toString();
+
+    pending.put("42", numeric);
+    pending.put(uuidId, uuid);
+    assertEquals(2, pending.size());
+
+    assertNull(pending.remove("042"));
+    assertSame(numeric, pending.remove("42"));
+    assertNull(pending.remove("42"));
+    assertSame(uuid, pending.remove(uuidId));
+    assertEquals(0, pending.size());
+  }
+
+  @Test
+  void collidingIdsSurviveGrowthAndRemoval() {
+    final PendingRequests pending = new PendingRequests();
+    final List<CompletableFuture<Message<?>>> futures = new ArrayList<>();
+    // Multiples of 16 share a home slot in the initial table
+    for (int i = 1; i <= 200; i++) {
+      final CompletableFuture<Message<?>> future = new CompletableFuture<>();
+      futures.add(future);
+      pending.put(Long.toString(i * 16L), future);
+    }
+    assertEquals(200, pending.size());
+
+    for (int i = 1; i <= 200; i += 2) {
+      assertSame(futures.get(i - 1), pending.remove(Long.toString(i * 16L)));
+    }
+    for (int i = 2; i <= 200; i += 2) {
+      assertSame(futures.get(i - 1), pending.remove(Long.toString(i * 16L)));
+    }
+    assertEquals(0, pending.size());
+  }
+
+  @Test
+  void drainReturnsEveryPendingFuture() {
+    final PendingRequests pending = new PendingRequests();
+    for (int i = 1; i <= 40; i++) {
+      pending.put(Integer.toString(i), new CompletableFuture<>());
+    }
+    pending.put(UUID.randomUUID().toString(), new CompletableFuture<>());
+
+    assertEquals(41, pending.drain().size());
+    assertEquals(0, pending.size());
+    assertNull(pending.remove("1"));
+  }
+}
@@ -14,9 +14,13 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Duration;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
@@ -27,6 +31,7 @@ import xyz.jpenilla.endermux.protocol.MessageSerializer;
 import xyz.jpenilla.endermux.protocol.MessageType;
 import xyz.jpenilla.endermux.protocol.Payloads;
 import xyz.jpenilla.endermux.protocol.ProtocolCapabilities;
+import xyz.jpenilla.endermux.protocol.RequestIds;
 import xyz.jpenilla.endermux.protocol.SocketProtocolConstants;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -253,6 +258,136 @@ class SocketTransportIntegrationTest {
     }
   }
 
+  @Test
+  void numericRequestIdsAreUsedWhenNegotiated() throws Exception {
+    try (ScriptedServer server = this.startServer(peer -> {
+      final Message<?> hello = peer.readMessage();
+      final String helloRequestId = assertHello(hello);
+      final Map<String, Integer> selectedCapabilities = new HashMap<>(selectedCapabilities());
+      selectedCapabilities.put(ProtocolCapabilities.NUMERIC_REQUEST_ID, ProtocolCapabilities.V1);
+      peer.write(Message.response(
+        helloRequestId,
+        MessageType.WELCOME,
+        new Payloads.Welcome(SocketProtocolConstants.TRANSPORT_EPOCH, selectedCapabilities)
+      ));
+
+      for (int i = 0; i < 2; i++) {
+        final Message<?> ping = peer.readMessage();
+        assertEquals(MessageType.PING, ping.type());
+        peer.write(Message.response(ping.requestId(), MessageType.PONG, new Payloads.Pong()));
+      }
+    })) {
+      final SocketTransport transport = new SocketTransport(server.socketPath().toString());
+      transport.connect();
+      try {
+        final Message<Payloads.Ping> first = transport.createRequest(MessageType.PING, new Payloads.Ping());
+        final Message<Payloads.Ping> second = transport.createRequest(MessageType.PING, new Payloads.Ping());
+        assertEquals(RequestIds.parse(first.requestId()) + 1, RequestIds.parse(second.requestId()));
+
+        assertEquals(first.requestId(), transport.sendMessageAndWaitForResponse(first, MessageType.PONG, 2_000L).requestId());
+        assertEquals(second.requestId(), transport.sendMessageAndWaitForResponse(second, MessageType.PONG, 2_000L).requestId());
+      } finally {
+        transport.disconnect();
+      }
+    }
+  }
+
+  @Test
+  void requestTimeoutIsSentAsDeadlineWhenNegotiated() throws Exception {
+    try (ScriptedServer server = this.startServer(peer -> {
+      final Message<?> hello = peer.readMessage();
+      final String helloRequestId = assertHello(hello);
+      final Map<String, Integer> selectedCapabilities = new HashMap<>(selectedCapabilities());
+      selectedCapabilities.put(ProtocolCapabilities.REQUEST_DEADLINE, ProtocolCapabilities.V1);
+      peer.write(Message.response(
+        helloRequestId,
+        MessageType.WELCOME,
+        new Payloads.Welcome(SocketProtocolConstants.TRANSPORT_EPOCH, selectedCapabilities)
+      ));
+
+      final Message<?> ping = peer.readMessage();
+      assertEquals(1_500L, ping.deadlineMs());
+      peer.write(Message.response(ping.requestId(), MessageType.PONG, new Payloads.Pong()));
+    })) {
+      final SocketTransport transport = new SocketTransport(server.socketPath().toString());
+      transport.connect();
+      try {
+        final Message<Payloads.Ping> request = transport.createRequest(MessageType.PING, new Payloads.Ping());
+        assertEquals(0L, request.deadlineMs());
+        assertEquals(MessageType.PONG, transport.sendMessageAndWaitForResponse(request, MessageType.PONG, 1_500L).type());
+      } finally {
+        transport.disconnect();
+      }
+    }
+  }
+
+  @Test
+  void supersededRequestsFailAndTimedOutRequestsAreCancelled() throws Exception {
+    final CountDownLatch firstReceived = new CountDownLatch(1);
+    try (ScriptedServer server = this.startServer(peer -> {
+      final Message<?> hello = peer.readMessage();
+      final String helloRequestId = assertHello(hello);
+      final Map<String, Integer> selectedCapabilities = new HashMap<>(selectedCapabilities());
+      selectedCapabilities.put(ProtocolCapabilities.REQUEST_CANCEL, ProtocolCapabilities.V1);
+      peer.write(Message.response(
+        helloRequestId,
+        MessageType.WELCOME,
+        new Payloads.Welcome(SocketProtocolConstants.TRANSPORT_EPOCH, selectedCapabilities)
+      ));
+      peer.write(Message.unsolicited(MessageType.INTERACTIVITY_STATUS, new Payloads.InteractivityStatus(true)));
+
+      // A superseded request is never answered
+      final Message<?> first = peer.readMessage();
+      assertEquals(new Payloads.SyntaxHighlightRequest("say h", true), first.payload());
+      firstReceived.countDown();
+      final Message<?> second = peer.readMessage();
+      assertEquals(new Payloads.SyntaxHighlightRequest("say hi", true), second.payload());
+      peer.write(Message.response(
+        second.requestId(),
+        MessageType.SYNTAX_HIGHLIGHT_RESPONSE,
+        new Payloads.SyntaxHighlightResponse("say hi", "say hi")
+      ));
+
+      final Message<?> timedOut = peer.readMessage();
+      final Message<?> cancel = peer.readMessage();
+      assertEquals(MessageType.CANCEL, cancel.type());
+      assertEquals(new Payloads.Cancel(timedOut.requestId()), cancel.payload());
+    })) {
+      final SocketTransport transport = new SocketTransport(server.socketPath().toString());
+      transport.connect();
+      try {
+        waitForCondition(Duration.ofSeconds(2), transport::isInteractivityAvailable);
+        assertTrue(transport.supersedesRequests());
+
+        final CompletableFuture<Exception> first = new CompletableFuture<>();
+        Thread.ofVirtual().start(() -> {
+          try {
+            transport.getSyntaxHighlight("say h");
+            first.complete(null);
+          } catch (final IOException | InterruptedException e) {
+            first.complete(e);
+          }
+        });
+        assertTrue(firstReceived.await(2, TimeUnit.SECONDS));
+        assertEquals("say hi", transport.getSyntaxHighlight("say hi"));
+        final Exception superseded = first.get(2, TimeUnit.SECONDS);
+        assertInstanceOf(IOException.class, superseded);
+        assertEquals("Superseded by a newer request", superseded.getMessage());
+
+        final Message<Payloads.CompletionRequest> request = transport.createRequest(
+          MessageType.COMPLETION_REQUEST,
+          new Payloads.CompletionRequest("help", 4)
+        );
+        assertThrows(
+          IOException.class,
+          () -> transport.sendMessageAndWaitForResponse(request, MessageType.COMPLETION_RESPONSE, 100L)
+        );
+      } finally {
+        transport.disconnect();
+      }
+    }
+  }
+
   @Test
   void errorResponseSurfacesAsIOException() throws Exception {
     try (ScriptedServer server = this.startServer(peer -> {
@@ -6,6 +6,7 @@ import net.kyori.adventure.text.serializer.ansi.ANSIComponentSerializer;
 import net.kyori.ansi.ColorLevel;
 import org.apache.logging.log4j.ThreadContext;
 import org.apache.logging.log4j.util.ReadOnlyStringMap;
+import org.apache.logging.log4j.util.StringMap;
 import org.jspecify.annotations.NullMarked;
 import org.jspecify.annotations.Nullable;
 import xyz.jpenilla.endermux.ansi.ColorLevelContext;
@@ -74,6 +75,10 @@ public final class RichLogContext {
     return contextData.getValue(keyFor(colorLevel));
   }
 
+  public static void putRenderedFor(final StringMap contextData, final ColorLevel colorLevel, final String rendered) {
+    contextData.putValue(keyFor(colorLevel), rendered);
+  }
+
   private static String keyFor(final ColorLevel colorLevel) {
     return switch (colorLevel) {
       case NONE -> KEY_NONE;
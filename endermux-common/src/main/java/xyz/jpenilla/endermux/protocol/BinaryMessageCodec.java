@@ -0,0 +1,608 @@
+package xyz.jpenilla.endermux.protocol;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import net.kyori.ansi.ColorLevel;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Compact binary message envelope, used after {@link ProtocolCapabilities#BINARY_CODEC} is negotiated.
+ *
+ * <p>Layout: the {@link #ENVELOPE_MARKER} byte, the {@link MessageType#wireId() type wire id} as a varint,
+ * the request id, then the payload record's components in declaration order. The request id is a tag byte
+ * ({@code 0} = none, {@code 1} = {@link RequestIds numeric id} as a varint, {@code 2} = string) followed by
+ * the id; with bit {@code 0x80} set on the tag, the {@link Message#deadlineMs() deadline} follows as a varint. Strings are a
+ * varint of the UTF-8 byte length plus one ({@code 0} = null) followed by the bytes, ints are zigzag varints,
+ * longs are varints, booleans are one byte, nullable ints are a presence byte followed by the value, enums are encoded by name,
+ * and collections are a varint count followed by the elements (maps alternate keys and values).</p>
+ *
+ * <p>Unlike JSON, text is carried verbatim, so each ANSI escape byte in rendered output stays one byte
+ * instead of a six-character JSON escape. Payloads that are not binary envelopes are decoded as JSON,
+ * so a peer may switch codecs at any frame boundary after the handshake.</p>
+ */
+@NullMarked
+public final class BinaryMessageCodec implements MessageCodec {
+
+  /**
+   * First payload byte of a binary envelope. A JSON envelope never starts with this byte.
+   */
+  public static final int ENVELOPE_MARKER = 0x00;
+
+  private static final int REQUEST_ID_NONE = 0;
+  private static final int REQUEST_ID_NUMERIC = 1;
+  private static final int REQUEST_ID_STRING = 2;
+  // Set on the request id tag when a deadline varint follows the id
+  private static final int DEADLINE_FLAG = 0x80;
+
+  private static final Map<Class<? extends MessagePayload>, PayloadLayout<?>> LAYOUTS = new HashMap<>();
+
+  static {
+    layout(
+      Payloads.Hello.class,
+      (out, hello) -> {
+        writeRange(out, hello.transportEpochRange());
+        writeString(out, hello.colorLevel().name());
+        writeCount(out, hello.capabilities());
+        for (final Map.Entry<String, CapabilityVersionRange> entry : hello.capabilities().entrySet()) {
+          writeString(out, entry.getKey());
+          writeRange(out, entry.getValue());
+        }
+        writeStrings(out, hello.requiredCapabilities());
+      },
+      in -> {
+        final CapabilityVersionRange transportEpochRange = readRange(in);
+        final ColorLevel colorLevel = ColorLevel.valueOf(readString(in));
+        final int capabilityCount = readCount(in);
+        final Map<String, CapabilityVersionRange> capabilities = LinkedHashMap.newLinkedHashMap(capabilityCount);
+        for (int i = 0; i < capabilityCount; i++) {
+          capabilities.put(readString(in), readRange(in));
+        }
+        return new Payloads.Hello(transportEpochRange, colorLevel, capabilities, readStringSet(in));
+      }
+    );
+    layout(
+      Payloads.CompletionRequest.class,
+      (out, request) -> {
+        writeString(out, request.command());
+        writeInt(out, request.cursor());
+        writeSupersede(out, request);
+      },
+      in -> new Payloads.CompletionRequest(readString(in), readInt(in), readSupersede(in))
+    );
+    layout(
+      Payloads.SyntaxHighlightRequest.class,
+      (out, request) -> {
+        writeString(out, request.command());
+        writeSupersede(out, request);
+      },
+      in -> new Payloads.SyntaxHighlightRequest(readString(in), readSupersede(in))
+    );
+    layout(
+      Payloads.ParseRequest.class,
+      (out, request) -> {
+        writeString(out, request.command());
+        writeInt(out, request.cursor());
+        writeSupersede(out, request);
+      },
+      in -> new Payloads.ParseRequest(readString(in), readInt(in), readSupersede(in))
+    );
+    layout(
+      Payloads.Cancel.class,
+      (out, cancel) -> writeString(out, cancel.requestId()),
+      in -> new Payloads.Cancel(readString(in))
+    );
+    layout(
+      Payloads.CommandExecute.class,
+      (out, command) -> writeString(out, command.command()),
+      in -> new Payloads.CommandExecute(readString(in))
+    );
+    layout(Payloads.Ping.class, (out, ping) -> {}, in -> new Payloads.Ping());
+    layout(
+      Payloads.LogSubscribe.class,
+      (out, subscribe) -> {
+        // Optional trailing fields, omitted while they and everything after them are defaults
+        final Payloads.LogSubscribe.Filter filter = subscribe.filter();
+        if (subscribe.replayLines() != 0 || subscribe.history() || filter != null) {
+          writeInt(out, subscribe.replayLines());
+        }
+        if (subscribe.history() || filter != null) {
+          writeBoolean(out, subscribe.history());
+        }
+        if (filter != null) {
+          final LogLevel minLevel = filter.minLevel();
+          writeString(out, minLevel == null ? null : minLevel.name());
+          writeStrings(out, filter.includeLoggers());
+          writeStrings(out, filter.excludeLoggers());
+          writeString(out, filter.contains());
+          writeString(out, filter.pattern());
+        }
+      },
+      in -> {
+        final int replayLines = in.hasRemaining() ? readInt(in) : 0;
+        final boolean history = in.hasRemaining() && readBoolean(in);
+        Payloads.LogSubscribe.Filter filter = null;
+        if (in.hasRemaining()) {
+          final String minLevel = readNullableString(in);
+          filter = new Payloads.LogSubscribe.Filter(
+            minLevel == null ? null : LogLevel.valueOf(minLevel),
+            readStringList(in),
+            readStringList(in),
+            readNullableString(in),
+            readNullableString(in)
+          );
+        }
+        return new Payloads.LogSubscribe(replayLines, history, filter);
+      }
+    );
+    layout(
+      Payloads.Welcome.class,
+      (out, welcome) -> {
+        writeInt(out, welcome.transportEpoch());
+        writeCount(out, welcome.selectedCapabilities());
+        for (final Map.Entry<String, Integer> entry : welcome.selectedCapabilities().entrySet()) {
+          writeString(out, entry.getKey());
+          writeInt(out, entry.getValue());
+        }
+      },
+      in -> {
+        final int transportEpoch = readInt(in);
+        final int count = readCount(in);
+        final Map<String, Integer> selectedCapabilities = LinkedHashMap.newLinkedHashMap(count);
+        for (int i = 0; i < count; i++) {
+          selectedCapabilities.put(readString(in), readInt(in));
+        }
+        return new Payloads.Welcome(transportEpoch, selectedCapabilities);
+      }
+    );
+    layout(
+      Payloads.Reject.class,
+      (out, reject) -> {
+        writeString(out, reject.reason());
+        writeString(out, reject.message());
+        writeNullableInt(out, reject.expectedTransportEpoch());
+        writeStrings(out, reject.missingRequiredCapabilities());
+      },
+      in -> new Payloads.Reject(readString(in), readString(in), readNullableInt(in), readStringSet(in))
+    );
+    layout(
+      Payloads.CompletionResponse.class,
+      (out, response) -> {
+        writeCount(out, response.candidates());
+        for (final Payloads.CompletionResponse.CandidateInfo candidate : response.candidates()) {
+          writeString(out, candidate.value());
+          writeString(out, candidate.display());
+          writeString(out, candidate.description());
+        }
+      },
+      in -> {
+        final int count = readCount(in);
+        final List<Payloads.CompletionResponse.CandidateInfo> candidates = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+          candidates.add(new Payloads.CompletionResponse.CandidateInfo(readString(in), readString(in), readNullableString(in)));
+        }
+        return new Payloads.CompletionResponse(candidates);
+      }
+    );
+    layout(
+      Payloads.SyntaxHighlightResponse.class,
+      (out, response) -> {
+        writeString(out, response.command());
+        writeString(out, response.highlighted());
+      },
+      in -> new Payloads.SyntaxHighlightResponse(readString(in), readString(in))
+    );
+    layout(
+      Payloads.ParseResponse.class,
+      (out, response) -> {
+        writeString(out, response.word());
+        writeInt(out, response.wordCursor());
+        writeInt(out, response.wordIndex());
+        writeStrings(out, response.words());
+        writeString(out, response.line());
+        writeInt(out, response.cursor());
+      },
+      in -> new Payloads.ParseResponse(
+        readString(in),
+        readInt(in),
+        readInt(in),
+        readStringList(in),
+        readString(in),
+        readInt(in)
+      )
+    );
+    layout(
+      Payloads.LogForward.class,
+      (out, log) -> writeString(out, log.rendered()),
+      in -> new Payloads.LogForward(readString(in))
+    );
+    layout(
+      Payloads.LogLayout.class,
+      (out, layout) -> {
+        writeString(out, layout.defaultPattern());
+        writeCount(out, layout.patternMatches());
+        for (final Payloads.LogLayout.PatternMatch match : layout.patternMatches()) {
+          writeString(out, match.key());
+          writeString(out, match.pattern());
+        }
+        writeBoolean(out, layout.alwaysWriteExceptions());
+        writeBoolean(out, layout.disableAnsi());
+        writeBoolean(out, layout.noConsoleNoAnsi());
+      },
+      in -> {
+        final String defaultPattern = readString(in);
+        final int count = readCount(in);
+        final List<Payloads.LogLayout.PatternMatch> patternMatches = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+          patternMatches.add(new Payloads.LogLayout.PatternMatch(readString(in), readString(in)));
+        }
+        return new Payloads.LogLayout(defaultPattern, patternMatches, readBoolean(in), readBoolean(in), readBoolean(in));
+      }
+    );
+    layout(
+      Payloads.LogEvent.class,
+      (out, event) -> {
+        writeVarLong(out, event.timestamp());
+        writeString(out, event.level().name());
+        writeString(out, event.logger());
+        writeString(out, event.thread());
+        writeString(out, event.message());
+        writeString(out, event.richMessage());
+      },
+      in -> new Payloads.LogEvent(
+        readVarLong(in),
+        LogLevel.valueOf(readString(in)),
+        readString(in),
+        readString(in),
+        readString(in),
+        readNullableString(in)
+      )
+    );
+    layout(
+      Payloads.LogTrace.class,
+      (out, log) -> {
+        writeString(out, log.rendered());
+        writeInt(out, log.traceOffset());
+        writeString(out, log.traceId());
+        writeString(out, log.trace());
+      },
+      in -> new Payloads.LogTrace(readString(in), readInt(in), readString(in), readNullableString(in))
+    );
+    layout(Payloads.Pong.class, (out, pong) -> {}, in -> new Payloads.Pong());
+    layout(
+      Payloads.Error.class,
+      (out, error) -> {
+        writeString(out, error.message());
+        writeString(out, error.details());
+      },
+      in -> new Payloads.Error(readString(in), readNullableString(in))
+    );
+    layout(
+      Payloads.InteractivityStatus.class,
+      (out, status) -> writeBoolean(out, status.available()),
+      in -> new Payloads.InteractivityStatus(readBoolean(in))
+    );
+
+    for (final MessageType type : MessageType.allTypes()) {
+      if (!LAYOUTS.containsKey(type.payloadType())) {
+        throw new IllegalStateException("Missing binary layout for " + type.payloadType().getName());
+      }
+    }
+  }
+
+  private final MessageSerializer json;
+
+  public BinaryMessageCodec(final MessageSerializer json) {
+    this.json = json;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public void serialize(final Message<?> message, final MessageBuffer buffer) {
+    final PayloadLayout<MessagePayload> layout = (PayloadLayout<MessagePayload>) LAYOUTS.get(message.type().payloadType());
+    buffer.reset();
+    buffer.writeByte(ENVELOPE_MARKER);
+    writeVarInt(buffer, message.type().wireId());
+    writeRequestId(buffer, message.requestId(), message.deadlineMs());
+    layout.writer().write(buffer, message.payload());
+  }
+
+  @Override
+  public @Nullable Message<?> deserialize(final ByteBuffer payload) {
+    if (!payload.hasRemaining() || payload.get(payload.position()) != ENVELOPE_MARKER) {
+      return this.json.deserialize(payload);
+    }
+
+    final ByteBuffer in = payload.duplicate();
+    in.get();
+    try {
+      final @Nullable MessageType type = MessageType.findByWireId(readVarInt(in));
+      if (type == null) {
+        return null;
+      }
+      final int tag = in.get() & 0xFF;
+      final @Nullable String requestId = readRequestId(in, tag & ~DEADLINE_FLAG);
+      final long deadlineMs = (tag & DEADLINE_FLAG) != 0 ? readVarLong(in) : 0L;
+      final MessagePayload data = LAYOUTS.get(type.payloadType()).reader().read(in);
+      if (in.hasRemaining()) {
+        return null;
+      }
+      return new Message<>(type, requestId, data, deadlineMs);
+    } catch (final BufferUnderflowException | IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  private static <T extends MessagePayload> void layout(
+    final Class<T> type,
+    final PayloadWriter<T> writer,
+    final PayloadReader<T> reader
+  ) {
+    LAYOUTS.put(type, new PayloadLayout<>(writer, reader));
+  }
+
+  private static void writeVarInt(final MessageBuffer out, final int value) {
+    int remaining = value;
+    while ((remaining & ~0x7F) != 0) {
+      out.writeByte((remaining & 0x7F) | 0x80);
+      remaining >>>= 7;
+    }
+    out.writeByte(remaining);
+  }
+
+  private static int readVarInt(final ByteBuffer in) {
+    int value = 0;
+    for (int shift = 0; shift < Integer.SIZE; shift += 7) {
+      final byte b = in.get();
+      value |= (b & 0x7F) << shift;
+      if (b >= 0) {
+        return value;
+      }
+    }
+    throw new IllegalArgumentException("Varint too long");
+  }
+
+  private static void writeVarLong(final MessageBuffer out, final long value) {
+    long remaining = value;
+    while ((remaining & ~0x7FL) != 0) {
+      out.writeByte((int) (remaining & 0x7F) | 0x80);
+      remaining >>>= 7;
+    }
+    out.writeByte((int) remaining);
+  }
+
+  private static long readVarLong(final ByteBuffer in) {
+    long value = 0;
+    for (int shift = 0; shift < Long.SIZE; shift += 7) {
+      final byte b = in.get();
+      value |= (long) (b & 0x7F) << shift;
+      if (b >= 0) {
+        return value;
+      }
+    }
+    throw new IllegalArgumentException("Varlong too long");
+  }
+
+  private static void writeRequestId(final MessageBuffer out, final @Nullable String requestId, final long deadlineMs) {
+    final int deadline = deadlineMs > 0 ? DEADLINE_FLAG : 0;
+    if (requestId == null) {
+      out.writeByte(REQUEST_ID_NONE | deadline);
+    } else {
+      final long numeric = RequestIds.parse(requestId);
+      if (numeric != RequestIds.NOT_NUMERIC) {
+        out.writeByte(REQUEST_ID_NUMERIC | deadline);
+        writeVarLong(out, numeric);
+      } else {
+        out.writeByte(REQUEST_ID_STRING | deadline);
+        writeString(out, requestId);
+      }
+    }
+    if (deadlineMs > 0) {
+      writeVarLong(out, deadlineMs);
+    }
+  }
+
+  private static @Nullable String readRequestId(final ByteBuffer in, final int tag) {
+    return switch (tag) {
+      case REQUEST_ID_NONE -> null;
+      case REQUEST_ID_NUMERIC -> RequestIds.toString(readVarLong(in));
+      case REQUEST_ID_STRING -> readString(in);
+      default -> throw new IllegalArgumentException("Invalid request id tag");
+    };
+  }
+
+  private static void writeInt(final MessageBuffer out, final int value) {
+    writeVarInt(out, (value << 1) ^ (value >> 31));
+  }
+
+  private static int readInt(final ByteBuffer in) {
+    final int zigzag = readVarInt(in);
+    return (zigzag >>> 1) ^ -(zigzag & 1);
+  }
+
+  private static void writeNullableInt(final MessageBuffer out, final @Nullable Integer value) {
+    if (value == null) {
+      out.writeByte(0);
+    } else {
+      out.writeByte(1);
+      writeInt(out, value);
+    }
+  }
+
+  private static @Nullable Integer readNullableInt(final ByteBuffer in) {
+    return readBoolean(in) ? readInt(in) : null;
+  }
+
+  private static void writeBoolean(final MessageBuffer out, final boolean value) {
+    out.writeByte(value ? 1 : 0);
+  }
+
+  private static boolean readBoolean(final ByteBuffer in) {
+    return switch (in.get()) {
+      case 0 -> false;
+      case 1 -> true;
+      default -> throw new IllegalArgumentException("Invalid boolean");
+    };
+  }
+
+  // Optional trailing flag, omitted unless set so peers without request_cancel never see it
+  private static void writeSupersede(final MessageBuffer out, final Payloads.SupersedingRequest request) {
+    if (request.supersede()) {
+      writeBoolean(out, true);
+    }
+  }
+
+  private static boolean readSupersede(final ByteBuffer in) {
+    return in.hasRemaining() && readBoolean(in);
+  }
+
+  private static void writeString(final MessageBuffer out, final @Nullable String value) {
+    if (value == null) {
+      out.writeByte(0);
+      return;
+    }
+    writeVarInt(out, utf8Length(value) + 1);
+    out.writeUtf8(value);
+  }
+
+  private static @Nullable String readNullableString(final ByteBuffer in) {
+    final int lengthPlusOne = readVarInt(in);
+    if (lengthPlusOne == 0) {
+      return null;
+    }
+    final int length = lengthPlusOne - 1;
+    if (length < 0 || length > in.remaining()) {
+      throw new IllegalArgumentException("Invalid string length: " + length);
+    }
+    if (length == 0) {
+      return "";
+    }
+    final String value;
+    if (in.hasArray()) {
+      value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+      in.position(in.position() + length);
+    } else {
+      final byte[] bytes = new byte[length];
+      in.get(bytes);
+      value = new String(bytes, StandardCharsets.UTF_8);
+    }
+    return value;
+  }
+
+  private static String readString(final ByteBuffer in) {
+    final @Nullable String value = readNullableString(in);
+    if (value == null) {
+      throw new IllegalArgumentException("Unexpected null string");
+    }
+    return value;
+  }
+
+  // Must agree with MessageBuffer's encoder, which replaces unpaired surrogates with a single '?'
+  private static int utf8Length(final String value) {
+    final int chars = value.length();
+    int length = 0;
+    for (int i = 0; i < chars; i++) {
+      final char c = value.charAt(i);
+      if (c < 0x80) {
+        length++;
+      } else if (c < 0x800) {
+        length += 2;
+      } else if (Character.isHighSurrogate(c) && i + 1 < chars && Character.isLowSurrogate(value.charAt(i + 1))) {
+        length += 4;
+        i++;
+      } else if (Character.isSurrogate(c)) {
+        length++;
+      } else {
+        length += 3;
+      }
+    }
+    return length;
+  }
+
+  // A null collection is written as empty, where JSON would have written null
+  private static void writeCount(final MessageBuffer out, final @Nullable Collection<?> collection) {
+    writeVarInt(out, collection == null ? 0 : collection.size());
+  }
+
+  private static void writeCount(final MessageBuffer out, final @Nullable Map<?, ?> map) {
+    writeVarInt(out, map == null ? 0 : map.size());
+  }
+
+  // Every element takes at least one byte, which bounds allocations by the frame size
+  private static int readCount(final ByteBuffer in) {
+    final int count = readVarInt(in);
+    if (count < 0 || count > in.remaining()) {
+      throw new IllegalArgumentException("Invalid element count: " + count);
+    }
+    return count;
+  }
+
+  private static void writeStrings(final MessageBuffer out, final @Nullable Collection<String> values) {
+    writeCount(out, values);
+    if (values != null) {
+      for (final String value : values) {
+        writeString(out, value);
+      }
+    }
+  }
+
+  private static List<String> readStringList(final ByteBuffer in) {
+    final int count = readCount(in);
+    final List<String> values = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      values.add(readString(in));
+    }
+    return values;
+  }
+
+  private static Set<String> readStringSet(final ByteBuffer in) {
+    final int count = readCount(in);
+    final Set<String> values = LinkedHashSet.newLinkedHashSet(count);
+    for (int i = 0; i < count; i++) {
+      values.add(readString(in));
+    }
+    return values;
+  }
+
+  private static void writeRange(final MessageBuffer out, final CapabilityVersionRange range) {
+    writeInt(out, range.min());
+    writeInt(out, range.max());
+    writeCount(out, range.exclude());
+    for (final Integer version : range.exclude()) {
+      writeInt(out, version);
+    }
+  }
+
+  private static CapabilityVersionRange readRange(final ByteBuffer in) {
+    final int min = readInt(in);
+    final int max = readInt(in);
+    final int count = readCount(in);
+    final Set<Integer> exclude = LinkedHashSet.newLinkedHashSet(count);
+    for (int i = 0; i < count; i++) {
+      exclude.add(readInt(in));
+    }
+    return new CapabilityVersionRange(min, max, exclude);
+  }
+
+  @FunctionalInterface
+  private interface PayloadWriter<T extends MessagePayload> {
+    void write(MessageBuffer out, T payload);
+  }
+
+  @FunctionalInterface
+  private interface PayloadReader<T extends MessagePayload> {
+    T read(ByteBuffer in);
+  }
+
+  private record PayloadLayout<T extends MessagePayload>(PayloadWriter<T> writer, PayloadReader<T> reader) {
+  }
+}
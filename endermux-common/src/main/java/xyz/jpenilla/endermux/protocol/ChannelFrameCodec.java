@@ -0,0 +1,698 @@
+package xyz.jpenilla.endermux.protocol;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Channel-native counterpart to {@link FrameCodec}.
+ *
+ * <p>Frames are read straight into pooled buffers and written as a single gathering write of
+ * header and payload, or accumulated with {@link #bufferFrame} and written together by {@link #flush()}.
+ * Frames that many connections send alike can be encoded once with {@link #encodeFrame} and
+ * buffered on each connection with {@link #bufferEncodedFrame}.
+ * Compression state is reused across frames. Reads and writes may happen
+ * concurrently, but each direction must only be driven by one thread at a time.</p>
+ *
+ * <p>{@link FrameCompressionType#DEFLATE_STREAM} frames share one deflate stream per direction
+ * for the lifetime of the codec, so they must be read in the order they were written.</p>
+ */
+@NullMarked
+public final class ChannelFrameCodec implements AutoCloseable {
+  private static final int LENGTH_BYTES = Integer.BYTES;
+  private static final int HEADER_BYTES = LENGTH_BYTES + 1;
+  private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+  private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+  private static final int GZIP_TRAILER_BYTES = 8;
+  private static final int GZIP_FLAG_HCRC = 2;
+  private static final int GZIP_FLAG_EXTRA = 4;
+  private static final int GZIP_FLAG_NAME = 8;
+  private static final int GZIP_FLAG_COMMENT = 16;
+
+  // Trailing empty stored block emitted by every SYNC_FLUSH; omitted on the wire
+  private static final byte[] DEFLATE_SYNC_TAIL = {0, 0, (byte) 0xff, (byte) 0xff};
+
+  private final ReadableByteChannel in;
+  private final GatheringByteChannel out;
+  private final FrameBufferPool pool;
+
+  // Read side, owned by the reading thread
+  private final Object readLock = new Object();
+  private final CRC32 readCrc = new CRC32();
+  private ByteBuffer inbound;
+  private @Nullable ByteBuffer decoded;
+  private @Nullable Inflater gzipInflater;
+  private @Nullable Inflater streamInflater;
+  private @Nullable Inflater dictionaryInflater;
+
+  // Write side, owned by the writing thread
+  private final Object writeLock = new Object();
+  private final CRC32 writeCrc = new CRC32();
+  private final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+  private final ByteBuffer[] writeVector = new ByteBuffer[2];
+  private @Nullable ByteBuffer encoded;
+  private @Nullable ByteBuffer batch;
+  private @Nullable Deflater gzipDeflater;
+  private @Nullable Deflater streamDeflater;
+  private @Nullable Deflater dictionaryDeflater;
+  private volatile int dictionaryId = CompressionDictionary.LATEST;
+
+  private volatile boolean closed;
+
+  public ChannelFrameCodec(final SocketChannel channel, final FrameBufferPool pool) {
+    this(channel, channel, pool);
+  }
+
+  public ChannelFrameCodec(
+    final ReadableByteChannel in,
+    final GatheringByteChannel out,
+    final FrameBufferPool pool
+  ) {
+    this.in = Objects.requireNonNull(in, "in");
+    this.out = Objects.requireNonNull(out, "out");
+    this.pool = Objects.requireNonNull(pool, "pool");
+    this.inbound = pool.acquire(FrameBufferPool.DEFAULT_BUFFER_CAPACITY).flip();
+  }
+
+  /**
+   * Reads the next frame.
+   *
+   * <p>The returned buffer is only valid until the next call to this method.</p>
+   *
+   * @return decompressed frame payload, or {@code null} if the channel reached end-of-stream
+   * @throws IOException if the frame is invalid or the channel fails
+   */
+  public @Nullable ByteBuffer readFrame() throws IOException {
+    this.shrinkReadBuffers();
+    if (!this.fill(LENGTH_BYTES)) {
+      return null;
+    }
+
+    final int length = this.inbound.getInt(this.inbound.position());
+    if (length <= 0 || length > SocketProtocolConstants.MAX_COMPRESSED_PAYLOAD_SIZE_BYTES + 1) {
+      throw new ProtocolException("Invalid frame size: " + length);
+    }
+    if (!this.fill(LENGTH_BYTES + length)) {
+      throw new EOFException("Connection closed mid-frame");
+    }
+
+    this.inbound.position(this.inbound.position() + LENGTH_BYTES);
+    final FrameCompressionType compression = FrameCompressionType.fromWireValue(Byte.toUnsignedInt(this.inbound.get()));
+    final ByteBuffer payload = this.inbound.slice(this.inbound.position(), length - 1);
+    this.inbound.position(this.inbound.position() + length - 1);
+
+    return switch (compression) {
+      case NONE -> validateUncompressedPayloadSize(payload);
+      case GZIP -> this.gunzip(payload);
+      case DEFLATE_STREAM -> this.inflateStream(payload);
+      case DEFLATE_DICTIONARY -> this.inflateWithDictionary(payload);
+    };
+  }
+
+  /**
+   * Writes a frame, consuming the remaining bytes of {@code data}. Frames buffered by
+   * {@link #bufferFrame} are written first.
+   *
+   * @param data uncompressed payload
+   * @param compression compression to apply
+   * @throws IOException if the payload is too large or the channel fails
+   */
+  public void writeFrame(final ByteBuffer data, final FrameCompressionType compression) throws IOException {
+    if (this.bufferedBytes() > 0) {
+      this.bufferFrame(data, compression);
+      this.flush();
+      return;
+    }
+    final ByteBuffer payload = this.encode(data, compression);
+
+    this.header.clear();
+    this.header.putInt(payload.remaining() + 1).put((byte) compression.wireValue()).flip();
+    this.writeVector[0] = this.header;
+    this.writeVector[1] = payload;
+    try {
+      while (payload.hasRemaining() || this.header.hasRemaining()) {
+        this.out.write(this.writeVector);
+      }
+    } finally {
+      this.writeVector[1] = EMPTY;
+      this.shrinkWriteBuffers();
+    }
+  }
+
+  /**
+   * Encodes a frame into the pending batch without writing it, consuming the remaining
+   * bytes of {@code data}. The batch is written by {@link #flush()}.
+   *
+   * @param data uncompressed payload
+   * @param compression compression to apply
+   * @throws IOException if the payload is too large or the codec is closed
+   */
+  public void bufferFrame(final ByteBuffer data, final FrameCompressionType compression) throws IOException {
+    synchronized (this.writeLock) {
+      final ByteBuffer payload = this.encode(data, compression);
+      this.batchBuffer(HEADER_BYTES + payload.remaining())
+        .putInt(payload.remaining() + 1)
+        .put((byte) compression.wireValue())
+        .put(payload);
+      this.shrinkWriteBuffers();
+    }
+  }
+
+  /**
+   * Encodes a complete frame, header included, into a new buffer that is independent of this
+   * codec. Only stateless compression can be used, since the frame may be sent on other connections.
+   *
+   * @param data uncompressed payload, not consumed
+   * @param compression compression to apply
+   * @return encoded frame
+   * @throws IOException if the payload is too large or the codec is closed
+   */
+  public ByteBuffer encodeFrame(final ByteBuffer data, final FrameCompressionType compression) throws IOException {
+    if (compression.stateful()) {
+      throw new IllegalArgumentException("Stateful compression cannot be encoded ahead of time: " + compression);
+    }
+    final ByteBuffer payload = this.encode(data.duplicate(), compression);
+    final ByteBuffer frame = ByteBuffer.allocate(HEADER_BYTES + payload.remaining())
+      .putInt(payload.remaining() + 1)
+      .put((byte) compression.wireValue())
+      .put(payload)
+      .flip();
+    this.shrinkWriteBuffers();
+    return frame;
+  }
+
+  /**
+   * Adds a frame from {@link #encodeFrame} to the pending batch, without consuming it.
+   *
+   * @param frame encoded frame
+   */
+  public void bufferEncodedFrame(final ByteBuffer frame) {
+    synchronized (this.writeLock) {
+      this.batchBuffer(frame.remaining()).put(frame.duplicate());
+    }
+  }
+
+  // Guarded by writeLock
+  private ByteBuffer batchBuffer(final int frameBytes) {
+    ByteBuffer batch = this.batch;
+    if (batch == null) {
+      batch = this.pool.acquire(Math.max(frameBytes, FrameBufferPool.DEFAULT_BUFFER_CAPACITY));
+    } else if (batch.remaining() < frameBytes) {
+      final ByteBuffer larger = this.pool.acquire(Math.max(batch.position() + frameBytes, batch.capacity() * 2));
+      larger.put(batch.flip());
+      this.pool.release(batch);
+      batch = larger;
+    }
+    this.batch = batch;
+    return batch;
+  }
+
+  /**
+   * Bytes buffered by {@link #bufferFrame} and not yet flushed.
+   *
+   * @return buffered bytes
+   */
+  public int bufferedBytes() {
+    synchronized (this.writeLock) {
+      final ByteBuffer batch = this.batch;
+      return batch == null ? 0 : batch.position();
+    }
+  }
+
+  /**
+   * Writes all buffered frames.
+   *
+   * @throws IOException if the channel fails
+   */
+  public void flush() throws IOException {
+    synchronized (this.writeLock) {
+      final ByteBuffer batch = this.batch;
+      if (batch == null || batch.position() == 0) {
+        return;
+      }
+      batch.flip();
+      try {
+        while (batch.hasRemaining()) {
+          this.out.write(batch);
+        }
+      } finally {
+        if (batch.capacity() > FrameBufferPool.MAX_POOLED_CAPACITY) {
+          this.batch = null;
+          this.pool.release(batch);
+        } else {
+          batch.clear();
+        }
+      }
+    }
+  }
+
+  private ByteBuffer encode(final ByteBuffer data, final FrameCompressionType compression) throws IOException {
+    Objects.requireNonNull(compression, "compression");
+    if (data.remaining() > SocketProtocolConstants.MAX_UNCOMPRESSED_PAYLOAD_SIZE_BYTES) {
+      throw new ProtocolException("Uncompressed payload too large: " + data.remaining());
+    }
+
+    final ByteBuffer payload = switch (compression) {
+      case NONE -> data;
+      case GZIP -> this.gzip(data);
+      case DEFLATE_STREAM -> this.deflateStream(data);
+      case DEFLATE_DICTIONARY -> this.deflateWithDictionary(data);
+    };
+
+    if (payload.remaining() > SocketProtocolConstants.MAX_COMPRESSED_PAYLOAD_SIZE_BYTES) {
+      throw new ProtocolException("Compressed payload too large: " + payload.remaining());
+    }
+    return payload;
+  }
+
+  public void writeFrame(final byte[] data, final FrameCompressionType compression) throws IOException {
+    this.writeFrame(ByteBuffer.wrap(data), compression);
+  }
+
+  /**
+   * Sets the preset dictionary used for outbound {@link FrameCompressionType#DEFLATE_DICTIONARY}
+   * frames. Inbound frames name their own dictionary.
+   *
+   * @param dictionaryId dictionary id, see {@link CompressionDictionary}
+   */
+  public void setDictionaryId(final int dictionaryId) {
+    if (CompressionDictionary.lookup(dictionaryId) == null) {
+      throw new IllegalArgumentException("Unknown compression dictionary: " + dictionaryId);
+    }
+    this.dictionaryId = dictionaryId;
+  }
+
+  /**
+   * Decodes the remaining bytes of a frame payload as UTF-8.
+   *
+   * @param payload frame payload
+   * @return decoded string
+   */
+  public static String decodeUtf8(final ByteBuffer payload) {
+    if (payload.hasArray()) {
+      return new String(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining(), StandardCharsets.UTF_8);
+    }
+    return StandardCharsets.UTF_8.decode(payload).toString();
+  }
+
+  @Override
+  public void close() {
+    this.closed = true;
+    synchronized (this.readLock) {
+      if (this.gzipInflater != null) {
+        this.gzipInflater.end();
+        this.gzipInflater = null;
+      }
+      if (this.streamInflater != null) {
+        this.streamInflater.end();
+        this.streamInflater = null;
+      }
+      if (this.dictionaryInflater != null) {
+        this.dictionaryInflater.end();
+        this.dictionaryInflater = null;
+      }
+    }
+    synchronized (this.writeLock) {
+      if (this.gzipDeflater != null) {
+        this.gzipDeflater.end();
+        this.gzipDeflater = null;
+      }
+      if (this.streamDeflater != null) {
+        this.streamDeflater.end();
+        this.streamDeflater = null;
+      }
+      if (this.dictionaryDeflater != null) {
+        this.dictionaryDeflater.end();
+        this.dictionaryDeflater = null;
+      }
+      final ByteBuffer batch = this.batch;
+      if (batch != null) {
+        this.batch = null;
+        this.pool.release(batch);
+      }
+    }
+  }
+
+  private boolean fill(final int required) throws IOException {
+    if (this.inbound.remaining() >= required) {
+      return true;
+    }
+    if (this.inbound.capacity() < required) {
+      final ByteBuffer larger = this.pool.acquire(required);
+      larger.put(this.inbound).flip();
+      this.pool.release(this.inbound);
+      this.inbound = larger;
+    }
+
+    this.inbound.compact();
+    try {
+      while (this.inbound.position() < required) {
+        if (this.in.read(this.inbound) == -1) {
+          return false;
+        }
+      }
+    } finally {
+      this.inbound.flip();
+    }
+    return true;
+  }
+
+  private void shrinkReadBuffers() {
+    if (this.inbound.capacity() > FrameBufferPool.DEFAULT_BUFFER_CAPACITY
+      && this.inbound.remaining() <= FrameBufferPool.DEFAULT_BUFFER_CAPACITY) {
+      final ByteBuffer smaller = this.pool.acquire(FrameBufferPool.DEFAULT_BUFFER_CAPACITY);
+      smaller.put(this.inbound).flip();
+      this.pool.release(this.inbound);
+      this.inbound = smaller;
+    }
+    final ByteBuffer decodedBuffer = this.decoded;
+    if (decodedBuffer != null && decodedBuffer.capacity() > FrameBufferPool.MAX_POOLED_CAPACITY) {
+      this.decoded = null;
+    }
+  }
+
+  private void shrinkWriteBuffers() {
+    final ByteBuffer encodedBuffer = this.encoded;
+    if (encodedBuffer != null && encodedBuffer.capacity() > FrameBufferPool.MAX_POOLED_CAPACITY) {
+      this.encoded = null;
+    }
+  }
+
+  private ByteBuffer gunzip(final ByteBuffer compressed) throws IOException {
+    skipGzipHeader(compressed);
+    if (compressed.remaining() < GZIP_TRAILER_BYTES) {
+      throw new ProtocolException("Truncated gzip frame");
+    }
+    final int trailerStart = compressed.limit() - GZIP_TRAILER_BYTES;
+    final int expectedCrc = Integer.reverseBytes(compressed.getInt(trailerStart));
+    final int expectedSize = Integer.reverseBytes(compressed.getInt(trailerStart + Integer.BYTES));
+    compressed.limit(trailerStart);
+
+    synchronized (this.readLock) {
+      final ByteBuffer output = this.inflate(this.gzipInflater(), compressed, null);
+      this.readCrc.reset();
+      this.readCrc.update(output.duplicate());
+      if ((int) this.readCrc.getValue() != expectedCrc || output.remaining() != expectedSize) {
+        throw new ProtocolException("Corrupt gzip frame");
+      }
+      return output;
+    }
+  }
+
+  private ByteBuffer inflate(
+    final Inflater inflater,
+    final ByteBuffer input,
+    final byte @Nullable [] dictionary
+  ) throws IOException {
+    inflater.reset();
+    if (dictionary != null) {
+      inflater.setDictionary(dictionary);
+    }
+    inflater.setInput(input);
+    ByteBuffer output = this.decodeBuffer(input.remaining() * 4);
+    try {
+      while (!inflater.finished()) {
+        if (!output.hasRemaining()) {
+          output = this.growDecodeBuffer(output);
+        }
+        if (inflater.inflate(output) == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          throw new ProtocolException("Truncated compressed frame");
+        }
+      }
+    } catch (final DataFormatException e) {
+      throw new ProtocolException("Corrupt compressed frame", e);
+    }
+    return output.flip();
+  }
+
+  private ByteBuffer gzip(final ByteBuffer data) throws IOException {
+    synchronized (this.writeLock) {
+      this.writeCrc.reset();
+      this.writeCrc.update(data.duplicate());
+      final int size = data.remaining();
+
+      final Deflater deflater = this.gzipDeflater();
+      deflater.reset();
+      deflater.setInput(data);
+      deflater.finish();
+
+      ByteBuffer output = this.encodeBuffer(size / 2 + GZIP_HEADER.length + GZIP_TRAILER_BYTES);
+      output.put(GZIP_HEADER);
+      output = this.deflateFully(deflater, output);
+      if (output.remaining() < GZIP_TRAILER_BYTES) {
+        output = this.growEncodeBuffer(output);
+      }
+      output.putInt(Integer.reverseBytes((int) this.writeCrc.getValue()));
+      output.putInt(Integer.reverseBytes(size));
+      return output.flip();
+    }
+  }
+
+  private ByteBuffer deflateFully(final Deflater deflater, ByteBuffer output) {
+    while (!deflater.finished()) {
+      if (!output.hasRemaining()) {
+        output = this.growEncodeBuffer(output);
+      }
+      deflater.deflate(output);
+    }
+    return output;
+  }
+
+  private ByteBuffer inflateWithDictionary(final ByteBuffer compressed) throws IOException {
+    if (!compressed.hasRemaining()) {
+      throw new ProtocolException("Truncated compressed frame");
+    }
+    final byte[] dictionary = CompressionDictionary.require(Byte.toUnsignedInt(compressed.get()));
+    synchronized (this.readLock) {
+      return this.inflate(this.dictionaryInflater(), compressed, dictionary);
+    }
+  }
+
+  private ByteBuffer deflateWithDictionary(final ByteBuffer data) throws IOException {
+    synchronized (this.writeLock) {
+      final int id = this.dictionaryId;
+      final Deflater deflater = this.dictionaryDeflater();
+      deflater.reset();
+      deflater.setDictionary(CompressionDictionary.require(id));
+      deflater.setInput(data);
+      deflater.finish();
+
+      final ByteBuffer output = this.encodeBuffer(data.remaining() / 2 + 1);
+      output.put((byte) id);
+      return this.deflateFully(deflater, output).flip();
+    }
+  }
+
+  private ByteBuffer inflateStream(final ByteBuffer compressed) throws IOException {
+    synchronized (this.readLock) {
+      final Inflater inflater = this.streamInflater();
+      ByteBuffer output = this.decodeBuffer(compressed.remaining() * 4);
+      try {
+        output = this.inflateAvailable(inflater, compressed, output);
+        output = this.inflateAvailable(inflater, ByteBuffer.wrap(DEFLATE_SYNC_TAIL), output);
+      } catch (final DataFormatException e) {
+        throw new ProtocolException("Corrupt compressed frame", e);
+      }
+      if (inflater.finished() || inflater.needsDictionary()) {
+        throw new ProtocolException("Unexpected end of compression stream");
+      }
+      return output.flip();
+    }
+  }
+
+  private ByteBuffer inflateAvailable(
+    final Inflater inflater,
+    final ByteBuffer input,
+    ByteBuffer output
+  ) throws DataFormatException, ProtocolException {
+    inflater.setInput(input);
+    while (true) {
+      if (!output.hasRemaining()) {
+        output = this.growDecodeBuffer(output);
+      }
+      inflater.inflate(output);
+      // Spare output space means the inflater consumed everything it was given
+      if (output.hasRemaining() || inflater.finished() || inflater.needsDictionary()) {
+        return output;
+      }
+    }
+  }
+
+  private ByteBuffer deflateStream(final ByteBuffer data) throws IOException {
+    synchronized (this.writeLock) {
+      final Deflater deflater = this.streamDeflater();
+      deflater.setInput(data);
+      ByteBuffer output = this.encodeBuffer(data.remaining() / 2 + DEFLATE_SYNC_TAIL.length);
+      while (true) {
+        deflater.deflate(output, Deflater.SYNC_FLUSH);
+        if (output.hasRemaining()) {
+          break;
+        }
+        output = this.growEncodeBuffer(output);
+      }
+      output.flip();
+      final int tailStart = output.limit() - DEFLATE_SYNC_TAIL.length;
+      if (tailStart < 0 || output.slice(tailStart, DEFLATE_SYNC_TAIL.length).compareTo(ByteBuffer.wrap(DEFLATE_SYNC_TAIL)) != 0) {
+        throw new IllegalStateException("Deflater did not end frame with a sync flush marker");
+      }
+      return output.limit(tailStart);
+    }
+  }
+
+  private Inflater streamInflater() throws ClosedChannelException {
+    this.ensureOpen();
+    Inflater inflater = this.streamInflater;
+    if (inflater == null) {
+      inflater = new Inflater(true);
+      this.streamInflater = inflater;
+    }
+    return inflater;
+  }
+
+  private Deflater streamDeflater() throws ClosedChannelException {
+    this.ensureOpen();
+    Deflater deflater = this.streamDeflater;
+    if (deflater == null) {
+      deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+      this.streamDeflater = deflater;
+    }
+    return deflater;
+  }
+
+  private Inflater dictionaryInflater() throws ClosedChannelException {
+    this.ensureOpen();
+    Inflater inflater = this.dictionaryInflater;
+    if (inflater == null) {
+      inflater = new Inflater(true);
+      this.dictionaryInflater = inflater;
+    }
+    return inflater;
+  }
+
+  private Deflater dictionaryDeflater() throws ClosedChannelException {
+    this.ensureOpen();
+    Deflater deflater = this.dictionaryDeflater;
+    if (deflater == null) {
+      deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+      this.dictionaryDeflater = deflater;
+    }
+    return deflater;
+  }
+
+  private Inflater gzipInflater() throws ClosedChannelException {
+    this.ensureOpen();
+    Inflater inflater = this.gzipInflater;
+    if (inflater == null) {
+      inflater = new Inflater(true);
+      this.gzipInflater = inflater;
+    }
+    return inflater;
+  }
+
+  private Deflater gzipDeflater() throws ClosedChannelException {
+    this.ensureOpen();
+    Deflater deflater = this.gzipDeflater;
+    if (deflater == null) {
+      deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+      this.gzipDeflater = deflater;
+    }
+    return deflater;
+  }
+
+  private void ensureOpen() throws ClosedChannelException {
+    if (this.closed) {
+      throw new ClosedChannelException();
+    }
+  }
+
+  private ByteBuffer decodeBuffer(final int sizeHint) {
+    final ByteBuffer existing = this.decoded;
+    if (existing != null) {
+      return existing.clear();
+    }
+    final ByteBuffer buffer = this.pool.acquire(Math.min(sizeHint, SocketProtocolConstants.MAX_UNCOMPRESSED_PAYLOAD_SIZE_BYTES));
+    this.decoded = buffer;
+    return buffer;
+  }
+
+  private ByteBuffer growDecodeBuffer(final ByteBuffer current) throws ProtocolException {
+    if (current.capacity() >= SocketProtocolConstants.MAX_UNCOMPRESSED_PAYLOAD_SIZE_BYTES) {
+      throw new ProtocolException("Decompressed frame too large: more than " + SocketProtocolConstants.MAX_UNCOMPRESSED_PAYLOAD_SIZE_BYTES);
+    }
+    final ByteBuffer larger = this.pool.acquire(Math.min(current.capacity() * 2, SocketProtocolConstants.MAX_UNCOMPRESSED_PAYLOAD_SIZE_BYTES));
+    larger.put(current.flip());
+    this.pool.release(current);
+    this.decoded = larger;
+    return larger;
+  }
+
+  private ByteBuffer encodeBuffer(final int sizeHint) {
+    final ByteBuffer existing = this.encoded;
+    if (existing != null) {
+      return existing.clear();
+    }
+    final ByteBuffer buffer = this.pool.acquire(sizeHint);
+    this.encoded = buffer;
+    return buffer;
+  }
+
+  private ByteBuffer growEncodeBuffer(final ByteBuffer current) {
+    final ByteBuffer larger = this.pool.acquire(current.capacity() * 2);
+    larger.put(current.flip());
+    this.pool.release(current);
+    this.encoded = larger;
+    return larger;
+  }
+
+  private static void skipGzipHeader(final ByteBuffer compressed) throws ProtocolException {
+    if (compressed.remaining() < GZIP_HEADER.length
+      || compressed.get() != GZIP_HEADER[0]
+      || compressed.get() != GZIP_HEADER[1]
+      || compressed.get() != Deflater.DEFLATED) {
+      throw new ProtocolException("Invalid gzip header");
+    }
+    final int flags = Byte.toUnsignedInt(compressed.get());
+    compressed.position(compressed.position() + 6); // mtime, xfl, os
+    try {
+      if ((flags & GZIP_FLAG_EXTRA) != 0) {
+        final int extraLength = Short.toUnsignedInt(Short.reverseBytes(compressed.getShort()));
+        compressed.position(compressed.position() + extraLength);
+      }
+      if ((flags & GZIP_FLAG_NAME) != 0) {
+        while (compressed.get() != 0) {
+          // skip zero-terminated file name
+        }
+      }
+      if ((flags & GZIP_FLAG_COMMENT) != 0) {
+        while (compressed.get() != 0) {
+          // skip zero-terminated comment
+        }
+      }
+      if ((flags & GZIP_FLAG_HCRC) != 0) {
+        compressed.position(compressed.position() + 2);
+      }
+    } catch (final RuntimeException e) {
+      throw new ProtocolException("Invalid gzip header", e);
+    }
+  }
+
+  private static ByteBuffer validateUncompressedPayloadSize(final ByteBuffer data) throws ProtocolException {
+    if (data.remaining() > SocketProtocolConstants.MAX_UNCOMPRESSED_PAYLOAD_SIZE_BYTES) {
+      throw new ProtocolException("Uncompressed payload too large: " + data.remaining());
+    }
+    return data;
+  }
+}
@@ -0,0 +1,108 @@
+package xyz.jpenilla.endermux.protocol;
+
+import java.nio.charset.StandardCharsets;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Preset dictionaries for {@link FrameCompressionType#DEFLATE_DICTIONARY} frames.
+ *
+ * <p>Dictionary contents are part of the wire protocol. A published dictionary id must never
+ * change; new content requires a new id and a new {@link ProtocolCapabilities#DEFLATE_DICTIONARY}
+ * version. Deflate matches nearby dictionary bytes more cheaply, so the most frequent strings
+ * are placed last.</p>
+ */
+@NullMarked
+public final class CompressionDictionary {
+
+  public static final int V1 = 1;
+
+  /**
+   * Dictionary id written by this release.
+   */
+  public static final int LATEST = V1;
+
+  private static final byte[] V1_CONTENT = String.join(
+    "",
+    // Handshake and rare control messages
+    "{\"type\":\"HELLO\",\"requestId\":\"",
+    "\",\"data\":{\"transportEpochRange\":{\"min\":17,\"max\":17,\"exclude\":[]},\"colorLevel\":\"TRUE_COLOR\",\"capabilities\":{",
+    "\"requiredCapabilities\":[\"command_execute\",\"log_forward\",\"interactivity_status\"]}}",
+    "{\"type\":\"PING\",\"requestId\":\"",
+    "{\"type\":\"PONG\",\"requestId\":\"",
+    "\",\"data\":{}}",
+    "{\"type\":\"ERROR\",\"requestId\":\"",
+    "\",\"data\":{\"message\":\"",
+    "\",\"details\":null}}",
+    "{\"type\":\"INTERACTIVITY_STATUS\",\"data\":{\"available\":true}}",
+    "{\"type\":\"LOG_SUBSCRIBE\",\"data\":{}}",
+    // Interactive requests and responses
+    "{\"type\":\"COMMAND_EXECUTE\",\"data\":{\"command\":\"",
+    "{\"type\":\"PARSE_REQUEST\",\"requestId\":\"",
+    "{\"type\":\"PARSE_RESPONSE\",\"requestId\":\"",
+    "\",\"data\":{\"word\":\"",
+    "\",\"wordCursor\":",
+    ",\"wordIndex\":",
+    ",\"words\":[\"",
+    "\"],\"line\":\"",
+    "{\"type\":\"SYNTAX_HIGHLIGHT_REQUEST\",\"requestId\":\"",
+    "{\"type\":\"SYNTAX_HIGHLIGHT_RESPONSE\",\"requestId\":\"",
+    "\",\"highlighted\":\"",
+    "{\"type\":\"COMPLETION_REQUEST\",\"requestId\":\"",
+    "\",\"data\":{\"command\":\"",
+    "\",\"cursor\":",
+    "{\"type\":\"COMPLETION_RESPONSE\",\"requestId\":\"",
+    "\",\"data\":{\"candidates\":[{\"value\":\"",
+    "\",\"description\":\"",
+    "\",\"description\":null},{\"value\":\"",
+    "\",\"display\":\"",
+    // ANSI sequences as escaped by the JSON envelope
+    "\\u001b[5m\\u001b[9m\\u001b[4m\\u001b[3m\\u001b[1m\\u001b[0m\\u001b[39m\\u001b[22m",
+    "\\u001b[38;5;",
+    "\\u001b[38;2;",
+    "\\u001b[m\\u001b[0;30;1m\\u001b[0;34;1m\\u001b[0;32;1m\\u001b[0;36;1m",
+    "\\u001b[m\\u001b[0;31;1m\\u001b[0;35;1m\\u001b[0;33;1m\\u001b[0;37;1m",
+    "\\u001b[m\\u001b[0;30m\\u001b[0;34m\\u001b[0;32m\\u001b[0;36m",
+    "\\u001b[m\\u001b[0;31m\\u001b[0;35m\\u001b[0;33m\\u001b[0;37m",
+    "\\u001b[91m\\u001b[93m\\u001b[31m\\u001b[33m\\u001b[m",
+    // Log lines and stack traces
+    "Caused by: java.lang.",
+    "Exception: ",
+    "\\n\\tat java.base/java.lang.Thread.run(Thread.java:",
+    "\\n\\tat net.minecraft.server.MinecraftServer.",
+    "\\n\\t... ",
+    " more",
+    "\\n\\tat ",
+    "[Server thread/INFO]: ",
+    "[Server thread/WARN]: ",
+    " ERROR]: ",
+    " WARN]: ",
+    "{\"type\":\"LOG_FORWARD\",\"data\":{\"rendered\":\"[",
+    " INFO]: ",
+    "\\n\"}}"
+  ).getBytes(StandardCharsets.UTF_8);
+
+  private CompressionDictionary() {
+  }
+
+  /**
+   * Looks up the dictionary bytes for an id.
+   *
+   * @param id dictionary id
+   * @return dictionary bytes, or {@code null} if the id is unknown; callers must not modify the array
+   */
+  public static byte @Nullable [] lookup(final int id) {
+    return switch (id) {
+      case V1 -> V1_CONTENT;
+      default -> null;
+    };
+  }
+
+  static byte[] require(final int id) throws ProtocolException {
+    final byte[] dictionary = lookup(id);
+    if (dictionary == null) {
+      throw new ProtocolException("Unknown compression dictionary: " + id);
+    }
+    return dictionary;
+  }
+}
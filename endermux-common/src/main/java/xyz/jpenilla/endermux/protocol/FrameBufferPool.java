@@ -0,0 +1,98 @@
+package xyz.jpenilla.endermux.protocol;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import org.jspecify.annotations.NullMarked;
+
+/**
+ * Per-connection pool of frame buffers, bucketed into power-of-two size classes.
+ *
+ * <p>Buffers larger than {@link #MAX_POOLED_CAPACITY} are allocated on demand and never retained,
+ * so an occasional oversized frame does not pin memory for the lifetime of the connection.</p>
+ */
+@NullMarked
+public final class FrameBufferPool {
+  public static final int DEFAULT_BUFFER_CAPACITY = 16 * 1024;
+  public static final int MAX_POOLED_CAPACITY = 64 * 1024;
+
+  private static final int MIN_SIZE_CLASS = 12; // 4 KiB
+  private static final int MAX_SIZE_CLASS = Integer.numberOfTrailingZeros(MAX_POOLED_CAPACITY);
+  private static final int MAX_POOLED_PER_SIZE_CLASS = 4;
+
+  private final boolean direct;
+  private final ArrayDeque<ByteBuffer>[] free;
+
+  @SuppressWarnings("unchecked")
+  private FrameBufferPool(final boolean direct) {
+    this.direct = direct;
+    this.free = new ArrayDeque[MAX_SIZE_CLASS - MIN_SIZE_CLASS + 1];
+    for (int i = 0; i < this.free.length; i++) {
+      this.free[i] = new ArrayDeque<>(MAX_POOLED_PER_SIZE_CLASS);
+    }
+  }
+
+  public static FrameBufferPool heap() {
+    return new FrameBufferPool(false);
+  }
+
+  public static FrameBufferPool direct() {
+    return new FrameBufferPool(true);
+  }
+
+  public boolean isDirect() {
+    return this.direct;
+  }
+
+  /**
+   * Acquires a cleared buffer with at least the given capacity.
+   *
+   * @param minCapacity minimum capacity in bytes
+   * @return buffer in write mode
+   */
+  public ByteBuffer acquire(final int minCapacity) {
+    final int sizeClass = sizeClass(minCapacity);
+    if (sizeClass > MAX_SIZE_CLASS) {
+      return this.allocate(minCapacity);
+    }
+    synchronized (this.free) {
+      final ByteBuffer pooled = this.free[sizeClass - MIN_SIZE_CLASS].pollFirst();
+      if (pooled != null) {
+        return pooled.clear();
+      }
+    }
+    return this.allocate(1 << sizeClass);
+  }
+
+  /**
+   * Returns a buffer previously obtained from {@link #acquire(int)}. The caller must not use it afterwards.
+   *
+   * @param buffer buffer to release
+   */
+  public void release(final ByteBuffer buffer) {
+    final int capacity = buffer.capacity();
+    if (buffer.isDirect() != this.direct || Integer.bitCount(capacity) != 1) {
+      return;
+    }
+    final int sizeClass = Integer.numberOfTrailingZeros(capacity);
+    if (sizeClass < MIN_SIZE_CLASS || sizeClass > MAX_SIZE_CLASS) {
+      return;
+    }
+    synchronized (this.free) {
+      final ArrayDeque<ByteBuffer> bucket = this.free[sizeClass - MIN_SIZE_CLASS];
+      if (bucket.size() < MAX_POOLED_PER_SIZE_CLASS) {
+        bucket.addFirst(buffer);
+      }
+    }
+  }
+
+  private ByteBuffer allocate(final int capacity) {
+    return this.direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+  }
+
+  private static int sizeClass(final int capacity) {
+    if (capacity <= 1 << MIN_SIZE_CLASS) {
+      return MIN_SIZE_CLASS;
+    }
+    return Integer.SIZE - Integer.numberOfLeadingZeros(capacity - 1);
+  }
+}
@@ -7,8 +7,11 @@ import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.util.Objects;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
 import org.jspecify.annotations.NullMarked;
 import org.jspecify.annotations.Nullable;
 
@@ -36,6 +39,8 @@ public final class FrameCodec {
     return switch (compression) {
       case NONE -> validateUncompressedPayloadSize(data);
       case GZIP -> gunzip(data);
+      case DEFLATE_STREAM -> throw statefulCompressionUnsupported(compression);
+      case DEFLATE_DICTIONARY -> inflateWithDictionary(data);
     };
   }
 
@@ -56,6 +61,8 @@ public final class FrameCodec {
     final byte[] payload = switch (compressionType) {
       case NONE -> data;
       case GZIP -> gzip(data);
+      case DEFLATE_STREAM -> throw statefulCompressionUnsupported(compressionType);
+      case DEFLATE_DICTIONARY -> deflateWithDictionary(data, CompressionDictionary.LATEST);
     };
 
     if (payload.length > SocketProtocolConstants.MAX_COMPRESSED_PAYLOAD_SIZE_BYTES) {
@@ -88,6 +95,56 @@ public final class FrameCodec {
     }
   }
 
+  private static byte[] inflateWithDictionary(final byte[] data) throws IOException {
+    if (data.length < 1) {
+      throw new ProtocolException("Truncated compressed frame");
+    }
+    final Inflater inflater = new Inflater(true);
+    try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+      inflater.setDictionary(CompressionDictionary.require(Byte.toUnsignedInt(data[0])));
+      inflater.setInput(data, 1, data.length - 1);
+      final byte[] buffer = new byte[8192];
+      int total = 0;
+      while (!inflater.finished()) {
+        final int read = inflater.inflate(buffer);
+        if (read == 0 && inflater.needsInput()) {
+          throw new ProtocolException("Truncated compressed frame");
+        }
+        total += read;
+        if (total > SocketProtocolConstants.MAX_UNCOMPRESSED_PAYLOAD_SIZE_BYTES) {
+          throw new ProtocolException("Decompressed frame too large: " + total);
+        }
+        out.write(buffer, 0, read);
+      }
+      return out.toByteArray();
+    } catch (final DataFormatException e) {
+      throw new ProtocolException("Corrupt compressed frame", e);
+    } finally {
+      inflater.end();
+    }
+  }
+
+  private static byte[] deflateWithDictionary(final byte[] data, final int dictionaryId) throws IOException {
+    final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+      out.write(dictionaryId);
+      deflater.setDictionary(CompressionDictionary.require(dictionaryId));
+      deflater.setInput(data);
+      deflater.finish();
+      final byte[] buffer = new byte[8192];
+      while (!deflater.finished()) {
+        out.write(buffer, 0, deflater.deflate(buffer));
+      }
+      return out.toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private static ProtocolException statefulCompressionUnsupported(final FrameCompressionType compression) {
+    return new ProtocolException("Stateful frame compression requires ChannelFrameCodec: " + compression);
+  }
+
   private static byte[] validateUncompressedPayloadSize(final byte[] data) throws ProtocolException {
     if (data.length > SocketProtocolConstants.MAX_UNCOMPRESSED_PAYLOAD_SIZE_BYTES) {
       throw new ProtocolException("Uncompressed payload too large: " + data.length);
@@ -0,0 +1,79 @@
+package xyz.jpenilla.endermux.protocol;
+
+import java.util.Map;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Chooses the compression for outbound frames based on negotiated capabilities.
+ */
+@NullMarked
+public final class FrameCompressionPolicy {
+
+  /**
+   * Minimum payload size for gzip when no better format is negotiated.
+   */
+  public static final int GZIP_THRESHOLD_BYTES = 1024;
+
+  /**
+   * Minimum payload size for preset-dictionary compression. Below this the
+   * dictionary id and deflate block overhead outweigh the savings.
+   */
+  public static final int DICTIONARY_THRESHOLD_BYTES = 64;
+
+  private static final FrameCompressionPolicy DEFAULTS = new FrameCompressionPolicy(false, null);
+
+  private final boolean stream;
+  private final @Nullable Integer dictionaryId;
+
+  private FrameCompressionPolicy(final boolean stream, final @Nullable Integer dictionaryId) {
+    this.stream = stream;
+    this.dictionaryId = dictionaryId;
+  }
+
+  /**
+   * Policy for peers that have not negotiated any compression capabilities.
+   *
+   * @return default policy
+   */
+  public static FrameCompressionPolicy defaults() {
+    return DEFAULTS;
+  }
+
+  public static FrameCompressionPolicy negotiated(final Map<String, Integer> selectedCapabilities) {
+    final boolean stream = selectedCapabilities.containsKey(ProtocolCapabilities.DEFLATE_STREAM);
+    final @Nullable Integer dictionaryId = selectedCapabilities.get(ProtocolCapabilities.DEFLATE_DICTIONARY);
+    if (!stream && dictionaryId == null) {
+      return DEFAULTS;
+    }
+    return new FrameCompressionPolicy(stream, dictionaryId);
+  }
+
+  /**
+   * Selects the compression for a payload.
+   *
+   * @param payloadBytes uncompressed payload size
+   * @return compression type
+   */
+  public FrameCompressionType select(final int payloadBytes) {
+    if (this.stream) {
+      return FrameCompressionType.DEFLATE_STREAM;
+    }
+    if (this.dictionaryId != null && payloadBytes >= DICTIONARY_THRESHOLD_BYTES) {
+      return FrameCompressionType.DEFLATE_DICTIONARY;
+    }
+    if (payloadBytes >= GZIP_THRESHOLD_BYTES) {
+      return FrameCompressionType.GZIP;
+    }
+    return FrameCompressionType.NONE;
+  }
+
+  /**
+   * Dictionary id to use for {@link FrameCompressionType#DEFLATE_DICTIONARY} frames.
+   *
+   * @return dictionary id
+   */
+  public int dictionaryId() {
+    return this.dictionaryId != null ? this.dictionaryId : CompressionDictionary.LATEST;
+  }
+}
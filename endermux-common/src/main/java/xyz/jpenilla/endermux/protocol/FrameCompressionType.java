@@ -4,22 +4,36 @@ import org.jspecify.annotations.NullMarked;
 
 @NullMarked
 public enum FrameCompressionType {
-  NONE(0),
-  GZIP(1);
+  NONE(0, false),
+  GZIP(1, false),
+  DEFLATE_STREAM(2, true),
+  DEFLATE_DICTIONARY(3, false);
 
   private final int wireValue;
+  private final boolean stateful;
 
-  FrameCompressionType(final int wireValue) {
+  FrameCompressionType(final int wireValue, final boolean stateful) {
     if (wireValue < 0 || wireValue > 0xFF) {
       throw new IllegalArgumentException("wireValue must be in range 0..255");
     }
     this.wireValue = wireValue;
+    this.stateful = stateful;
   }
 
   public int wireValue() {
     return this.wireValue;
   }
 
+  /**
+   * Whether frames of this type depend on compression state carried over from earlier frames
+   * in the same direction of the connection.
+   *
+   * @return whether this compression type is stateful
+   */
+  public boolean stateful() {
+    return this.stateful;
+  }
+
   public static FrameCompressionType fromWireValue(final int wireValue) throws ProtocolException {
     for (final FrameCompressionType value : values()) {
       if (value.wireValue == wireValue) {
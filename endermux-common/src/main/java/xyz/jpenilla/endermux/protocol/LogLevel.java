@@ -0,0 +1,20 @@
+package xyz.jpenilla.endermux.protocol;
+
+import org.jspecify.annotations.NullMarked;
+
+/**
+ * Severity of a forwarded log line, least severe first.
+ */
+@NullMarked
+public enum LogLevel {
+  TRACE,
+  DEBUG,
+  INFO,
+  WARN,
+  ERROR,
+  FATAL;
+
+  public boolean isAtLeast(final LogLevel level) {
+    return this.compareTo(level) >= 0;
+  }
+}
@@ -0,0 +1,50 @@
+package xyz.jpenilla.endermux.protocol;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Stack traces a client keeps for {@link Payloads.LogTrace} references, used after
+ * {@link ProtocolCapabilities#LOG_TRACE_CACHE} is negotiated.
+ *
+ * <p>Holds the {@link #CAPACITY} most recently cached traces. The server keeps one per session
+ * and caches traces in the order it sends them, the same way the client does when reading them,
+ * so it knows which traces the client still has. Lookups don't affect eviction, so references
+ * the server queues but drops can't make the two caches diverge. Not thread safe.</p>
+ *
+ * @param <V> cached value
+ */
+@NullMarked
+public final class LogTraceCache<V> {
+
+  public static final int CAPACITY = 64;
+
+  private final LinkedHashMap<String, V> entries = new LinkedHashMap<>() {
+    @Override
+    protected boolean removeEldestEntry(final Map.Entry<String, V> eldest) {
+      return this.size() > CAPACITY;
+    }
+  };
+
+  /**
+   * Looks up a trace.
+   *
+   * @param traceId trace id
+   * @return cached value, or {@code null} if the trace is not cached
+   */
+  public @Nullable V get(final String traceId) {
+    return this.entries.get(traceId);
+  }
+
+  /**
+   * Caches a trace, evicting the trace cached longest ago when full.
+   *
+   * @param traceId trace id
+   * @param value value to cache
+   */
+  public void put(final String traceId, final V value) {
+    this.entries.put(traceId, value);
+  }
+}
@@ -10,11 +10,20 @@ public final class Message<T extends MessagePayload> {
   private final MessageType type;
   private final @Nullable String requestId;
   private final T payload;
+  private final long deadlineMs;
 
   Message(final MessageType type, final @Nullable String requestId, final T payload) {
+    this(type, requestId, payload, 0L);
+  }
+
+  Message(final MessageType type, final @Nullable String requestId, final T payload, final long deadlineMs) {
+    if (deadlineMs < 0) {
+      throw new IllegalArgumentException("deadlineMs must not be negative: " + deadlineMs);
+    }
     this.type = type;
     this.requestId = requestId;
     this.payload = payload;
+    this.deadlineMs = deadlineMs;
   }
 
   public MessageType type() {
@@ -33,6 +42,26 @@ public final class Message<T extends MessagePayload> {
     return this.requestId != null;
   }
 
+  /**
+   * How long after it is received the sender stops waiting for an answer to this request,
+   * only sent with {@link ProtocolCapabilities#REQUEST_DEADLINE}.
+   *
+   * @return deadline in milliseconds, or {@code 0} for none
+   */
+  public long deadlineMs() {
+    return this.deadlineMs;
+  }
+
+  /**
+   * Copies this message with a {@linkplain #deadlineMs() deadline}.
+   *
+   * @param deadlineMs deadline in milliseconds, or {@code 0} for none
+   * @return message with the deadline
+   */
+  public Message<T> withDeadlineMs(final long deadlineMs) {
+    return new Message<>(this.type, this.requestId, this.payload, deadlineMs);
+  }
+
   public static <T extends MessagePayload> Builder<T> builder(final MessageType type) {
     return new Builder<>(type);
   }
@@ -53,6 +82,7 @@ public final class Message<T extends MessagePayload> {
     private final MessageType type;
     private @Nullable String requestId;
     private @Nullable T payload;
+    private long deadlineMs;
 
     private Builder(final MessageType type) {
       this.type = type;
@@ -68,6 +98,16 @@ public final class Message<T extends MessagePayload> {
       return this;
     }
 
+    public Builder<T> requestId(final long requestId) {
+      this.requestId = RequestIds.toString(requestId);
+      return this;
+    }
+
+    public Builder<T> deadlineMs(final long deadlineMs) {
+      this.deadlineMs = deadlineMs;
+      return this;
+    }
+
     public Builder<T> payload(final T payload) {
       this.payload = payload;
       return this;
@@ -77,7 +117,7 @@ public final class Message<T extends MessagePayload> {
       if (this.payload == null) {
         throw new IllegalStateException("Message must have a payload");
       }
-      return new Message<>(this.type, this.requestId, this.payload);
+      return new Message<>(this.type, this.requestId, this.payload, this.deadlineMs);
     }
   }
 }
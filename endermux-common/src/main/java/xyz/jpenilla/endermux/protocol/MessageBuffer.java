@@ -0,0 +1,185 @@
+package xyz.jpenilla.endermux.protocol;
+
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.jspecify.annotations.NullMarked;
+
+/**
+ * Reusable UTF-8 byte sink for serialized messages.
+ *
+ * <p>Characters written through {@link #writer()} are encoded straight into the backing array,
+ * so a serialized message never exists as an intermediate {@link String}. Not thread-safe.</p>
+ */
+@NullMarked
+public final class MessageBuffer {
+  private static final int DEFAULT_CAPACITY = 1024;
+  private static final int MAX_RETAINED_CAPACITY = FrameBufferPool.MAX_POOLED_CAPACITY;
+
+  private byte[] bytes = new byte[DEFAULT_CAPACITY];
+  private int size;
+  private final Utf8Writer writer = new Utf8Writer();
+
+  /**
+   * Discards the contents, releasing oversized storage left behind by a large message.
+   *
+   * @return this buffer
+   */
+  public MessageBuffer reset() {
+    this.size = 0;
+    this.writer.pendingHighSurrogate = 0;
+    if (this.bytes.length > MAX_RETAINED_CAPACITY) {
+      this.bytes = new byte[DEFAULT_CAPACITY];
+    }
+    return this;
+  }
+
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * Writer that appends UTF-8 encoded characters to this buffer.
+   *
+   * @return writer
+   */
+  public Writer writer() {
+    return this.writer;
+  }
+
+  /**
+   * Appends a single byte.
+   *
+   * @param b byte value
+   */
+  public void writeByte(final int b) {
+    this.ensureCapacity(1);
+    this.bytes[this.size++] = (byte) b;
+  }
+
+  /**
+   * Appends the UTF-8 encoding of {@code str}, with unpaired surrogates replaced by {@code '?'}.
+   *
+   * @param str string
+   */
+  public void writeUtf8(final String str) {
+    this.writer.write(str, 0, str.length());
+    this.writer.flush();
+  }
+
+  /**
+   * Wraps the current contents without copying. The buffer is invalidated by the next write or reset.
+   *
+   * @return view of the contents
+   */
+  public ByteBuffer asByteBuffer() {
+    return ByteBuffer.wrap(this.bytes, 0, this.size);
+  }
+
+  public byte[] toByteArray() {
+    return Arrays.copyOf(this.bytes, this.size);
+  }
+
+  private void ensureCapacity(final int additional) {
+    final int required = this.size + additional;
+    if (required > this.bytes.length) {
+      this.bytes = Arrays.copyOf(this.bytes, Math.max(required, this.bytes.length * 2));
+    }
+  }
+
+  private final class Utf8Writer extends Writer {
+    private char pendingHighSurrogate;
+
+    @Override
+    public void write(final int c) {
+      this.write((char) c);
+    }
+
+    @Override
+    public void write(final char[] cbuf, final int off, final int len) {
+      for (int i = off; i < off + len; i++) {
+        this.write(cbuf[i]);
+      }
+    }
+
+    @Override
+    public void write(final String str, final int off, final int len) {
+      final MessageBuffer buffer = MessageBuffer.this;
+      buffer.ensureCapacity(len);
+      int i = off;
+      // ASCII fast path; JSON output is mostly ASCII
+      if (this.pendingHighSurrogate == 0) {
+        final byte[] bytes = buffer.bytes;
+        int size = buffer.size;
+        while (i < off + len) {
+          final char c = str.charAt(i);
+          if (c >= 0x80) {
+            break;
+          }
+          bytes[size++] = (byte) c;
+          i++;
+        }
+        buffer.size = size;
+      }
+      for (; i < off + len; i++) {
+        this.write(str.charAt(i));
+      }
+    }
+
+    private void write(final char c) {
+      final MessageBuffer buffer = MessageBuffer.this;
+      if (this.pendingHighSurrogate != 0) {
+        final char high = this.pendingHighSurrogate;
+        this.pendingHighSurrogate = 0;
+        if (Character.isLowSurrogate(c)) {
+          final int codePoint = Character.toCodePoint(high, c);
+          buffer.ensureCapacity(4);
+          buffer.bytes[buffer.size++] = (byte) (0xF0 | (codePoint >> 18));
+          buffer.bytes[buffer.size++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+          buffer.bytes[buffer.size++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+          buffer.bytes[buffer.size++] = (byte) (0x80 | (codePoint & 0x3F));
+          return;
+        }
+        this.writeReplacement();
+      }
+
+      if (c < 0x80) {
+        buffer.ensureCapacity(1);
+        buffer.bytes[buffer.size++] = (byte) c;
+      } else if (c < 0x800) {
+        buffer.ensureCapacity(2);
+        buffer.bytes[buffer.size++] = (byte) (0xC0 | (c >> 6));
+        buffer.bytes[buffer.size++] = (byte) (0x80 | (c & 0x3F));
+      } else if (Character.isHighSurrogate(c)) {
+        this.pendingHighSurrogate = c;
+      } else if (Character.isLowSurrogate(c)) {
+        this.writeReplacement();
+      } else {
+        buffer.ensureCapacity(3);
+        buffer.bytes[buffer.size++] = (byte) (0xE0 | (c >> 12));
+        buffer.bytes[buffer.size++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+        buffer.bytes[buffer.size++] = (byte) (0x80 | (c & 0x3F));
+      }
+    }
+
+    // Unpaired surrogates are replaced with '?', matching String.getBytes(UTF_8)
+    private void writeReplacement() {
+      final MessageBuffer buffer = MessageBuffer.this;
+      buffer.ensureCapacity(1);
+      buffer.bytes[buffer.size++] = '?';
+    }
+
+    @Override
+    public void flush() {
+      if (this.pendingHighSurrogate != 0) {
+        this.pendingHighSurrogate = 0;
+        this.writeReplacement();
+      }
+    }
+
+    @Override
+    public void close() {
+      this.flush();
+    }
+  }
+}
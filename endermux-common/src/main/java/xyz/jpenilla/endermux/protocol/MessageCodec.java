@@ -0,0 +1,43 @@
+package xyz.jpenilla.endermux.protocol;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Encodes messages to and decodes messages from frame payloads.
+ */
+@NullMarked
+public interface MessageCodec {
+
+  /**
+   * Serializes a message into {@code buffer}, replacing its contents.
+   *
+   * @param message message
+   * @param buffer destination
+   */
+  void serialize(Message<?> message, MessageBuffer buffer);
+
+  /**
+   * Deserializes a message from the remaining bytes of {@code payload} without consuming them.
+   *
+   * @param payload frame payload
+   * @return message, or {@code null} if the payload is not a valid message
+   */
+  @Nullable Message<?> deserialize(ByteBuffer payload);
+
+  /**
+   * Selects the codec for messages after the handshake. The handshake itself always uses JSON.
+   *
+   * @param json JSON serializer
+   * @param selectedCapabilities negotiated capabilities
+   * @return codec
+   */
+  static MessageCodec negotiated(final MessageSerializer json, final Map<String, Integer> selectedCapabilities) {
+    if (selectedCapabilities.containsKey(ProtocolCapabilities.BINARY_CODEC)) {
+      return json.binaryCodec();
+    }
+    return json;
+  }
+}
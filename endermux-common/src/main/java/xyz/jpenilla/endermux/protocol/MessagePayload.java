@@ -11,12 +11,16 @@ public sealed interface MessagePayload permits
   Payloads.CommandExecute,
   Payloads.Ping,
   Payloads.LogSubscribe,
+  Payloads.Cancel,
   Payloads.Welcome,
   Payloads.Reject,
   Payloads.CompletionResponse,
   Payloads.SyntaxHighlightResponse,
   Payloads.ParseResponse,
   Payloads.LogForward,
+  Payloads.LogLayout,
+  Payloads.LogEvent,
+  Payloads.LogTrace,
   Payloads.Pong,
   Payloads.Error,
   Payloads.InteractivityStatus {
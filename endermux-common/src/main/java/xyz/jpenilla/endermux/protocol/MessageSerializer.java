@@ -2,65 +2,250 @@ package xyz.jpenilla.endermux.protocol;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
 import com.google.gson.JsonParser;
-import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
 import org.jspecify.annotations.NullMarked;
 import org.jspecify.annotations.Nullable;
 
+/**
+ * Reads and writes the JSON message envelope.
+ *
+ * <p>Messages are streamed with {@link JsonWriter}/{@link JsonReader} and the payload record
+ * adapters, without building an intermediate JSON tree.</p>
+ */
 @NullMarked
-public final class MessageSerializer {
+public final class MessageSerializer implements MessageCodec {
 
   private static final Gson GSON = new GsonBuilder()
     .serializeNulls()
     .create();
 
+  private final BinaryMessageCodec binaryCodec = new BinaryMessageCodec(this);
+
   public static MessageSerializer createStandard() {
     return new MessageSerializer();
   }
 
+  // One instance per serializer, so connections that negotiated the binary codec share it
+  BinaryMessageCodec binaryCodec() {
+    return this.binaryCodec;
+  }
+
   public String serialize(final Message<?> message) {
-    final JsonObject root = new JsonObject();
-    root.addProperty("type", message.type().id());
+    final StringWriter out = new StringWriter();
+    try {
+      this.serialize(message, out);
+    } catch (final IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return out.toString();
+  }
+
+  @Override
+  public void serialize(final Message<?> message, final MessageBuffer buffer) {
+    buffer.reset();
+    try {
+      this.serialize(message, buffer.writer());
+    } catch (final IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
 
+  @SuppressWarnings("unchecked")
+  private void serialize(final Message<?> message, final Writer out) throws IOException {
+    final JsonWriter writer = new JsonWriter(out);
+    writer.setSerializeNulls(true);
+    writer.beginObject();
+    writer.name("type").value(message.type().id());
     if (message.requestId() != null) {
-      root.addProperty("requestId", message.requestId());
+      writer.name("requestId").value(message.requestId());
+    }
+    if (message.deadlineMs() > 0) {
+      writer.name("deadlineMs").value(message.deadlineMs());
     }
+    writer.name("data");
+    final TypeAdapter<MessagePayload> adapter = (TypeAdapter<MessagePayload>) GSON.getAdapter(message.type().payloadType());
+    adapter.write(writer, message.payload());
+    writer.endObject();
+    writer.flush();
+  }
 
-    root.add("data", GSON.toJsonTree(message.payload()));
+  public @Nullable Message<?> deserialize(final String json) {
+    return this.deserialize(new StringReader(json));
+  }
 
-    return root.toString();
+  @Override
+  public @Nullable Message<?> deserialize(final ByteBuffer payload) {
+    return this.deserialize(new Utf8Reader(payload.duplicate()));
   }
 
-  public @Nullable Message<?> deserialize(final String json) {
+  private @Nullable Message<?> deserialize(final Reader in) {
     try {
-      final JsonObject root = JsonParser.parseString(json).getAsJsonObject();
-
-      if (!root.has("type")) {
+      final JsonReader reader = new JsonReader(in);
+      @Nullable MessageType type = null;
+      @Nullable String requestId = null;
+      long deadlineMs = 0;
+      @Nullable MessagePayload payload = null;
+      // Only used when data precedes type, which our own writer never does
+      @Nullable JsonElement bufferedData = null;
+
+      reader.beginObject();
+      while (reader.hasNext()) {
+        switch (reader.nextName()) {
+          case "type" -> {
+            type = MessageType.findById(reader.nextString());
+            if (type == null) {
+              return null;
+            }
+          }
+          case "requestId" -> {
+            if (reader.peek() == JsonToken.NULL) {
+              reader.nextNull();
+              requestId = null;
+            } else {
+              requestId = reader.nextString();
+            }
+          }
+          case "deadlineMs" -> {
+            deadlineMs = reader.nextLong();
+            if (deadlineMs < 0) {
+              return null;
+            }
+          }
+          case "data" -> {
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+              reader.skipValue();
+              payload = null;
+              bufferedData = null;
+            } else if (type != null) {
+              payload = GSON.getAdapter(type.payloadType()).read(reader);
+            } else {
+              bufferedData = JsonParser.parseReader(reader);
+            }
+          }
+          default -> reader.skipValue();
+        }
+      }
+      reader.endObject();
+      if (reader.peek() != JsonToken.END_DOCUMENT) {
         return null;
       }
 
-      final String typeName = root.get("type").getAsString();
-      final @Nullable MessageType type = MessageType.findById(typeName);
       if (type == null) {
         return null;
       }
+      if (payload == null) {
+        final JsonElement data = bufferedData != null ? bufferedData : new JsonObject();
+        payload = GSON.getAdapter(type.payloadType()).fromJsonTree(data);
+      }
+      return new Message<>(type, requestId, payload, deadlineMs);
 
-      final String requestId = root.has("requestId") && !root.get("requestId").isJsonNull()
-        ? root.get("requestId").getAsString()
-        : null;
+    } catch (final IOException | JsonParseException | IllegalStateException | ClassCastException | NumberFormatException e) {
+      return null;
+    } catch (final RuntimeException e) {
+      // Gson wraps what record constructors throw for payloads they reject
+      if (e.getCause() instanceof IllegalArgumentException) {
+        return null;
+      }
+      throw e;
+    }
+  }
 
-      final Class<? extends MessagePayload> payloadClass = type.payloadType();
+  // Decodes UTF-8 straight from frame bytes; malformed input decodes to U+FFFD like new String(bytes, UTF_8)
+  private static final class Utf8Reader extends Reader {
+    private static final char REPLACEMENT_CHARACTER = '\uFFFD';
 
-      final JsonObject data = root.has("data") && root.get("data").isJsonObject()
-        ? root.getAsJsonObject("data")
-        : new JsonObject();
-      final MessagePayload payload = GSON.fromJson(data, payloadClass);
+    private final ByteBuffer in;
+    private char pendingLowSurrogate;
 
-      return new Message<>(type, requestId, payload);
+    Utf8Reader(final ByteBuffer in) {
+      this.in = in;
+    }
 
-    } catch (final JsonSyntaxException | IllegalStateException | ClassCastException e) {
-      return null;
+    @Override
+    public int read(final char[] cbuf, final int off, final int len) {
+      if (len == 0) {
+        return 0;
+      }
+      int n = 0;
+      if (this.pendingLowSurrogate != 0) {
+        cbuf[off + n++] = this.pendingLowSurrogate;
+        this.pendingLowSurrogate = 0;
+      }
+      final ByteBuffer in = this.in;
+      while (n < len && in.hasRemaining()) {
+        final int b = in.get();
+        if (b >= 0) {
+          cbuf[off + n++] = (char) b;
+          continue;
+        }
+        final int codePoint = this.decodeMultiByte(b & 0xFF);
+        if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+          cbuf[off + n++] = (char) codePoint;
+        } else {
+          cbuf[off + n++] = Character.highSurrogate(codePoint);
+          if (n < len) {
+            cbuf[off + n++] = Character.lowSurrogate(codePoint);
+          } else {
+            this.pendingLowSurrogate = Character.lowSurrogate(codePoint);
+          }
+        }
+      }
+      return n == 0 ? -1 : n;
+    }
+
+    private int decodeMultiByte(final int lead) {
+      final int extra;
+      final int min;
+      int codePoint;
+      if (lead >= 0xC2 && lead <= 0xDF) {
+        extra = 1;
+        min = 0x80;
+        codePoint = lead & 0x1F;
+      } else if (lead >= 0xE0 && lead <= 0xEF) {
+        extra = 2;
+        min = 0x800;
+        codePoint = lead & 0x0F;
+      } else if (lead >= 0xF0 && lead <= 0xF4) {
+        extra = 3;
+        min = Character.MIN_SUPPLEMENTARY_CODE_POINT;
+        codePoint = lead & 0x07;
+      } else {
+        return REPLACEMENT_CHARACTER;
+      }
+      for (int i = 0; i < extra; i++) {
+        if (!this.in.hasRemaining()) {
+          return REPLACEMENT_CHARACTER;
+        }
+        final int next = this.in.get(this.in.position()) & 0xFF;
+        if ((next & 0xC0) != 0x80) {
+          return REPLACEMENT_CHARACTER;
+        }
+        this.in.get();
+        codePoint = (codePoint << 6) | (next & 0x3F);
+      }
+      if (codePoint < min || codePoint > Character.MAX_CODE_POINT
+        || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)) {
+        return REPLACEMENT_CHARACTER;
+      }
+      return codePoint;
+    }
+
+    @Override
+    public void close() {
     }
   }
 }
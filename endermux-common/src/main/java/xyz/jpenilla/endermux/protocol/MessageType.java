@@ -11,6 +11,7 @@ import org.jspecify.annotations.Nullable;
 @NullMarked
 public final class MessageType {
   private static final Map<String, MessageType> ID_TO_TYPE = new HashMap<>();
+  private static final Map<Integer, MessageType> WIRE_ID_TO_TYPE = new HashMap<>();
   private static final Map<Class<? extends MessagePayload>, MessageType> PAYLOAD_TO_TYPE = new HashMap<>();
   private static final List<MessageType> ALL = new ArrayList<>();
 
@@ -19,14 +20,14 @@ public final class MessageType {
   // ==============================================
 
   // Handshake
-  public static final MessageType HELLO = clientRequest("HELLO", Payloads.Hello.class);
-  public static final MessageType WELCOME = serverMessage("WELCOME", Payloads.Welcome.class);
-  public static final MessageType REJECT = serverMessage("REJECT", Payloads.Reject.class);
+  public static final MessageType HELLO = clientRequest("HELLO", 1, Payloads.Hello.class);
+  public static final MessageType WELCOME = serverMessage("WELCOME", 2, Payloads.Welcome.class);
+  public static final MessageType REJECT = serverMessage("REJECT", 3, Payloads.Reject.class);
 
   // Session liveness and generic failures
-  public static final MessageType PING = clientRequest("PING", Payloads.Ping.class);
-  public static final MessageType PONG = serverMessage("PONG", Payloads.Pong.class);
-  public static final MessageType ERROR = serverMessage("ERROR", Payloads.Error.class);
+  public static final MessageType PING = clientRequest("PING", 4, Payloads.Ping.class);
+  public static final MessageType PONG = serverMessage("PONG", 5, Payloads.Pong.class);
+  public static final MessageType ERROR = serverMessage("ERROR", 6, Payloads.Error.class);
 
   // ==============================
   // Capability-based message types
@@ -34,53 +35,53 @@ public final class MessageType {
 
   // Interactivity state
   public static final MessageType INTERACTIVITY_STATUS = serverMessage(
-    "INTERACTIVITY_STATUS",
+    "INTERACTIVITY_STATUS", 7,
     Payloads.InteractivityStatus.class,
     ProtocolCapabilities.INTERACTIVITY_STATUS
   );
 
   // Completions
   public static final MessageType COMPLETION_REQUEST = clientRequest(
-    "COMPLETION_REQUEST",
+    "COMPLETION_REQUEST", 8,
     Payloads.CompletionRequest.class,
     ProtocolCapabilities.COMPLETION,
     true
   );
   public static final MessageType COMPLETION_RESPONSE = serverMessage(
-    "COMPLETION_RESPONSE",
+    "COMPLETION_RESPONSE", 9,
     Payloads.CompletionResponse.class,
     ProtocolCapabilities.COMPLETION
   );
 
   // Syntax highlighting
   public static final MessageType SYNTAX_HIGHLIGHT_REQUEST = clientRequest(
-    "SYNTAX_HIGHLIGHT_REQUEST",
+    "SYNTAX_HIGHLIGHT_REQUEST", 10,
     Payloads.SyntaxHighlightRequest.class,
     ProtocolCapabilities.SYNTAX_HIGHLIGHT,
     true
   );
   public static final MessageType SYNTAX_HIGHLIGHT_RESPONSE = serverMessage(
-    "SYNTAX_HIGHLIGHT_RESPONSE",
+    "SYNTAX_HIGHLIGHT_RESPONSE", 11,
     Payloads.SyntaxHighlightResponse.class,
     ProtocolCapabilities.SYNTAX_HIGHLIGHT
   );
 
   // Parsing
   public static final MessageType PARSE_REQUEST = clientRequest(
-    "PARSE_REQUEST",
+    "PARSE_REQUEST", 12,
     Payloads.ParseRequest.class,
     ProtocolCapabilities.PARSE,
     true
   );
   public static final MessageType PARSE_RESPONSE = serverMessage(
-    "PARSE_RESPONSE",
+    "PARSE_RESPONSE", 13,
     Payloads.ParseResponse.class,
     ProtocolCapabilities.PARSE
   );
 
   // Command execution
   public static final MessageType COMMAND_EXECUTE = clientMessage(
-    "COMMAND_EXECUTE",
+    "COMMAND_EXECUTE", 14,
     Payloads.CommandExecute.class,
     ProtocolCapabilities.COMMAND_EXECUTE,
     true
@@ -88,18 +89,46 @@ public final class MessageType {
 
   // Log forwarding
   public static final MessageType LOG_SUBSCRIBE = clientMessage(
-    "LOG_SUBSCRIBE",
+    "LOG_SUBSCRIBE", 15,
     Payloads.LogSubscribe.class,
     ProtocolCapabilities.LOG_FORWARD,
     false
   );
   public static final MessageType LOG_FORWARD = serverMessage(
-    "LOG_FORWARD",
+    "LOG_FORWARD", 16,
     Payloads.LogForward.class,
     ProtocolCapabilities.LOG_FORWARD
   );
 
+  // Client-side log rendering
+  public static final MessageType LOG_LAYOUT = serverMessage(
+    "LOG_LAYOUT", 17,
+    Payloads.LogLayout.class,
+    ProtocolCapabilities.LOG_LAYOUT
+  );
+  public static final MessageType LOG_EVENT = serverMessage(
+    "LOG_EVENT", 18,
+    Payloads.LogEvent.class,
+    ProtocolCapabilities.LOG_LAYOUT
+  );
+
+  // Stack trace deduplication
+  public static final MessageType LOG_TRACE = serverMessage(
+    "LOG_TRACE", 19,
+    Payloads.LogTrace.class,
+    ProtocolCapabilities.LOG_TRACE_CACHE
+  );
+
+  // Request cancellation
+  public static final MessageType CANCEL = clientMessage(
+    "CANCEL", 20,
+    Payloads.Cancel.class,
+    ProtocolCapabilities.REQUEST_CANCEL,
+    false
+  );
+
   private final String id;
+  private final int wireId;
   private final Direction direction;
   private final boolean requestIdRequired;
   private final Class<? extends MessagePayload> payloadType;
@@ -108,6 +137,7 @@ public final class MessageType {
 
   private MessageType(
     final String id,
+    final int wireId,
     final Direction direction,
     final boolean requestIdRequired,
     final Class<? extends MessagePayload> payloadType,
@@ -115,6 +145,7 @@ public final class MessageType {
     final boolean interactivityRequired
   ) {
     this.id = id;
+    this.wireId = wireId;
     this.direction = direction;
     this.requestIdRequired = requestIdRequired;
     this.payloadType = payloadType;
@@ -122,38 +153,41 @@ public final class MessageType {
     this.interactivityRequired = interactivityRequired;
   }
 
-  private static MessageType clientRequest(final String name, final Class<? extends MessagePayload> payloadType) {
-    return register(new MessageType(name, Direction.CLIENT_TO_SERVER, true, payloadType, null, false));
+  private static MessageType clientRequest(final String name, final int wireId, final Class<? extends MessagePayload> payloadType) {
+    return register(new MessageType(name, wireId, Direction.CLIENT_TO_SERVER, true, payloadType, null, false));
   }
 
-  private static MessageType serverMessage(final String name, final Class<? extends MessagePayload> payloadType) {
-    return register(new MessageType(name, Direction.SERVER_TO_CLIENT, false, payloadType, null, false));
+  private static MessageType serverMessage(final String name, final int wireId, final Class<? extends MessagePayload> payloadType) {
+    return register(new MessageType(name, wireId, Direction.SERVER_TO_CLIENT, false, payloadType, null, false));
   }
 
   private static MessageType clientRequest(
     final String name,
+    final int wireId,
     final Class<? extends MessagePayload> payloadType,
     final String capability,
     final boolean interactivityRequired
   ) {
-    return register(new MessageType(name, Direction.CLIENT_TO_SERVER, true, payloadType, capability, interactivityRequired));
+    return register(new MessageType(name, wireId, Direction.CLIENT_TO_SERVER, true, payloadType, capability, interactivityRequired));
   }
 
   private static MessageType serverMessage(
     final String name,
+    final int wireId,
     final Class<? extends MessagePayload> payloadType,
     final String capability
   ) {
-    return register(new MessageType(name, Direction.SERVER_TO_CLIENT, false, payloadType, capability, false));
+    return register(new MessageType(name, wireId, Direction.SERVER_TO_CLIENT, false, payloadType, capability, false));
   }
 
   private static MessageType clientMessage(
     final String name,
+    final int wireId,
     final Class<? extends MessagePayload> payloadType,
     final String capability,
     final boolean interactivityRequired
   ) {
-    return register(new MessageType(name, Direction.CLIENT_TO_SERVER, false, payloadType, capability, interactivityRequired));
+    return register(new MessageType(name, wireId, Direction.CLIENT_TO_SERVER, false, payloadType, capability, interactivityRequired));
   }
 
   private static MessageType register(final MessageType type) {
@@ -162,6 +196,11 @@ public final class MessageType {
       throw new IllegalStateException("Duplicate message type id: " + type.id);
     }
 
+    final MessageType existingByWireId = WIRE_ID_TO_TYPE.put(type.wireId, type);
+    if (existingByWireId != null) {
+      throw new IllegalStateException("Duplicate message type wire id: " + type.wireId);
+    }
+
     final MessageType existingByPayload = PAYLOAD_TO_TYPE.put(type.payloadType, type);
     if (existingByPayload != null) {
       throw new IllegalStateException("Duplicate payload type mapping for " + type.payloadType.getName());
@@ -175,6 +214,15 @@ public final class MessageType {
     return this.id;
   }
 
+  /**
+   * Numeric id used by {@link BinaryMessageCodec}. Part of the wire protocol; never reuse or change a published id.
+   *
+   * @return wire id
+   */
+  public int wireId() {
+    return this.wireId;
+  }
+
   public Direction direction() {
     return this.direction;
   }
@@ -211,6 +259,10 @@ public final class MessageType {
     return ID_TO_TYPE.get(id);
   }
 
+  public static @Nullable MessageType findByWireId(final int wireId) {
+    return WIRE_ID_TO_TYPE.get(wireId);
+  }
+
   public static MessageType byIdOrThrow(final String id) {
     final @Nullable MessageType type = findById(id);
     if (type == null) {
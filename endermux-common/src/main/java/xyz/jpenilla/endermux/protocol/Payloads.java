@@ -23,13 +23,43 @@ public final class Payloads {
   ) implements MessagePayload {
   }
 
-  public record CompletionRequest(String command, int cursor) implements MessagePayload {
+  /**
+   * A request the client only wants the latest answer to.
+   */
+  public sealed interface SupersedingRequest permits CompletionRequest, SyntaxHighlightRequest, ParseRequest {
+    /**
+     * Whether this request replaces earlier requests of its type the server has not answered yet,
+     * only honored with {@link ProtocolCapabilities#REQUEST_CANCEL}.
+     *
+     * @return whether earlier requests of this type are superseded
+     */
+    boolean supersede();
+  }
+
+  public record CompletionRequest(String command, int cursor, boolean supersede) implements MessagePayload, SupersedingRequest {
+    public CompletionRequest(final String command, final int cursor) {
+      this(command, cursor, false);
+    }
+  }
+
+  public record SyntaxHighlightRequest(String command, boolean supersede) implements MessagePayload, SupersedingRequest {
+    public SyntaxHighlightRequest(final String command) {
+      this(command, false);
+    }
   }
 
-  public record SyntaxHighlightRequest(String command) implements MessagePayload {
+  public record ParseRequest(String command, int cursor, boolean supersede) implements MessagePayload, SupersedingRequest {
+    public ParseRequest(final String command, final int cursor) {
+      this(command, cursor, false);
+    }
   }
 
-  public record ParseRequest(String command, int cursor) implements MessagePayload {
+  /**
+   * Asks the server to stop working on a request and not answer it.
+   *
+   * @param requestId id of the request to cancel
+   */
+  public record Cancel(String requestId) implements MessagePayload {
   }
 
   public record CommandExecute(String command) implements MessagePayload {
@@ -38,7 +68,49 @@ public final class Payloads {
   public record Ping() implements MessagePayload {
   }
 
-  public record LogSubscribe() implements MessagePayload {
+  /**
+   * @param replayLines number of recent log lines to replay before live logs, only honored with
+   *                    {@link ProtocolCapabilities#LOG_BACKLOG}
+   * @param history whether to send log lines kept from previous server runs first, only honored
+   *                with {@link ProtocolCapabilities#LOG_SPOOL}
+   * @param filter lines to forward, or {@code null} for all lines, only honored with
+   *               {@link ProtocolCapabilities#LOG_FORWARD} version {@link ProtocolCapabilities#V2}
+   */
+  public record LogSubscribe(int replayLines, boolean history, @Nullable Filter filter) implements MessagePayload {
+    public LogSubscribe() {
+      this(0, false, null);
+    }
+
+    public LogSubscribe(final int replayLines) {
+      this(replayLines, false, null);
+    }
+
+    public LogSubscribe(final int replayLines, final boolean history) {
+      this(replayLines, history, null);
+    }
+
+    /**
+     * A line is forwarded only if it passes every condition that is set.
+     *
+     * @param minLevel least severe level to forward
+     * @param includeLoggers logger name prefixes to forward, empty for all loggers
+     * @param excludeLoggers logger name prefixes never to forward
+     * @param contains text the unrendered message must contain
+     * @param pattern regular expression the unrendered message must contain a match for
+     */
+    public record Filter(
+      @Nullable LogLevel minLevel,
+      List<String> includeLoggers,
+      List<String> excludeLoggers,
+      @Nullable String contains,
+      @Nullable String pattern
+    ) {
+      public Filter {
+        // Absent from JSON when the sender left them out
+        includeLoggers = includeLoggers == null ? List.of() : List.copyOf(includeLoggers);
+        excludeLoggers = excludeLoggers == null ? List.of() : List.copyOf(excludeLoggers);
+      }
+    }
   }
 
   // Server -> Client payloads
@@ -80,6 +152,73 @@ public final class Payloads {
   ) implements MessagePayload {
   }
 
+  /**
+   * Layout the client renders {@link LogEvent}s with, mirroring the server's
+   * {@code EndermuxLoggerNamePatternSelector}.
+   *
+   * @param defaultPattern pattern for loggers without a match
+   * @param patternMatches patterns for specific loggers, in order of precedence
+   * @param alwaysWriteExceptions whether exceptions are written even if the pattern does not include them
+   * @param disableAnsi whether ANSI escape codes are disabled
+   * @param noConsoleNoAnsi whether ANSI escape codes are disabled without a console
+   */
+  public record LogLayout(
+    String defaultPattern,
+    List<PatternMatch> patternMatches,
+    boolean alwaysWriteExceptions,
+    boolean disableAnsi,
+    boolean noConsoleNoAnsi
+  ) implements MessagePayload {
+    /**
+     * @param key comma separated logger names, or package prefixes ending in {@code .}
+     * @param pattern pattern for matching loggers
+     */
+    public record PatternMatch(String key, String pattern) {
+    }
+  }
+
+  /**
+   * A log line for the client to render with the {@link LogLayout}.
+   *
+   * @param timestamp epoch milliseconds
+   * @param level severity
+   * @param logger logger name
+   * @param thread thread name
+   * @param message formatted message
+   * @param richMessage message rendered for the client's color level, when it was logged as a component
+   */
+  public record LogEvent(
+    long timestamp,
+    LogLevel level,
+    String logger,
+    String thread,
+    String message,
+    @Nullable String richMessage
+  ) implements MessagePayload {
+  }
+
+  /**
+   * A rendered log line containing a stack trace, which the client keeps in its
+   * {@link LogTraceCache} so later lines with the same trace can refer to it.
+   *
+   * @param rendered rendered line without the stack trace
+   * @param traceOffset index in {@code rendered} the stack trace belongs at
+   * @param traceId id of the stack trace
+   * @param trace rendered stack trace, or {@code null} to use the cached trace with {@code traceId}
+   */
+  public record LogTrace(
+    String rendered,
+    int traceOffset,
+    String traceId,
+    @Nullable String trace
+  ) implements MessagePayload {
+    public LogTrace {
+      if (traceOffset < 0 || traceOffset > rendered.length()) {
+        throw new IllegalArgumentException("Invalid trace offset: " + traceOffset);
+      }
+    }
+  }
+
   public record Pong() implements MessagePayload {
   }
 
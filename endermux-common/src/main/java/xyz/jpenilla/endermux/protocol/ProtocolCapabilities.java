@@ -16,17 +16,47 @@ public final class ProtocolCapabilities {
   public static final String COMPLETION = "completion";
   public static final String SYNTAX_HIGHLIGHT = "syntax_highlight";
   public static final String PARSE = "parse";
+  public static final String DEFLATE_STREAM = "deflate_stream";
+  // Selected version is the preset dictionary id, see CompressionDictionary
+  public static final String DEFLATE_DICTIONARY = "deflate_dictionary";
+  public static final String BINARY_CODEC = "binary_codec";
+  // Client request ids are per-connection increasing integers, see RequestIds
+  public static final String NUMERIC_REQUEST_ID = "numeric_request_id";
+  // LOG_SUBSCRIBE may request a replay of recent log lines
+  public static final String LOG_BACKLOG = "log_backlog";
+  // LOG_SUBSCRIBE may request log lines spooled by previous server runs
+  public static final String LOG_SPOOL = "log_spool";
+  // Log lines may be sent as LOG_EVENT for the client to render with the LOG_LAYOUT sent at subscribe time
+  public static final String LOG_LAYOUT = "log_layout";
+  // Repeated stack traces may be sent as LOG_TRACE references to a LogTraceCache entry
+  public static final String LOG_TRACE_CACHE = "log_trace_cache";
+  // Clients may CANCEL requests and mark requests as superseding earlier ones of their type
+  public static final String REQUEST_CANCEL = "request_cancel";
+  // Request envelopes may carry a deadline after which the client no longer waits for the answer
+  public static final String REQUEST_DEADLINE = "request_deadline";
 
   public static final int V1 = 1;
+  // log_forward: LOG_SUBSCRIBE filters
+  public static final int V2 = 2;
 
   // Client policy may include compatibility ranges for older server releases.
-  private static final Map<String, CapabilityVersionRange> CLIENT_SUPPORTED_CAPABILITIES = Map.of(
-    COMMAND_EXECUTE, new CapabilityVersionRange(V1, V1),
-    LOG_FORWARD, new CapabilityVersionRange(V1, V1),
-    INTERACTIVITY_STATUS, new CapabilityVersionRange(V1, V1),
-    COMPLETION, new CapabilityVersionRange(V1, V1),
-    SYNTAX_HIGHLIGHT, new CapabilityVersionRange(V1, V1),
-    PARSE, new CapabilityVersionRange(V1, V1)
+  private static final Map<String, CapabilityVersionRange> CLIENT_SUPPORTED_CAPABILITIES = Map.ofEntries(
+    Map.entry(COMMAND_EXECUTE, new CapabilityVersionRange(V1, V1)),
+    Map.entry(LOG_FORWARD, new CapabilityVersionRange(V1, V2)),
+    Map.entry(INTERACTIVITY_STATUS, new CapabilityVersionRange(V1, V1)),
+    Map.entry(COMPLETION, new CapabilityVersionRange(V1, V1)),
+    Map.entry(SYNTAX_HIGHLIGHT, new CapabilityVersionRange(V1, V1)),
+    Map.entry(PARSE, new CapabilityVersionRange(V1, V1)),
+    Map.entry(DEFLATE_STREAM, new CapabilityVersionRange(V1, V1)),
+    Map.entry(DEFLATE_DICTIONARY, new CapabilityVersionRange(CompressionDictionary.V1, CompressionDictionary.V1)),
+    Map.entry(BINARY_CODEC, new CapabilityVersionRange(V1, V1)),
+    Map.entry(NUMERIC_REQUEST_ID, new CapabilityVersionRange(V1, V1)),
+    Map.entry(LOG_BACKLOG, new CapabilityVersionRange(V1, V1)),
+    Map.entry(LOG_SPOOL, new CapabilityVersionRange(V1, V1)),
+    Map.entry(LOG_LAYOUT, new CapabilityVersionRange(V1, V1)),
+    Map.entry(LOG_TRACE_CACHE, new CapabilityVersionRange(V1, V1)),
+    Map.entry(REQUEST_CANCEL, new CapabilityVersionRange(V1, V1)),
+    Map.entry(REQUEST_DEADLINE, new CapabilityVersionRange(V1, V1))
   );
 
   private static final Set<String> CLIENT_REQUIRED_CAPABILITIES = Set.of(
@@ -36,13 +66,23 @@ public final class ProtocolCapabilities {
   );
 
   // Server policy represents the versions currently implemented by this server release.
-  private static final Map<String, CapabilityVersionRange> SERVER_SUPPORTED_CAPABILITIES = Map.of(
-    COMMAND_EXECUTE, new CapabilityVersionRange(V1, V1),
-    LOG_FORWARD, new CapabilityVersionRange(V1, V1),
-    INTERACTIVITY_STATUS, new CapabilityVersionRange(V1, V1),
-    COMPLETION, new CapabilityVersionRange(V1, V1),
-    SYNTAX_HIGHLIGHT, new CapabilityVersionRange(V1, V1),
-    PARSE, new CapabilityVersionRange(V1, V1)
+  private static final Map<String, CapabilityVersionRange> SERVER_SUPPORTED_CAPABILITIES = Map.ofEntries(
+    Map.entry(COMMAND_EXECUTE, new CapabilityVersionRange(V1, V1)),
+    Map.entry(LOG_FORWARD, new CapabilityVersionRange(V1, V2)),
+    Map.entry(INTERACTIVITY_STATUS, new CapabilityVersionRange(V1, V1)),
+    Map.entry(COMPLETION, new CapabilityVersionRange(V1, V1)),
+    Map.entry(SYNTAX_HIGHLIGHT, new CapabilityVersionRange(V1, V1)),
+    Map.entry(PARSE, new CapabilityVersionRange(V1, V1)),
+    Map.entry(DEFLATE_STREAM, new CapabilityVersionRange(V1, V1)),
+    Map.entry(DEFLATE_DICTIONARY, new CapabilityVersionRange(CompressionDictionary.V1, CompressionDictionary.V1)),
+    Map.entry(BINARY_CODEC, new CapabilityVersionRange(V1, V1)),
+    Map.entry(NUMERIC_REQUEST_ID, new CapabilityVersionRange(V1, V1)),
+    Map.entry(LOG_BACKLOG, new CapabilityVersionRange(V1, V1)),
+    Map.entry(LOG_SPOOL, new CapabilityVersionRange(V1, V1)),
+    Map.entry(LOG_LAYOUT, new CapabilityVersionRange(V1, V1)),
+    Map.entry(LOG_TRACE_CACHE, new CapabilityVersionRange(V1, V1)),
+    Map.entry(REQUEST_CANCEL, new CapabilityVersionRange(V1, V1)),
+    Map.entry(REQUEST_DEADLINE, new CapabilityVersionRange(V1, V1))
   );
 
   public static Map<String, CapabilityVersionRange> clientSupportedCapabilities() {
@@ -0,0 +1,58 @@
+package xyz.jpenilla.endermux.protocol;
+
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Helpers for numeric request ids, used after {@link ProtocolCapabilities#NUMERIC_REQUEST_ID} is negotiated.
+ *
+ * <p>A numeric request id is the canonical decimal form of a positive {@code long}: ASCII digits
+ * without sign or leading zeros.</p>
+ */
+@NullMarked
+public final class RequestIds {
+
+  /**
+   * Returned by {@link #parse(String)} for ids that are not numeric.
+   */
+  public static final long NOT_NUMERIC = -1L;
+
+  private static final int MAX_DIGITS = 18;
+
+  private RequestIds() {
+  }
+
+  /**
+   * Parses a canonical numeric request id without allocating.
+   *
+   * <p>Ids longer than 18 digits are treated as not numeric, so every parsed id fits a {@code long}.</p>
+   *
+   * @param requestId request id
+   * @return the id, or {@link #NOT_NUMERIC}
+   */
+  public static long parse(final @Nullable String requestId) {
+    if (requestId == null) {
+      return NOT_NUMERIC;
+    }
+    final int length = requestId.length();
+    if (length == 0 || length > MAX_DIGITS || requestId.charAt(0) == '0') {
+      return NOT_NUMERIC;
+    }
+    long value = 0;
+    for (int i = 0; i < length; i++) {
+      final char c = requestId.charAt(i);
+      if (c < '0' || c > '9') {
+        return NOT_NUMERIC;
+      }
+      value = value * 10 + (c - '0');
+    }
+    return value;
+  }
+
+  public static String toString(final long requestId) {
+    if (requestId <= 0) {
+      throw new IllegalArgumentException("Numeric request ids must be positive: " + requestId);
+    }
+    return Long.toString(requestId);
+  }
+}
@@ -0,0 +1,184 @@
+package xyz.jpenilla.endermux.protocol;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinaryMessageCodecTest {
+
+  private final MessageSerializer json = MessageSerializer.createStandard();
+  private final BinaryMessageCodec codec = new BinaryMessageCodec(this.json);
+
+  @Test
+  void roundTripAllMessageTypes() {
+    final MessageBuffer buffer = new MessageBuffer();
+    for (final Message<?> original : MessageSerializerTest.sampleMessages()) {
+      this.codec.serialize(original, buffer);
+      assertEquals(BinaryMessageCodec.ENVELOPE_MARKER, buffer.asByteBuffer().get(0));
+
+      final ByteBuffer bytes = buffer.asByteBuffer();
+      final Message<?> decoded = this.codec.deserialize(bytes);
+      assertNotNull(decoded, () -> "Decoded message was null for " + original.type());
+      assertEquals(original.type(), decoded.type());
+      assertEquals(original.requestId(), decoded.requestId());
+      assertEquals(original.payload(), decoded.payload());
+      assertEquals(0, bytes.position());
+    }
+  }
+
+  @Test
+  void roundTripPreservesTextAndEdgeValues() {
+    final MessageBuffer buffer = new MessageBuffer();
+    final Message<?> original = Message.response(
+      "\u00e9",
+      MessageType.REJECT,
+      new Payloads.Reject("", "Gr\u00fc\u00dfe \u2603 \uD83D\uDE80 \u001B[31m\u65E5\u672C", Integer.MIN_VALUE, Set.of())
+    );
+    this.codec.serialize(original, buffer);
+    final Message<?> decoded = this.codec.deserialize(buffer.asByteBuffer());
+    assertNotNull(decoded);
+    assertEquals(original.requestId(), decoded.requestId());
+    assertEquals(original.payload(), decoded.payload());
+
+    final Message<?> welcome = Message.response(
+      "req",
+      MessageType.WELCOME,
+      new Payloads.Welcome(Integer.MAX_VALUE, Map.of("negative", -1, "zero", 0))
+    );
+    this.codec.serialize(welcome, buffer);
+    final Message<?> decodedWelcome = this.codec.deserialize(buffer.asByteBuffer());
+    assertNotNull(decodedWelcome);
+    assertEquals(welcome.payload(), decodedWelcome.payload());
+  }
+
+  @Test
+  void logSubscribeReplayLinesIsOmittedWhenZero() {
+    final MessageBuffer buffer = new MessageBuffer();
+    this.codec.serialize(Message.unsolicited(MessageType.LOG_SUBSCRIBE, new Payloads.LogSubscribe()), buffer);
+    final int emptyLength = buffer.asByteBuffer().remaining();
+
+    final Message<?> withReplay = Message.unsolicited(MessageType.LOG_SUBSCRIBE, new Payloads.LogSubscribe(500));
+    this.codec.serialize(withReplay, buffer);
+    assertTrue(buffer.asByteBuffer().remaining() > emptyLength);
+    final Message<?> decoded = this.codec.deserialize(buffer.asByteBuffer());
+    assertNotNull(decoded);
+    assertEquals(withReplay.payload(), decoded.payload());
+
+    final Message<?> withHistory = Message.unsolicited(MessageType.LOG_SUBSCRIBE, new Payloads.LogSubscribe(0, true));
+    this.codec.serialize(withHistory, buffer);
+    final Message<?> decodedHistory = this.codec.deserialize(buffer.asByteBuffer());
+    assertNotNull(decodedHistory);
+    assertEquals(withHistory.payload(), decodedHistory.payload());
+  }
+
+  @Test
+  void supersedeIsOmittedUnlessSet() {
+    final MessageBuffer buffer = new MessageBuffer();
+    this.codec.serialize(Message.response("1", MessageType.SYNTAX_HIGHLIGHT_REQUEST, new Payloads.SyntaxHighlightRequest("say hi")), buffer);
+    final int plainLength = buffer.asByteBuffer().remaining();
+
+    final Message<?> superseding = Message.response("1", MessageType.SYNTAX_HIGHLIGHT_REQUEST, new Payloads.SyntaxHighlightRequest("say hi", true));
+    this.codec.serialize(superseding, buffer);
+    assertEquals(plainLength + 1, buffer.asByteBuffer().remaining());
+    final Message<?> decoded = this.codec.deserialize(buffer.asByteBuffer());
+    assertNotNull(decoded);
+    assertEquals(superseding.payload(), decoded.payload());
+  }
+
+  @Test
+  void deadlineRoundTripsWithEveryRequestIdForm() {
+    final MessageBuffer buffer = new MessageBuffer();
+    for (final String requestId : Arrays.asList(null, "42", "d7a7f8ed-bd7c-4e56-b5e8-cc2867e2bd4c")) {
+      final Message.Builder<Payloads.CompletionRequest> builder = Message.builder(MessageType.COMPLETION_REQUEST);
+      if (requestId != null) {
+        builder.requestId(requestId);
+      }
+      final Message<?> original = builder.deadlineMs(5_000L).payload(new Payloads.CompletionRequest("say hi", 6)).build();
+      this.codec.serialize(original, buffer);
+      final Message<?> decoded = this.codec.deserialize(buffer.asByteBuffer());
+      assertNotNull(decoded);
+      assertEquals(requestId, decoded.requestId());
+      assertEquals(5_000L, decoded.deadlineMs());
+      assertEquals(original.payload(), decoded.payload());
+    }
+  }
+
+  @Test
+  void ansiTextIsSmallerThanJson() {
+    final String rendered = "\u001B[0;32;1m[12:00:00 INFO]: \u001B[0;33mDone (1.234s)! For help, type \"help\"\u001B[m\n";
+    final Message<?> message = Message.unsolicited(MessageType.LOG_FORWARD, new Payloads.LogForward(rendered));
+    final MessageBuffer binary = new MessageBuffer();
+    final MessageBuffer text = new MessageBuffer();
+    this.codec.serialize(message, binary);
+    this.json.serialize(message, text);
+
+    // marker, type id, request id tag, one-byte string length
+    assertEquals(4 + rendered.length(), binary.size());
+    assertTrue(binary.size() < text.size() - 40, () -> binary.size() + " >= " + text.size());
+  }
+
+  @Test
+  void numericRequestIdsAreEncodedAsVarints() {
+    final MessageBuffer buffer = new MessageBuffer();
+    this.codec.serialize(Message.response("300", MessageType.PONG, new Payloads.Pong()), buffer);
+    // marker, type id, request id tag, two-byte varint
+    assertEquals(5, buffer.size());
+    final Message<?> decoded = this.codec.deserialize(buffer.asByteBuffer());
+    assertNotNull(decoded);
+    assertEquals("300", decoded.requestId());
+
+    // Not canonical, so it must round-trip as a string
+    this.codec.serialize(Message.response("0300", MessageType.PONG, new Payloads.Pong()), buffer);
+    final Message<?> decodedString = this.codec.deserialize(buffer.asByteBuffer());
+    assertNotNull(decodedString);
+    assertEquals("0300", decodedString.requestId());
+  }
+
+  @Test
+  void decodesJsonEnvelopes() {
+    final MessageBuffer buffer = new MessageBuffer();
+    final Message<?> original = Message.response("req-ping", MessageType.PING, new Payloads.Ping());
+    this.json.serialize(original, buffer);
+
+    final Message<?> decoded = this.codec.deserialize(buffer.asByteBuffer());
+    assertNotNull(decoded);
+    assertSame(MessageType.PING, decoded.type());
+    assertEquals("req-ping", decoded.requestId());
+  }
+
+  @Test
+  void invalidMessagesReturnNull() {
+    final MessageBuffer buffer = new MessageBuffer();
+    this.codec.serialize(Message.unsolicited(MessageType.LOG_FORWARD, new Payloads.LogForward("server started")), buffer);
+    final byte[] valid = buffer.toByteArray();
+
+    // truncated
+    assertNull(this.codec.deserialize(ByteBuffer.wrap(Arrays.copyOf(valid, valid.length - 1))));
+    // trailing bytes
+    assertNull(this.codec.deserialize(ByteBuffer.wrap(Arrays.copyOf(valid, valid.length + 1))));
+    // unknown type id
+    assertNull(this.codec.deserialize(ByteBuffer.wrap(new byte[]{0, 127, 0})));
+    // string length past the end of the payload
+    assertNull(this.codec.deserialize(ByteBuffer.wrap(new byte[]{0, (byte) MessageType.LOG_FORWARD.wireId(), 0, 100, 'x'})));
+    // varint longer than five bytes
+    assertNull(this.codec.deserialize(ByteBuffer.wrap(new byte[]{0, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 1})));
+    // invalid boolean
+    assertNull(this.codec.deserialize(ByteBuffer.wrap(new byte[]{0, (byte) MessageType.INTERACTIVITY_STATUS.wireId(), 0, 2})));
+    // trace offset past the end of the line
+    assertNull(this.codec.deserialize(ByteBuffer.wrap(new byte[]{0, (byte) MessageType.LOG_TRACE.wireId(), 0, 2, 'x', 4, 2, 'i', 0})));
+  }
+
+  @Test
+  void negotiatedSelectsCodec() {
+    assertSame(this.json, MessageCodec.negotiated(this.json, Map.of(ProtocolCapabilities.LOG_FORWARD, ProtocolCapabilities.V1)));
+    assertTrue(MessageCodec.negotiated(this.json, Map.of(ProtocolCapabilities.BINARY_CODEC, ProtocolCapabilities.V1)) instanceof BinaryMessageCodec);
+  }
+}
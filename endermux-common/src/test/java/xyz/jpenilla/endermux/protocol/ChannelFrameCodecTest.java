@@ -0,0 +1,281 @@
+package xyz.jpenilla.endermux.protocol;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.Pipe;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChannelFrameCodecTest {
+
+  @Test
+  void readWriteRoundTrip() throws Exception {
+    for (final FrameCompressionType compression : FrameCompressionType.values()) {
+      for (final FrameBufferPool pool : new FrameBufferPool[]{FrameBufferPool.heap(), FrameBufferPool.direct()}) {
+        final Pipe pipe = Pipe.open();
+        try (ChannelFrameCodec codec = new ChannelFrameCodec(pipe.source(), pipe.sink(), pool)) {
+          final byte[] small = "ping".getBytes(StandardCharsets.UTF_8);
+          final byte[] large = repeatedPayload(FrameBufferPool.MAX_POOLED_CAPACITY * 3);
+          final Thread writer = Thread.ofVirtual().start(() -> {
+            try {
+              codec.writeFrame(small, compression);
+              codec.writeFrame(large, compression);
+              codec.writeFrame(small, compression);
+              pipe.sink().close();
+            } catch (final Exception e) {
+              throw new RuntimeException(e);
+            }
+          });
+
+          assertArrayEquals(small, bytes(codec.readFrame()));
+          assertArrayEquals(large, bytes(codec.readFrame()));
+          assertArrayEquals(small, bytes(codec.readFrame()));
+          assertNull(codec.readFrame());
+          writer.join();
+        }
+      }
+    }
+  }
+
+  @Test
+  void framesAreCompatibleWithStreamCodec() throws Exception {
+    final byte[] payload = repeatedPayload(4096);
+    for (final FrameCompressionType compression : FrameCompressionType.values()) {
+      if (compression.stateful()) {
+        continue;
+      }
+      final ByteArrayOutputStream streamBytes = new ByteArrayOutputStream();
+      FrameCodec.writeFrame(new DataOutputStream(streamBytes), payload, compression);
+      final ChannelFrameCodec reader = new ChannelFrameCodec(
+        Channels.newChannel(new ByteArrayInputStream(streamBytes.toByteArray())),
+        Pipe.open().sink(),
+        FrameBufferPool.heap()
+      );
+      assertArrayEquals(payload, bytes(reader.readFrame()));
+
+      final Pipe pipe = Pipe.open();
+      final ChannelFrameCodec writer = new ChannelFrameCodec(pipe.source(), pipe.sink(), FrameBufferPool.heap());
+      writer.writeFrame(payload, compression);
+      pipe.sink().close();
+      assertArrayEquals(payload, FrameCodec.readFrame(new DataInputStream(Channels.newInputStream(pipe.source()))));
+    }
+  }
+
+  @Test
+  void streamCompressionCarriesContextAcrossFrames(@TempDir final Path tempDir) throws Exception {
+    final byte[] line = "[12:00:00 INFO]: \u001B[32mPlayer joined the game\u001B[m".getBytes(StandardCharsets.UTF_8);
+    final byte[] uncompressed = repeatedPayload(1000);
+    final Path file = tempDir.resolve("frames");
+    final long firstFrameBytes;
+    final long repeatedFrameBytes;
+    try (
+      FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+      ChannelFrameCodec writer = new ChannelFrameCodec(Pipe.open().source(), out, FrameBufferPool.heap())
+    ) {
+      writer.writeFrame(line, FrameCompressionType.DEFLATE_STREAM);
+      firstFrameBytes = out.position();
+      writer.writeFrame(uncompressed, FrameCompressionType.NONE);
+      final long beforeRepeat = out.position();
+      writer.writeFrame(line, FrameCompressionType.DEFLATE_STREAM);
+      repeatedFrameBytes = out.position() - beforeRepeat;
+    }
+    assertTrue(repeatedFrameBytes < firstFrameBytes / 2, "repeated frame was " + repeatedFrameBytes + " bytes");
+
+    try (
+      FileChannel in = FileChannel.open(file, StandardOpenOption.READ);
+      ChannelFrameCodec reader = new ChannelFrameCodec(in, Pipe.open().sink(), FrameBufferPool.heap())
+    ) {
+      assertArrayEquals(line, bytes(reader.readFrame()));
+      assertArrayEquals(uncompressed, bytes(reader.readFrame()));
+      assertArrayEquals(line, bytes(reader.readFrame()));
+      assertNull(reader.readFrame());
+    }
+  }
+
+  @Test
+  void bufferedFramesAreWrittenTogetherOnFlush(@TempDir final Path tempDir) throws Exception {
+    final byte[] line = "[12:00:00 INFO]: \u001B[32mPlayer joined the game\u001B[m".getBytes(StandardCharsets.UTF_8);
+    final byte[] large = repeatedPayload(FrameBufferPool.MAX_POOLED_CAPACITY * 2);
+    final Path file = tempDir.resolve("frames");
+    try (
+      FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+      ChannelFrameCodec writer = new ChannelFrameCodec(Pipe.open().source(), out, FrameBufferPool.heap())
+    ) {
+      for (final FrameCompressionType compression : FrameCompressionType.values()) {
+        writer.bufferFrame(ByteBuffer.wrap(line), compression);
+      }
+      writer.bufferFrame(ByteBuffer.wrap(large), FrameCompressionType.NONE);
+      assertEquals(0, out.position());
+      assertTrue(writer.bufferedBytes() > large.length);
+
+      writer.flush();
+      assertEquals(0, writer.bufferedBytes());
+      assertEquals(out.position(), out.size());
+
+      // writeFrame must not overtake frames that are still buffered
+      writer.bufferFrame(ByteBuffer.wrap(line), FrameCompressionType.DEFLATE_STREAM);
+      writer.writeFrame(line, FrameCompressionType.NONE);
+      assertEquals(0, writer.bufferedBytes());
+    }
+
+    try (
+      FileChannel in = FileChannel.open(file, StandardOpenOption.READ);
+      ChannelFrameCodec reader = new ChannelFrameCodec(in, Pipe.open().sink(), FrameBufferPool.heap())
+    ) {
+      for (int i = 0; i < FrameCompressionType.values().length; i++) {
+        assertArrayEquals(line, bytes(reader.readFrame()));
+      }
+      assertArrayEquals(large, bytes(reader.readFrame()));
+      assertArrayEquals(line, bytes(reader.readFrame()));
+      assertArrayEquals(line, bytes(reader.readFrame()));
+      assertNull(reader.readFrame());
+    }
+  }
+
+  @Test
+  void preEncodedFramesCanBeSentOnOtherCodecs() throws Exception {
+    final byte[] payload = repeatedPayload(4096);
+    final ChannelFrameCodec encoder = new ChannelFrameCodec(Pipe.open().source(), Pipe.open().sink(), FrameBufferPool.heap());
+    final ByteBuffer data = ByteBuffer.wrap(payload);
+    final ByteBuffer gzipFrame = encoder.encodeFrame(data, FrameCompressionType.GZIP);
+    final ByteBuffer dictionaryFrame = encoder.encodeFrame(data, FrameCompressionType.DEFLATE_DICTIONARY);
+    assertEquals(payload.length, data.remaining());
+    assertThrows(IllegalArgumentException.class, () -> encoder.encodeFrame(data, FrameCompressionType.DEFLATE_STREAM));
+
+    final Pipe pipe = Pipe.open();
+    try (ChannelFrameCodec codec = new ChannelFrameCodec(pipe.source(), pipe.sink(), FrameBufferPool.heap())) {
+      codec.bufferEncodedFrame(gzipFrame);
+      codec.bufferFrame(ByteBuffer.wrap(payload), FrameCompressionType.DEFLATE_STREAM);
+      codec.bufferEncodedFrame(dictionaryFrame);
+      codec.bufferEncodedFrame(gzipFrame);
+      final Thread writer = Thread.ofVirtual().start(() -> {
+        try {
+          codec.flush();
+        } catch (final Exception e) {
+          throw new RuntimeException(e);
+        }
+      });
+      for (int i = 0; i < 4; i++) {
+        assertArrayEquals(payload, bytes(codec.readFrame()));
+      }
+      writer.join();
+    }
+  }
+
+  @Test
+  void streamCompressedFramesAreRejectedByStreamCodec() throws Exception {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final ProtocolException ex = assertThrows(
+      ProtocolException.class,
+      () -> FrameCodec.writeFrame(new DataOutputStream(out), new byte[1], FrameCompressionType.DEFLATE_STREAM)
+    );
+    assertEquals("Stateful frame compression requires ChannelFrameCodec: DEFLATE_STREAM", ex.getMessage());
+  }
+
+  @Test
+  void dictionaryCompressionShrinksSmallLogFrames() throws Exception {
+    final byte[] frame = "{\"type\":\"LOG_FORWARD\",\"data\":{\"rendered\":\"[12:00:00 WARN]: \\u001b[0;33;1mCan't keep up! Is the server overloaded?\\u001b[m\\n\"}}"
+      .getBytes(StandardCharsets.UTF_8);
+    final Pipe pipe = Pipe.open();
+    try (ChannelFrameCodec codec = new ChannelFrameCodec(pipe.source(), pipe.sink(), FrameBufferPool.heap())) {
+      codec.writeFrame(frame, FrameCompressionType.DEFLATE_DICTIONARY);
+      final ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+      while (length.hasRemaining()) {
+        pipe.source().read(length);
+      }
+      assertTrue(length.getInt(0) < frame.length / 2, "compressed frame was " + length.getInt(0) + " bytes");
+    }
+  }
+
+  @Test
+  void unknownDictionaryThrowsProtocolException() throws Exception {
+    final ByteBuffer frame = ByteBuffer.allocate(Integer.BYTES + 3)
+      .putInt(3)
+      .put((byte) FrameCompressionType.DEFLATE_DICTIONARY.wireValue())
+      .put((byte) 0)
+      .put((byte) 0);
+    final ChannelFrameCodec codec = new ChannelFrameCodec(
+      Channels.newChannel(new ByteArrayInputStream(frame.array())),
+      Pipe.open().sink(),
+      FrameBufferPool.heap()
+    );
+    final ProtocolException ex = assertThrows(ProtocolException.class, codec::readFrame);
+    assertEquals("Unknown compression dictionary: 0", ex.getMessage());
+  }
+
+  @Test
+  void eofBeforeFrameReturnsNull() throws Exception {
+    final ChannelFrameCodec codec = new ChannelFrameCodec(
+      Channels.newChannel(new ByteArrayInputStream(new byte[0])),
+      Pipe.open().sink(),
+      FrameBufferPool.heap()
+    );
+    assertNull(codec.readFrame());
+  }
+
+  @Test
+  void invalidFrameLengthThrowsProtocolException() throws Exception {
+    final ByteBuffer frame = ByteBuffer.allocate(Integer.BYTES).putInt(0, 0);
+    final ChannelFrameCodec codec = new ChannelFrameCodec(
+      Channels.newChannel(new ByteArrayInputStream(frame.array())),
+      Pipe.open().sink(),
+      FrameBufferPool.heap()
+    );
+    final ProtocolException ex = assertThrows(ProtocolException.class, codec::readFrame);
+    assertEquals("Invalid frame size: 0", ex.getMessage());
+  }
+
+  @Test
+  void oversizedUncompressedPayloadWriteThrowsProtocolException() throws Exception {
+    final byte[] oversize = new byte[SocketProtocolConstants.MAX_UNCOMPRESSED_PAYLOAD_SIZE_BYTES + 1];
+    final Pipe pipe = Pipe.open();
+    final ChannelFrameCodec codec = new ChannelFrameCodec(pipe.source(), pipe.sink(), FrameBufferPool.heap());
+
+    final ProtocolException ex = assertThrows(ProtocolException.class, () -> codec.writeFrame(oversize, FrameCompressionType.GZIP));
+    assertEquals("Uncompressed payload too large: " + oversize.length, ex.getMessage());
+  }
+
+  @Test
+  void pooledBuffersAreReused() {
+    final FrameBufferPool pool = FrameBufferPool.heap();
+    final ByteBuffer buffer = pool.acquire(5000);
+    assertEquals(8192, buffer.capacity());
+    pool.release(buffer);
+    assertSame(buffer, pool.acquire(8000));
+
+    final ByteBuffer oversized = pool.acquire(FrameBufferPool.MAX_POOLED_CAPACITY + 1);
+    assertEquals(FrameBufferPool.MAX_POOLED_CAPACITY + 1, oversized.capacity());
+  }
+
+  private static byte[] bytes(final ByteBuffer buffer) {
+    assertNotNull(buffer);
+    final byte[] bytes = new byte[buffer.remaining()];
+    buffer.get(bytes);
+    return bytes;
+  }
+
+  private static byte[] repeatedPayload(final int size) {
+    final byte[] line = "[12:00:00 INFO]: \u001B[32mDone\u001B[m (1.234s)! For help, type \"help\"\n".getBytes(StandardCharsets.UTF_8);
+    final byte[] payload = new byte[size];
+    for (int i = 0; i < size; i++) {
+      payload[i] = line[i % line.length];
+    }
+    return payload;
+  }
+}
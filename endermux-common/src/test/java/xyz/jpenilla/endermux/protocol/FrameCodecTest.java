@@ -73,9 +73,9 @@ class FrameCodecTest {
   void unsupportedCompressionThrowsProtocolException() {
     final ProtocolException ex = assertThrows(
       ProtocolException.class,
-      () -> FrameCodec.readFrame(inputForLength(2, 2))
+      () -> FrameCodec.readFrame(inputForLength(2, 255))
     );
-    assertEquals("Unsupported frame compression: 2", ex.getMessage());
+    assertEquals("Unsupported frame compression: 255", ex.getMessage());
   }
 
   @Test
@@ -92,6 +92,19 @@ class FrameCodecTest {
     assertArrayEquals(payload, decoded);
   }
 
+  @Test
+  void dictionaryRoundTrip() throws Exception {
+    final byte[] payload = "{\"type\":\"LOG_FORWARD\",\"data\":{\"rendered\":\"[12:00:00 INFO]: Done\\n\"}}".getBytes(StandardCharsets.UTF_8);
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream(bytes);
+
+    FrameCodec.writeFrame(out, payload, FrameCompressionType.DEFLATE_DICTIONARY);
+
+    final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    assertArrayEquals(payload, FrameCodec.readFrame(in));
+    assertEquals(CompressionDictionary.LATEST, bytes.toByteArray()[Integer.BYTES + 1]);
+  }
+
   @Test
   void gzipTooLargeAfterDecompressionThrowsProtocolException() throws Exception {
     final byte[] oversized = new byte[SocketProtocolConstants.MAX_UNCOMPRESSED_PAYLOAD_SIZE_BYTES + 1];
@@ -0,0 +1,36 @@
+package xyz.jpenilla.endermux.protocol;
+
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class FrameCompressionPolicyTest {
+
+  @Test
+  void defaultsOnlyCompressLargePayloadsWithGzip() {
+    final FrameCompressionPolicy policy = FrameCompressionPolicy.negotiated(Map.of(ProtocolCapabilities.LOG_FORWARD, ProtocolCapabilities.V1));
+    assertSame(FrameCompressionPolicy.defaults(), policy);
+    assertEquals(FrameCompressionType.NONE, policy.select(FrameCompressionPolicy.GZIP_THRESHOLD_BYTES - 1));
+    assertEquals(FrameCompressionType.GZIP, policy.select(FrameCompressionPolicy.GZIP_THRESHOLD_BYTES));
+  }
+
+  @Test
+  void dictionaryIsUsedAboveThreshold() {
+    final FrameCompressionPolicy policy = FrameCompressionPolicy.negotiated(Map.of(ProtocolCapabilities.DEFLATE_DICTIONARY, CompressionDictionary.V1));
+    assertEquals(FrameCompressionType.NONE, policy.select(FrameCompressionPolicy.DICTIONARY_THRESHOLD_BYTES - 1));
+    assertEquals(FrameCompressionType.DEFLATE_DICTIONARY, policy.select(FrameCompressionPolicy.DICTIONARY_THRESHOLD_BYTES));
+    assertEquals(FrameCompressionType.DEFLATE_DICTIONARY, policy.select(FrameCompressionPolicy.GZIP_THRESHOLD_BYTES));
+    assertEquals(CompressionDictionary.V1, policy.dictionaryId());
+  }
+
+  @Test
+  void streamTakesPrecedence() {
+    final FrameCompressionPolicy policy = FrameCompressionPolicy.negotiated(Map.of(
+      ProtocolCapabilities.DEFLATE_STREAM, ProtocolCapabilities.V1,
+      ProtocolCapabilities.DEFLATE_DICTIONARY, CompressionDictionary.V1
+    ));
+    assertEquals(FrameCompressionType.DEFLATE_STREAM, policy.select(1));
+  }
+}
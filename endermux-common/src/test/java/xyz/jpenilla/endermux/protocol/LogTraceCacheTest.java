@@ -0,0 +1,24 @@
+package xyz.jpenilla.endermux.protocol;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class LogTraceCacheTest {
+
+  @Test
+  void lookupsDoNotDelayEviction() {
+    final LogTraceCache<String> cache = new LogTraceCache<>();
+    for (int i = 0; i < LogTraceCache.CAPACITY; i++) {
+      cache.put("trace " + i, "value " + i);
+    }
+    // A peer that missed this lookup must still evict the same trace
+    assertEquals("value 0", cache.get("trace 0"));
+
+    cache.put("trace " + LogTraceCache.CAPACITY, "newest");
+    assertNull(cache.get("trace 0"));
+    assertEquals("value 1", cache.get("trace 1"));
+    assertEquals("newest", cache.get("trace " + LogTraceCache.CAPACITY));
+  }
+}
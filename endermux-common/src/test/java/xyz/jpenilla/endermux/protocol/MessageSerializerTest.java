@@ -2,12 +2,15 @@ package xyz.jpenilla.endermux.protocol;
 
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import net.kyori.ansi.ColorLevel;
 import org.junit.jupiter.api.Test;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
@@ -30,6 +33,44 @@ class MessageSerializerTest {
     }
   }
 
+  @Test
+  void byteRoundTripMatchesStringEncoding() {
+    final MessageBuffer buffer = new MessageBuffer();
+    for (final Message<?> original : sampleMessages()) {
+      this.serializer.serialize(original, buffer);
+      assertArrayEquals(this.serializer.serialize(original).getBytes(StandardCharsets.UTF_8), buffer.toByteArray());
+
+      final ByteBuffer bytes = buffer.asByteBuffer();
+      final Message<?> decoded = this.serializer.deserialize(bytes);
+      assertNotNull(decoded);
+      assertEquals(original.payload(), decoded.payload());
+      assertEquals(0, bytes.position());
+    }
+  }
+
+  @Test
+  void byteRoundTripPreservesNonAsciiText() {
+    final String rendered = "\u00a7aGr\u00fc\u00dfe \u2603 \uD83D\uDE80 \u001B[38;2;255;0;0m\u65E5\u672C";
+    final MessageBuffer buffer = new MessageBuffer();
+    this.serializer.serialize(Message.unsolicited(MessageType.LOG_FORWARD, new Payloads.LogForward(rendered)), buffer);
+    assertArrayEquals(
+      this.serializer.serialize(Message.unsolicited(MessageType.LOG_FORWARD, new Payloads.LogForward(rendered))).getBytes(StandardCharsets.UTF_8),
+      buffer.toByteArray()
+    );
+
+    final Message<?> decoded = this.serializer.deserialize(buffer.asByteBuffer());
+    assertNotNull(decoded);
+    assertEquals(rendered, ((Payloads.LogForward) decoded.payload()).rendered());
+  }
+
+  @Test
+  void deserializeAcceptsDataBeforeType() {
+    final Message<?> decoded = this.serializer.deserialize("{\"data\":{\"command\":\"say hi\"},\"requestId\":null,\"type\":\"COMMAND_EXECUTE\"}");
+    assertNotNull(decoded);
+    assertEquals(new Payloads.CommandExecute("say hi"), decoded.payload());
+    assertNull(decoded.requestId());
+  }
+
   @Test
   void serializeOmitsRequestIdWhenNull() {
     final Message<Payloads.Ping> message = Message.unsolicited(MessageType.PING, new Payloads.Ping());
@@ -39,15 +80,33 @@ class MessageSerializerTest {
     assertFalse(root.has("requestId"));
   }
 
+  @Test
+  void deadlineIsOnlyWrittenWhenSet() {
+    final Message<?> plain = Message.response("req-1", MessageType.PARSE_REQUEST, new Payloads.ParseRequest("say hi", 4));
+    assertFalse(JsonParser.parseString(this.serializer.serialize(plain)).getAsJsonObject().has("deadlineMs"));
+
+    final String json = this.serializer.serialize(plain.withDeadlineMs(5_000L));
+    assertEquals(5_000L, JsonParser.parseString(json).getAsJsonObject().get("deadlineMs").getAsLong());
+    final Message<?> decoded = this.serializer.deserialize(json);
+    assertNotNull(decoded);
+    assertEquals(5_000L, decoded.deadlineMs());
+    assertEquals(plain.payload(), decoded.payload());
+  }
+
   @Test
   void deserializeInvalidMessagesReturnsNull() {
     assertNull(this.serializer.deserialize("{\"data\":{}}"));
     assertNull(this.serializer.deserialize("{\"type\":\"NOT_A_REAL_TYPE\",\"data\":{}}"));
     assertNull(this.serializer.deserialize("{\"type\":\"PING\",\"data\":"));
     assertNull(this.serializer.deserialize("[1,2,3]"));
+    assertNull(this.serializer.deserialize("{\"type\":\"PING\",\"data\":{}}{}"));
+    assertNull(this.serializer.deserialize("{\"type\":\"PING\",\"deadlineMs\":-1,\"data\":{}}"));
+    assertNull(this.serializer.deserialize(
+      "{\"type\":\"LOG_TRACE\",\"data\":{\"rendered\":\"line\",\"traceOffset\":5,\"traceId\":\"id\"}}"
+    ));
   }
 
-  private static List<Message<?>> sampleMessages() {
+  static List<Message<?>> sampleMessages() {
     return List.of(
       Message.response(
         "req-hello",
@@ -62,9 +121,18 @@ class MessageSerializerTest {
       Message.response("req-complete", MessageType.COMPLETION_REQUEST, new Payloads.CompletionRequest("say he", 6)),
       Message.response("req-highlight", MessageType.SYNTAX_HIGHLIGHT_REQUEST, new Payloads.SyntaxHighlightRequest("say hi")),
       Message.response("req-parse", MessageType.PARSE_REQUEST, new Payloads.ParseRequest("say hi", 4)),
+      Message.response("req-complete-latest", MessageType.COMPLETION_REQUEST, new Payloads.CompletionRequest("say hel", 7, true)),
+      Message.response("req-highlight-latest", MessageType.SYNTAX_HIGHLIGHT_REQUEST, new Payloads.SyntaxHighlightRequest("say hil", true)),
+      Message.response("req-parse-latest", MessageType.PARSE_REQUEST, new Payloads.ParseRequest("say hil", 7, true)),
+      Message.unsolicited(MessageType.CANCEL, new Payloads.Cancel("req-complete")),
       Message.unsolicited(MessageType.COMMAND_EXECUTE, new Payloads.CommandExecute("say hi")),
       Message.response("req-ping", MessageType.PING, new Payloads.Ping()),
       Message.unsolicited(MessageType.LOG_SUBSCRIBE, new Payloads.LogSubscribe()),
+      Message.unsolicited(MessageType.LOG_SUBSCRIBE, new Payloads.LogSubscribe(
+        0,
+        false,
+        new Payloads.LogSubscribe.Filter(LogLevel.WARN, List.of("net.minecraft"), List.of("net.minecraft.server.level"), null, "(?i)overloaded")
+      )),
       Message.response(
         "req-welcome",
         MessageType.WELCOME,
@@ -96,6 +164,41 @@ class MessageSerializerTest {
         6
       )),
       Message.unsolicited(MessageType.LOG_FORWARD, new Payloads.LogForward("server started")),
+      Message.unsolicited(MessageType.LOG_LAYOUT, new Payloads.LogLayout(
+        "[%d{HH:mm:ss} %level] [%logger]: %msg%n",
+        List.of(new Payloads.LogLayout.PatternMatch(",Main,net.minecraft.", "[%d{HH:mm:ss} %level]: %msg%n")),
+        true,
+        false,
+        false
+      )),
+      Message.unsolicited(MessageType.LOG_EVENT, new Payloads.LogEvent(
+        1_700_000_000_123L,
+        LogLevel.INFO,
+        "net.minecraft.server.MinecraftServer",
+        "Server thread",
+        "Done (3.2s)!",
+        null
+      )),
+      Message.unsolicited(MessageType.LOG_EVENT, new Payloads.LogEvent(
+        1_700_000_000_456L,
+        LogLevel.WARN,
+        "Paper",
+        "Server thread",
+        "Can't keep up!",
+        "\u001B[33mCan't keep up!\u001B[0m"
+      )),
+      Message.unsolicited(MessageType.LOG_TRACE, new Payloads.LogTrace(
+        "[12:00:00 ERROR]: Tick failed\n",
+        30,
+        "9f86d081884c7d65",
+        "java.lang.IllegalStateException: boom\n\tat Main.main(Main.java:1)\n"
+      )),
+      Message.unsolicited(MessageType.LOG_TRACE, new Payloads.LogTrace(
+        "[12:00:01 ERROR]: Tick failed\n",
+        30,
+        "9f86d081884c7d65",
+        null
+      )),
       Message.response("req-pong", MessageType.PONG, new Payloads.Pong()),
       Message.response("req-error", MessageType.ERROR, new Payloads.Error("Bad request", null)),
       Message.unsolicited(MessageType.INTERACTIVITY_STATUS, new Payloads.InteractivityStatus(true))
@@ -0,0 +1,28 @@
+package xyz.jpenilla.endermux.protocol;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RequestIdsTest {
+
+  @Test
+  void parsesCanonicalDecimalIds() {
+    assertEquals(1L, RequestIds.parse("1"));
+    assertEquals(999_999_999_999_999_999L, RequestIds.parse("999999999999999999"));
+    assertEquals(12345L, RequestIds.parse(RequestIds.toString(12345L)));
+  }
+
+  @Test
+  void rejectsNonCanonicalIds() {
+    assertEquals(RequestIds.NOT_NUMERIC, RequestIds.parse(null));
+    assertEquals(RequestIds.NOT_NUMERIC, RequestIds.parse(""));
+    assertEquals(RequestIds.NOT_NUMERIC, RequestIds.parse("0"));
+    assertEquals(RequestIds.NOT_NUMERIC, RequestIds.parse("007"));
+    assertEquals(RequestIds.NOT_NUMERIC, RequestIds.parse("-1"));
+    assertEquals(RequestIds.NOT_NUMERIC, RequestIds.parse("1000000000000000000"));
+    assertEquals(RequestIds.NOT_NUMERIC, RequestIds.parse("d7a7f8ed-bd7c-4e56-b5e8-cc2867e2bd4c"));
+    assertThrows(IllegalArgumentException.class, () -> RequestIds.toString(0L));
+  }
+}
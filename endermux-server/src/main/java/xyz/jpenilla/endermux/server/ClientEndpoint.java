@@ -2,31 +2,61 @@ package xyz.jpenilla.endermux.server;
 
 import java.io.IOException;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.Consumer;
 import org.jspecify.annotations.NullMarked;
 import org.jspecify.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import xyz.jpenilla.endermux.protocol.FrameCompressionPolicy;
 import xyz.jpenilla.endermux.protocol.Message;
+import xyz.jpenilla.endermux.protocol.MessageCodec;
 import xyz.jpenilla.endermux.protocol.MessageSerializer;
+import xyz.jpenilla.endermux.protocol.MessageType;
+import xyz.jpenilla.endermux.protocol.Payloads;
 import xyz.jpenilla.endermux.protocol.ProtocolException;
 import xyz.jpenilla.endermux.protocol.SocketProtocolConstants;
 import xyz.jpenilla.endermux.protocol.TimedRead;
+import xyz.jpenilla.endermux.server.api.ServerOptions;
 
 @NullMarked
 public final class ClientEndpoint implements AutoCloseable {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(ClientEndpoint.class);
+  private static final int MAX_BATCH_MESSAGES = 256;
+  // Leaves room in every batch for log lines while both lanes have messages waiting
+  private static final int MAX_PRIORITY_BATCH_MESSAGES = 192;
+  private static final long WRITER_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+  // Charged per queued message on top of any log text, roughly the retained size of the message objects
+  private static final long MESSAGE_OVERHEAD_BYTES = 64;
 
   private final SocketEndpoint connection;
-  private final BlockingQueue<Message<?>> outboundQueue = new LinkedBlockingQueue<>();
+  private final ServerOptions options;
+  private final OutboundQueueCounters counters;
+  // Responses and control messages, written ahead of queued log traffic
+  private final Queue<OutboundMessage> priorityQueue = new ConcurrentLinkedQueue<>();
+  private final Queue<OutboundMessage> logQueue = new ConcurrentLinkedQueue<>();
   private final AtomicBoolean writerStarted = new AtomicBoolean(false);
+  private volatile @Nullable Thread writerThread;
+  private volatile boolean writerParked;
+  private final AtomicInteger queuedMessages = new AtomicInteger();
+  private final AtomicLong queuedBytes = new AtomicLong();
+  private final AtomicLong droppedLogMessages = new AtomicLong();
+  private final AtomicLong unreportedDrops = new AtomicLong();
+  private final Object overflowLock = new Object();
+  // System.nanoTime() when the queue went over budget, or 0 while within budget
+  private volatile long overflowSinceNanos;
   private volatile Consumer<Message<?>> messageHandler;
   private volatile Runnable onDisconnect;
   private volatile boolean running = false;
@@ -34,8 +64,19 @@ public final class ClientEndpoint implements AutoCloseable {
   public ClientEndpoint(
     final SocketChannel socketChannel,
     final MessageSerializer serializer
+  ) throws IOException {
+    this(socketChannel, serializer, ServerOptions.defaults(), new OutboundQueueCounters());
+  }
+
+  ClientEndpoint(
+    final SocketChannel socketChannel,
+    final MessageSerializer serializer,
+    final ServerOptions options,
+    final OutboundQueueCounters counters
   ) throws IOException {
     this.connection = new FramedSocketEndpoint(socketChannel, serializer);
+    this.options = options;
+    this.counters = counters;
   }
 
   public void start(final Consumer<Message<?>> messageHandler, final Runnable onDisconnect) {
@@ -76,10 +117,70 @@ public final class ClientEndpoint implements AutoCloseable {
   }
 
   public boolean send(final Message<?> message) {
+    return this.send(OutboundMessage.of(message));
+  }
+
+  public boolean send(final OutboundMessage message) {
     if (!this.running) {
       return false;
     }
-    return this.outboundQueue.offer(message);
+    this.queuedMessages.incrementAndGet();
+    final long queuedBytes = this.queuedBytes.addAndGet(estimateBytes(message));
+    this.lane(message).offer(message);
+    if (queuedBytes > this.options.maxQueuedBytes()) {
+      this.handleOverflow();
+    }
+    this.wakeWriter();
+    return this.running;
+  }
+
+  /**
+   * Queues several messages at once, waking the writer a single time so they go out in
+   * as few writes as possible.
+   *
+   * @param messages messages in send order
+   * @return whether the connection is still running
+   */
+  public boolean sendAll(final List<OutboundMessage> messages) {
+    if (!this.running) {
+      return false;
+    }
+    if (messages.isEmpty()) {
+      return true;
+    }
+    long bytes = 0;
+    for (final OutboundMessage message : messages) {
+      bytes += estimateBytes(message);
+    }
+    this.queuedMessages.addAndGet(messages.size());
+    final long queuedBytes = this.queuedBytes.addAndGet(bytes);
+    for (final OutboundMessage message : messages) {
+      this.lane(message).offer(message);
+    }
+    if (queuedBytes > this.options.maxQueuedBytes()) {
+      this.handleOverflow();
+    }
+    this.wakeWriter();
+    return this.running;
+  }
+
+  /**
+   * Removes queued responses to a request that have not been written yet.
+   *
+   * @param requestId request id
+   * @return number of removed messages
+   */
+  public int dropResponses(final String requestId) {
+    int dropped = 0;
+    for (final OutboundMessage queued : this.priorityQueue) {
+      // remove() fails if the writer polled the message in the meantime, which already released its bytes
+      if (requestId.equals(queued.message().requestId()) && this.priorityQueue.remove(queued)) {
+        this.queuedMessages.decrementAndGet();
+        this.queuedBytes.addAndGet(-estimateBytes(queued));
+        dropped++;
+      }
+    }
+    return dropped;
   }
 
   public boolean sendNow(final Message<?> message) {
@@ -95,6 +196,26 @@ public final class ClientEndpoint implements AutoCloseable {
     }
   }
 
+  /**
+   * Sets the compression used for outbound frames. Must only be called once the
+   * handshake has selected the capabilities the policy was built from.
+   *
+   * @param policy compression policy
+   */
+  public void setCompressionPolicy(final FrameCompressionPolicy policy) {
+    this.connection.setCompressionPolicy(policy);
+  }
+
+  /**
+   * Sets the codec for messages after the handshake. Must only be called once the
+   * handshake has selected the capabilities the codec was chosen from.
+   *
+   * @param codec message codec
+   */
+  public void setMessageCodec(final MessageCodec codec) {
+    this.connection.setMessageCodec(codec);
+  }
+
   public @Nullable Message<?> readInitialMessage(final long timeoutMs) throws IOException {
     final Message<?> message = this.readWithTimeout(timeoutMs);
     if (message == null) {
@@ -107,6 +228,23 @@ public final class ClientEndpoint implements AutoCloseable {
     return this.running && this.connection.isOpen();
   }
 
+  public int queuedMessages() {
+    return this.queuedMessages.get();
+  }
+
+  /**
+   * Approximate size of the messages waiting to be written.
+   *
+   * @return queued bytes
+   */
+  public long queuedBytes() {
+    return this.queuedBytes.get();
+  }
+
+  public long droppedLogMessages() {
+    return this.droppedLogMessages.get();
+  }
+
   @Override
   public void close() {
     this.shutdown();
@@ -116,32 +254,177 @@ public final class ClientEndpoint implements AutoCloseable {
     if (!this.writerStarted.compareAndSet(false, true)) {
       return;
     }
-    Thread.ofVirtual()
+    this.writerThread = Thread.ofVirtual()
       .name("SocketWriter")
       .start(this::runWriterLoop);
   }
 
+  private void wakeWriter() {
+    if (this.writerParked) {
+      final Thread writer = this.writerThread;
+      if (writer != null) {
+        LockSupport.unpark(writer);
+      }
+    }
+  }
+
   private void runWriterLoop() {
+    final List<OutboundMessage> batch = new ArrayList<>();
     try {
       while (this.running && this.connection.isOpen()) {
-        final Message<?> message = this.outboundQueue.poll(200, TimeUnit.MILLISECONDS);
-        if (message == null) {
+        // Drops only ever remove messages still queued, so the marker goes ahead of everything left
+        final long dropped = this.unreportedDrops.getAndSet(0);
+        if (dropped > 0) {
+          batch.add(droppedLinesMarker(dropped));
+        }
+        OutboundMessage message;
+        int polled = 0;
+        int polledPriority = 0;
+        long polledBytes = 0;
+        final long now = System.nanoTime();
+        while (batch.size() < MAX_BATCH_MESSAGES) {
+          if (polledPriority < MAX_PRIORITY_BATCH_MESSAGES && (message = this.priorityQueue.poll()) != null) {
+            polledPriority++;
+          } else if ((message = this.logQueue.poll()) == null && (message = this.priorityQueue.poll()) == null) {
+            break;
+          }
+          polled++;
+          polledBytes += estimateBytes(message);
+          // The client already gave up on responses past their deadline
+          if (!message.isExpired(now)) {
+            batch.add(message);
+          }
+        }
+        if (polled > 0) {
+          this.queuedMessages.addAndGet(-polled);
+          this.queuedBytes.addAndGet(-polledBytes);
+        }
+        if (batch.isEmpty()) {
+          // Publish the parked flag before the final emptiness check so a concurrent send() either
+          // sees the flag and unparks us, or its message is seen here
+          this.writerParked = true;
+          if (this.priorityQueue.isEmpty() && this.logQueue.isEmpty() && this.running) {
+            LockSupport.parkNanos(this, WRITER_PARK_NANOS);
+          }
+          this.writerParked = false;
           continue;
         }
         try {
-          this.connection.writeMessage(message);
+          this.connection.writeMessages(batch);
         } catch (final IOException e) {
           LOGGER.debug("Failed to send message to client", e);
           break;
         }
+        batch.clear();
+        if (this.overflowSinceNanos != 0 && this.queuedBytes.get() <= this.options.maxQueuedBytes()) {
+          this.overflowSinceNanos = 0;
+        }
       }
-    } catch (final InterruptedException e) {
-      Thread.currentThread().interrupt();
     } finally {
       this.shutdown();
     }
   }
 
+  private void handleOverflow() {
+    synchronized (this.overflowLock) {
+      final long maxQueuedBytes = this.options.maxQueuedBytes();
+      long dropped = 0;
+      final Iterator<OutboundMessage> it = this.logQueue.iterator();
+      while (this.queuedBytes.get() > maxQueuedBytes && it.hasNext()) {
+        final OutboundMessage queued = it.next();
+        // remove() fails if the writer polled the message in the meantime, which already released its bytes
+        if (!queued.isSpooled() && droppable(queued.message()) && this.logQueue.remove(queued)) {
+          this.queuedMessages.decrementAndGet();
+          this.queuedBytes.addAndGet(-estimateBytes(queued));
+          dropped++;
+        }
+      }
+      if (dropped > 0) {
+        this.droppedLogMessages.addAndGet(dropped);
+        this.unreportedDrops.addAndGet(dropped);
+        this.counters.droppedLogMessages.add(dropped);
+      }
+
+      final long now = System.nanoTime();
+      final long overflowSince = this.overflowSinceNanos;
+      if (overflowSince == 0) {
+        this.overflowSinceNanos = now | 1;
+        return;
+      }
+      if (this.options.slowConsumerPolicy() == ServerOptions.SlowConsumerPolicy.DISCONNECT
+        && now - overflowSince >= this.options.slowConsumerGracePeriod().toNanos()) {
+        LOGGER.warn(
+          "Disconnecting console socket client: outbound queue over {} bytes for more than {}",
+          maxQueuedBytes,
+          this.options.slowConsumerGracePeriod()
+        );
+        this.counters.slowConsumerDisconnects.increment();
+        this.shutdown();
+      }
+    }
+  }
+
+  // LOG_LAYOUT shares the log lane so it stays ahead of the lines rendered with it
+  private Queue<OutboundMessage> lane(final OutboundMessage message) {
+    if (message.isSpooled()) {
+      return this.logQueue;
+    }
+    final MessageType type = message.message().type();
+    return isLogLine(type) || type == MessageType.LOG_LAYOUT ? this.logQueue : this.priorityQueue;
+  }
+
+  private static boolean isLogLine(final MessageType type) {
+    return type == MessageType.LOG_FORWARD || type == MessageType.LOG_EVENT || type == MessageType.LOG_TRACE;
+  }
+
+  // LOG_LAYOUT is needed to render everything after it, and a LOG_TRACE carrying its trace is
+  // already in the session's sent traces, so later lines only reference it. Neither is dropped
+  private static boolean droppable(final Message<?> message) {
+    return isLogLine(message.type())
+      && !(message.payload() instanceof Payloads.LogTrace trace && trace.trace() != null);
+  }
+
+  // Charges the text a message carries in chars, plus a flat overhead. Must return the same value
+  // every time for a message, since it is charged when queued and refunded when written or dropped
+  private static long estimateBytes(final OutboundMessage message) {
+    // Spooled frames are read from disk while writing, so they hold no memory while queued
+    if (message.isSpooled()) {
+      return MESSAGE_OVERHEAD_BYTES;
+    }
+    return MESSAGE_OVERHEAD_BYTES + switch (message.message().payload()) {
+      case Payloads.LogForward(String rendered) -> rendered.length();
+      case Payloads.LogEvent event -> event.message().length() + length(event.richMessage());
+      case Payloads.LogTrace trace -> trace.rendered().length() + length(trace.trace());
+      case Payloads.CompletionResponse response -> {
+        long chars = 0;
+        for (final Payloads.CompletionResponse.CandidateInfo candidate : response.candidates()) {
+          chars += candidate.value().length() + candidate.display().length() + length(candidate.description());
+        }
+        yield chars;
+      }
+      case Payloads.SyntaxHighlightResponse response -> response.command().length() + response.highlighted().length();
+      case Payloads.ParseResponse response -> {
+        long chars = response.word().length() + response.line().length();
+        for (final String word : response.words()) {
+          chars += word.length();
+        }
+        yield chars;
+      }
+      case Payloads.Error error -> error.message().length() + length(error.details());
+      default -> 0;
+    };
+  }
+
+  private static int length(final @Nullable String text) {
+    return text == null ? 0 : text.length();
+  }
+
+  private static OutboundMessage droppedLinesMarker(final long dropped) {
+    final String rendered = "[endermux] " + dropped + (dropped == 1 ? " log line was" : " log lines were")
+      + " dropped because this client could not keep up" + System.lineSeparator();
+    return OutboundMessage.of(Message.unsolicited(MessageType.LOG_FORWARD, new Payloads.LogForward(rendered)));
+  }
+
   private @Nullable Message<?> readWithTimeout(final long timeoutMs) throws IOException {
     return TimedRead.read(
       () -> {
@@ -161,8 +444,15 @@ public final class ClientEndpoint implements AutoCloseable {
   private void shutdown() {
     if (this.running) {
       this.running = false;
-      this.outboundQueue.clear();
+      this.priorityQueue.clear();
+      this.logQueue.clear();
+      this.queuedMessages.set(0);
+      this.queuedBytes.set(0);
       this.connection.close();
+      final Thread writer = this.writerThread;
+      if (writer != null) {
+        LockSupport.unpark(writer);
+      }
       final Runnable callback = this.onDisconnect;
       if (callback != null) {
         callback.run();
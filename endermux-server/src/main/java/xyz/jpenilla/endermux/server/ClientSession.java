@@ -1,17 +1,25 @@
 package xyz.jpenilla.endermux.server;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 import net.kyori.ansi.ColorLevel;
 import org.jspecify.annotations.NullMarked;
 import org.jspecify.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import xyz.jpenilla.endermux.ansi.ColorLevelContext;
+import xyz.jpenilla.endermux.protocol.LogTraceCache;
 import xyz.jpenilla.endermux.protocol.Message;
 import xyz.jpenilla.endermux.protocol.MessagePayload;
 import xyz.jpenilla.endermux.protocol.MessageType;
 import xyz.jpenilla.endermux.protocol.Payloads;
+import xyz.jpenilla.endermux.protocol.ProtocolCapabilities;
+import xyz.jpenilla.endermux.server.api.ServerOptions;
 import xyz.jpenilla.endermux.server.handlers.HandlerRegistry;
 import xyz.jpenilla.endermux.server.handlers.ResponseContext;
 
@@ -22,7 +30,23 @@ public final class ClientSession implements Consumer<Message<?>> {
 
   private final ClientEndpoint connection;
   private final HandlerRegistry handlerRegistry;
+  private final RequestDispatcher requestDispatcher;
+  private final LogBacklog backlog;
+  private final @Nullable LogSpool spool;
+  private final Supplier<Payloads.@Nullable LogLayout> clientLogLayout;
+  private final Runnable onLogReady;
+  private final Object logLock = new Object();
+  // Guarded by logLock. Mirrors the client's trace cache, so only updated as lines are queued
+  private final LogTraceCache<Boolean> sentTraces = new LogTraceCache<>();
   private volatile boolean logReady = false;
+  // All set before logReady, never changed afterwards
+  private volatile @Nullable SessionLogFilter logFilter;
+  private volatile boolean clientRendersLogs;
+  private volatile boolean clientCachesTraces;
+  // Guarded by logLock. Lines before this sequence were either replayed or predate the subscription
+  private long liveLogsFrom = Long.MAX_VALUE;
+  // Guarded by logLock. Live lines held back while the backlog replay is being rendered
+  private @Nullable List<LogBacklog.Entry> heldLogs;
   private volatile boolean interactivityAvailable;
   private volatile ColorLevel colorLevel = ColorLevel.NONE;
   private volatile Map<String, Integer> negotiatedCapabilities = Map.of();
@@ -31,10 +55,37 @@ public final class ClientSession implements Consumer<Message<?>> {
     final ClientEndpoint connection,
     final HandlerRegistry handlerRegistry,
     final boolean interactivityAvailable
+  ) {
+    this(
+      connection,
+      handlerRegistry,
+      interactivityAvailable,
+      ServerOptions.defaults(),
+      new LogBacklog(0, 0),
+      null,
+      () -> null,
+      () -> {}
+    );
+  }
+
+  ClientSession(
+    final ClientEndpoint connection,
+    final HandlerRegistry handlerRegistry,
+    final boolean interactivityAvailable,
+    final ServerOptions options,
+    final LogBacklog backlog,
+    final @Nullable LogSpool spool,
+    final Supplier<Payloads.@Nullable LogLayout> clientLogLayout,
+    final Runnable onLogReady
   ) {
     this.connection = connection;
     this.handlerRegistry = handlerRegistry;
+    this.requestDispatcher = new RequestDispatcher(options, this::dropResponses);
     this.interactivityAvailable = interactivityAvailable;
+    this.backlog = backlog;
+    this.spool = spool;
+    this.clientLogLayout = clientLogLayout;
+    this.onLogReady = onLogReady;
   }
 
   public void initialize() {
@@ -71,7 +122,14 @@ public final class ClientSession implements Consumer<Message<?>> {
         ctx.error("Capability not negotiated: " + MessageType.LOG_FORWARD.capability());
         return;
       }
-      this.logReady = true;
+      if (!this.logReady) {
+        this.subscribeToLogs((Payloads.LogSubscribe) message.payload(), ctx);
+      }
+      return;
+    }
+
+    if (message.type() == MessageType.CANCEL) {
+      this.requestDispatcher.cancel(((Payloads.Cancel) message.payload()).requestId());
       return;
     }
 
@@ -85,20 +143,153 @@ public final class ClientSession implements Consumer<Message<?>> {
       return;
     }
 
-    final boolean handled;
-    try (final ColorLevelContext.Scope _ = ColorLevelContext.push(this.colorLevel)) {
-      handled = this.handlerRegistry.handle(
-        message.type(),
-        message.payload(),
-        ctx
+    if (!this.handlerRegistry.hasHandler(message.type())) {
+      ctx.error("Unknown message type: " + message.type());
+      return;
+    }
+
+    // Handlers may block, so they run off the reader to keep later requests and pings flowing
+    final ColorLevel colorLevel = this.colorLevel;
+    final long deadlineMs = this.supportsCapability(ProtocolCapabilities.REQUEST_DEADLINE) ? message.deadlineMs() : 0L;
+    final RequestDispatcher.Request request = deadlineMs > 0
+      ? RequestDispatcher.Request.withDeadline(message.requestId(), System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMs))
+      : new RequestDispatcher.Request(message.requestId());
+    final ResponseContext requestCtx = new ImmutableResponseContext(message.requestId(), request);
+    final boolean supersede = message.payload() instanceof Payloads.SupersedingRequest superseding
+      && superseding.supersede()
+      && this.supportsCapability(ProtocolCapabilities.REQUEST_CANCEL);
+    final boolean queued = this.requestDispatcher.dispatch(message.type(), request, supersede, () -> {
+      try (final ColorLevelContext.Scope _ = ColorLevelContext.push(colorLevel)) {
+        this.handlerRegistry.handle(message.type(), message.payload(), requestCtx);
+      }
+    });
+    if (!queued) {
+      ctx.error("Too many pending requests: " + message.type());
+    }
+  }
+
+  /**
+   * Drops requests that have not started running. Called once the connection is closed.
+   */
+  void close() {
+    this.requestDispatcher.close();
+  }
+
+  private void subscribeToLogs(final Payloads.LogSubscribe subscribe, final ResponseContext ctx) {
+    final Payloads.LogSubscribe.Filter requestedFilter = subscribe.filter();
+    SessionLogFilter filter = null;
+    if (requestedFilter != null && this.supportsCapability(ProtocolCapabilities.LOG_FORWARD, ProtocolCapabilities.V2)) {
+      try {
+        filter = SessionLogFilter.compile(requestedFilter);
+      } catch (final IllegalArgumentException e) {
+        ctx.error("Invalid log filter", e.getMessage());
+        return;
+      }
+    }
+    this.logFilter = filter;
+    final Payloads.LogLayout layout = this.supportsCapability(ProtocolCapabilities.LOG_LAYOUT)
+      ? this.clientLogLayout.get()
+      : null;
+    this.clientRendersLogs = layout != null;
+    this.clientCachesTraces = this.supportsCapability(ProtocolCapabilities.LOG_TRACE_CACHE);
+
+    final int replayLines = this.supportsCapability(ProtocolCapabilities.LOG_BACKLOG) ? subscribe.replayLines() : 0;
+    final LogSpool spool = this.spool;
+    // The spool only hands out previous runs, so it never overlaps the backlog or live lines.
+    // Its frames can't be filtered without decoding them, so filtered sessions get no history.
+    final List<LogSpool.Region> history = spool != null && filter == null && subscribe.history()
+      && this.supportsCapability(ProtocolCapabilities.LOG_SPOOL)
+      ? spool.history()
+      : List.of();
+    final LogBacklog.Snapshot snapshot;
+    synchronized (this.logLock) {
+      // Set before the snapshot so any line appended after it is seen as deliverable
+      this.logReady = true;
+      snapshot = this.backlog.snapshot(replayLines, filter);
+      this.liveLogsFrom = snapshot.nextSequence();
+      // The layout must reach the client before any event, so it is sent like a replay
+      if (!snapshot.entries().isEmpty() || !history.isEmpty() || layout != null) {
+        this.heldLogs = new ArrayList<>();
+      }
+    }
+    this.onLogReady.run();
+    if (snapshot.entries().isEmpty() && history.isEmpty() && layout == null) {
+      return;
+    }
+
+    // Render outside the lock so live broadcasts only ever append to heldLogs meanwhile
+    final ColorLevel colorLevel = this.colorLevel;
+    for (final LogBacklog.Entry entry : snapshot.entries()) {
+      this.renderLog(entry, colorLevel);
+    }
+    synchronized (this.logLock) {
+      final List<LogBacklog.Entry> held = this.heldLogs;
+      final List<OutboundMessage> replay = new ArrayList<>(
+        snapshot.entries().size() + (held == null ? 0 : held.size()) + 2
       );
+      if (layout != null) {
+        replay.add(OutboundMessage.of(Message.unsolicited(MessageType.LOG_LAYOUT, layout)));
+      }
+      if (!history.isEmpty()) {
+        replay.add(OutboundMessage.spooled(history));
+      }
+      for (final LogBacklog.Entry entry : snapshot.entries()) {
+        replay.add(this.logMessage(entry, colorLevel));
+      }
+      if (held != null) {
+        for (final LogBacklog.Entry entry : held) {
+          replay.add(this.logMessage(entry, colorLevel));
+        }
+      }
+      this.heldLogs = null;
+      this.connection.sendAll(replay);
     }
+  }
 
-    if (!handled) {
-      ctx.error("Unknown message type: " + message.type());
+  void deliverLog(final LogBacklog.Entry entry) {
+    if (!this.isLogReady()) {
+      return;
+    }
+    // Checked before rendering, so lines no session wants are never rendered
+    final SessionLogFilter filter = this.logFilter;
+    if (filter != null && !filter.test(entry.metadata())) {
+      return;
+    }
+    final ColorLevel colorLevel = this.colorLevel;
+    this.renderLog(entry, colorLevel);
+    synchronized (this.logLock) {
+      if (entry.sequence() < this.liveLogsFrom) {
+        return;
+      }
+      final List<LogBacklog.Entry> held = this.heldLogs;
+      if (held != null) {
+        held.add(entry);
+      } else {
+        this.connection.send(this.logMessage(entry, colorLevel));
+      }
     }
   }
 
+  // Renders everything logMessage may pick, so it only finds cached messages under the lock
+  private void renderLog(final LogBacklog.Entry entry, final ColorLevel colorLevel) {
+    if (!this.clientCachesTraces || entry.trace(colorLevel) == null) {
+      entry.message(colorLevel, this.clientRendersLogs);
+    }
+  }
+
+  // Called under logLock in the order lines are queued, which keeps sentTraces in step with the client
+  private OutboundMessage logMessage(final LogBacklog.Entry entry, final ColorLevel colorLevel) {
+    final LogBacklog.Trace trace = this.clientCachesTraces ? entry.trace(colorLevel) : null;
+    if (trace == null) {
+      return entry.message(colorLevel, this.clientRendersLogs);
+    }
+    if (this.sentTraces.get(trace.id()) != null) {
+      return trace.reference();
+    }
+    this.sentTraces.put(trace.id(), Boolean.TRUE);
+    return trace.full();
+  }
+
   public boolean isLogReady() {
     return this.logReady && this.supportsCapability(MessageType.LOG_FORWARD);
   }
@@ -129,6 +320,11 @@ public final class ClientSession implements Consumer<Message<?>> {
     return this.negotiatedCapabilities.containsKey(capability);
   }
 
+  private boolean supportsCapability(final String capability, final int minVersion) {
+    final Integer version = this.negotiatedCapabilities.get(capability);
+    return version != null && version >= minVersion;
+  }
+
   private boolean supportsCapability(final MessageType type) {
     final @Nullable String capability = type.capability();
     return capability == null || this.supportsCapability(capability);
@@ -138,7 +334,19 @@ public final class ClientSession implements Consumer<Message<?>> {
     ctx.reply(new Payloads.Pong());
   }
 
+  // Replies the handler queued before it noticed the cancellation are never written
+  private void dropResponses(final RequestDispatcher.Request request) {
+    final @Nullable String requestId = request.requestId();
+    if (requestId != null) {
+      this.connection.dropResponses(requestId);
+    }
+  }
+
   private void send(final Message<?> message) {
+    this.send(OutboundMessage.of(message));
+  }
+
+  private void send(final OutboundMessage message) {
     if (!this.connection.send(message)) {
       LOGGER.debug("Failed to send message to client");
     }
@@ -146,9 +354,15 @@ public final class ClientSession implements Consumer<Message<?>> {
 
   private final class ImmutableResponseContext implements ResponseContext {
     private final @Nullable String requestId;
+    private final RequestDispatcher.@Nullable Request request;
 
     ImmutableResponseContext(final @Nullable String requestId) {
+      this(requestId, null);
+    }
+
+    ImmutableResponseContext(final @Nullable String requestId, final RequestDispatcher.@Nullable Request request) {
       this.requestId = requestId;
+      this.request = request;
     }
 
     @Override
@@ -158,7 +372,9 @@ public final class ClientSession implements Consumer<Message<?>> {
 
     @Override
     public void reply(final MessagePayload payload) {
-      ClientSession.this.send(this.buildResponse(payload));
+      if (!this.isCancelled()) {
+        this.send(this.buildResponse(payload));
+      }
     }
 
     @Override
@@ -168,7 +384,29 @@ public final class ClientSession implements Consumer<Message<?>> {
 
     @Override
     public void error(final String message, final @Nullable String details) {
-      ClientSession.this.send(this.buildError(message, details));
+      if (!this.isCancelled()) {
+        this.send(this.buildError(message, details));
+      }
+    }
+
+    @Override
+    public <T> CompletionStage<T> defer(final CompletionStage<T> stage) {
+      final RequestDispatcher.@Nullable Request request = this.request;
+      return request != null ? request.defer(stage) : stage;
+    }
+
+    private void send(final Message<?> message) {
+      final RequestDispatcher.@Nullable Request request = this.request;
+      if (request != null && request.hasDeadline()) {
+        ClientSession.this.send(OutboundMessage.withDeadline(message, request.deadlineNanos()));
+      } else {
+        ClientSession.this.send(message);
+      }
+    }
+
+    private boolean isCancelled() {
+      final RequestDispatcher.@Nullable Request request = this.request;
+      return request != null && request.isCancelled();
     }
 
     private Message<?> buildResponse(final MessagePayload payload) {
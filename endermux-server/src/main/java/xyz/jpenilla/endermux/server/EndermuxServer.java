@@ -9,7 +9,6 @@ import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
-import java.util.EnumMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
@@ -26,12 +25,15 @@ import org.jspecify.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import xyz.jpenilla.endermux.protocol.CapabilityVersionRange;
-import xyz.jpenilla.endermux.protocol.Message;
+import xyz.jpenilla.endermux.protocol.FrameCompressionPolicy;
+import xyz.jpenilla.endermux.protocol.MessageCodec;
 import xyz.jpenilla.endermux.protocol.MessageSerializer;
-import xyz.jpenilla.endermux.protocol.MessageType;
 import xyz.jpenilla.endermux.protocol.Payloads;
 import xyz.jpenilla.endermux.protocol.ProtocolCapabilities;
 import xyz.jpenilla.endermux.server.api.InteractiveConsoleHooks;
+import xyz.jpenilla.endermux.server.api.LogMetadata;
+import xyz.jpenilla.endermux.server.api.OutboundQueueStats;
+import xyz.jpenilla.endermux.server.api.ServerOptions;
 import xyz.jpenilla.endermux.server.handlers.CommandHandler;
 import xyz.jpenilla.endermux.server.handlers.CompletionHandler;
 import xyz.jpenilla.endermux.server.handlers.HandlerRegistry;
@@ -52,10 +54,19 @@ public final class EndermuxServer {
   private final Path socketPath;
   private final Path socketStartupPath;
   private final int maxConnections;
+  private final ServerOptions options;
+  private final OutboundQueueCounters outboundQueueCounters = new OutboundQueueCounters();
+  private final LogBacklog logBacklog;
+  private final LogSpool logSpool;
+  private final @Nullable LogRepeatCoalescer logRepeatCoalescer;
+  private final @Nullable LogRateLimiter logRateLimiter;
   private final AtomicReference<@Nullable InteractiveConsoleHooks> interactiveHooks = new AtomicReference<>();
+  private volatile Payloads.@Nullable LogLayout clientLogLayout;
 
   private final AtomicBoolean running = new AtomicBoolean(false);
   private final AtomicBoolean interactivityAvailable = new AtomicBoolean(false);
+  // Sessions that are log ready; recounted whenever one subscribes or disconnects
+  private volatile int logSubscribers;
   private volatile Path boundSocketPath;
   private ServerSocketChannel serverChannel;
   private Thread acceptorThread;
@@ -64,11 +75,21 @@ public final class EndermuxServer {
     final Path socketPath,
     final int maxConnections
   ) {
+    this(socketPath, maxConnections, ServerOptions.defaults());
+  }
+
+  public EndermuxServer(
+    final Path socketPath,
+    final int maxConnections,
+    final ServerOptions options
+  ) {
+    this.options = Objects.requireNonNull(options, "options");
     this.socketPath = socketPath;
     this.socketStartupPath = this.socketPath.resolveSibling(
       "." + this.socketPath.getFileName() + ".starting." + ProcessHandle.current().pid()
     );
     this.maxConnections = maxConnections;
+    this.logBacklog = new LogBacklog(options.logBacklogLines(), options.logBacklogBytes());
     this.executor = Executors.newThreadPerTaskExecutor(
       Thread.ofVirtual()
         .name("EndermuxWorker-", 0)
@@ -77,6 +98,13 @@ public final class EndermuxServer {
     this.handlerRegistry = new HandlerRegistry();
     this.handshakeHandler = new ServerHandshakeHandler(SUPPORTED_CAPABILITIES);
     this.serializer = MessageSerializer.createStandard();
+    this.logSpool = new LogSpool(socketPath, options.logSpoolSegments(), options.logSpoolSegmentBytes(), this.serializer);
+    this.logRepeatCoalescer = options.logRepeatWindow().isZero()
+      ? null
+      : new LogRepeatCoalescer(options.logRepeatWindow(), this::broadcastRepeatSummary);
+    this.logRateLimiter = LogRateLimiter.enabled(options.logRateLimit(), options.logRateLimitOverrides())
+      ? new LogRateLimiter(options.logRateLimit(), options.logRateLimitOverrides(), this::broadcastRateLimitNotice)
+      : null;
 
     this.registerHandlers();
   }
@@ -93,6 +121,7 @@ public final class EndermuxServer {
       try {
        this.deleteSocketFile(this.socketPath);
        this.deleteSocketFile(this.socketStartupPath);
+        this.logSpool.open();
 
         final UnixDomainSocketAddress address = UnixDomainSocketAddress.of(this.socketStartupPath);
         this.boundSocketPath = this.socketStartupPath;
@@ -120,6 +149,7 @@ public final class EndermuxServer {
       this.closeConnections();
       this.shutdownExecutor();
       this.joinAcceptor();
+      this.logSpool.close();
       this.cleanupSocketFiles();
       LOGGER.info("Console socket server stopped");
     }
@@ -148,8 +178,17 @@ public final class EndermuxServer {
 
   private void handleNewConnection(final SocketChannel clientChannel) {
     try {
-      final ClientEndpoint connection = new ClientEndpoint(clientChannel, this.serializer);
-      final ClientSession session = new ClientSession(connection, this.handlerRegistry, this.interactivityAvailable.get());
+      final ClientEndpoint connection = new ClientEndpoint(clientChannel, this.serializer, this.options, this.outboundQueueCounters);
+      final ClientSession session = new ClientSession(
+        connection,
+        this.handlerRegistry,
+        this.interactivityAvailable.get(),
+        this.options,
+        this.logBacklog,
+        this.logSpool,
+        () -> this.clientLogLayout,
+        this::recountLogSubscribers
+      );
       connection.start(session, () -> this.removeConnection(connection));
       this.executor.submit(() -> this.runConnection(connection, session));
 
@@ -171,6 +210,8 @@ public final class EndermuxServer {
       }
       session.setColorLevel(handshake.hello().colorLevel());
       session.setNegotiatedCapabilities(handshake.selectedCapabilities());
+      connection.setCompressionPolicy(FrameCompressionPolicy.negotiated(handshake.selectedCapabilities()));
+      connection.setMessageCodec(MessageCodec.negotiated(this.serializer, handshake.selectedCapabilities()));
 
       this.sessions.put(connection, session);
       this.connections.add(connection);
@@ -199,6 +240,7 @@ public final class EndermuxServer {
     this.connections.forEach(ClientEndpoint::close);
     this.connections.clear();
     this.sessions.clear();
+    this.recountLogSubscribers();
   }
 
   private void shutdownExecutor() {
@@ -251,25 +293,204 @@ public final class EndermuxServer {
   }
 
   void removeConnection(final ClientEndpoint connection) {
-    this.sessions.remove(connection);
+    final ClientSession session = this.sessions.remove(connection);
+    if (session != null) {
+      session.close();
+      if (session.isLogReady()) {
+        this.recountLogSubscribers();
+      }
+    }
     if (this.connections.remove(connection)) {
       LOGGER.info("Console socket connection closed ({} active)", this.connections.size());
     }
   }
 
+  private synchronized void recountLogSubscribers() {
+    int count = 0;
+    for (final ClientSession session : this.sessions.values()) {
+      if (session.isLogReady()) {
+        count++;
+      }
+    }
+    this.logSubscribers = count;
+  }
+
+  /**
+   * Whether any connected session currently receives forwarded logs. Log sources should
+   * use {@link #acceptsLogs()} to decide whether to prepare events, since lines are also
+   * kept for replay while nobody is subscribed.
+   *
+   * @return whether there are log subscribers
+   */
+  public boolean hasLogSubscribers() {
+    return this.logSubscribers > 0;
+  }
+
+  /**
+   * Whether {@link #broadcastLog} currently does anything with a line, either delivering it
+   * to subscribers or keeping it in the replay backlog or spool.
+   *
+   * @return whether logs are accepted
+   */
+  public boolean acceptsLogs() {
+    return this.logSubscribers > 0 || this.logBacklog.enabled() || this.logSpool.enabled();
+  }
+
+  /**
+   * Forwards a line without metadata. Sessions that subscribed with a filter never receive it.
+   *
+   * @param renderedByColorLevel renders the line for a color level
+   */
   public void broadcastLog(final Function<ColorLevel, String> renderedByColorLevel) {
-    final EnumMap<ColorLevel, Message<Payloads.LogForward>> messages = new EnumMap<>(ColorLevel.class);
+    this.broadcast(null, renderedByColorLevel, null, null);
+  }
+
+  /**
+   * Forwards a line. The line is only rendered for color levels of sessions whose subscription
+   * filter it passes.
+   *
+   * @param metadata line metadata checked by subscription filters
+   * @param renderedByColorLevel renders the line for a color level
+   */
+  public void broadcastLog(final LogMetadata metadata, final Function<ColorLevel, String> renderedByColorLevel) {
+    this.broadcast(Objects.requireNonNull(metadata, "metadata"), renderedByColorLevel, null, null);
+  }
+
+  /**
+   * Forwards a line that clients which {@linkplain #enableClientRendering render lines themselves}
+   * receive as a structured event instead of rendered text.
+   *
+   * @param metadata line metadata checked by subscription filters
+   * @param renderedByColorLevel renders the line for a color level
+   * @param eventByColorLevel builds the structured event for a color level
+   */
+  public void broadcastLog(
+    final LogMetadata metadata,
+    final Function<ColorLevel, String> renderedByColorLevel,
+    final Function<ColorLevel, Payloads.LogEvent> eventByColorLevel
+  ) {
+    this.broadcast(
+      Objects.requireNonNull(metadata, "metadata"),
+      renderedByColorLevel,
+      Objects.requireNonNull(eventByColorLevel, "eventByColorLevel"),
+      null
+    );
+  }
+
+  /**
+   * Forwards a line with a stack trace. Clients that cache stack traces receive a trace only the
+   * first time, and a reference to it for repeated occurrences.
+   *
+   * @param metadata line metadata checked by subscription filters
+   * @param renderedByColorLevel renders the line for a color level
+   * @param renderedWithoutTraceByColorLevel renders the line for a color level without its stack trace
+   */
+  public void broadcastLogWithTrace(
+    final LogMetadata metadata,
+    final Function<ColorLevel, String> renderedByColorLevel,
+    final Function<ColorLevel, String> renderedWithoutTraceByColorLevel
+  ) {
+    this.broadcast(
+      Objects.requireNonNull(metadata, "metadata"),
+      renderedByColorLevel,
+      null,
+      Objects.requireNonNull(renderedWithoutTraceByColorLevel, "renderedWithoutTraceByColorLevel")
+    );
+  }
+
+  private void broadcast(
+    final @Nullable LogMetadata metadata,
+    final Function<ColorLevel, String> renderedByColorLevel,
+    final @Nullable Function<ColorLevel, Payloads.LogEvent> eventByColorLevel,
+    final @Nullable Function<ColorLevel, String> renderedWithoutTraceByColorLevel
+  ) {
+    if (!this.acceptsLogs()) {
+      return;
+    }
+    final LogRepeatCoalescer coalescer = this.logRepeatCoalescer;
+    if (coalescer == null) {
+      this.deliverLimited(metadata, renderedByColorLevel, eventByColorLevel, renderedWithoutTraceByColorLevel);
+      return;
+    }
+    // Repeats are only counted, so they are never rendered and don't use up the rate limit
+    coalescer.submit(
+      metadata,
+      () -> this.deliverLimited(metadata, renderedByColorLevel, eventByColorLevel, renderedWithoutTraceByColorLevel)
+    );
+  }
+
+  private void deliverLimited(
+    final @Nullable LogMetadata metadata,
+    final Function<ColorLevel, String> renderedByColorLevel,
+    final @Nullable Function<ColorLevel, Payloads.LogEvent> eventByColorLevel,
+    final @Nullable Function<ColorLevel, String> renderedWithoutTraceByColorLevel
+  ) {
+    final LogRateLimiter rateLimiter = this.logRateLimiter;
+    if (rateLimiter == null || rateLimiter.tryAcquire(metadata)) {
+      this.deliver(metadata, renderedByColorLevel, eventByColorLevel, renderedWithoutTraceByColorLevel);
+    }
+  }
+
+  private void broadcastRateLimitNotice(final LogMetadata metadata) {
+    final String rendered = "[endermux] " + metadata.message() + System.lineSeparator();
+    this.deliver(metadata, colorLevel -> rendered, null, null);
+  }
+
+  // Summaries pass the same subscription filters as the line they count
+  private void broadcastRepeatSummary(final LogMetadata metadata, final long repeats) {
+    final String rendered = "[endermux] Previous log line repeated " + repeats
+      + (repeats == 1 ? " more time" : " more times") + System.lineSeparator();
+    this.deliver(metadata, colorLevel -> rendered, null, null);
+  }
+
+  private void deliver(
+    final @Nullable LogMetadata metadata,
+    final Function<ColorLevel, String> renderedByColorLevel,
+    final @Nullable Function<ColorLevel, Payloads.LogEvent> eventByColorLevel,
+    final @Nullable Function<ColorLevel, String> renderedWithoutTraceByColorLevel
+  ) {
+    // Sessions with the same color level share the entry's message, and with it the encoded frames
+    final LogBacklog.Entry entry = this.logBacklog.append(
+      metadata,
+      renderedByColorLevel,
+      eventByColorLevel,
+      renderedWithoutTraceByColorLevel
+    );
+    if (this.logSpool.enabled()) {
+      this.logSpool.append(entry.message(ColorLevel.NONE));
+    }
+    for (final ClientSession session : this.sessions.values()) {
+      session.deliverLog(entry);
+    }
+  }
+
+  /**
+   * Lets clients that support it render lines themselves with {@code layout}. Applies to
+   * sessions that subscribe to logs afterwards.
+   *
+   * @param layout layout lines are rendered with
+   */
+  public void enableClientRendering(final Payloads.LogLayout layout) {
+    this.clientLogLayout = Objects.requireNonNull(layout, "layout");
+  }
+
+  public void disableClientRendering() {
+    this.clientLogLayout = null;
+  }
+
+  public OutboundQueueStats outboundQueueStats() {
+    int queuedMessages = 0;
+    long queuedBytes = 0;
     for (final ClientEndpoint connection : this.connections) {
-      final ClientSession session = this.sessions.get(connection);
-      if (session == null || !session.isLogReady()) {
-        continue;
-      }
-      final Message<Payloads.LogForward> message = messages.computeIfAbsent(
-        session.colorLevel(),
-        colorLevel -> Message.unsolicited(MessageType.LOG_FORWARD, new Payloads.LogForward(renderedByColorLevel.apply(colorLevel)))
-      );
-      connection.send(message);
+      queuedMessages += connection.queuedMessages();
+      queuedBytes += connection.queuedBytes();
     }
+    return new OutboundQueueStats(
+      queuedMessages,
+      queuedBytes,
+      this.outboundQueueCounters.droppedLogMessages.sum(),
+      this.outboundQueueCounters.slowConsumerDisconnects.sum()
+    );
   }
 
   public boolean isRunning() {
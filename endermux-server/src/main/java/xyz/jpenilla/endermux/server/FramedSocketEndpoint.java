@@ -1,22 +1,25 @@
 package xyz.jpenilla.endermux.server;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
-import java.nio.channels.Channels;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SocketChannel;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
 import java.util.Optional;
 import org.jspecify.annotations.NullMarked;
 import org.jspecify.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import xyz.jpenilla.endermux.protocol.ChannelFrameCodec;
 import xyz.jpenilla.endermux.protocol.ConnectionState;
+import xyz.jpenilla.endermux.protocol.FrameBufferPool;
+import xyz.jpenilla.endermux.protocol.FrameCompressionPolicy;
 import xyz.jpenilla.endermux.protocol.FrameCompressionType;
-import xyz.jpenilla.endermux.protocol.FrameCodec;
 import xyz.jpenilla.endermux.protocol.Message;
+import xyz.jpenilla.endermux.protocol.MessageBuffer;
+import xyz.jpenilla.endermux.protocol.MessageCodec;
 import xyz.jpenilla.endermux.protocol.MessageSerializer;
 import xyz.jpenilla.endermux.protocol.ProtocolException;
 
@@ -24,22 +27,23 @@ import xyz.jpenilla.endermux.protocol.ProtocolException;
 public final class FramedSocketEndpoint implements SocketEndpoint {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(FramedSocketEndpoint.class);
-  private static final int GZIP_THRESHOLD_BYTES = 1024;
+  // Flush a batch early once it reaches this size, keeping the batch buffer poolable
+  private static final int MAX_BATCH_BYTES = FrameBufferPool.MAX_POOLED_CAPACITY / 2;
 
   private final SocketChannel socketChannel;
-  private final MessageSerializer serializer;
-  private final DataInputStream reader;
-  private final DataOutputStream writer;
+  private final ChannelFrameCodec frameCodec;
+  private final MessageBuffer writeBuffer = new MessageBuffer();
   private final java.util.concurrent.atomic.AtomicReference<ConnectionState> state;
   private final @Nullable String remoteAddress;
+  private volatile FrameCompressionPolicy compressionPolicy = FrameCompressionPolicy.defaults();
+  private volatile MessageCodec codec;
 
   public FramedSocketEndpoint(final SocketChannel socketChannel, final MessageSerializer serializer) throws IOException {
     this.socketChannel = socketChannel;
-    this.serializer = serializer;
+    this.codec = serializer;
     this.state = new java.util.concurrent.atomic.AtomicReference<>(ConnectionState.CONNECTING);
 
-    this.reader = new DataInputStream(new BufferedInputStream(Channels.newInputStream(socketChannel)));
-    this.writer = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(socketChannel)));
+    this.frameCodec = new ChannelFrameCodec(socketChannel, FrameBufferPool.heap());
 
     String addr = null;
     try {
@@ -53,14 +57,14 @@ public final class FramedSocketEndpoint implements SocketEndpoint {
 
   @Override
   public Optional<Message<?>> readMessage() throws IOException {
-    final byte[] data = FrameCodec.readFrame(this.reader);
+    final ByteBuffer data = this.frameCodec.readFrame();
     if (data == null) {
       return Optional.empty();
     }
 
-    final String json = new String(data, StandardCharsets.UTF_8);
-    final Message<?> message = this.serializer.deserialize(json);
+    final Message<?> message = this.codec.deserialize(data);
     if (message == null) {
+      final String json = ChannelFrameCodec.decodeUtf8(data);
       LOGGER.warn("Received invalid message from client: {}", json.substring(0, Math.min(100, json.length())));
       throw new ProtocolException("Invalid message payload");
     }
@@ -73,16 +77,79 @@ public final class FramedSocketEndpoint implements SocketEndpoint {
       return false;
     }
 
-    final byte[] json = this.serializer.serialize(message).getBytes(StandardCharsets.UTF_8);
-    final FrameCompressionType compression = shouldCompress(json)
-      ? FrameCompressionType.GZIP
-      : FrameCompressionType.NONE;
-    FrameCodec.writeFrame(this.writer, json, compression);
+    synchronized (this.writeBuffer) {
+      this.codec.serialize(message, this.writeBuffer);
+      this.frameCodec.writeFrame(this.writeBuffer.asByteBuffer(), this.compressionPolicy.select(this.writeBuffer.size()));
+    }
+    return true;
+  }
+
+  @Override
+  public boolean writeMessages(final List<OutboundMessage> messages) throws IOException {
+    if (!this.isOpen()) {
+      return false;
+    }
+
+    synchronized (this.writeBuffer) {
+      final MessageCodec codec = this.codec;
+      final FrameCompressionPolicy policy = this.compressionPolicy;
+      for (final OutboundMessage message : messages) {
+        if (message.isSpooled()) {
+          this.frameCodec.flush();
+          this.transferSpooled(message.spooledRegions());
+        } else if (message.isShared()) {
+          this.bufferShared(message, codec, policy);
+        } else {
+          codec.serialize(message.message(), this.writeBuffer);
+          this.frameCodec.bufferFrame(this.writeBuffer.asByteBuffer(), policy.select(this.writeBuffer.size()));
+        }
+        if (this.frameCodec.bufferedBytes() >= MAX_BATCH_BYTES) {
+          this.frameCodec.flush();
+        }
+      }
+      this.frameCodec.flush();
+    }
     return true;
   }
 
-  private static boolean shouldCompress(final byte[] jsonPayload) {
-    return jsonPayload.length >= GZIP_THRESHOLD_BYTES;
+  private void bufferShared(
+    final OutboundMessage message,
+    final MessageCodec codec,
+    final FrameCompressionPolicy policy
+  ) throws IOException {
+    final ByteBuffer payload = message.serialized(codec, this.writeBuffer);
+    final FrameCompressionType compression = policy.select(payload.remaining());
+    if (compression.stateful()) {
+      // The deflate stream is per connection, so only the serialized message can be shared
+      this.frameCodec.bufferFrame(payload, compression);
+      return;
+    }
+    this.frameCodec.bufferEncodedFrame(message.frame(codec, payload, compression, policy.dictionaryId(), this.frameCodec));
+  }
+
+  private void transferSpooled(final List<LogSpool.Region> regions) throws IOException {
+    for (final LogSpool.Region region : regions) {
+      try (FileChannel file = FileChannel.open(region.path(), StandardOpenOption.READ)) {
+        long position = 0;
+        while (position < region.length()) {
+          position += file.transferTo(position, region.length() - position, this.socketChannel);
+        }
+      } catch (final NoSuchFileException e) {
+        // Rolled out of the spool since the history was taken
+        LOGGER.debug("Spooled log segment {} no longer exists", region.path());
+      }
+    }
+  }
+
+  @Override
+  public void setCompressionPolicy(final FrameCompressionPolicy policy) {
+    this.frameCodec.setDictionaryId(policy.dictionaryId());
+    this.compressionPolicy = policy;
+  }
+
+  @Override
+  public void setMessageCodec(final MessageCodec codec) {
+    this.codec = codec;
   }
 
   @Override
@@ -90,12 +157,11 @@ public final class FramedSocketEndpoint implements SocketEndpoint {
     if (this.state.compareAndSet(ConnectionState.CONNECTED, ConnectionState.DISCONNECTING)
       || this.state.compareAndSet(ConnectionState.CONNECTING, ConnectionState.DISCONNECTING)) {
       try {
-        this.writer.close();
-        this.reader.close();
         this.socketChannel.close();
       } catch (final IOException e) {
         LOGGER.debug("Failed to close console socket connection", e);
       } finally {
+        this.frameCodec.close();
         this.state.set(ConnectionState.DISCONNECTED);
       }
     }
@@ -0,0 +1,309 @@
+package xyz.jpenilla.endermux.server;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Function;
+import net.kyori.ansi.ColorLevel;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import xyz.jpenilla.endermux.protocol.LogTraceCache;
+import xyz.jpenilla.endermux.protocol.Message;
+import xyz.jpenilla.endermux.protocol.MessageType;
+import xyz.jpenilla.endermux.protocol.Payloads;
+import xyz.jpenilla.endermux.server.api.LogMetadata;
+
+/**
+ * Recent log lines kept for replay to clients that subscribe later.
+ *
+ * <p>Lines are rendered lazily, once per color level a client asks for, and the rendered
+ * message is shared with live delivery so its encoded frames are reused as well. Lines that can
+ * be rendered by the client keep their {@code LOG_EVENT} form alongside, built the same way,
+ * and lines with a stack trace their {@code LOG_TRACE} forms. The backlog is capped both by
+ * line count and by an estimate of the memory held by retained lines.</p>
+ *
+ * <p>A retained line's renderers keep whatever they captured, such as a stack trace, reachable
+ * for as long as the line is retained. The line's plain rendering stands in for that size, so it
+ * is rendered as soon as the line is retained.</p>
+ */
+@NullMarked
+final class LogBacklog {
+  // Rough cost of a retained line apart from what its renderers capture
+  private static final long ENTRY_OVERHEAD_BYTES = 256;
+
+  private final int maxLines;
+  private final long maxBytes;
+  private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+  private long retainedBytes;
+  private long nextSequence;
+
+  LogBacklog(final int maxLines, final long maxBytes) {
+    this.maxLines = maxLines;
+    this.maxBytes = maxBytes;
+  }
+
+  boolean enabled() {
+    return this.maxLines > 0 && this.maxBytes > 0;
+  }
+
+  Entry append(
+    final @Nullable LogMetadata metadata,
+    final Function<ColorLevel, String> renderer,
+    final @Nullable Function<ColorLevel, Payloads.LogEvent> event,
+    final @Nullable Function<ColorLevel, String> tracelessRenderer
+  ) {
+    final Entry entry;
+    synchronized (this) {
+      entry = new Entry(this, this.nextSequence++, metadata, renderer, event, tracelessRenderer);
+      if (!this.enabled()) {
+        return entry;
+      }
+      entry.retained = true;
+      this.entries.addLast(entry);
+      this.retainedBytes += ENTRY_OVERHEAD_BYTES;
+      this.evict();
+    }
+    // Rendered outside the lock, so appends from other threads don't wait on it
+    final String rendered = ((Payloads.LogForward) entry.message(ColorLevel.NONE).message().payload()).rendered();
+    this.charge(entry, 2L * rendered.length());
+    return entry;
+  }
+
+  /**
+   * The most recent retained lines, oldest first.
+   *
+   * @param lines maximum number of lines
+   * @param filter filter lines must pass, or {@code null}
+   * @return snapshot of the backlog
+   */
+  synchronized Snapshot snapshot(final int lines, final @Nullable SessionLogFilter filter) {
+    final int count = Math.min(Math.max(lines, 0), this.entries.size());
+    final List<Entry> recent = new ArrayList<>(count);
+    final Iterator<Entry> it = this.entries.descendingIterator();
+    while (recent.size() < count && it.hasNext()) {
+      final Entry entry = it.next();
+      if (filter == null || filter.test(entry.metadata)) {
+        recent.add(entry);
+      }
+    }
+    return new Snapshot(recent.reversed(), this.nextSequence);
+  }
+
+  private synchronized void charge(final Entry entry, final long bytes) {
+    entry.chargedBytes += bytes;
+    if (entry.retained) {
+      this.retainedBytes += bytes;
+      this.evict();
+    }
+  }
+
+  private void evict() {
+    while (!this.entries.isEmpty() && (this.entries.size() > this.maxLines || this.retainedBytes > this.maxBytes)) {
+      final Entry evicted = this.entries.removeFirst();
+      evicted.retained = false;
+      this.retainedBytes -= evicted.chargedBytes;
+    }
+  }
+
+  /**
+   * @param entries retained lines, oldest first
+   * @param nextSequence sequence number of the first line appended after the snapshot
+   */
+  record Snapshot(List<Entry> entries, long nextSequence) {
+  }
+
+  /**
+   * A line with a stack trace, split for {@link LogTraceCache} references.
+   *
+   * @param id trace id
+   * @param full line carrying the trace
+   * @param reference line referring to the cached trace
+   */
+  record Trace(String id, OutboundMessage full, OutboundMessage reference) {
+    /**
+     * Splits {@code rendered} around the text missing from the same line rendered without its
+     * stack trace.
+     *
+     * @param rendered line with the stack trace
+     * @param traceless line without the stack trace
+     * @return trace, or {@code null} if the lines don't differ by one block of text
+     */
+    static @Nullable Trace split(final String rendered, final String traceless) {
+      if (rendered.length() <= traceless.length()) {
+        return null;
+      }
+      int offset = 0;
+      while (offset < traceless.length() && rendered.charAt(offset) == traceless.charAt(offset)) {
+        offset++;
+      }
+      final int suffix = traceless.length() - offset;
+      if (!rendered.regionMatches(rendered.length() - suffix, traceless, offset, suffix)) {
+        return null;
+      }
+      final String trace = rendered.substring(offset, rendered.length() - suffix);
+      final String id = traceId(trace);
+      return new Trace(
+        id,
+        OutboundMessage.shared(Message.unsolicited(
+          MessageType.LOG_TRACE,
+          new Payloads.LogTrace(traceless, offset, id, trace)
+        )),
+        OutboundMessage.shared(Message.unsolicited(
+          MessageType.LOG_TRACE,
+          new Payloads.LogTrace(traceless, offset, id, null)
+        ))
+      );
+    }
+
+    private static String traceId(final String trace) {
+      final MessageDigest digest;
+      try {
+        digest = MessageDigest.getInstance("SHA-256");
+      } catch (final NoSuchAlgorithmException e) {
+        throw new IllegalStateException(e);
+      }
+      // 64 bits keeps collisions out of reach for a cache of a few dozen traces
+      return HexFormat.of().formatHex(digest.digest(trace.getBytes(StandardCharsets.UTF_8)), 0, 8);
+    }
+  }
+
+  static final class Entry {
+    private final LogBacklog backlog;
+    private final long sequence;
+    private final @Nullable LogMetadata metadata;
+    private final @Nullable Function<ColorLevel, Payloads.LogEvent> event;
+    private final EnumMap<ColorLevel, OutboundMessage> messages = new EnumMap<>(ColorLevel.class);
+    private final EnumMap<ColorLevel, OutboundMessage> events = new EnumMap<>(ColorLevel.class);
+    // Null values for color levels the trace could not be split out for
+    private final EnumMap<ColorLevel, @Nullable Trace> traces = new EnumMap<>(ColorLevel.class);
+    private final boolean hasTrace;
+    private @Nullable Function<ColorLevel, String> renderer;
+    private @Nullable Function<ColorLevel, String> tracelessRenderer;
+    // Guarded by the backlog
+    private boolean retained;
+    // Guarded by the backlog
+    private long chargedBytes = ENTRY_OVERHEAD_BYTES;
+
+    private Entry(
+      final LogBacklog backlog,
+      final long sequence,
+      final @Nullable LogMetadata metadata,
+      final Function<ColorLevel, String> renderer,
+      final @Nullable Function<ColorLevel, Payloads.LogEvent> event,
+      final @Nullable Function<ColorLevel, String> tracelessRenderer
+    ) {
+      this.backlog = backlog;
+      this.sequence = sequence;
+      this.metadata = metadata;
+      this.renderer = renderer;
+      this.event = event;
+      this.hasTrace = tracelessRenderer != null;
+      this.tracelessRenderer = tracelessRenderer;
+    }
+
+    long sequence() {
+      return this.sequence;
+    }
+
+    @Nullable LogMetadata metadata() {
+      return this.metadata;
+    }
+
+    /**
+     * The line for a client, as a {@code LOG_EVENT} if the client renders lines itself and this
+     * line can be rendered there, otherwise as a rendered {@code LOG_FORWARD}.
+     *
+     * @param colorLevel client color level
+     * @param clientRendered whether the client renders lines itself
+     * @return message for the client
+     */
+    OutboundMessage message(final ColorLevel colorLevel, final boolean clientRendered) {
+      final Function<ColorLevel, Payloads.LogEvent> event = this.event;
+      if (!clientRendered || event == null) {
+        return this.message(colorLevel);
+      }
+      final long charge;
+      final OutboundMessage message;
+      synchronized (this) {
+        final OutboundMessage cached = this.events.get(colorLevel);
+        if (cached != null) {
+          return cached;
+        }
+        final Payloads.LogEvent payload = event.apply(colorLevel);
+        message = OutboundMessage.shared(Message.unsolicited(MessageType.LOG_EVENT, payload));
+        this.events.put(colorLevel, message);
+        final String richMessage = payload.richMessage();
+        charge = 2L * (richMessage == null ? 0 : richMessage.length()) + 64;
+      }
+      this.backlog.charge(this, charge);
+      return message;
+    }
+
+    /**
+     * The line split around its stack trace, for clients that cache traces.
+     *
+     * @param colorLevel client color level
+     * @return trace, or {@code null} if the line has no stack trace that could be split out
+     */
+    @Nullable Trace trace(final ColorLevel colorLevel) {
+      if (!this.hasTrace) {
+        return null;
+      }
+      final String rendered = ((Payloads.LogForward) this.message(colorLevel).message().payload()).rendered();
+      final long charge;
+      final Trace trace;
+      synchronized (this) {
+        if (this.traces.containsKey(colorLevel)) {
+          return this.traces.get(colorLevel);
+        }
+        final Function<ColorLevel, String> tracelessRenderer = this.tracelessRenderer;
+        if (tracelessRenderer == null) {
+          throw new IllegalStateException("Traceless renderer released before all color levels were split");
+        }
+        final String traceless = tracelessRenderer.apply(colorLevel);
+        trace = Trace.split(rendered, traceless);
+        this.traces.put(colorLevel, trace);
+        if (this.traces.size() == ColorLevel.values().length) {
+          this.tracelessRenderer = null;
+        }
+        // Both messages share the traceless text, and the trace is a copy out of the rendered line
+        charge = trace == null ? 0 : 2L * rendered.length() + 128;
+      }
+      this.backlog.charge(this, charge);
+      return trace;
+    }
+
+    OutboundMessage message(final ColorLevel colorLevel) {
+      final long charge;
+      final OutboundMessage message;
+      synchronized (this) {
+        final OutboundMessage cached = this.messages.get(colorLevel);
+        if (cached != null) {
+          return cached;
+        }
+        final Function<ColorLevel, String> renderer = this.renderer;
+        if (renderer == null) {
+          throw new IllegalStateException("Renderer released before all color levels were rendered");
+        }
+        final String rendered = renderer.apply(colorLevel);
+        message = OutboundMessage.shared(
+          Message.unsolicited(MessageType.LOG_FORWARD, new Payloads.LogForward(rendered))
+        );
+        this.messages.put(colorLevel, message);
+        if (this.messages.size() == ColorLevel.values().length) {
+          this.renderer = null;
+        }
+        // Rendered text plus the frames encoded from it, roughly
+        charge = 2L * rendered.length() + 64;
+      }
+      this.backlog.charge(this, charge);
+      return message;
+    }
+  }
+}
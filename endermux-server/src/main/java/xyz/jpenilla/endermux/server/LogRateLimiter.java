@@ -0,0 +1,162 @@
+package xyz.jpenilla.endermux.server;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import xyz.jpenilla.endermux.protocol.LogLevel;
+import xyz.jpenilla.endermux.server.api.LogMetadata;
+import xyz.jpenilla.endermux.server.api.LogRateLimit;
+
+/**
+ * Per-logger token buckets limiting how many lines are forwarded to remote consoles.
+ *
+ * <p>Lines over a logger's limit are counted instead of forwarded. Once per
+ * {@link #NOTICE_INTERVAL} after a logger starts being limited, a notice with the count
+ * is forwarded in their place.</p>
+ */
+@NullMarked
+final class LogRateLimiter {
+  static final Duration NOTICE_INTERVAL = Duration.ofSeconds(1);
+
+  private final @Nullable LogRateLimit defaultLimit;
+  private final List<Rule> rules = new ArrayList<>();
+  private final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+  private final Consumer<LogMetadata> noticeSink;
+
+  /**
+   * Creates a rate limiter.
+   *
+   * @param defaultLimit limit for loggers no override matches, or {@code null} for unlimited
+   * @param overrides limits by logger name key
+   * @param noticeSink forwards a notice, with the logger and most severe level of the lines it counts
+   */
+  LogRateLimiter(
+    final @Nullable LogRateLimit defaultLimit,
+    final Map<String, LogRateLimit> overrides,
+    final Consumer<LogMetadata> noticeSink
+  ) {
+    this.defaultLimit = defaultLimit;
+    for (final Map.Entry<String, LogRateLimit> override : overrides.entrySet()) {
+      for (final String name : override.getKey().split(",")) {
+        this.rules.add(new Rule(name, override.getValue()));
+      }
+    }
+    this.noticeSink = noticeSink;
+  }
+
+  static boolean enabled(final @Nullable LogRateLimit defaultLimit, final Map<String, LogRateLimit> overrides) {
+    return defaultLimit != null || !overrides.isEmpty();
+  }
+
+  /**
+   * Takes a token from the bucket of the line's logger.
+   *
+   * @param metadata line metadata, or {@code null} for lines that are never limited
+   * @return whether the line may be forwarded
+   */
+  boolean tryAcquire(final @Nullable LogMetadata metadata) {
+    if (metadata == null) {
+      return true;
+    }
+    final Bucket bucket = this.buckets.computeIfAbsent(metadata.loggerName(), this::createBucket);
+    return bucket.tryAcquire(metadata.level());
+  }
+
+  private Bucket createBucket(final String loggerName) {
+    for (final Rule rule : this.rules) {
+      if (rule.test(loggerName)) {
+        return new Bucket(loggerName, rule.limit());
+      }
+    }
+    return new Bucket(loggerName, this.defaultLimit);
+  }
+
+  private record Rule(String name, LogRateLimit limit) {
+    boolean test(final String loggerName) {
+      return this.name.endsWith(".") ? loggerName.startsWith(this.name) : loggerName.equals(this.name);
+    }
+  }
+
+  private final class Bucket {
+    private final String loggerName;
+    private final boolean unlimited;
+    private final double tokensPerNano;
+    private final int burst;
+
+    // Guarded by this
+    private double tokens;
+    private long lastRefill;
+    private long suppressed;
+    private @Nullable LogLevel suppressedLevel;
+
+    Bucket(final String loggerName, final @Nullable LogRateLimit limit) {
+      this.loggerName = loggerName;
+      this.unlimited = limit == null;
+      this.tokensPerNano = limit == null ? 0 : limit.linesPerSecond() / TimeUnit.SECONDS.toNanos(1);
+      this.burst = limit == null ? 0 : limit.burst();
+      this.tokens = this.burst;
+      this.lastRefill = System.nanoTime();
+    }
+
+    boolean tryAcquire(final LogLevel level) {
+      if (this.unlimited) {
+        return true;
+      }
+      synchronized (this) {
+        return this.tryAcquireLimited(level);
+      }
+    }
+
+    private boolean tryAcquireLimited(final LogLevel level) {
+      final long now = System.nanoTime();
+      this.tokens = Math.min(this.burst, this.tokens + (now - this.lastRefill) * this.tokensPerNano);
+      this.lastRefill = now;
+      if (this.tokens >= 1) {
+        this.tokens--;
+        return true;
+      }
+      if (this.suppressed++ == 0) {
+        this.scheduleNotice();
+      }
+      final LogLevel suppressedLevel = this.suppressedLevel;
+      if (suppressedLevel == null || level.isAtLeast(suppressedLevel)) {
+        this.suppressedLevel = level;
+      }
+      return false;
+    }
+
+    private void scheduleNotice() {
+      Thread.ofVirtual().name("EndermuxLogRateLimit").start(() -> {
+        try {
+          Thread.sleep(NOTICE_INTERVAL);
+        } catch (final InterruptedException e) {
+          return;
+        }
+        this.sendNotice();
+      });
+    }
+
+    private void sendNotice() {
+      final long suppressed;
+      final LogLevel level;
+      synchronized (this) {
+        suppressed = this.suppressed;
+        level = this.suppressedLevel;
+        this.suppressed = 0;
+        this.suppressedLevel = null;
+      }
+      if (suppressed == 0 || level == null) {
+        return;
+      }
+      final String message = "Suppressed " + suppressed + (suppressed == 1 ? " log line" : " log lines")
+        + " from " + this.loggerName;
+      LogRateLimiter.this.noticeSink.accept(new LogMetadata(level, this.loggerName, message));
+    }
+  }
+}
@@ -0,0 +1,87 @@
+package xyz.jpenilla.endermux.server;
+
+import java.time.Duration;
+import java.util.function.BiConsumer;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import xyz.jpenilla.endermux.server.api.LogMetadata;
+
+/**
+ * Collapses runs of identical log lines before they are forwarded.
+ *
+ * <p>Lines are identical when their level, logger and message are. The first line of a run is
+ * forwarded, and copies that follow it within the window are only counted. The count is
+ * forwarded as a summary once per window while the run lasts, and when a different line
+ * ends it. Forwarding and summaries happen under one lock, so they keep their order.</p>
+ */
+@NullMarked
+final class LogRepeatCoalescer {
+  private final long windowNanos;
+  private final BiConsumer<LogMetadata, Long> summarySink;
+  private final Object lock = new Object();
+
+  // Guarded by lock
+  private @Nullable LogMetadata last;
+  private long lastSeen;
+  private long repeats;
+  private long flushGeneration;
+
+  /**
+   * Creates a coalescer.
+   *
+   * @param window how long after the previous copy a line still counts as a repeat
+   * @param summarySink forwards a summary for the line that was repeated, and how many times
+   */
+  LogRepeatCoalescer(final Duration window, final BiConsumer<LogMetadata, Long> summarySink) {
+    this.windowNanos = window.toNanos();
+    this.summarySink = summarySink;
+  }
+
+  /**
+   * Runs {@code forward} unless the line repeats the previous one.
+   *
+   * @param metadata line metadata, or {@code null} for lines that are never coalesced
+   * @param forward forwards the line
+   */
+  void submit(final @Nullable LogMetadata metadata, final Runnable forward) {
+    synchronized (this.lock) {
+      final long now = System.nanoTime();
+      if (metadata != null && metadata.equals(this.last) && now - this.lastSeen <= this.windowNanos) {
+        this.lastSeen = now;
+        if (this.repeats++ == 0) {
+          this.scheduleFlush(++this.flushGeneration);
+        }
+        return;
+      }
+      this.flushRepeats();
+      this.last = metadata;
+      this.lastSeen = now;
+      forward.run();
+    }
+  }
+
+  private void scheduleFlush(final long generation) {
+    Thread.ofVirtual().name("EndermuxLogRepeats").start(() -> {
+      try {
+        Thread.sleep(Duration.ofNanos(this.windowNanos));
+      } catch (final InterruptedException e) {
+        return;
+      }
+      synchronized (this.lock) {
+        if (this.flushGeneration == generation) {
+          this.flushRepeats();
+        }
+      }
+    });
+  }
+
+  private void flushRepeats() {
+    final LogMetadata metadata = this.last;
+    if (this.repeats == 0 || metadata == null) {
+      return;
+    }
+    final long repeats = this.repeats;
+    this.repeats = 0;
+    this.summarySink.accept(metadata, repeats);
+  }
+}
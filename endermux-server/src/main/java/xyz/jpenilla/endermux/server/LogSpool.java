@@ -0,0 +1,215 @@
+package xyz.jpenilla.endermux.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import xyz.jpenilla.endermux.protocol.FrameCompressionType;
+import xyz.jpenilla.endermux.protocol.MessageBuffer;
+import xyz.jpenilla.endermux.protocol.MessageSerializer;
+
+/**
+ * Forwarded log lines persisted next to the socket, so history from before a restart can be
+ * sent to clients.
+ *
+ * <p>Lines are stored as complete uncompressed JSON {@code LOG_FORWARD} frames rendered without
+ * color, which every client accepts whatever it negotiated, and are copied from the segment
+ * files onto the socket without being decoded. Segments are memory mapped, so lines survive a
+ * crash of the server process, and the oldest segment is deleted once the configured number
+ * of segments is exceeded.</p>
+ */
+@NullMarked
+final class LogSpool implements AutoCloseable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(LogSpool.class);
+  private static final int LENGTH_BYTES = Integer.BYTES;
+
+  private final Path socketPath;
+  private final int maxSegments;
+  private final int segmentBytes;
+  private final MessageSerializer serializer;
+  private final MessageBuffer scratch = new MessageBuffer();
+  // Oldest first, including the segment being written
+  private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+  private List<Region> history = List.of();
+  private @Nullable MappedByteBuffer current;
+  private long nextIndex;
+
+  LogSpool(
+    final Path socketPath,
+    final int maxSegments,
+    final int segmentBytes,
+    final MessageSerializer serializer
+  ) {
+    this.socketPath = socketPath;
+    this.maxSegments = maxSegments;
+    this.segmentBytes = segmentBytes;
+    this.serializer = serializer;
+  }
+
+  boolean enabled() {
+    return this.maxSegments > 0;
+  }
+
+  /**
+   * Picks up segments left by previous runs as history and starts a new segment.
+   */
+  synchronized void open() {
+    if (!this.enabled() || this.current != null) {
+      return;
+    }
+    this.segments.clear();
+    try {
+      final List<Region> history = new ArrayList<>();
+      for (final Segment segment : this.existingSegments()) {
+        final long length = validLength(segment.path());
+        if (length > 0) {
+          history.add(new Region(segment.path(), length));
+          this.segments.addLast(segment);
+        } else {
+          Files.deleteIfExists(segment.path());
+        }
+        this.nextIndex = Math.max(this.nextIndex, segment.index() + 1);
+      }
+      this.history = history;
+      this.roll();
+    } catch (final IOException e) {
+      LOGGER.error("Failed to open log spool next to {}, history will not be kept", this.socketPath, e);
+      this.current = null;
+    }
+  }
+
+  /**
+   * Complete frames of the lines logged by previous runs that are still retained, oldest first.
+   *
+   * @return history regions
+   */
+  synchronized List<Region> history() {
+    return this.history;
+  }
+
+  synchronized void append(final OutboundMessage message) {
+    final MappedByteBuffer current = this.current;
+    if (current == null) {
+      return;
+    }
+    final ByteBuffer payload = message.serialized(this.serializer, this.scratch);
+    final int frameBytes = LENGTH_BYTES + 1 + payload.remaining();
+    if (frameBytes + LENGTH_BYTES > this.segmentBytes) {
+      return;
+    }
+    try {
+      // Leave room for the zero length that terminates a segment
+      if (current.remaining() < frameBytes + LENGTH_BYTES) {
+        this.roll();
+        this.append(message);
+        return;
+      }
+      // The length goes in last so a crash mid-write never leaves a truncated frame visible
+      final int start = current.position();
+      current.position(start + LENGTH_BYTES);
+      current.put((byte) FrameCompressionType.NONE.wireValue());
+      current.put(payload);
+      current.putInt(start, frameBytes - LENGTH_BYTES);
+    } catch (final IOException e) {
+      LOGGER.error("Failed to roll log spool segment, history will not be kept", e);
+      this.current = null;
+    }
+  }
+
+  private void roll() throws IOException {
+    final Path path = this.segmentPath(this.nextIndex);
+    try (FileChannel channel = FileChannel.open(
+      path,
+      StandardOpenOption.CREATE_NEW,
+      StandardOpenOption.READ,
+      StandardOpenOption.WRITE
+    )) {
+      // The mapping stays valid after the channel is closed
+      this.current = channel.map(FileChannel.MapMode.READ_WRITE, 0, this.segmentBytes);
+    }
+    this.segments.addLast(new Segment(this.nextIndex, path));
+    this.nextIndex++;
+    while (this.segments.size() > this.maxSegments) {
+      final Segment evicted = this.segments.removeFirst();
+      this.history = this.history.stream()
+        .filter(region -> !region.path().equals(evicted.path()))
+        .toList();
+      Files.deleteIfExists(evicted.path());
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    final MappedByteBuffer current = this.current;
+    if (current != null) {
+      current.force();
+      this.current = null;
+    }
+  }
+
+  private List<Segment> existingSegments() throws IOException {
+    final String prefix = this.segmentPrefix();
+    final List<Segment> segments = new ArrayList<>();
+    final Path directory = this.socketPath.toAbsolutePath().getParent();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, prefix + "*")) {
+      for (final Path path : stream) {
+        try {
+          segments.add(new Segment(Long.parseLong(path.getFileName().toString().substring(prefix.length())), path));
+        } catch (final NumberFormatException ignored) {
+        }
+      }
+    }
+    segments.sort((a, b) -> Long.compare(a.index(), b.index()));
+    return segments;
+  }
+
+  private String segmentPrefix() {
+    return "." + this.socketPath.getFileName() + ".spool.";
+  }
+
+  private Path segmentPath(final long index) {
+    return this.socketPath.resolveSibling(this.segmentPrefix() + index);
+  }
+
+  // Segments are zero filled past the last frame, and a frame only becomes visible once its length is written
+  private static long validLength(final Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      final long size = channel.size();
+      final ByteBuffer length = ByteBuffer.allocate(LENGTH_BYTES);
+      long position = 0;
+      while (position + LENGTH_BYTES <= size) {
+        length.clear();
+        if (channel.read(length, position) < LENGTH_BYTES) {
+          break;
+        }
+        final int frameLength = length.getInt(0);
+        if (frameLength <= 0 || position + LENGTH_BYTES + frameLength > size) {
+          break;
+        }
+        position += LENGTH_BYTES + frameLength;
+      }
+      return position;
+    }
+  }
+
+  private record Segment(long index, Path path) {
+  }
+
+  /**
+   * @param path segment file
+   * @param length bytes of complete frames at the start of the file
+   */
+  record Region(Path path, long length) {
+  }
+}
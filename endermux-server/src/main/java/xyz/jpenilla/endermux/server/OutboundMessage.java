@@ -0,0 +1,194 @@
+package xyz.jpenilla.endermux.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import xyz.jpenilla.endermux.protocol.ChannelFrameCodec;
+import xyz.jpenilla.endermux.protocol.FrameCompressionType;
+import xyz.jpenilla.endermux.protocol.Message;
+import xyz.jpenilla.endermux.protocol.MessageBuffer;
+import xyz.jpenilla.endermux.protocol.MessageCodec;
+
+/**
+ * A message queued for a client.
+ *
+ * <p>A {@link #shared(Message) shared} message is queued for many clients at once and keeps the
+ * bytes it was encoded to. Each distinct codec and stateless compression is then applied once,
+ * by whichever connection needs it first, however many clients receive the message.</p>
+ *
+ * <p>A {@link #spooled spooled} entry instead stands for complete frames stored in
+ * {@link LogSpool} segment files, which are copied onto the socket as they are.</p>
+ *
+ * <p>A response {@linkplain #withDeadline(Message, long) with a deadline} is discarded instead of
+ * written once the client stopped waiting for it.</p>
+ */
+@NullMarked
+public final class OutboundMessage {
+  private final @Nullable Message<?> message;
+  private final @Nullable List<Encoding> encodings;
+  private final @Nullable List<LogSpool.Region> spooled;
+  private final boolean hasDeadline;
+  // System.nanoTime() after which the message is discarded, if hasDeadline
+  private final long deadlineNanos;
+
+  private OutboundMessage(final Message<?> message, final boolean shared) {
+    this.message = message;
+    this.encodings = shared ? new ArrayList<>(2) : null;
+    this.spooled = null;
+    this.hasDeadline = false;
+    this.deadlineNanos = 0L;
+  }
+
+  private OutboundMessage(final Message<?> message, final long deadlineNanos) {
+    this.message = message;
+    this.encodings = null;
+    this.spooled = null;
+    this.hasDeadline = true;
+    this.deadlineNanos = deadlineNanos;
+  }
+
+  private OutboundMessage(final List<LogSpool.Region> spooled) {
+    this.message = null;
+    this.encodings = null;
+    this.spooled = List.copyOf(spooled);
+    this.hasDeadline = false;
+    this.deadlineNanos = 0L;
+  }
+
+  public static OutboundMessage of(final Message<?> message) {
+    return new OutboundMessage(message, false);
+  }
+
+  public static OutboundMessage shared(final Message<?> message) {
+    return new OutboundMessage(message, true);
+  }
+
+  /**
+   * A message that is discarded instead of written once {@code deadlineNanos} has passed.
+   *
+   * @param message message
+   * @param deadlineNanos {@link System#nanoTime()} after which the message is no longer useful
+   * @return outbound message
+   */
+  public static OutboundMessage withDeadline(final Message<?> message, final long deadlineNanos) {
+    return new OutboundMessage(message, deadlineNanos);
+  }
+
+  static OutboundMessage spooled(final List<LogSpool.Region> regions) {
+    return new OutboundMessage(regions);
+  }
+
+  public Message<?> message() {
+    final Message<?> message = this.message;
+    if (message == null) {
+      throw new IllegalStateException("Spooled frames have no message");
+    }
+    return message;
+  }
+
+  boolean isShared() {
+    return this.encodings != null;
+  }
+
+  boolean isSpooled() {
+    return this.spooled != null;
+  }
+
+  boolean isExpired(final long nowNanos) {
+    return this.hasDeadline && nowNanos - this.deadlineNanos > 0;
+  }
+
+  List<LogSpool.Region> spooledRegions() {
+    final List<LogSpool.Region> spooled = this.spooled;
+    if (spooled == null) {
+      throw new IllegalStateException("Message is not spooled");
+    }
+    return spooled;
+  }
+
+  /**
+   * Serialized message bytes for {@code codec}.
+   *
+   * @param codec message codec
+   * @param scratch buffer to serialize into
+   * @return serialized message, which must not be modified
+   */
+  ByteBuffer serialized(final MessageCodec codec, final MessageBuffer scratch) {
+    final List<Encoding> encodings = this.encodings();
+    synchronized (encodings) {
+      final Encoding cached = find(encodings, codec, null, 0);
+      if (cached != null) {
+        return cached.bytes().duplicate();
+      }
+      codec.serialize(this.message(), scratch);
+      final ByteBuffer bytes = ByteBuffer.wrap(scratch.toByteArray());
+      encodings.add(new Encoding(codec, null, 0, bytes));
+      return bytes.duplicate();
+    }
+  }
+
+  /**
+   * Complete frame for the {@linkplain #serialized serialized} message.
+   *
+   * @param codec message codec
+   * @param payload serialized message
+   * @param compression stateless compression
+   * @param dictionaryId dictionary id used by {@code encoder}
+   * @param encoder frame codec to encode with if the frame is not cached yet
+   * @return encoded frame, which must not be modified
+   * @throws IOException if encoding fails
+   */
+  ByteBuffer frame(
+    final MessageCodec codec,
+    final ByteBuffer payload,
+    final FrameCompressionType compression,
+    final int dictionaryId,
+    final ChannelFrameCodec encoder
+  ) throws IOException {
+    final int dictionary = compression == FrameCompressionType.DEFLATE_DICTIONARY ? dictionaryId : 0;
+    final List<Encoding> encodings = this.encodings();
+    synchronized (encodings) {
+      final Encoding cached = find(encodings, codec, compression, dictionary);
+      if (cached != null) {
+        return cached.bytes().duplicate();
+      }
+      final ByteBuffer frame = encoder.encodeFrame(payload, compression);
+      encodings.add(new Encoding(codec, compression, dictionary, frame));
+      return frame.duplicate();
+    }
+  }
+
+  private List<Encoding> encodings() {
+    final List<Encoding> encodings = this.encodings;
+    if (encodings == null) {
+      throw new IllegalStateException("Message is not shared");
+    }
+    return encodings;
+  }
+
+  private static @Nullable Encoding find(
+    final List<Encoding> encodings,
+    final MessageCodec codec,
+    final @Nullable FrameCompressionType compression,
+    final int dictionaryId
+  ) {
+    for (final Encoding encoding : encodings) {
+      if (encoding.codec() == codec && encoding.compression() == compression && encoding.dictionaryId() == dictionaryId) {
+        return encoding;
+      }
+    }
+    return null;
+  }
+
+  // compression is null for the serialized message without a frame header
+  private record Encoding(
+    MessageCodec codec,
+    @Nullable FrameCompressionType compression,
+    int dictionaryId,
+    ByteBuffer bytes
+  ) {
+  }
+}
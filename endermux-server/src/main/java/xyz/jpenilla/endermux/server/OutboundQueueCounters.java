@@ -0,0 +1,13 @@
+package xyz.jpenilla.endermux.server;
+
+import java.util.concurrent.atomic.LongAdder;
+import org.jspecify.annotations.NullMarked;
+
+/**
+ * Server-wide totals of slow-consumer handling, shared by all connections.
+ */
+@NullMarked
+final class OutboundQueueCounters {
+  final LongAdder droppedLogMessages = new LongAdder();
+  final LongAdder slowConsumerDisconnects = new LongAdder();
+}
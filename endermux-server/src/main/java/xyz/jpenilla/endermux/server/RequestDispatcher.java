@@ -0,0 +1,370 @@
+package xyz.jpenilla.endermux.server;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import xyz.jpenilla.endermux.protocol.MessageType;
+import xyz.jpenilla.endermux.server.api.ServerOptions;
+
+/**
+ * Runs a session's interactive requests off its socket reader, on virtual threads.
+ *
+ * <p>Each message type has its own lane, so a slow request only holds up requests of the same
+ * type. A lane runs at most {@link ServerOptions#requestConcurrency(MessageType)} requests at
+ * once and queues the rest in arrival order. A lane with a limit of one, like
+ * {@code COMMAND_EXECUTE}'s, runs its requests one after another. Requests that are answered
+ * queue at most {@link #MAX_PENDING_REQUESTS}, while commands are never turned away, since
+ * nothing would tell the client that one was lost.</p>
+ *
+ * <p>A request whose handler {@linkplain Request#defer defers} its reply keeps its place against
+ * the limit until the reply is ready, but gives up its thread to the next request. The deferred
+ * stage fails with a {@link TimeoutException} at the request's deadline, and after
+ * {@link #MAX_DEFERRED} at the latest.</p>
+ *
+ * <p>Requests of types that are answered can be {@linkplain #cancel cancelled} or superseded by a
+ * later request of their type. Queued ones are dropped, running ones are interrupted and deferred
+ * ones have their stage cancelled.</p>
+ *
+ * <p>A request whose {@linkplain Request#withDeadline deadline} passed while it was queued is
+ * skipped, since the client no longer waits for its answer.</p>
+ */
+@NullMarked
+final class RequestDispatcher {
+  static final int MAX_PENDING_REQUESTS = 32;
+  static final Duration MAX_DEFERRED = Duration.ofSeconds(30);
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(RequestDispatcher.class);
+
+  private final ServerOptions options;
+  private final Consumer<Request> onCancel;
+  private final Map<MessageType, Lane> lanes = new HashMap<>();
+  private boolean closed;
+
+  /**
+   * Creates a dispatcher.
+   *
+   * @param options server options
+   * @param onCancel called with each request once it is cancelled or superseded
+   */
+  RequestDispatcher(final ServerOptions options, final Consumer<Request> onCancel) {
+    this.options = options;
+    this.onCancel = onCancel;
+  }
+
+  /**
+   * Queues a request in the lane for its type.
+   *
+   * @param type request type
+   * @param request the request
+   * @param supersede whether to cancel the requests of this type that have not finished yet
+   * @param task handles the request
+   * @return {@code false} if the lane is bounded and already has {@link #MAX_PENDING_REQUESTS} requests waiting
+   */
+  boolean dispatch(final MessageType type, final Request request, final boolean supersede, final Runnable task) {
+    final Lane lane;
+    synchronized (this) {
+      if (this.closed) {
+        return true;
+      }
+      lane = this.lanes.computeIfAbsent(type, t -> new Lane(t, this.options.requestConcurrency(t)));
+    }
+    final List<Request> superseded = supersede && type.requestIdRequired() ? lane.cancelAll() : List.of();
+    superseded.forEach(this.onCancel);
+    return lane.submit(request, task);
+  }
+
+  /**
+   * Cancels a request that has not finished yet.
+   *
+   * @param requestId request id
+   * @return whether a request was cancelled
+   */
+  boolean cancel(final String requestId) {
+    final List<Lane> lanes;
+    synchronized (this) {
+      lanes = List.copyOf(this.lanes.values());
+    }
+    for (final Lane lane : lanes) {
+      // Cancelling commands would leave them half done, so only requests that are answered qualify
+      if (!lane.type.requestIdRequired()) {
+        continue;
+      }
+      final @Nullable Request cancelled = lane.cancel(requestId);
+      if (cancelled != null) {
+        this.onCancel.accept(cancelled);
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Drops requests that have not started yet. Running requests finish, but their replies go nowhere.
+   */
+  void close() {
+    synchronized (this) {
+      this.closed = true;
+      for (final Lane lane : this.lanes.values()) {
+        lane.clear();
+      }
+    }
+  }
+
+  /**
+   * A dispatched request.
+   */
+  static final class Request {
+    private final @Nullable String requestId;
+    private final boolean hasDeadline;
+    private final long deadlineNanos;
+    private volatile boolean cancelled;
+    private volatile @Nullable CompletableFuture<?> deferred;
+    // Guarded by the lane, set while the request runs
+    private @Nullable Thread thread;
+
+    Request(final @Nullable String requestId) {
+      this(requestId, false, 0L);
+    }
+
+    private Request(final @Nullable String requestId, final boolean hasDeadline, final long deadlineNanos) {
+      this.requestId = requestId;
+      this.hasDeadline = hasDeadline;
+      this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * Creates a request the client stops waiting for at {@code deadlineNanos}.
+     *
+     * @param requestId request id
+     * @param deadlineNanos {@link System#nanoTime()} at which the client gives up
+     * @return request
+     */
+    static Request withDeadline(final @Nullable String requestId, final long deadlineNanos) {
+      return new Request(requestId, true, deadlineNanos);
+    }
+
+    @Nullable String requestId() {
+      return this.requestId;
+    }
+
+    boolean hasDeadline() {
+      return this.hasDeadline;
+    }
+
+    long deadlineNanos() {
+      return this.deadlineNanos;
+    }
+
+    boolean isExpired() {
+      return this.hasDeadline && System.nanoTime() - this.deadlineNanos > 0;
+    }
+
+    /**
+     * Whether the request was cancelled, after which its replies are discarded.
+     *
+     * @return whether the request was cancelled
+     */
+    boolean isCancelled() {
+      return this.cancelled;
+    }
+
+    /**
+     * Holds the request's slot in its lane until {@code stage} completes or times out. Called by
+     * the handler while the request runs.
+     *
+     * @param stage stage the reply waits on
+     * @param <T> result type
+     * @return stage to reply from, which times out at the request's deadline
+     */
+    <T> CompletionStage<T> defer(final CompletionStage<T> stage) {
+      final long maxNanos = MAX_DEFERRED.toNanos();
+      final long timeoutNanos = this.hasDeadline
+        ? Math.clamp(this.deadlineNanos - System.nanoTime(), 0L, maxNanos)
+        : maxNanos;
+      final CompletableFuture<T> future = stage.toCompletableFuture().orTimeout(timeoutNanos, TimeUnit.NANOSECONDS);
+      this.deferred = future;
+      // Pairs with cancel(), which sets cancelled before reading deferred
+      if (this.cancelled) {
+        future.cancel(true);
+      }
+      return future;
+    }
+
+    private void cancel() {
+      this.cancelled = true;
+      final @Nullable CompletableFuture<?> deferred = this.deferred;
+      if (deferred != null) {
+        deferred.cancel(true);
+      }
+    }
+  }
+
+  private record Queued(Request request, Runnable task) {
+  }
+
+  private static final class Lane {
+    private final MessageType type;
+    private final int concurrency;
+    // Guarded by this
+    private final ArrayDeque<Queued> pending = new ArrayDeque<>();
+    private final List<Request> running = new ArrayList<>();
+    // Running and deferred requests
+    private int active;
+
+    Lane(final MessageType type, final int concurrency) {
+      this.type = type;
+      this.concurrency = concurrency;
+    }
+
+    synchronized boolean submit(final Request request, final Runnable task) {
+      final Queued queued = new Queued(request, task);
+      if (this.active < this.concurrency) {
+        this.active++;
+        this.running.add(request);
+        this.start(queued);
+        return true;
+      }
+      if (this.type.requestIdRequired() && this.pending.size() >= MAX_PENDING_REQUESTS) {
+        return false;
+      }
+      this.pending.add(queued);
+      return true;
+    }
+
+    synchronized @Nullable Request cancel(final String requestId) {
+      final Iterator<Queued> it = this.pending.iterator();
+      while (it.hasNext()) {
+        final Request request = it.next().request();
+        if (requestId.equals(request.requestId)) {
+          it.remove();
+          request.cancelled = true;
+          return request;
+        }
+      }
+      for (final Request request : this.running) {
+        if (requestId.equals(request.requestId) && !request.cancelled) {
+          this.interrupt(request);
+          return request;
+        }
+      }
+      return null;
+    }
+
+    synchronized List<Request> cancelAll() {
+      final List<Request> cancelled = new ArrayList<>(this.pending.size() + this.running.size());
+      for (final Queued queued : this.pending) {
+        queued.request().cancelled = true;
+        cancelled.add(queued.request());
+      }
+      this.pending.clear();
+      for (final Request request : this.running) {
+        if (!request.cancelled) {
+          this.interrupt(request);
+          cancelled.add(request);
+        }
+      }
+      return cancelled;
+    }
+
+    synchronized void clear() {
+      this.pending.clear();
+    }
+
+    private void interrupt(final Request request) {
+      request.cancel();
+      final Thread thread = request.thread;
+      if (thread != null) {
+        thread.interrupt();
+      }
+    }
+
+    private void start(final Queued queued) {
+      Thread.ofVirtual()
+        .name("EndermuxRequest-" + this.type.id())
+        .start(() -> this.run(queued));
+    }
+
+    // Keeps the thread for queued requests, so a lane never runs more than its limit
+    private void run(final Queued first) {
+      @Nullable Queued queued = first;
+      while (queued != null) {
+        final Request request = queued.request();
+        synchronized (this) {
+          request.thread = Thread.currentThread();
+        }
+        @Nullable Error error = null;
+        try {
+          if (request.isExpired()) {
+            LOGGER.debug("Skipping {} request {} that is past its deadline", this.type, request.requestId);
+          } else if (!request.cancelled) {
+            queued.task().run();
+          }
+        } catch (final RuntimeException e) {
+          LOGGER.debug("Unhandled exception in {} request", this.type, e);
+        } catch (final Error e) {
+          LOGGER.error("Unhandled error in {} request", this.type, e);
+          error = e;
+        }
+        final @Nullable CompletableFuture<?> deferred = request.deferred;
+        final boolean finished;
+        synchronized (this) {
+          request.thread = null;
+          // A cancellation can only interrupt while the thread was set, so this clears any stray interrupt
+          Thread.interrupted();
+          finished = deferred == null || deferred.isDone();
+          if (finished) {
+            this.running.remove(request);
+            queued = this.next();
+          }
+        }
+        if (!finished) {
+          // The slot now belongs to the stage, which hands it on once the reply is ready
+          deferred.whenComplete((_, _) -> this.release(request));
+          queued = null;
+        }
+        if (error != null) {
+          // This thread dies with the error, so the next request of the lane gets its own
+          if (queued != null) {
+            this.start(queued);
+          }
+          throw error;
+        }
+      }
+    }
+
+    private void release(final Request request) {
+      final @Nullable Queued next;
+      synchronized (this) {
+        this.running.remove(request);
+        next = this.next();
+      }
+      if (next != null) {
+        this.start(next);
+      }
+    }
+
+    // Guarded by this. Hands the finished request's slot to the next queued request, or frees it
+    private @Nullable Queued next() {
+      final @Nullable Queued queued = this.pending.poll();
+      if (queued == null) {
+        this.active--;
+      } else {
+        this.running.add(queued.request());
+      }
+      return queued;
+    }
+  }
+}
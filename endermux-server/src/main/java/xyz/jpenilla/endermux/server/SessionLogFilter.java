@@ -0,0 +1,156 @@
+package xyz.jpenilla.endermux.server;
+
+import java.util.List;
+import java.util.regex.Pattern;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import xyz.jpenilla.endermux.protocol.LogLevel;
+import xyz.jpenilla.endermux.protocol.Payloads;
+import xyz.jpenilla.endermux.server.api.LogMetadata;
+
+/**
+ * A session's {@link Payloads.LogSubscribe.Filter}, checked against line metadata before the
+ * line is rendered for the session.
+ *
+ * <p>Patterns come from clients and run on the shared log worker, so each match sees at most
+ * {@link #MAX_MATCH_CHARS} characters of the message and gives up after
+ * {@link #MAX_MATCH_STEPS} character reads. A line whose match gives up does not pass.</p>
+ */
+@NullMarked
+final class SessionLogFilter {
+  private static final int MAX_PATTERN_LENGTH = 256;
+  private static final int MAX_LOGGER_PREFIXES = 64;
+  static final int MAX_MATCH_CHARS = 16 * 1024;
+  static final int MAX_MATCH_STEPS = 200_000;
+
+  private final @Nullable LogLevel minLevel;
+  private final List<String> includeLoggers;
+  private final List<String> excludeLoggers;
+  private final @Nullable String contains;
+  private final @Nullable Pattern pattern;
+
+  private SessionLogFilter(final Payloads.LogSubscribe.Filter filter, final @Nullable Pattern pattern) {
+    this.minLevel = filter.minLevel();
+    this.includeLoggers = filter.includeLoggers();
+    this.excludeLoggers = filter.excludeLoggers();
+    this.contains = filter.contains();
+    this.pattern = pattern;
+  }
+
+  /**
+   * Compiles a filter sent by a client.
+   *
+   * @param filter filter
+   * @return compiled filter
+   * @throws IllegalArgumentException if the filter is too large or its pattern is invalid
+   */
+  static SessionLogFilter compile(final Payloads.LogSubscribe.Filter filter) {
+    if (filter.includeLoggers().size() + filter.excludeLoggers().size() > MAX_LOGGER_PREFIXES) {
+      throw new IllegalArgumentException("At most " + MAX_LOGGER_PREFIXES + " logger prefixes are allowed");
+    }
+    final String pattern = filter.pattern();
+    if (pattern == null) {
+      return new SessionLogFilter(filter, null);
+    }
+    if (pattern.length() > MAX_PATTERN_LENGTH) {
+      throw new IllegalArgumentException("Pattern is longer than " + MAX_PATTERN_LENGTH + " characters");
+    }
+    // PatternSyntaxException is an IllegalArgumentException
+    return new SessionLogFilter(filter, Pattern.compile(pattern));
+  }
+
+  /**
+   * Whether a line passes the filter. Lines broadcast without metadata never do.
+   *
+   * @param metadata line metadata
+   * @return whether to forward the line
+   */
+  boolean test(final @Nullable LogMetadata metadata) {
+    if (metadata == null) {
+      return false;
+    }
+    final LogLevel minLevel = this.minLevel;
+    if (minLevel != null && !metadata.level().isAtLeast(minLevel)) {
+      return false;
+    }
+    if (!this.includeLoggers.isEmpty() && !startsWithAny(metadata.loggerName(), this.includeLoggers)) {
+      return false;
+    }
+    if (startsWithAny(metadata.loggerName(), this.excludeLoggers)) {
+      return false;
+    }
+    final String contains = this.contains;
+    if (contains != null && !metadata.message().contains(contains)) {
+      return false;
+    }
+    final Pattern pattern = this.pattern;
+    return pattern == null || find(pattern, metadata.message());
+  }
+
+  private static boolean find(final Pattern pattern, final String message) {
+    try {
+      return pattern.matcher(new BudgetedCharSequence(message, MAX_MATCH_STEPS)).find();
+    } catch (final BudgetExhaustedException e) {
+      return false;
+    }
+  }
+
+  private static boolean startsWithAny(final String loggerName, final List<String> prefixes) {
+    for (final String prefix : prefixes) {
+      if (loggerName.startsWith(prefix)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // Counts character reads, which bounds backtracking since the matcher reads the input for every step
+  private static final class BudgetedCharSequence implements CharSequence {
+    private final String text;
+    private final int start;
+    private final int end;
+    private int budget;
+
+    BudgetedCharSequence(final String text, final int budget) {
+      this(text, 0, Math.min(text.length(), MAX_MATCH_CHARS), budget);
+    }
+
+    private BudgetedCharSequence(final String text, final int start, final int end, final int budget) {
+      this.text = text;
+      this.start = start;
+      this.end = end;
+      this.budget = budget;
+    }
+
+    @Override
+    public int length() {
+      return this.end - this.start;
+    }
+
+    @Override
+    public char charAt(final int index) {
+      if (--this.budget < 0) {
+        throw BudgetExhaustedException.INSTANCE;
+      }
+      return this.text.charAt(this.start + index);
+    }
+
+    @Override
+    public CharSequence subSequence(final int start, final int end) {
+      return new BudgetedCharSequence(this.text, this.start + start, this.start + end, this.budget);
+    }
+
+    @Override
+    public String toString() {
+      return this.text.substring(this.start, this.end);
+    }
+  }
+
+  private static final class BudgetExhaustedException extends RuntimeException {
+    static final BudgetExhaustedException INSTANCE = new BudgetExhaustedException();
+
+    private BudgetExhaustedException() {
+      super("Pattern match budget exhausted", null, false, false);
+    }
+  }
+}
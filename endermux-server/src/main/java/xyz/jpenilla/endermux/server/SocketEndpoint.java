@@ -1,11 +1,14 @@
 package xyz.jpenilla.endermux.server;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.Optional;
 import org.jspecify.annotations.NullMarked;
 import org.jspecify.annotations.Nullable;
 import xyz.jpenilla.endermux.protocol.ConnectionState;
+import xyz.jpenilla.endermux.protocol.FrameCompressionPolicy;
 import xyz.jpenilla.endermux.protocol.Message;
+import xyz.jpenilla.endermux.protocol.MessageCodec;
 
 @NullMarked
 public interface SocketEndpoint {
@@ -14,6 +17,20 @@ public interface SocketEndpoint {
 
   boolean writeMessage(Message<?> message) throws IOException;
 
+  /**
+   * Writes messages in order, coalescing them into as few socket writes as possible.
+   * Shared messages reuse encodings made for other endpoints.
+   *
+   * @param messages messages to write
+   * @return whether the endpoint was open
+   * @throws IOException if writing fails
+   */
+  boolean writeMessages(List<OutboundMessage> messages) throws IOException;
+
+  void setCompressionPolicy(FrameCompressionPolicy policy);
+
+  void setMessageCodec(MessageCodec codec);
+
   void close();
 
   ConnectionState getState();
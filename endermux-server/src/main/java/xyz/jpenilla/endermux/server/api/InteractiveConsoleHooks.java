@@ -1,21 +1,23 @@
 package xyz.jpenilla.endermux.server.api;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import org.jspecify.annotations.NullMarked;
 import org.jspecify.annotations.Nullable;
 import xyz.jpenilla.endermux.protocol.Payloads;
 
 @NullMarked
 public final class InteractiveConsoleHooks {
-  private final @Nullable CommandCompleter completer;
-  private final @Nullable CommandParser parser;
+  private final @Nullable AsyncCommandCompleter completer;
+  private final @Nullable AsyncCommandParser parser;
   private final @Nullable CommandExecutor executor;
-  private final @Nullable CommandHighlighter highlighter;
+  private final @Nullable AsyncCommandHighlighter highlighter;
 
   private InteractiveConsoleHooks(
-    final @Nullable CommandCompleter completer,
-    final @Nullable CommandParser parser,
+    final @Nullable AsyncCommandCompleter completer,
+    final @Nullable AsyncCommandParser parser,
     final @Nullable CommandExecutor executor,
-    final @Nullable CommandHighlighter highlighter
+    final @Nullable AsyncCommandHighlighter highlighter
   ) {
     this.completer = completer;
     this.parser = parser;
@@ -27,11 +29,29 @@ public final class InteractiveConsoleHooks {
     return new Builder();
   }
 
+  /**
+   * The synchronous completer.
+   *
+   * @return completer, or {@code null} if there is none or it was set with {@link Builder#asyncCompleter}
+   */
   public @Nullable CommandCompleter completer() {
+    return this.completer instanceof CommandCompleter completer ? completer : null;
+  }
+
+  public @Nullable AsyncCommandCompleter asyncCompleter() {
     return this.completer;
   }
 
+  /**
+   * The synchronous parser.
+   *
+   * @return parser, or {@code null} if there is none or it was set with {@link Builder#asyncParser}
+   */
   public @Nullable CommandParser parser() {
+    return this.parser instanceof CommandParser parser ? parser : null;
+  }
+
+  public @Nullable AsyncCommandParser asyncParser() {
     return this.parser;
   }
 
@@ -39,31 +59,97 @@ public final class InteractiveConsoleHooks {
     return this.executor;
   }
 
+  /**
+   * The synchronous highlighter.
+   *
+   * @return highlighter, or {@code null} if there is none or it was set with {@link Builder#asyncHighlighter}
+   */
   public @Nullable CommandHighlighter highlighter() {
+    return this.highlighter instanceof CommandHighlighter highlighter ? highlighter : null;
+  }
+
+  public @Nullable AsyncCommandHighlighter asyncHighlighter() {
     return this.highlighter;
   }
 
-  public interface CommandCompleter {
+  /**
+   * Completes commands without holding an Endermux thread until the result is ready.
+   *
+   * <p>Cancelling the request cancels the returned stage's {@link CompletionStage#toCompletableFuture() future}.</p>
+   */
+  public interface AsyncCommandCompleter {
+    CompletionStage<Payloads.CompletionResponse> completeAsync(String command, int cursor);
+  }
+
+  public interface CommandCompleter extends AsyncCommandCompleter {
     Payloads.CompletionResponse complete(String command, int cursor) throws Exception;
+
+    @Override
+    default CompletionStage<Payloads.CompletionResponse> completeAsync(final String command, final int cursor) {
+      try {
+        return CompletableFuture.completedStage(this.complete(command, cursor));
+      } catch (final Exception e) {
+        return CompletableFuture.failedStage(e);
+      }
+    }
+  }
+
+  /**
+   * Parses commands without holding an Endermux thread until the result is ready.
+   *
+   * <p>Cancelling the request cancels the returned stage's {@link CompletionStage#toCompletableFuture() future}.</p>
+   */
+  public interface AsyncCommandParser {
+    CompletionStage<Payloads.ParseResponse> parseAsync(String command, int cursor);
   }
 
-  public interface CommandParser {
+  public interface CommandParser extends AsyncCommandParser {
     Payloads.ParseResponse parse(String command, int cursor) throws Exception;
+
+    @Override
+    default CompletionStage<Payloads.ParseResponse> parseAsync(final String command, final int cursor) {
+      try {
+        return CompletableFuture.completedStage(this.parse(command, cursor));
+      } catch (final Exception e) {
+        return CompletableFuture.failedStage(e);
+      }
+    }
   }
 
   public interface CommandExecutor {
     void execute(String command) throws Exception;
   }
 
-  public interface CommandHighlighter {
+  /**
+   * Highlights commands without holding an Endermux thread until the result is ready.
+   *
+   * <p>The hook is called within the session's {@link xyz.jpenilla.endermux.ansi.ColorLevelContext}, so
+   * capture {@link xyz.jpenilla.endermux.ansi.ColorLevelContext#current()} before rendering on another thread.</p>
+   *
+   * <p>Cancelling the request cancels the returned stage's {@link CompletionStage#toCompletableFuture() future}.</p>
+   */
+  public interface AsyncCommandHighlighter {
+    CompletionStage<Payloads.SyntaxHighlightResponse> highlightAsync(String command);
+  }
+
+  public interface CommandHighlighter extends AsyncCommandHighlighter {
     Payloads.SyntaxHighlightResponse highlight(String command) throws Exception;
+
+    @Override
+    default CompletionStage<Payloads.SyntaxHighlightResponse> highlightAsync(final String command) {
+      try {
+        return CompletableFuture.completedStage(this.highlight(command));
+      } catch (final Exception e) {
+        return CompletableFuture.failedStage(e);
+      }
+    }
   }
 
   public static final class Builder {
-    private @Nullable CommandCompleter completer;
-    private @Nullable CommandParser parser;
+    private @Nullable AsyncCommandCompleter completer;
+    private @Nullable AsyncCommandParser parser;
     private @Nullable CommandExecutor executor;
-    private @Nullable CommandHighlighter highlighter;
+    private @Nullable AsyncCommandHighlighter highlighter;
 
     private Builder() {
     }
@@ -73,11 +159,21 @@ public final class InteractiveConsoleHooks {
       return this;
     }
 
+    public Builder asyncCompleter(final @Nullable AsyncCommandCompleter completer) {
+      this.completer = completer;
+      return this;
+    }
+
     public Builder parser(final @Nullable CommandParser parser) {
       this.parser = parser;
       return this;
     }
 
+    public Builder asyncParser(final @Nullable AsyncCommandParser parser) {
+      this.parser = parser;
+      return this;
+    }
+
     public Builder executor(final @Nullable CommandExecutor executor) {
       this.executor = executor;
       return this;
@@ -88,6 +184,11 @@ public final class InteractiveConsoleHooks {
       return this;
     }
 
+    public Builder asyncHighlighter(final @Nullable AsyncCommandHighlighter highlighter) {
+      this.highlighter = highlighter;
+      return this;
+    }
+
     public InteractiveConsoleHooks build() {
       return new InteractiveConsoleHooks(
         this.completer,
@@ -0,0 +1,15 @@
+package xyz.jpenilla.endermux.server.api;
+
+import org.jspecify.annotations.NullMarked;
+import xyz.jpenilla.endermux.protocol.LogLevel;
+
+/**
+ * What subscription filters know about a log line before it is rendered.
+ *
+ * @param level line severity
+ * @param loggerName name of the logger the line was logged to
+ * @param message unrendered message text
+ */
+@NullMarked
+public record LogMetadata(LogLevel level, String loggerName, String message) {
+}
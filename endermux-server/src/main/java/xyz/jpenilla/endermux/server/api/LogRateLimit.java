@@ -0,0 +1,21 @@
+package xyz.jpenilla.endermux.server.api;
+
+import org.jspecify.annotations.NullMarked;
+
+/**
+ * Token bucket limit on how many lines a logger may forward to remote consoles.
+ *
+ * @param linesPerSecond sustained rate the bucket refills at
+ * @param burst lines that may be forwarded at once after the logger was quiet
+ */
+@NullMarked
+public record LogRateLimit(double linesPerSecond, int burst) {
+  public LogRateLimit {
+    if (!(linesPerSecond > 0) || Double.isInfinite(linesPerSecond)) {
+      throw new IllegalArgumentException("linesPerSecond must be positive and finite: " + linesPerSecond);
+    }
+    if (burst < 1) {
+      throw new IllegalArgumentException("burst must be at least 1: " + burst);
+    }
+  }
+}
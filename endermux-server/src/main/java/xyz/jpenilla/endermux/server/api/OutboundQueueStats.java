@@ -0,0 +1,20 @@
+package xyz.jpenilla.endermux.server.api;
+
+import org.jspecify.annotations.NullMarked;
+
+/**
+ * Snapshot of the outbound message queues of a server.
+ *
+ * @param queuedMessages messages currently queued across all connections
+ * @param queuedBytes approximate bytes currently queued across all connections
+ * @param droppedLogMessages log messages dropped for slow clients since the server was created
+ * @param slowConsumerDisconnects connections closed for staying over budget since the server was created
+ */
+@NullMarked
+public record OutboundQueueStats(
+  int queuedMessages,
+  long queuedBytes,
+  long droppedLogMessages,
+  long slowConsumerDisconnects
+) {
+}
@@ -0,0 +1,328 @@
+package xyz.jpenilla.endermux.server.api;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import xyz.jpenilla.endermux.protocol.MessageType;
+
+@NullMarked
+public final class ServerOptions {
+  private static final ServerOptions DEFAULTS = builder().build();
+  private static final int MIN_LOG_SPOOL_SEGMENT_BYTES = 64 * 1024;
+
+  private final long maxQueuedBytes;
+  private final SlowConsumerPolicy slowConsumerPolicy;
+  private final Duration slowConsumerGracePeriod;
+  private final int logBacklogLines;
+  private final long logBacklogBytes;
+  private final int logSpoolSegments;
+  private final int logSpoolSegmentBytes;
+  private final Duration logRepeatWindow;
+  private final @Nullable LogRateLimit logRateLimit;
+  private final Map<String, LogRateLimit> logRateLimitOverrides;
+  private final Map<MessageType, Integer> requestConcurrency;
+
+  private ServerOptions(
+    final long maxQueuedBytes,
+    final SlowConsumerPolicy slowConsumerPolicy,
+    final Duration slowConsumerGracePeriod,
+    final int logBacklogLines,
+    final long logBacklogBytes,
+    final int logSpoolSegments,
+    final int logSpoolSegmentBytes,
+    final Duration logRepeatWindow,
+    final @Nullable LogRateLimit logRateLimit,
+    final Map<String, LogRateLimit> logRateLimitOverrides,
+    final Map<MessageType, Integer> requestConcurrency
+  ) {
+    this.maxQueuedBytes = maxQueuedBytes;
+    this.slowConsumerPolicy = slowConsumerPolicy;
+    this.slowConsumerGracePeriod = slowConsumerGracePeriod;
+    this.logBacklogLines = logBacklogLines;
+    this.logBacklogBytes = logBacklogBytes;
+    this.logSpoolSegments = logSpoolSegments;
+    this.logSpoolSegmentBytes = logSpoolSegmentBytes;
+    this.logRepeatWindow = logRepeatWindow;
+    this.logRateLimit = logRateLimit;
+    this.logRateLimitOverrides = logRateLimitOverrides;
+    this.requestConcurrency = requestConcurrency;
+  }
+
+  public static ServerOptions defaults() {
+    return DEFAULTS;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Approximate number of bytes of outbound messages that may be queued for a single
+   * client before {@link #slowConsumerPolicy()} applies. Queued messages are estimated by the
+   * number of chars of text they carry plus a small fixed overhead, not by their encoded size.
+   *
+   * @return byte budget per connection
+   */
+  public long maxQueuedBytes() {
+    return this.maxQueuedBytes;
+  }
+
+  public SlowConsumerPolicy slowConsumerPolicy() {
+    return this.slowConsumerPolicy;
+  }
+
+  /**
+   * How long a connection may stay over its byte budget before
+   * {@link SlowConsumerPolicy#DISCONNECT} closes it.
+   *
+   * @return grace period
+   */
+  public Duration slowConsumerGracePeriod() {
+    return this.slowConsumerGracePeriod;
+  }
+
+  /**
+   * Maximum number of recent log lines kept for replay to clients that subscribe later.
+   * {@code 0}, the default, disables the backlog.
+   *
+   * <p>While the backlog is enabled every log event is rendered for forwarding, even when no
+   * client is connected, so only enable it when replay is worth that cost.</p>
+   *
+   * @return backlog line limit
+   */
+  public int logBacklogLines() {
+    return this.logBacklogLines;
+  }
+
+  /**
+   * Approximate memory the log backlog may hold, including lines rendered for each
+   * client color level and what the line renderers captured, which is estimated from the
+   * line's length. The oldest lines are evicted first.
+   *
+   * @return backlog byte limit
+   */
+  public long logBacklogBytes() {
+    return this.logBacklogBytes;
+  }
+
+  /**
+   * Number of memory-mapped segment files kept next to the socket with forwarded log lines,
+   * so clients can be sent history from before a server restart. {@code 0} disables the spool.
+   *
+   * @return spool segment count
+   */
+  public int logSpoolSegments() {
+    return this.logSpoolSegments;
+  }
+
+  /**
+   * Size of each log spool segment file. Disk usage of the spool is at most
+   * {@link #logSpoolSegments()} times this.
+   *
+   * @return spool segment size
+   */
+  public int logSpoolSegmentBytes() {
+    return this.logSpoolSegmentBytes;
+  }
+
+  /**
+   * How long after a log line an identical one (same level, logger and message) is still
+   * counted as a repeat instead of being forwarded. Clients see the first line of a run and a
+   * summary of how many times it was repeated, at most once per window. {@link Duration#ZERO}
+   * disables coalescing.
+   *
+   * @return repeat window
+   */
+  public Duration logRepeatWindow() {
+    return this.logRepeatWindow;
+  }
+
+  /**
+   * Limit on how many lines each logger may forward to remote consoles, for loggers without
+   * an {@linkplain #logRateLimitOverrides() override}. Lines over the limit are dropped, and a
+   * notice with how many were suppressed is forwarded instead. {@code null} means unlimited.
+   *
+   * @return default rate limit
+   */
+  public @Nullable LogRateLimit logRateLimit() {
+    return this.logRateLimit;
+  }
+
+  /**
+   * Rate limits for specific loggers, keyed like {@code PatternMatch} keys of
+   * {@code EndermuxLoggerNamePatternSelector}: comma separated logger names, where names
+   * ending in {@code .} match every logger starting with them. The first matching key applies.
+   *
+   * @return rate limit overrides, in match order
+   */
+  public Map<String, LogRateLimit> logRateLimitOverrides() {
+    return this.logRateLimitOverrides;
+  }
+
+  /**
+   * How many requests of an interactive message type a single client may have running at once.
+   * Requests run off the connection's reader, so a slow one only holds up later requests of
+   * the same type. {@code COMMAND_EXECUTE} always runs one command at a time, in order.
+   *
+   * @param type interactive message type
+   * @return concurrent requests per client
+   */
+  public int requestConcurrency(final MessageType type) {
+    return this.requestConcurrency.getOrDefault(type, 1);
+  }
+
+  /**
+   * What to do when a client does not read its messages as fast as they are produced.
+   *
+   * <p>Only log lines are dropped for being behind: {@code LOG_FORWARD}, {@code LOG_EVENT}, and
+   * {@code LOG_TRACE} messages that reference a trace sent earlier. {@code LOG_LAYOUT} and
+   * {@code INTERACTIVITY_STATUS} messages are always delivered. Responses are also delivered,
+   * unless their request was cancelled or superseded, or their deadline passed before they were
+   * written.</p>
+   */
+  public enum SlowConsumerPolicy {
+    /**
+     * Drop the oldest queued log lines and tell the client how many were dropped.
+     */
+    DROP_OLDEST_LOGS,
+    /**
+     * Drop the oldest queued log lines like {@link #DROP_OLDEST_LOGS}, and close the connection
+     * once it has been over budget for longer than the grace period.
+     */
+    DISCONNECT
+  }
+
+  public static final class Builder {
+    private long maxQueuedBytes = 8L * 1024 * 1024;
+    private SlowConsumerPolicy slowConsumerPolicy = SlowConsumerPolicy.DROP_OLDEST_LOGS;
+    private Duration slowConsumerGracePeriod = Duration.ofSeconds(30);
+    private int logBacklogLines = 0;
+    private long logBacklogBytes = 1024L * 1024;
+    private int logSpoolSegments = 0;
+    private int logSpoolSegmentBytes = 4 * 1024 * 1024;
+    private Duration logRepeatWindow = Duration.ZERO;
+    private @Nullable LogRateLimit logRateLimit = null;
+    private final Map<String, LogRateLimit> logRateLimitOverrides = new LinkedHashMap<>();
+    private final Map<MessageType, Integer> requestConcurrency = new HashMap<>(Map.of(
+      MessageType.COMPLETION_REQUEST, 2,
+      MessageType.SYNTAX_HIGHLIGHT_REQUEST, 2,
+      MessageType.PARSE_REQUEST, 2,
+      MessageType.COMMAND_EXECUTE, 1
+    ));
+
+    private Builder() {
+    }
+
+    public Builder maxQueuedBytes(final long maxQueuedBytes) {
+      if (maxQueuedBytes <= 0) {
+        throw new IllegalArgumentException("maxQueuedBytes must be positive: " + maxQueuedBytes);
+      }
+      this.maxQueuedBytes = maxQueuedBytes;
+      return this;
+    }
+
+    public Builder slowConsumerPolicy(final SlowConsumerPolicy slowConsumerPolicy) {
+      this.slowConsumerPolicy = Objects.requireNonNull(slowConsumerPolicy, "slowConsumerPolicy");
+      return this;
+    }
+
+    public Builder slowConsumerGracePeriod(final Duration slowConsumerGracePeriod) {
+      Objects.requireNonNull(slowConsumerGracePeriod, "slowConsumerGracePeriod");
+      if (slowConsumerGracePeriod.isNegative()) {
+        throw new IllegalArgumentException("slowConsumerGracePeriod must not be negative: " + slowConsumerGracePeriod);
+      }
+      this.slowConsumerGracePeriod = slowConsumerGracePeriod;
+      return this;
+    }
+
+    public Builder logBacklogLines(final int logBacklogLines) {
+      if (logBacklogLines < 0) {
+        throw new IllegalArgumentException("logBacklogLines must not be negative: " + logBacklogLines);
+      }
+      this.logBacklogLines = logBacklogLines;
+      return this;
+    }
+
+    public Builder logBacklogBytes(final long logBacklogBytes) {
+      if (logBacklogBytes < 0) {
+        throw new IllegalArgumentException("logBacklogBytes must not be negative: " + logBacklogBytes);
+      }
+      this.logBacklogBytes = logBacklogBytes;
+      return this;
+    }
+
+    public Builder logSpoolSegments(final int logSpoolSegments) {
+      if (logSpoolSegments < 0) {
+        throw new IllegalArgumentException("logSpoolSegments must not be negative: " + logSpoolSegments);
+      }
+      this.logSpoolSegments = logSpoolSegments;
+      return this;
+    }
+
+    public Builder logSpoolSegmentBytes(final int logSpoolSegmentBytes) {
+      if (logSpoolSegmentBytes < MIN_LOG_SPOOL_SEGMENT_BYTES) {
+        throw new IllegalArgumentException(
+          "logSpoolSegmentBytes must be at least " + MIN_LOG_SPOOL_SEGMENT_BYTES + ": " + logSpoolSegmentBytes
+        );
+      }
+      this.logSpoolSegmentBytes = logSpoolSegmentBytes;
+      return this;
+    }
+
+    public Builder logRepeatWindow(final Duration logRepeatWindow) {
+      Objects.requireNonNull(logRepeatWindow, "logRepeatWindow");
+      if (logRepeatWindow.isNegative()) {
+        throw new IllegalArgumentException("logRepeatWindow must not be negative: " + logRepeatWindow);
+      }
+      this.logRepeatWindow = logRepeatWindow;
+      return this;
+    }
+
+    public Builder logRateLimit(final @Nullable LogRateLimit logRateLimit) {
+      this.logRateLimit = logRateLimit;
+      return this;
+    }
+
+    public Builder logRateLimit(final String loggerKey, final LogRateLimit logRateLimit) {
+      Objects.requireNonNull(loggerKey, "loggerKey");
+      this.logRateLimitOverrides.put(loggerKey, Objects.requireNonNull(logRateLimit, "logRateLimit"));
+      return this;
+    }
+
+    public Builder requestConcurrency(final MessageType type, final int requestConcurrency) {
+      Objects.requireNonNull(type, "type");
+      if (!type.isClientToServer() || !type.requiresInteractivity()) {
+        throw new IllegalArgumentException("Not an interactive request type: " + type);
+      }
+      if (type == MessageType.COMMAND_EXECUTE && requestConcurrency != 1) {
+        throw new IllegalArgumentException("Commands always run one at a time: " + requestConcurrency);
+      }
+      if (requestConcurrency < 1) {
+        throw new IllegalArgumentException("requestConcurrency must be positive: " + requestConcurrency);
+      }
+      this.requestConcurrency.put(type, requestConcurrency);
+      return this;
+    }
+
+    public ServerOptions build() {
+      return new ServerOptions(
+        this.maxQueuedBytes,
+        this.slowConsumerPolicy,
+        this.slowConsumerGracePeriod,
+        this.logBacklogLines,
+        this.logBacklogBytes,
+        this.logSpoolSegments,
+        this.logSpoolSegmentBytes,
+        this.logRepeatWindow,
+        this.logRateLimit,
+        Collections.unmodifiableMap(new LinkedHashMap<>(this.logRateLimitOverrides)),
+        Map.copyOf(this.requestConcurrency)
+      );
+    }
+  }
+}
@@ -0,0 +1,291 @@
+package xyz.jpenilla.endermux.server.api;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import net.kyori.ansi.ColorLevel;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import xyz.jpenilla.endermux.ansi.ColorLevelContext;
+import xyz.jpenilla.endermux.protocol.MessageType;
+import xyz.jpenilla.endermux.protocol.Payloads;
+
+/**
+ * Batches hooks that have to run on the server's main thread, so every session's pending work is
+ * handled in one hop per tick.
+ *
+ * <p>The {@linkplain #hooks() hooks} queue each call instead of running it, and {@link #drain()},
+ * called by the embedder once per tick, runs the queue on the calling thread. Completion, parse and
+ * highlight calls with the same command, cursor and color level share one hook call, whose result
+ * goes to every session waiting on it. Commands are never shared, and run in the order they
+ * arrived. A command that waits longer than the {@linkplain Builder#commandTimeout command timeout}
+ * fails without being run.</p>
+ *
+ * <p>Once the embedder stops ticking it calls {@link #discardPending()}, after which every call
+ * fails right away.</p>
+ */
+@NullMarked
+public final class TickBatchedHooks {
+  private final InteractiveConsoleHooks hooks;
+  private final Duration commandTimeout;
+  // Guarded by this
+  private List<Work<?>> queue = new ArrayList<>();
+  private Map<Key, Work<?>> shared = new HashMap<>();
+  private boolean closed;
+
+  private TickBatchedHooks(
+    final InteractiveConsoleHooks.@Nullable CommandCompleter completer,
+    final InteractiveConsoleHooks.@Nullable CommandParser parser,
+    final InteractiveConsoleHooks.@Nullable CommandExecutor executor,
+    final InteractiveConsoleHooks.@Nullable CommandHighlighter highlighter,
+    final Duration commandTimeout
+  ) {
+    this.commandTimeout = commandTimeout;
+    this.hooks = InteractiveConsoleHooks.builder()
+      .asyncCompleter(completer == null ? null : (command, cursor) ->
+        this.submit(MessageType.COMPLETION_REQUEST, command, cursor, () -> completer.complete(command, cursor)))
+      .asyncParser(parser == null ? null : (command, cursor) ->
+        this.submit(MessageType.PARSE_REQUEST, command, cursor, () -> parser.parse(command, cursor)))
+      .executor(executor == null ? null : command -> this.execute(executor, command))
+      .asyncHighlighter(highlighter == null ? null : command ->
+        this.submit(MessageType.SYNTAX_HIGHLIGHT_REQUEST, command, -1, () -> highlighter.highlight(command)))
+      .build();
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Hooks to pass to {@code EndermuxServer#enableInteractivity}, which queue their calls for
+   * {@link #drain()}.
+   *
+   * @return hooks
+   */
+  public InteractiveConsoleHooks hooks() {
+    return this.hooks;
+  }
+
+  /**
+   * Runs the queued hook calls on the calling thread. Calls that every waiting session has given
+   * up on are skipped. If a hook throws an {@link Error}, the calls after it are cancelled and
+   * the error is rethrown.
+   *
+   * @return number of hooks called
+   */
+  public int drain() {
+    final List<Work<?>> queue = this.takeQueue();
+    int calls = 0;
+    int next = 0;
+    try {
+      while (next < queue.size()) {
+        if (queue.get(next++).run()) {
+          calls++;
+        }
+      }
+    } finally {
+      // Only reached early when a hook threw an Error, which must not leave sessions waiting
+      for (int i = next; i < queue.size(); i++) {
+        queue.get(i).cancel();
+      }
+    }
+    return calls;
+  }
+
+  /**
+   * Cancels the queued hook calls without running them, for when the embedder stops draining.
+   * Calls made afterwards fail right away.
+   */
+  public void discardPending() {
+    final List<Work<?>> queue;
+    synchronized (this) {
+      this.closed = true;
+      queue = this.takeQueue();
+    }
+    for (final Work<?> work : queue) {
+      work.cancel();
+    }
+  }
+
+  private synchronized List<Work<?>> takeQueue() {
+    final List<Work<?>> queue = this.queue;
+    if (!queue.isEmpty()) {
+      this.queue = new ArrayList<>();
+      this.shared = new HashMap<>();
+    }
+    return queue;
+  }
+
+  private <R> CompletionStage<R> submit(
+    final MessageType type,
+    final String command,
+    final int cursor,
+    final Call<R> call
+  ) {
+    final Key key = new Key(type, command, cursor, ColorLevelContext.current());
+    // Each session gets its own future, so cancelling one doesn't cancel the others
+    final CompletableFuture<R> waiter = new CompletableFuture<>();
+    synchronized (this) {
+      if (this.closed) {
+        return CompletableFuture.failedStage(closedException());
+      }
+      @SuppressWarnings("unchecked")
+      Work<R> work = (Work<R>) this.shared.get(key);
+      if (work == null) {
+        work = new Work<>(key.colorLevel(), call);
+        this.shared.put(key, work);
+        this.queue.add(work);
+      }
+      work.waiters.add(waiter);
+    }
+    return waiter;
+  }
+
+  // Blocks the session's command lane until the tick runs the command, which keeps commands in order
+  private void execute(final InteractiveConsoleHooks.CommandExecutor executor, final String command) throws Exception {
+    final long timeoutNanos = this.commandTimeout.toNanos();
+    final Work<Boolean> work = new Work<>(ColorLevelContext.current(), () -> {
+      executor.execute(command);
+      return true;
+    });
+    final CompletableFuture<Boolean> done = new CompletableFuture<>();
+    work.waiters.add(done);
+    synchronized (this) {
+      if (this.closed) {
+        throw closedException();
+      }
+      this.queue.add(work);
+    }
+    try {
+      done.get(timeoutNanos, TimeUnit.NANOSECONDS);
+    } catch (final InterruptedException e) {
+      done.cancel(false);
+      throw e;
+    } catch (final TimeoutException e) {
+      // Skips the command if no tick has taken it yet. One that is already running still finishes
+      done.cancel(false);
+      throw new TimeoutException("Command did not run within " + this.commandTimeout);
+    } catch (final ExecutionException e) {
+      if (e.getCause() instanceof Exception cause) {
+        throw cause;
+      }
+      throw e;
+    }
+  }
+
+  private static IllegalStateException closedException() {
+    return new IllegalStateException("The server is no longer running hooks");
+  }
+
+  @FunctionalInterface
+  private interface Call<R> {
+    R call() throws Exception;
+  }
+
+  private record Key(MessageType type, String command, int cursor, ColorLevel colorLevel) {
+  }
+
+  private static final class Work<R> {
+    private final ColorLevel colorLevel;
+    private final Call<R> call;
+    // Guarded by the batcher until the work is taken from the queue
+    private final List<CompletableFuture<R>> waiters = new ArrayList<>(1);
+
+    Work(final ColorLevel colorLevel, final Call<R> call) {
+      this.colorLevel = colorLevel;
+      this.call = call;
+    }
+
+    boolean run() {
+      this.waiters.removeIf(CompletableFuture::isDone);
+      if (this.waiters.isEmpty()) {
+        return false;
+      }
+      try (final ColorLevelContext.Scope _ = ColorLevelContext.push(this.colorLevel)) {
+        final R result = this.call.call();
+        for (final CompletableFuture<R> waiter : this.waiters) {
+          waiter.complete(result);
+        }
+      } catch (final Throwable e) {
+        for (final CompletableFuture<R> waiter : this.waiters) {
+          waiter.completeExceptionally(e);
+        }
+        if (e instanceof Error error) {
+          throw error;
+        }
+      }
+      return true;
+    }
+
+    void cancel() {
+      for (final CompletableFuture<R> waiter : this.waiters) {
+        waiter.cancel(false);
+      }
+    }
+  }
+
+  public static final class Builder {
+    private InteractiveConsoleHooks.@Nullable CommandCompleter completer;
+    private InteractiveConsoleHooks.@Nullable CommandParser parser;
+    private InteractiveConsoleHooks.@Nullable CommandExecutor executor;
+    private InteractiveConsoleHooks.@Nullable CommandHighlighter highlighter;
+    private Duration commandTimeout = Duration.ofSeconds(30);
+
+    private Builder() {
+    }
+
+    public Builder completer(final InteractiveConsoleHooks.@Nullable CommandCompleter completer) {
+      this.completer = completer;
+      return this;
+    }
+
+    public Builder parser(final InteractiveConsoleHooks.@Nullable CommandParser parser) {
+      this.parser = parser;
+      return this;
+    }
+
+    public Builder executor(final InteractiveConsoleHooks.@Nullable CommandExecutor executor) {
+      this.executor = executor;
+      return this;
+    }
+
+    public Builder highlighter(final InteractiveConsoleHooks.@Nullable CommandHighlighter highlighter) {
+      this.highlighter = highlighter;
+      return this;
+    }
+
+    /**
+     * How long a command waits for a tick before it fails without being run. Until then, later
+     * commands of the same session wait behind it.
+     *
+     * @param commandTimeout command timeout
+     * @return this builder
+     */
+    public Builder commandTimeout(final Duration commandTimeout) {
+      Objects.requireNonNull(commandTimeout, "commandTimeout");
+      if (commandTimeout.isNegative() || commandTimeout.isZero()) {
+        throw new IllegalArgumentException("commandTimeout must be positive: " + commandTimeout);
+      }
+      this.commandTimeout = commandTimeout;
+      return this;
+    }
+
+    public TickBatchedHooks build() {
+      return new TickBatchedHooks(
+        this.completer,
+        this.parser,
+        this.executor,
+        this.highlighter,
+        this.commandTimeout
+      );
+    }
+  }
+}
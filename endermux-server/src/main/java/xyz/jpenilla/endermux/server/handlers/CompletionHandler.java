@@ -43,13 +43,16 @@ public final class CompletionHandler implements MessageHandler<Payloads.Completi
         ctx.error("Interactivity is currently unavailable");
         return;
       }
-      final InteractiveConsoleHooks.CommandCompleter completer = currentHooks.completer();
+      final InteractiveConsoleHooks.AsyncCommandCompleter completer = currentHooks.asyncCompleter();
       if (completer == null) {
         ctx.error("Completions are not supported");
         return;
       }
 
-      ctx.reply(completer.complete(payload.command(), payload.cursor()));
+      Stages.replyWhenComplete(ctx, completer.completeAsync(payload.command(), payload.cursor()), cause -> {
+        LOGGER.debug("Failed to get completions for command: {}", payload.command(), cause);
+        ctx.error("Failed to get completions", cause.getMessage());
+      });
 
     } catch (final Exception e) {
       LOGGER.debug("Failed to get completions for command: {}", payload.command(), e);
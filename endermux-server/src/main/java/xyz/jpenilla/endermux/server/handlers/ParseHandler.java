@@ -43,13 +43,16 @@ public final class ParseHandler implements MessageHandler<Payloads.ParseRequest>
         ctx.error("Interactivity is currently unavailable");
         return;
       }
-      final InteractiveConsoleHooks.CommandParser parser = currentHooks.parser();
+      final InteractiveConsoleHooks.AsyncCommandParser parser = currentHooks.asyncParser();
       if (parser == null) {
         ctx.error("Parsing is not supported");
         return;
       }
 
-      ctx.reply(parser.parse(payload.command(), payload.cursor()));
+      Stages.replyWhenComplete(ctx, parser.parseAsync(payload.command(), payload.cursor()), cause -> {
+        LOGGER.debug("Failed to parse command: {}", payload.command(), cause);
+        ctx.error("Failed to parse command", cause.getMessage());
+      });
 
     } catch (final Exception e) {
       LOGGER.debug("Failed to parse command: {}", payload.command(), e);
@@ -1,5 +1,6 @@
 package xyz.jpenilla.endermux.server.handlers;
 
+import java.util.concurrent.CompletionStage;
 import org.jspecify.annotations.NullMarked;
 import org.jspecify.annotations.Nullable;
 import xyz.jpenilla.endermux.protocol.MessagePayload;
@@ -18,4 +19,18 @@ public interface ResponseContext {
   void error(String message);
 
   void error(String message, @Nullable String details);
+
+  /**
+   * Marks the request as answered once {@code stage} completes rather than when the handler
+   * returns. Until then the request counts against its type's concurrency limit, and cancelling
+   * it cancels {@code stage}.
+   *
+   * @param stage stage the reply waits on
+   * @param <T> result type
+   * @return stage to reply from, which may fail with a {@link java.util.concurrent.TimeoutException}
+   *   if {@code stage} takes too long
+   */
+  default <T> CompletionStage<T> defer(final CompletionStage<T> stage) {
+    return stage;
+  }
 }
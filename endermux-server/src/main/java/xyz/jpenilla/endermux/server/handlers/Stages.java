@@ -0,0 +1,48 @@
+package xyz.jpenilla.endermux.server.handlers;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import xyz.jpenilla.endermux.protocol.MessagePayload;
+
+@NullMarked
+final class Stages {
+  private Stages() {
+  }
+
+  /**
+   * Replies with the result of a hook's stage once it completes.
+   *
+   * @param ctx response context
+   * @param stage hook result
+   * @param onFailure reports a failed, timed out or empty result
+   */
+  static void replyWhenComplete(
+    final ResponseContext ctx,
+    final CompletionStage<? extends @Nullable MessagePayload> stage,
+    final Consumer<Throwable> onFailure
+  ) {
+    ctx.defer(stage).whenComplete((response, failure) -> {
+      if (failure != null) {
+        onFailure.accept(unwrap(failure));
+      } else if (response == null) {
+        onFailure.accept(new IllegalStateException("Hook completed without a result"));
+      } else {
+        ctx.reply(response);
+      }
+    });
+  }
+
+  private static Throwable unwrap(final Throwable failure) {
+    final Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+      ? failure.getCause()
+      : failure;
+    if (cause instanceof TimeoutException && cause.getMessage() == null) {
+      return new TimeoutException("Hook did not complete in time");
+    }
+    return cause;
+  }
+}
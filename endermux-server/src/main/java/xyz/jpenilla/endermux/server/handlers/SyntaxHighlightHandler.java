@@ -43,13 +43,16 @@ public final class SyntaxHighlightHandler implements MessageHandler<Payloads.Syn
         ctx.error("Interactivity is currently unavailable");
         return;
       }
-      final InteractiveConsoleHooks.CommandHighlighter highlighter = currentHooks.highlighter();
+      final InteractiveConsoleHooks.AsyncCommandHighlighter highlighter = currentHooks.asyncHighlighter();
       if (highlighter == null) {
         ctx.error("Syntax highlighting is not supported");
         return;
       }
 
-      ctx.reply(highlighter.highlight(payload.command()));
+      Stages.replyWhenComplete(ctx, highlighter.highlightAsync(payload.command()), cause -> {
+        LOGGER.debug("Failed to highlight command: {}", payload.command(), cause);
+        ctx.error("Failed to highlight command: " + cause.getMessage());
+      });
     } catch (final Exception e) {
       LOGGER.debug("Failed to highlight command: {}", payload.command(), e);
       ctx.error("Failed to highlight command: " + e.getMessage());
@@ -1,6 +1,8 @@
 package xyz.jpenilla.endermux.server.log4j;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 import org.apache.logging.log4j.core.Appender;
 import org.apache.logging.log4j.core.Core;
@@ -9,14 +11,19 @@ import org.apache.logging.log4j.core.Layout;
 import org.apache.logging.log4j.core.LogEvent;
 import org.apache.logging.log4j.core.appender.AbstractAppender;
 import org.apache.logging.log4j.core.config.Configuration;
+import org.apache.logging.log4j.core.config.Node;
 import org.apache.logging.log4j.core.config.Property;
 import org.apache.logging.log4j.core.config.plugins.Plugin;
 import org.apache.logging.log4j.core.config.plugins.PluginAttribute;
 import org.apache.logging.log4j.core.config.plugins.PluginConfiguration;
 import org.apache.logging.log4j.core.config.plugins.PluginElement;
 import org.apache.logging.log4j.core.config.plugins.PluginFactory;
+import org.apache.logging.log4j.core.config.plugins.PluginNode;
 import org.apache.logging.log4j.core.layout.PatternLayout;
+import org.apache.logging.log4j.core.layout.PatternMatch;
 import org.jspecify.annotations.Nullable;
+import xyz.jpenilla.endermux.log4j.LoggerNamePatternSelector;
+import xyz.jpenilla.endermux.protocol.Payloads;
 import xyz.jpenilla.endermux.server.EndermuxServer;
 
 @Plugin(
@@ -29,15 +36,27 @@ public final class EndermuxForwardingAppender extends AbstractAppender {
   private static volatile @Nullable LogForwardingTarget TARGET = null;
   private static volatile @Nullable EndermuxForwardingAppender INSTANCE = null;
 
+  private final Payloads.@Nullable LogLayout clientLogLayout;
+
   public EndermuxForwardingAppender(
     final String name,
     final Filter filter,
     final Layout<? extends Serializable> layout
+  ) {
+    this(name, filter, layout, null);
+  }
+
+  private EndermuxForwardingAppender(
+    final String name,
+    final Filter filter,
+    final Layout<? extends Serializable> layout,
+    final Payloads.@Nullable LogLayout clientLogLayout
   ) {
     super(name, filter, layout != null ? layout : PatternLayout.createDefaultLayout(), true, Property.EMPTY_ARRAY);
     if (INSTANCE != null) {
       throw new IllegalStateException("Only one EndermuxForwardingAppender may exist");
     }
+    this.clientLogLayout = clientLogLayout;
     INSTANCE = this;
   }
 
@@ -46,32 +65,93 @@ public final class EndermuxForwardingAppender extends AbstractAppender {
     @PluginAttribute("name") String name,
     @PluginElement("Filter") Filter filter,
     @PluginElement("Layout") Layout<? extends Serializable> layout,
-    @PluginConfiguration Configuration configuration
+    @PluginConfiguration Configuration configuration,
+    @PluginNode Node node
   ) {
     if (layout == null) {
       layout = PatternLayout.createDefaultLayout(configuration);
     }
-    return new EndermuxForwardingAppender(name, filter, layout);
+    return new EndermuxForwardingAppender(name, filter, layout, clientLogLayout(layout, node));
+  }
+
+  /**
+   * Describes the layout for clients to render lines with, which is only possible for a
+   * {@link PatternLayout} using {@link LoggerNamePatternSelector}, since a built pattern
+   * layout does not expose its selector.
+   */
+  private static Payloads.@Nullable LogLayout clientLogLayout(final Layout<? extends Serializable> layout, final Node node) {
+    if (!(layout instanceof PatternLayout)) {
+      return null;
+    }
+    for (final Node layoutNode : node.getChildren()) {
+      if (layoutNode.getObject() != layout) {
+        continue;
+      }
+      for (final Node child : layoutNode.getChildren()) {
+        if (child.getObject() instanceof LoggerNamePatternSelector selector) {
+          final List<Payloads.LogLayout.PatternMatch> patternMatches = new ArrayList<>();
+          for (final PatternMatch match : selector.properties()) {
+            patternMatches.add(new Payloads.LogLayout.PatternMatch(match.getKey(), match.getPattern()));
+          }
+          return new Payloads.LogLayout(
+            selector.defaultPattern(),
+            patternMatches,
+            selector.alwaysWriteExceptions(),
+            selector.disableAnsi(),
+            selector.noConsoleNoAnsi()
+          );
+        }
+      }
+    }
+    return null;
   }
 
   public static void attach(final EndermuxServer endermuxServer) {
     final EndermuxForwardingAppender appender = Objects.requireNonNull(INSTANCE, "Endermux forwarding appender is unavailable");
-    TARGET = new RemoteLogForwarder(endermuxServer, appender.getLayout());
+    final Payloads.LogLayout clientLogLayout = appender.clientLogLayout;
+    if (clientLogLayout != null) {
+      endermuxServer.enableClientRendering(clientLogLayout);
+    } else {
+      endermuxServer.disableClientRendering();
+    }
+    replaceTarget(new RemoteLogForwarder(endermuxServer, appender.getLayout()));
   }
 
   public static void detach() {
-    TARGET = null;
+    replaceTarget(null);
+  }
+
+  private static synchronized void replaceTarget(final @Nullable LogForwardingTarget target) {
+    final LogForwardingTarget previous = TARGET;
+    TARGET = target;
+    if (previous != null) {
+      previous.close();
+    }
   }
 
   @Override
   public void append(final LogEvent event) {
     final LogForwardingTarget target = EndermuxForwardingAppender.TARGET;
-    if (target != null) {
+    if (target != null && target.acceptsEvents()) {
       target.forward(event);
     }
   }
 
-  public interface LogForwardingTarget {
+  public interface LogForwardingTarget extends AutoCloseable {
+    /**
+     * Cheap check made before every event, so {@link #forward} is skipped while
+     * nobody would receive the event.
+     *
+     * @return whether events should be forwarded
+     */
+    default boolean acceptsEvents() {
+      return true;
+    }
+
     void forward(LogEvent event);
+
+    @Override
+    default void close() {
+    }
   }
 }
@@ -0,0 +1,91 @@
+package xyz.jpenilla.endermux.server.log4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import org.jspecify.annotations.NullMarked;
+
+/**
+ * Bounded queue drained in order by a virtual worker thread, which hands each element to a
+ * consumer. Offers never block and are dropped while the queue is full.
+ *
+ * @param <E> element type
+ */
+@NullMarked
+final class LogForwardingQueue<E> {
+  static final int MAX_BATCH_ELEMENTS = 256;
+
+  private final BlockingQueue<E> queue;
+  private final Consumer<E> consumer;
+  private final Thread worker;
+  private final AtomicLong droppedCount = new AtomicLong(0);
+  private volatile boolean running = true;
+
+  LogForwardingQueue(final String name, final int capacity, final Consumer<E> consumer) {
+    this.queue = new ArrayBlockingQueue<>(capacity);
+    this.consumer = consumer;
+    this.worker = Thread.ofVirtual()
+      .name(name)
+      .start(this::runWorker);
+  }
+
+  /**
+   * Queues an element for the worker.
+   *
+   * @param element element
+   * @return {@code false} if the queue was full or closed and the element was dropped
+   */
+  boolean offer(final E element) {
+    if (!this.running) {
+      return false;
+    }
+    if (!this.queue.offer(element)) {
+      this.droppedCount.incrementAndGet();
+      return false;
+    }
+    return true;
+  }
+
+  boolean isRunning() {
+    return this.running;
+  }
+
+  long droppedCount() {
+    return this.droppedCount.get();
+  }
+
+  boolean workerAlive() {
+    return this.worker.isAlive();
+  }
+
+  /**
+   * Stops the worker and discards the elements it has not taken yet.
+   */
+  void close() {
+    this.running = false;
+    this.worker.interrupt();
+    this.queue.clear();
+  }
+
+  private void runWorker() {
+    final List<E> batch = new ArrayList<>(MAX_BATCH_ELEMENTS);
+    try {
+      while (this.running) {
+        batch.add(this.queue.take());
+        this.queue.drainTo(batch, MAX_BATCH_ELEMENTS - 1);
+        for (final E element : batch) {
+          if (!this.running) {
+            break;
+          }
+          this.consumer.accept(element);
+        }
+        batch.clear();
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
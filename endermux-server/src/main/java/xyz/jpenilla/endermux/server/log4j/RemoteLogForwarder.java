@@ -3,51 +3,176 @@ package xyz.jpenilla.endermux.server.log4j;
 import java.io.Serializable;
 import java.util.concurrent.atomic.AtomicLong;
 import net.kyori.ansi.ColorLevel;
+import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.core.Layout;
 import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.message.SimpleMessage;
 import org.jspecify.annotations.NullMarked;
 import xyz.jpenilla.endermux.ansi.ColorLevelContext;
+import xyz.jpenilla.endermux.log4j.RichLogContext;
+import xyz.jpenilla.endermux.protocol.LogLevel;
+import xyz.jpenilla.endermux.protocol.Payloads;
 import xyz.jpenilla.endermux.server.EndermuxServer;
+import xyz.jpenilla.endermux.server.api.LogMetadata;
 
+/**
+ * Forwards log events to socket clients from a dedicated worker thread.
+ *
+ * <p>The logging thread only snapshots the event into a bounded queue; rendering and
+ * fan-out happen on the worker, so logging never waits on remote consoles. Events are
+ * dropped while the queue is full.</p>
+ *
+ * <p>Clients that render lines themselves receive the event's fields instead, and the layout
+ * is only applied here for the clients that don't. Events with a throwable are also rendered
+ * without it, so clients that cache stack traces can be sent just the rest of the line.</p>
+ */
 @NullMarked
 public final class RemoteLogForwarder implements EndermuxForwardingAppender.LogForwardingTarget {
   private static final Logger LOGGER = LogManager.getLogger();
 
   private static final long ERROR_LOG_INTERVAL_MS = 60_000;
+  private static final int QUEUE_CAPACITY = 4096;
 
   private final EndermuxServer endermuxServer;
   private final Layout<? extends Serializable> renderedLogLayout;
+  private final LogForwardingQueue<LogEvent> queue;
   private final AtomicLong failureCount = new AtomicLong(0);
   private volatile long lastErrorLogTime = 0;
+  private volatile long lastDropLogTime = 0;
 
   public RemoteLogForwarder(final EndermuxServer endermuxServer, final Layout<? extends Serializable> renderedLogLayout) {
     this.endermuxServer = endermuxServer;
     this.renderedLogLayout = renderedLogLayout;
+    this.queue = new LogForwardingQueue<>("EndermuxLogForwarder", QUEUE_CAPACITY, this::broadcast);
+  }
+
+  @Override
+  public boolean acceptsEvents() {
+    return this.queue.isRunning() && this.endermuxServer.acceptsLogs();
   }
 
   @Override
   public void forward(final LogEvent event) {
+    if (!this.acceptsEvents()) {
+      return;
+    }
+
+    if (!this.queue.offer(event.toImmutable()) && this.queue.isRunning()) {
+      this.handleDroppedEvent();
+    }
+  }
+
+  @Override
+  public void close() {
+    this.queue.close();
+  }
+
+  private void broadcast(final LogEvent logged) {
     final EndermuxServer manager = this.endermuxServer;
     if (!manager.isRunning()) {
       return;
     }
 
     try {
-      final LogEvent immutable = event.toImmutable();
-      manager.broadcastLog(colorLevel -> this.render(immutable, colorLevel));
+      final LogMetadata metadata = metadata(logged);
+      final LogEvent event = withoutParameters(logged, metadata);
+      if (clientRenderable(event, metadata)) {
+        manager.broadcastLog(
+          metadata,
+          colorLevel -> this.render(event, colorLevel),
+          colorLevel -> clientEvent(event, metadata, colorLevel)
+        );
+      } else if (event.getThrown() != null) {
+        final LogEvent traceless = new Log4jLogEvent.Builder(event)
+          .setThrown(null)
+          .setThrownProxy(null)
+          .build();
+        manager.broadcastLogWithTrace(
+          metadata,
+          colorLevel -> this.render(event, colorLevel),
+          colorLevel -> this.render(traceless, colorLevel)
+        );
+      } else {
+        manager.broadcastLog(metadata, colorLevel -> this.render(event, colorLevel));
+      }
     } catch (final Exception e) {
       this.handleForwardingError(e);
     }
   }
 
+  // The renderers stay reachable while the line is in the replay backlog, so they must not pin
+  // the objects the message was formatted from
+  private static LogEvent withoutParameters(final LogEvent event, final LogMetadata metadata) {
+    final Object[] parameters = event.getMessage().getParameters();
+    if (parameters == null || parameters.length == 0) {
+      return event;
+    }
+    return new Log4jLogEvent.Builder(event)
+      .setMessage(new SimpleMessage(metadata.message()))
+      .build();
+  }
+
   private String render(final LogEvent event, final ColorLevel colorLevel) {
     try (final ColorLevelContext.Scope _ = ColorLevelContext.push(colorLevel)) {
       return this.renderedLogLayout.toSerializable(event).toString();
     }
   }
 
+  // Stack traces are rendered with packaging details only the server can resolve, and custom
+  // levels would lose their names, so such lines are always rendered here
+  private static boolean clientRenderable(final LogEvent event, final LogMetadata metadata) {
+    return event.getThrown() == null && metadata.level().name().equals(event.getLevel().name());
+  }
+
+  private static Payloads.LogEvent clientEvent(final LogEvent event, final LogMetadata metadata, final ColorLevel colorLevel) {
+    final String threadName = event.getThreadName();
+    return new Payloads.LogEvent(
+      event.getTimeMillis(),
+      metadata.level(),
+      metadata.loggerName(),
+      threadName == null ? "" : threadName,
+      metadata.message(),
+      RichLogContext.renderedFor(event.getContextData(), colorLevel)
+    );
+  }
+
+  private static LogMetadata metadata(final LogEvent event) {
+    final String loggerName = event.getLoggerName();
+    return new LogMetadata(
+      level(event.getLevel()),
+      loggerName == null ? "" : loggerName,
+      event.getMessage().getFormattedMessage()
+    );
+  }
+
+  private static LogLevel level(final Level level) {
+    if (level.isMoreSpecificThan(Level.FATAL)) {
+      return LogLevel.FATAL;
+    } else if (level.isMoreSpecificThan(Level.ERROR)) {
+      return LogLevel.ERROR;
+    } else if (level.isMoreSpecificThan(Level.WARN)) {
+      return LogLevel.WARN;
+    } else if (level.isMoreSpecificThan(Level.INFO)) {
+      return LogLevel.INFO;
+    } else if (level.isMoreSpecificThan(Level.DEBUG)) {
+      return LogLevel.DEBUG;
+    }
+    return LogLevel.TRACE;
+  }
+
+  private void handleDroppedEvent() {
+    final long count = this.queue.droppedCount();
+    final long now = System.currentTimeMillis();
+
+    if (now - this.lastDropLogTime > ERROR_LOG_INTERVAL_MS) {
+      this.lastDropLogTime = now;
+      LOGGER.debug("Log forwarding queue is full, dropping events for socket clients (total dropped: {})", count);
+    }
+  }
+
   private void handleForwardingError(final Exception e) {
     final long count = this.failureCount.incrementAndGet();
     final long now = System.currentTimeMillis();
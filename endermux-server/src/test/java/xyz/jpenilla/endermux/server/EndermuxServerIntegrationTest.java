@@ -3,33 +3,51 @@ package xyz.jpenilla.endermux.server;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.net.StandardProtocolFamily;
 import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.SocketChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.zip.DataFormatException;
 import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
 import net.kyori.ansi.ColorLevel;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 import xyz.jpenilla.endermux.ansi.ColorLevelContext;
+import xyz.jpenilla.endermux.protocol.BinaryMessageCodec;
 import xyz.jpenilla.endermux.protocol.CapabilityVersionRange;
+import xyz.jpenilla.endermux.protocol.CompressionDictionary;
 import xyz.jpenilla.endermux.protocol.FrameCompressionType;
 import xyz.jpenilla.endermux.protocol.FrameCodec;
 import xyz.jpenilla.endermux.protocol.HandshakeRejectReasons;
+import xyz.jpenilla.endermux.protocol.LogLevel;
 import xyz.jpenilla.endermux.protocol.Message;
+import xyz.jpenilla.endermux.protocol.MessageBuffer;
 import xyz.jpenilla.endermux.protocol.MessageSerializer;
 import xyz.jpenilla.endermux.protocol.MessageType;
 import xyz.jpenilla.endermux.protocol.Payloads;
@@ -37,6 +55,10 @@ import xyz.jpenilla.endermux.protocol.ProtocolCapabilities;
 import xyz.jpenilla.endermux.protocol.SocketProtocolConstants;
 import xyz.jpenilla.endermux.protocol.TimedRead;
 import xyz.jpenilla.endermux.server.api.InteractiveConsoleHooks;
+import xyz.jpenilla.endermux.server.api.LogMetadata;
+import xyz.jpenilla.endermux.server.api.LogRateLimit;
+import xyz.jpenilla.endermux.server.api.OutboundQueueStats;
+import xyz.jpenilla.endermux.server.api.ServerOptions;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
@@ -295,7 +317,7 @@ class EndermuxServerIntegrationTest {
       client.send(Message.response(
         helloRequestId,
         MessageType.HELLO,
-        hello(ColorLevel.INDEXED_16)
+        helloWithEncodingCapabilities(ColorLevel.INDEXED_16, Set.of())
       ));
       assertEquals(MessageType.WELCOME, client.readMessageWithTimeout(Duration.ofSeconds(2)).type());
       assertEquals(MessageType.INTERACTIVITY_STATUS, client.readMessageWithTimeout(Duration.ofSeconds(2)).type());
@@ -321,6 +343,1103 @@ class EndermuxServerIntegrationTest {
     }
   }
 
+  @Test
+  void streamCompressionIsUsedAfterNegotiation() throws Exception {
+    final Path socket = this.startServer();
+
+    try (TestClient client = TestClient.connect(socket)) {
+      final String helloRequestId = UUID.randomUUID().toString();
+      client.send(Message.response(
+        helloRequestId,
+        MessageType.HELLO,
+        hello(ColorLevel.INDEXED_16)
+      ));
+      final TestClient.RawFrame welcome = client.readRawFrameWithTimeout(Duration.ofSeconds(2));
+      assertNotNull(welcome);
+      assertEquals(FrameCompressionType.NONE.wireValue(), welcome.compressionType());
+      final Payloads.Welcome welcomePayload = (Payloads.Welcome) welcome.message().payload();
+      assertEquals(ProtocolCapabilities.V1, welcomePayload.selectedCapabilities().get(ProtocolCapabilities.DEFLATE_STREAM));
+
+      final TestClient.RawFrame status = client.readRawFrameWithTimeout(Duration.ofSeconds(2));
+      assertNotNull(status);
+      assertEquals(FrameCompressionType.DEFLATE_STREAM.wireValue(), status.compressionType());
+      assertEquals(MessageType.INTERACTIVITY_STATUS, status.message().type());
+
+      client.send(Message.unsolicited(MessageType.LOG_SUBSCRIBE, new Payloads.LogSubscribe()));
+      final String pingRequestId = UUID.randomUUID().toString();
+      client.send(Message.response(pingRequestId, MessageType.PING, new Payloads.Ping()));
+      assertEquals(MessageType.PONG, client.readMessageWithTimeout(Duration.ofSeconds(2)).type());
+
+      final String logLine = "[12:00:00 INFO]: Preparing spawn area: 42%";
+      this.server.broadcastLog(level -> logLine);
+      this.server.broadcastLog(level -> logLine);
+
+      final TestClient.RawFrame first = client.readRawFrameWithTimeout(Duration.ofSeconds(2));
+      final TestClient.RawFrame second = client.readRawFrameWithTimeout(Duration.ofSeconds(2));
+      assertNotNull(first);
+      assertNotNull(second);
+      assertEquals(FrameCompressionType.DEFLATE_STREAM.wireValue(), first.compressionType());
+      assertEquals(FrameCompressionType.DEFLATE_STREAM.wireValue(), second.compressionType());
+      assertEquals(logLine, ((Payloads.LogForward) first.message().payload()).rendered());
+      assertEquals(logLine, ((Payloads.LogForward) second.message().payload()).rendered());
+      assertTrue(second.payloadLength() < first.payloadLength());
+    }
+  }
+
+  @Test
+  void dictionaryCompressionIsUsedForSmallFramesWithoutStreamCompression() throws Exception {
+    final Path socket = this.startServer();
+
+    try (TestClient client = TestClient.connect(socket)) {
+      client.send(Message.response(
+        UUID.randomUUID().toString(),
+        MessageType.HELLO,
+        helloWithEncodingCapabilities(ColorLevel.INDEXED_16, Set.of(ProtocolCapabilities.DEFLATE_DICTIONARY))
+      ));
+      final Payloads.Welcome welcomePayload = (Payloads.Welcome) client.readMessageWithTimeout(Duration.ofSeconds(2)).payload();
+      assertEquals(CompressionDictionary.V1, welcomePayload.selectedCapabilities().get(ProtocolCapabilities.DEFLATE_DICTIONARY));
+      assertFalse(welcomePayload.selectedCapabilities().containsKey(ProtocolCapabilities.DEFLATE_STREAM));
+      assertEquals(MessageType.INTERACTIVITY_STATUS, client.readMessageWithTimeout(Duration.ofSeconds(2)).type());
+
+      client.send(Message.unsolicited(MessageType.LOG_SUBSCRIBE, new Payloads.LogSubscribe()));
+      final String pingRequestId = UUID.randomUUID().toString();
+      client.send(Message.response(pingRequestId, MessageType.PING, new Payloads.Ping()));
+      final TestClient.RawFrame pong = client.readRawFrameWithTimeout(Duration.ofSeconds(2));
+      assertNotNull(pong);
+      assertEquals(MessageType.PONG, pong.message().type());
+
+      final String logLine = "[12:00:00 INFO]: Preparing spawn area: 42%\n";
+      this.server.broadcastLog(level -> logLine);
+
+      final TestClient.RawFrame rawFrame = client.readRawFrameWithTimeout(Duration.ofSeconds(2));
+      assertNotNull(rawFrame);
+      assertEquals(FrameCompressionType.DEFLATE_DICTIONARY.wireValue(), rawFrame.compressionType());
+      assertEquals(logLine, ((Payloads.LogForward) rawFrame.message().payload()).rendered());
+    }
+  }
+
+  @Test
+  void binaryCodecIsUsedAfterNegotiation() throws Exception {
+    final Path socket = this.startServer();
+
+    try (TestClient client = TestClient.connect(socket)) {
+      client.send(Message.response(
+        UUID.randomUUID().toString(),
+        MessageType.HELLO,
+        helloWithEncodingCapabilities(ColorLevel.INDEXED_16, Set.of(ProtocolCapabilities.BINARY_CODEC))
+      ));
+      final TestClient.RawFrame welcome = client.readRawFrameWithTimeout(Duration.ofSeconds(2));
+      assertNotNull(welcome);
+      assertFalse(welcome.binary());
+      final Payloads.Welcome welcomePayload = (Payloads.Welcome) welcome.message().payload();
+      assertEquals(ProtocolCapabilities.V1, welcomePayload.selectedCapabilities().get(ProtocolCapabilities.BINARY_CODEC));
+
+      final TestClient.RawFrame status = client.readRawFrameWithTimeout(Duration.ofSeconds(2));
+      assertNotNull(status);
+      assertTrue(status.binary());
+      assertEquals(MessageType.INTERACTIVITY_STATUS, status.message().type());
+
+      client.sendBinary(Message.unsolicited(MessageType.LOG_SUBSCRIBE, new Payloads.LogSubscribe()));
+      final String pingRequestId = UUID.randomUUID().toString();
+      client.sendBinary(Message.response(pingRequestId, MessageType.PING, new Payloads.Ping()));
+      final Message<?> pong = client.readMessageWithTimeout(Duration.ofSeconds(2));
+      assertNotNull(pong);
+      assertEquals(MessageType.PONG, pong.type());
+      assertEquals(pingRequestId, pong.requestId());
+
+      final String logLine = "\u001B[0;33m[12:00:00 WARN]: Can't keep up!\u001B[m\n";
+      this.server.broadcastLog(level -> logLine);
+
+      final TestClient.RawFrame rawFrame = client.readRawFrameWithTimeout(Duration.ofSeconds(2));
+      assertNotNull(rawFrame);
+      assertTrue(rawFrame.binary());
+      assertEquals(FrameCompressionType.NONE.wireValue(), rawFrame.compressionType());
+      assertEquals(logLine, ((Payloads.LogForward) rawFrame.message().payload()).rendered());
+    }
+  }
+
+  @Test
+  void burstOfLogsIsDeliveredInOrder() throws Exception {
+    final Path socket = this.startServer();
+
+    try (TestClient client = TestClient.connect(socket)) {
+      client.send(Message.response(
+        UUID.randomUUID().toString(),
+        MessageType.HELLO,
+        helloWithEncodingCapabilities(ColorLevel.INDEXED_16, Set.of(ProtocolCapabilities.DEFLATE_STREAM))
+      ));
+      assertEquals(MessageType.WELCOME, client.readMessageWithTimeout(Duration.ofSeconds(2)).type());
+      assertEquals(MessageType.INTERACTIVITY_STATUS, client.readMessageWithTimeout(Duration.ofSeconds(2)).type());
+
+      client.send(Message.unsolicited(MessageType.LOG_SUBSCRIBE, new Payloads.LogSubscribe()));
+      final String pingRequestId = UUID.randomUUID().toString();
+      client.send(Message.response(pingRequestId, MessageType.PING, new Payloads.Ping()));
+      final Message<?> pong = client.readMessageWithTimeout(Duration.ofSeconds(2));
+      assertNotNull(pong);
+      assertEquals(MessageType.PONG, pong.type());
+
+      final int lines = 2000;
+      for (int i = 0; i < lines; i++) {
+        final String logLine = "[12:00:00 INFO]: line " + i + " " + "x".repeat(i % 64);
+        this.server.broadcastLog(level -> logLine);
+      }
+
+      for (int i = 0; i < lines; i++) {
+        final Message<?> message = client.readMessageWithTimeout(Duration.ofSeconds(2));
+        assertNotNull(message);
+        assertEquals(MessageType.LOG_FORWARD, message.type());
+        assertEquals(
+          "[12:00:00 INFO]: line " + i + " " + "x".repeat(i % 64),
+          ((Payloads.LogForward) message.payload()).rendered()
+        );
+      }
+    }
+  }
+
+  @Test
+  void sharedLogFramesAreDecodedByClientsWithDifferentEncodings() throws Exception {
+    final Path socket = this.startServer();
+    final List<Set<String>> encodings = List.of(
+      Set.of(),
+      Set.of(ProtocolCapabilities.BINARY_CODEC),
+      Set.of(ProtocolCapabilities.DEFLATE_STREAM),
+      Set.of(ProtocolCapabilities.DEFLATE_DICTIONARY, ProtocolCapabilities.BINARY_CODEC)
+    );
+    final List<TestClient> clients = new ArrayList<>();
+    try {
+      for (final Set<String> encoding : encodings) {
+        final TestClient client = TestClient.connect(socket);
+        clients.add(client);
+        subscribeToLogs(client, helloWithEncodingCapabilities(ColorLevel.INDEXED_16, encoding));
+      }
+
+      final List<String> lines = List.of("short line", "x".repeat(2048), "[12:00:00 INFO]: " + "y".repeat(100));
+      for (final String line : lines) {
+        this.server.broadcastLog(level -> line);
+      }
+
+      for (final TestClient client : clients) {
+        for (final String line : lines) {
+          final Message<?> message = client.readMessageWithTimeout(Duration.ofSeconds(2));
+          assertNotNull(message);
+          assertEquals(MessageType.LOG_FORWARD, message.type());
+          assertEquals(line, ((Payloads.LogForward) message.payload()).rendered());
+        }
+      }
+    } finally {
+      for (final TestClient client : clients) {
+        client.close();
+      }
+    }
+  }
+
+  @Test
+  void logSubscribersAreTrackedAcrossSubscribeAndDisconnect() throws Exception {
+    final Path socket = this.startServer();
+    assertFalse(this.server.hasLogSubscribers());
+
+    try (TestClient client = TestClient.connect(socket)) {
+      subscribeToLogs(client);
+      assertTrue(this.server.hasLogSubscribers());
+    }
+
+    final long deadline = System.nanoTime() + Duration.ofSeconds(2).toNanos();
+    while (this.server.hasLogSubscribers()) {
+      if (System.nanoTime() > deadline) {
+        throw new AssertionError("Timed out waiting for log subscriber to be removed");
+      }
+      Thread.sleep(10L);
+    }
+  }
+
+  @Test
+  void logBacklogIsReplayedBeforeLiveLogsOnSubscribe() throws Exception {
+    final Path socket = this.startServer(ServerOptions.builder()
+      .logBacklogLines(5)
+      .build());
+    for (int i = 0; i < 10; i++) {
+      final String logLine = "early " + i;
+      this.server.broadcastLog(level -> logLine);
+    }
+
+    try (TestClient client = TestClient.connect(socket)) {
+      client.send(Message.response(UUID.randomUUID().toString(), MessageType.HELLO, hello(ColorLevel.INDEXED_16)));
+      final Payloads.Welcome welcome = (Payloads.Welcome) client.readMessageWithTimeout(Duration.ofSeconds(2)).payload();
+      assertTrue(welcome.selectedCapabilities().containsKey(ProtocolCapabilities.LOG_BACKLOG));
+      assertEquals(MessageType.INTERACTIVITY_STATUS, client.readMessageWithTimeout(Duration.ofSeconds(2)).type());
+
+      client.send(Message.unsolicited(MessageType.LOG_SUBSCRIBE, new Payloads.LogSubscribe(3)));
+      final String pingRequestId = UUID.randomUUID().toString();
+      client.send(Message.response(pingRequestId, MessageType.PING, new Payloads.Ping()));
+      assertLogLinesAndPong(client, pingRequestId, List.of("early 7", "early 8", "early 9"));
+
+      this.server.broadcastLog(level -> "live");
+      final Message<?> live = client.readMessageWithTimeout(Duration.ofSeconds(2));
+      assertNotNull(live);
+      assertEquals("live", ((Payloads.LogForward) live.payload()).rendered());
+    }
+
+    try (TestClient client = TestClient.connect(socket)) {
+      client.send(Message.response(UUID.randomUUID().toString(), MessageType.HELLO, hello(ColorLevel.INDEXED_16)));
+      assertEquals(MessageType.WELCOME, client.readMessageWithTimeout(Duration.ofSeconds(2)).type());
+      assertEquals(MessageType.INTERACTIVITY_STATUS, client.readMessageWithTimeout(Duration.ofSeconds(2)).type());
+
+      // The request is capped by the server's backlog
+      client.send(Message.unsolicited(MessageType.LOG_SUBSCRIBE, new Payloads.LogSubscribe(100)));
+      for (final String expected : List.of("early 6", "early 7", "early 8", "early 9", "live")) {
+        final Message<?> message = client.readMessageWithTimeout(Duration.ofSeconds(2));
+        assertNotNull(message);
+        assertEquals(expected, ((Payloads.LogForward) message.payload()).rendered());
+      }
+    }
+  }
+
+  @Test
+  void logBacklogBytesCountLinesBeforeAnyClientRendersThem() throws Exception {
+    final Path socket = this.startServer(ServerOptions.builder()
+      .logBacklogLines(100)
+      .logBacklogBytes(64 * 1024)
+      .build());
+    final List<String> logLines = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      final String logLine = "large " + i + " " + "x".repeat(10_000);
+      logLines.add(logLine);
+      this.server.broadcastLog(level -> logLine);
+    }
+
+    try (TestClient client = TestClient.connect(socket)) {
+      client.send(Message.response(UUID.randomUUID().toString(), MessageType.HELLO, hello(ColorLevel.INDEXED_16)));
+      assertEquals(MessageType.WELCOME, client.readMessageWithTimeout(Duration.ofSeconds(2)).type());
+      assertEquals(MessageType.INTERACTIVITY_STATUS, client.readMessageWithTimeout(Duration.ofSeconds(2)).type());
+
+      client.send(Message.unsolicited(MessageType.LOG_SUBSCRIBE, new Payloads.LogSubscribe(100)));
+      final String pingRequestId = UUID.randomUUID().toString();
+      client.send(Message.response(pingRequestId, MessageType.PING, new Payloads.Ping()));
+      assertLogLinesAndPong(client, pingRequestId, List.of(logLines.getLast()));
+    }
+  }
+
+  @Test
+  void logSpoolSendsHistoryFromBeforeRestart() throws Exception {
+    final ServerOptions options = ServerOptions.builder()
+      .logBacklogLines(10)
+      .logSpoolSegments(2)
+      .build();
+    this.startServer(options);
+    for (int i = 0; i < 3; i++) {
+      final int line = i;
+      this.server.broadcastLog(level -> level == ColorLevel.NONE ? "plain " + line : "colored " + line);
+    }
+    this.server.stop();
+
+    final Path socket = this.startServer(options);
+    this.server.broadcastLog(level -> level == ColorLevel.NONE ? "plain after restart" : "colored after restart");
+
+    try (TestClient client = TestClient.connect(socket)) {
+      client.send(Message.response(UUID.randomUUID().toString(), MessageType.HELLO, hello(ColorLevel.INDEXED_16)));
+      final Payloads.Welcome welcome = (Payloads.Welcome) client.readMessageWithTimeout(Duration.ofSeconds(2)).payload();
+      assertTrue(welcome.selectedCapabilities().containsKey(ProtocolCapabilities.LOG_SPOOL));
+      assertEquals(MessageType.INTERACTIVITY_STATUS, client.readMessageWithTimeout(Duration.ofSeconds(2)).type());
+
+      client.send(Message.unsolicited(MessageType.LOG_SUBSCRIBE, new Payloads.LogSubscribe(10, true)));
+      final String pingRequestId = UUID.randomUUID().toString();
+      client.send(Message.response(pingRequestId, MessageType.PING, new Payloads.Ping()));
+      // Spooled history is stored uncolored, the current run comes from the backlog
+      assertLogLinesAndPong(client, pingRequestId, List.of("plain 0", "plain 1", "plain 2", "colored after restart"));
+    }
+  }
+
+  @Test
+  void logSpoolKeepsAtMostConfiguredSegments() throws Exception {
+    this.startServer(ServerOptions.builder()
+      .logSpoolSegments(3)
+      .logSpoolSegmentBytes(64 * 1024)
+      .build());
+    final String padding = "x".repeat(1000);
+    for (int i = 0; i < 1000; i++) {
+      final String line = i + " " + padding;
+      this.server.broadcastLog(level -> line);
+    }
+
+    try (var files = Files.list(this.tempDir)) {
+      assertEquals(3, files.filter(path -> path.getFileName().toString().contains(".spool.")).count());
+    }
+  }
+
+  @Test
+  void logSubscribeFiltersAreAppliedBeforeRendering() throws Exception {
+    final Path socket = this.startServer(ServerOptions.builder()
+      .logBacklogLines(0)
+      .build());
+
+    try (TestClient client = TestClient.connect(socket)) {
+      client.send(Message.response(UUID.randomUUID().toString(), MessageType.HELLO, hello(ColorLevel.INDEXED_16)));
+      final Payloads.Welcome welcome = (Payloads.Welcome) client.readMessageWithTimeout(Duration.ofSeconds(2)).payload();
+      assertEquals(ProtocolCapabilities.V2, welcome.selectedCapabilities().get(ProtocolCapabilities.LOG_FORWARD));
+      assertEquals(MessageType.INTERACTIVITY_STATUS, client.readMessageWithTimeout(Duration.ofSeconds(2)).type());
+
+      client.send(Message.unsolicited(MessageType.LOG_SUBSCRIBE, new Payloads.LogSubscribe(
+        0,
+        false,
+        new Payloads.LogSubscribe.Filter(LogLevel.WARN, List.of("net.minecraft"), List.of("net.minecraft.noisy"), null, "keep|also")
+      )));
+      final String pingRequestId = UUID.randomUUID().toString();
+      client.send(Message.response(pingRequestId, MessageType.PING, new Payloads.Ping()));
+      assertEquals(pingRequestId, client.readMessageWithTimeout(Duration.ofSeconds(2)).requestId());
+
+      final AtomicInteger renders = new AtomicInteger();
+      final List<LogMetadata> lines = List.of(
+        new LogMetadata(LogLevel.INFO, "net.minecraft.server", "keep but too quiet"),
+        new LogMetadata(LogLevel.WARN, "com.example.Plugin", "keep but wrong logger"),
+        new LogMetadata(LogLevel.ERROR, "net.minecraft.noisy.Thing", "keep but excluded"),
+        new LogMetadata(LogLevel.WARN, "net.minecraft.server", "no match"),
+        new LogMetadata(LogLevel.WARN, "net.minecraft.server", "keep this"),
+        new LogMetadata(LogLevel.FATAL, "net.minecraft.world", "also this")
+      );
+      for (final LogMetadata line : lines) {
+        this.server.broadcastLog(line, level -> {
+          renders.incrementAndGet();
+          return line.message();
+        });
+      }
+      this.server.broadcastLog(level -> "no metadata");
+
+      for (final String expected : List.of("keep this", "also this")) {
+        final Message<?> message = client.readMessageWithTimeout(Duration.ofSeconds(2));
+        assertNotNull(message);
+        assertEquals(expected, ((Payloads.LogForward) message.payload()).rendered());
+      }
+      final String secondPing = UUID.randomUUID().toString();
+      client.send(Message.response(secondPing, MessageType.PING, new Payloads.Ping()));
+      assertEquals(secondPing, client.readMessageWithTimeout(Duration.ofSeconds(2)).requestId());
+      assertEquals(2, renders.get());
+    }
+  }
+
+  @Test
+  void clientRenderingSendsLayoutBeforeStructuredEvents() throws Exception {
+    final Path socket = this.startServer(ServerOptions.builder()
+      .logBacklogLines(0)
+      .build());
+    final Payloads.LogLayout layout = new Payloads.LogLayout(
+      "[%level] %msg%n",
+      List.of(new Payloads.LogLayout.PatternMatch("Main", "%msg%n")),
+      true,
+      false,
+      false
+    );
+    this.server.enableClientRendering(layout);
+
+    try (TestClient client = TestClient.connect(socket)) {
+      client.send(Message.response(UUID.randomUUID().toString(), MessageType.HELLO, hello(ColorLevel.INDEXED_16)));
+      final Payloads.Welcome welcome = (Payloads.Welcome) client.readMessageWithTimeout(Duration.ofSeconds(2)).payload();
+      assertTrue(welcome.selectedCapabilities().containsKey(ProtocolCapabilities.LOG_LAYOUT));
+      assertEquals(MessageType.INTERACTIVITY_STATUS, client.readMessageWithTimeout(Duration.ofSeconds(2)).type());
+
+      client.send(Message.unsolicited(MessageType.LOG_SUBSCRIBE, new Payloads.LogSubscribe()));
+      final Message<?> layoutMessage = client.readMessageWithTimeout(Duration.ofSeconds(2));
+      assertNotNull(layoutMessage);
+      assertEquals(layout, layoutMessage.payload());
+
+      final AtomicInteger renders = new AtomicInteger();
+      final LogMetadata metadata = new LogMetadata(LogLevel.INFO, "Main", "structured");
+      this.server.broadcastLog(
+        metadata,
+        level -> {
+          renders.incrementAndGet();
+          return metadata.message();
+        },
+        level -> new Payloads.LogEvent(1L, metadata.level(), metadata.loggerName(), "Server thread", metadata.message(), level.name())
+      );
+      this.server.broadcastLog(new LogMetadata(LogLevel.ERROR, "Main", "with throwable"), level -> "rendered");
+
+      final Message<?> event = client.readMessageWithTimeout(Duration.ofSeconds(2));
+      assertNotNull(event);
+      assertEquals(
+        new Payloads.LogEvent(1L, LogLevel.INFO, "Main", "Server thread", "structured", ColorLevel.INDEXED_16.name()),
+        event.payload()
+      );
+      final Message<?> rendered = client.readMessageWithTimeout(Duration.ofSeconds(2));
+      assertNotNull(rendered);
+      assertEquals("rendered", ((Payloads.LogForward) rendered.payload()).rendered());
+      assertEquals(0, renders.get());
+    }
+  }
+
+  @Test
+  void repeatedStackTracesAreSentAsReferences() throws Exception {
+    final Path socket = this.startServer(ServerOptions.builder()
+      .logBacklogLines(0)
+      .build());
+    final Map<String, CapabilityVersionRange> withoutTraceCache = new HashMap<>(ProtocolCapabilities.clientSupportedCapabilities());
+    withoutTraceCache.remove(ProtocolCapabilities.LOG_TRACE_CACHE);
+
+    try (TestClient caching = TestClient.connect(socket); TestClient plain = TestClient.connect(socket)) {
+      subscribeToLogs(caching, hello(ColorLevel.INDEXED_16));
+      subscribeToLogs(plain, new Payloads.Hello(
+        new CapabilityVersionRange(SocketProtocolConstants.TRANSPORT_EPOCH, SocketProtocolConstants.TRANSPORT_EPOCH),
+        ColorLevel.INDEXED_16,
+        withoutTraceCache,
+        ProtocolCapabilities.clientRequiredCapabilities()
+      ));
+
+      final String trace = "java.lang.IllegalStateException: boom\n\tat Main.main(Main.java:1)\n";
+      for (int i = 0; i < 2; i++) {
+        final String message = "failed " + i;
+        this.server.broadcastLogWithTrace(
+          new LogMetadata(LogLevel.ERROR, "Main", message),
+          level -> "[ERROR] " + message + "\n" + trace,
+          level -> "[ERROR] " + message + "\n"
+        );
+      }
+
+      final Payloads.LogTrace first = (Payloads.LogTrace) caching.readMessageWithTimeout(Duration.ofSeconds(2)).payload();
+      assertEquals("[ERROR] failed 0\n", first.rendered());
+      assertEquals(first.rendered().length(), first.traceOffset());
+      assertEquals(trace, first.trace());
+      final Payloads.LogTrace second = (Payloads.LogTrace) caching.readMessageWithTimeout(Duration.ofSeconds(2)).payload();
+      assertEquals("[ERROR] failed 1\n", second.rendered());
+      assertEquals(first.traceId(), second.traceId());
+      assertNull(second.trace());
+
+      for (int i = 0; i < 2; i++) {
+        final Payloads.LogForward forward = (Payloads.LogForward) plain.readMessageWithTimeout(Duration.ofSeconds(2)).payload();
+        assertEquals("[ERROR] failed " + i + "\n" + trace, forward.rendered());
+      }
+    }
+  }
+
+  @Test
+  void repeatedLinesAreCoalesced() throws Exception {
+    final Path socket = this.startServer(ServerOptions.builder()
+      .logBacklogLines(0)
+      .logRepeatWindow(Duration.ofMillis(200))
+      .build());
+
+    try (TestClient client = TestClient.connect(socket)) {
+      subscribeToLogs(client);
+
+      final AtomicInteger renders = new AtomicInteger();
+      final LogMetadata spam = new LogMetadata(LogLevel.WARN, "SpammyMod", "Something is wrong");
+      for (int i = 0; i < 5; i++) {
+        this.server.broadcastLog(spam, level -> {
+          renders.incrementAndGet();
+          return "spam\n";
+        });
+      }
+
+      assertEquals("spam\n", ((Payloads.LogForward) client.readMessageWithTimeout(Duration.ofSeconds(2)).payload()).rendered());
+      // Flushed once the window passes, without waiting for another line
+      assertEquals(
+        "[endermux] Previous log line repeated 4 more times" + System.lineSeparator(),
+        ((Payloads.LogForward) client.readMessageWithTimeout(Duration.ofSeconds(2)).payload()).rendered()
+      );
+      assertEquals(1, renders.get());
+
+      this.server.broadcastLog(spam, level -> "spam\n");
+      this.server.broadcastLog(spam, level -> "spam\n");
+      this.server.broadcastLog(new LogMetadata(LogLevel.INFO, "Main", "different"), level -> "different\n");
+
+      assertEquals("spam\n", ((Payloads.LogForward) client.readMessageWithTimeout(Duration.ofSeconds(2)).payload()).rendered());
+      assertEquals(
+        "[endermux] Previous log line repeated 1 more time" + System.lineSeparator(),
+        ((Payloads.LogForward) client.readMessageWithTimeout(Duration.ofSeconds(2)).payload()).rendered()
+      );
+      assertEquals("different\n", ((Payloads.LogForward) client.readMessageWithTimeout(Duration.ofSeconds(2)).payload()).rendered());
+    }
+  }
+
+  @Test
+  void loggersOverTheirRateLimitAreSuppressed() throws Exception {
+    final Path socket = this.startServer(ServerOptions.builder()
+      .logBacklogLines(0)
+      .logRateLimit("Main,Spammy.", new LogRateLimit(0.001, 2))
+      .build());
+
+    try (TestClient client = TestClient.connect(socket)) {
+      subscribeToLogs(client);
+
+      for (int i = 0; i < 5; i++) {
+        final String rendered = "spam " + i + "\n";
+        this.server.broadcastLog(new LogMetadata(LogLevel.WARN, "Spammy.Mod", rendered), level -> rendered);
+      }
+      this.server.broadcastLog(new LogMetadata(LogLevel.INFO, "Other", "other"), level -> "other\n");
+
+      assertEquals("spam 0\n", ((Payloads.LogForward) client.readMessageWithTimeout(Duration.ofSeconds(2)).payload()).rendered());
+      assertEquals("spam 1\n", ((Payloads.LogForward) client.readMessageWithTimeout(Duration.ofSeconds(2)).payload()).rendered());
+      assertEquals("other\n", ((Payloads.LogForward) client.readMessageWithTimeout(Duration.ofSeconds(2)).payload()).rendered());
+      assertEquals(
+        "[endermux] Suppressed 3 log lines from Spammy.Mod" + System.lineSeparator(),
+        ((Payloads.LogForward) client.readMessageWithTimeout(Duration.ofSeconds(3)).payload()).rendered()
+      );
+    }
+  }
+
+  @Test
+  void invalidLogFilterIsRejected() throws Exception {
+    final Path socket = this.startServer();
+
+    try (TestClient client = TestClient.connect(socket)) {
+      client.send(Message.response(UUID.randomUUID().toString(), MessageType.HELLO, hello(ColorLevel.INDEXED_16)));
+      assertEquals(MessageType.WELCOME, client.readMessageWithTimeout(Duration.ofSeconds(2)).type());
+      assertEquals(MessageType.INTERACTIVITY_STATUS, client.readMessageWithTimeout(Duration.ofSeconds(2)).type());
+
+      client.send(Message.unsolicited(MessageType.LOG_SUBSCRIBE, new Payloads.LogSubscribe(
+        0,
+        false,
+        new Payloads.LogSubscribe.Filter(null, List.of(), List.of(), null, "(unclosed")
+      )));
+      final Message<?> error = client.readMessageWithTimeout(Duration.ofSeconds(2));
+      assertNotNull(error);
+      assertEquals(MessageType.ERROR, error.type());
+      assertFalse(this.server.hasLogSubscribers());
+    }
+  }
+
+  @Test
+  void slowClientDropsOldestLogsButKeepsResponses() throws Exception {
+    final Path socket = this.startServer(ServerOptions.builder()
+      .maxQueuedBytes(16 * 1024)
+      .build());
+
+    try (TestClient client = TestClient.connect(socket)) {
+      subscribeToLogs(client);
+
+      final int lines = 20_000;
+      final String padding = "x".repeat(200);
+      for (int i = 0; i < lines; i++) {
+        final String logLine = i + " " + padding;
+        this.server.broadcastLog(level -> logLine);
+      }
+      final String pingRequestId = UUID.randomUUID().toString();
+      client.send(Message.response(pingRequestId, MessageType.PING, new Payloads.Ping()));
+
+      int received = 0;
+      int markers = 0;
+      int lastLine = -1;
+      boolean pong = false;
+      // The pong is written ahead of queued lines, and nothing is dropped after it was queued
+      while (!pong || received + this.server.outboundQueueStats().droppedLogMessages() < lines) {
+        final Message<?> message = client.readMessageWithTimeout(Duration.ofSeconds(2));
+        assertNotNull(message);
+        if (message.type() == MessageType.PONG) {
+          assertEquals(pingRequestId, message.requestId());
+          pong = true;
+          continue;
+        }
+        assertEquals(MessageType.LOG_FORWARD, message.type());
+        final String rendered = ((Payloads.LogForward) message.payload()).rendered();
+        if (rendered.startsWith("[endermux] ")) {
+          markers++;
+          continue;
+        }
+        final int line = Integer.parseInt(rendered.substring(0, rendered.indexOf(' ')));
+        assertTrue(line > lastLine, () -> "line " + line + " arrived out of order");
+        lastLine = line;
+        received++;
+      }
+
+      final OutboundQueueStats stats = this.server.outboundQueueStats();
+      assertTrue(markers > 0);
+      assertTrue(stats.droppedLogMessages() > 0);
+      assertEquals(lines, received + stats.droppedLogMessages());
+      assertEquals(0, stats.slowConsumerDisconnects());
+    }
+  }
+
+  @Test
+  void slowClientNeverLosesTheTraceItLaterReferences() throws Exception {
+    final Path socket = this.startServer(ServerOptions.builder()
+      .maxQueuedBytes(16 * 1024)
+      .build());
+
+    try (TestClient client = TestClient.connect(socket)) {
+      subscribeToLogs(client);
+
+      final int lines = 5_000;
+      final String padding = "x".repeat(200);
+      for (int i = 0; i < lines; i++) {
+        final String message = i + " " + padding;
+        // Each trace is sent in full once and referenced by the next two lines
+        final String trace = "java.lang.IllegalStateException: boom " + (i / 3) + "\n\tat Main.main(Main.java:1)\n";
+        this.server.broadcastLogWithTrace(
+          new LogMetadata(LogLevel.ERROR, "Main", message),
+          level -> message + "\n" + trace,
+          level -> message + "\n"
+        );
+      }
+
+      final Set<String> sentTraces = new HashSet<>();
+      int received = 0;
+      while (received + this.server.outboundQueueStats().droppedLogMessages() < lines) {
+        final Message<?> message = client.readMessageWithTimeout(Duration.ofSeconds(2));
+        assertNotNull(message);
+        if (message.type() == MessageType.LOG_FORWARD) {
+          assertTrue(((Payloads.LogForward) message.payload()).rendered().startsWith("[endermux] "));
+          continue;
+        }
+        final Payloads.LogTrace trace = (Payloads.LogTrace) message.payload();
+        if (trace.trace() != null) {
+          sentTraces.add(trace.traceId());
+        } else {
+          assertTrue(sentTraces.contains(trace.traceId()), "Referenced a trace that was never received");
+        }
+        received++;
+      }
+      assertTrue(this.server.outboundQueueStats().droppedLogMessages() > 0);
+    }
+  }
+
+  @Test
+  void responsesAreWrittenAheadOfQueuedLogs() throws Exception {
+    final Path socket = this.startServer(ServerOptions.builder()
+      .logBacklogLines(0)
+      .build());
+
+    try (TestClient client = TestClient.connect(socket)) {
+      subscribeToLogs(client);
+
+      final int lines = 20_000;
+      final String padding = "x".repeat(200);
+      for (int i = 0; i < lines; i++) {
+        final String logLine = i + " " + padding;
+        this.server.broadcastLog(level -> logLine);
+      }
+      final String pingRequestId = UUID.randomUUID().toString();
+      client.send(Message.response(pingRequestId, MessageType.PING, new Payloads.Ping()));
+
+      int linesBeforePong = 0;
+      while (true) {
+        final Message<?> message = client.readMessageWithTimeout(Duration.ofSeconds(2));
+        assertNotNull(message);
+        if (message.type() == MessageType.PONG) {
+          assertEquals(pingRequestId, message.requestId());
+          break;
+        }
+        linesBeforePong++;
+      }
+      // Only lines already handed to the socket can be ahead of the pong
+      final int ahead = linesBeforePong;
+      assertTrue(ahead < lines / 2, () -> ahead + " lines arrived before the pong");
+
+      int linesAfterPong = 0;
+      while (linesBeforePong + linesAfterPong < lines) {
+        final Message<?> message = client.readMessageWithTimeout(Duration.ofSeconds(2));
+        assertNotNull(message);
+        assertEquals(MessageType.LOG_FORWARD, message.type());
+        linesAfterPong++;
+      }
+      assertEquals(0, this.server.outboundQueueStats().droppedLogMessages());
+    }
+  }
+
+  @Test
+  void slowClientIsDisconnectedAfterSustainedOverflow() throws Exception {
+    final Path socket = this.startServer(ServerOptions.builder()
+      .maxQueuedBytes(16 * 1024)
+      .slowConsumerPolicy(ServerOptions.SlowConsumerPolicy.DISCONNECT)
+      .slowConsumerGracePeriod(Duration.ZERO)
+      .build());
+
+    try (TestClient client = TestClient.connect(socket)) {
+      subscribeToLogs(client);
+
+      final String logLine = "x".repeat(200);
+      for (int i = 0; i < 20_000; i++) {
+        this.server.broadcastLog(level -> logLine);
+      }
+      assertEquals(1, this.server.outboundQueueStats().slowConsumerDisconnects());
+
+      Message<?> message;
+      do {
+        message = client.readMessageWithTimeout(Duration.ofSeconds(2));
+      } while (message != null);
+    }
+  }
+
+  @Test
+  void largeResponsesCountTowardsTheQueueBudget() throws Exception {
+    final Path socket = this.startServer(ServerOptions.builder()
+      .maxQueuedBytes(16 * 1024)
+      .slowConsumerPolicy(ServerOptions.SlowConsumerPolicy.DISCONNECT)
+      .slowConsumerGracePeriod(Duration.ZERO)
+      .build());
+    final List<Payloads.CompletionResponse.CandidateInfo> candidates = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      // Random text, so compression doesn't keep the frames small enough to fit the socket buffers
+      final String value = UUID.randomUUID() + " " + UUID.randomUUID() + " " + UUID.randomUUID();
+      candidates.add(new Payloads.CompletionResponse.CandidateInfo(value, value, null));
+    }
+    this.server.enableInteractivity(InteractiveConsoleHooks.builder()
+      .completer((command, cursor) -> new Payloads.CompletionResponse(candidates))
+      .build());
+
+    final TestClient client = TestClient.connect(socket);
+    try {
+      client.send(Message.response(UUID.randomUUID().toString(), MessageType.HELLO, hello(ColorLevel.INDEXED_16)));
+      assertEquals(MessageType.WELCOME, client.readMessageWithTimeout(Duration.ofSeconds(2)).type());
+      assertEquals(MessageType.INTERACTIVITY_STATUS, client.readMessageWithTimeout(Duration.ofSeconds(2)).type());
+
+      // Far fewer messages than the budget allows at the flat overhead each, so only their size counts
+      try {
+        for (int i = 0; i < 100; i++) {
+          client.send(Message.response(
+            UUID.randomUUID().toString(),
+            MessageType.COMPLETION_REQUEST,
+            new Payloads.CompletionRequest("say", 3)
+          ));
+        }
+      } catch (final IOException ignored) {
+        // Writing fails once the server has disconnected us
+      }
+      awaitCondition(() -> this.server.outboundQueueStats().slowConsumerDisconnects() == 1);
+    } finally {
+      try {
+        client.close();
+      } catch (final IOException ignored) {
+        // Flushing buffered requests fails for the same reason
+      }
+    }
+  }
+
+  @Test
+  void slowRequestsDoNotBlockLaterMessages() throws Exception {
+    final Path socket = this.startServer();
+    final CountDownLatch releaseSlow = new CountDownLatch(1);
+    final List<String> executed = new CopyOnWriteArrayList<>();
+    this.server.enableInteractivity(InteractiveConsoleHooks.builder()
+      .completer((command, cursor) -> {
+        if (command.equals("slow")) {
+          try {
+            releaseSlow.await();
+          } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+        return new Payloads.CompletionResponse(List.of(new Payloads.CompletionResponse.CandidateInfo(command, command, null)));
+      })
+      .executor(command -> {
+        try {
+          Thread.sleep(5L);
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        executed.add(command);
+      })
+      .build());
+
+    try (TestClient client = TestClient.connect(socket)) {
+      client.send(Message.response(UUID.randomUUID().toString(), MessageType.HELLO, hello(ColorLevel.INDEXED_16)));
+      assertEquals(MessageType.WELCOME, client.readMessageWithTimeout(Duration.ofSeconds(2)).type());
+      assertEquals(MessageType.INTERACTIVITY_STATUS, client.readMessageWithTimeout(Duration.ofSeconds(2)).type());
+
+      final String slowRequestId = UUID.randomUUID().toString();
+      client.send(Message.response(slowRequestId, MessageType.COMPLETION_REQUEST, new Payloads.CompletionRequest("slow", 4)));
+      final String pingRequestId = UUID.randomUUID().toString();
+      client.send(Message.response(pingRequestId, MessageType.PING, new Payloads.Ping()));
+      final String fastRequestId = UUID.randomUUID().toString();
+      client.send(Message.response(fastRequestId, MessageType.COMPLETION_REQUEST, new Payloads.CompletionRequest("fast", 4)));
+      for (int i = 0; i < 5; i++) {
+        client.send(Message.unsolicited(MessageType.COMMAND_EXECUTE, new Payloads.CommandExecute("command " + i)));
+      }
+
+      final Set<String> answered = new HashSet<>();
+      for (int i = 0; i < 2; i++) {
+        final Message<?> message = client.readMessageWithTimeout(Duration.ofSeconds(2));
+        assertNotNull(message);
+        answered.add(message.requestId());
+      }
+      assertEquals(Set.of(pingRequestId, fastRequestId), answered);
+
+      releaseSlow.countDown();
+      final Message<?> slow = client.readMessageWithTimeout(Duration.ofSeconds(2));
+      assertNotNull(slow);
+      assertEquals(slowRequestId, slow.requestId());
+
+      final long deadline = System.nanoTime() + Duration.ofSeconds(2).toNanos();
+      while (executed.size() < 5) {
+        if (System.nanoTime() > deadline) {
+          throw new AssertionError("Timed out waiting for commands to run");
+        }
+        Thread.sleep(10L);
+      }
+      assertEquals(List.of("command 0", "command 1", "command 2", "command 3", "command 4"), executed);
+    }
+  }
+
+  @Test
+  void commandsQueuedBehindASlowCommandAreNeverTurnedAway() throws Exception {
+    final Path socket = this.startServer();
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch releaseSlow = new CountDownLatch(1);
+    final List<String> executed = new CopyOnWriteArrayList<>();
+    this.server.enableInteractivity(InteractiveConsoleHooks.builder()
+      .executor(command -> {
+        if (command.equals("slow")) {
+          started.countDown();
+          releaseSlow.await();
+        }
+        executed.add(command);
+      })
+      .build());
+
+    try (TestClient client = TestClient.connect(socket)) {
+      client.send(Message.response(UUID.randomUUID().toString(), MessageType.HELLO, hello(ColorLevel.INDEXED_16)));
+      assertEquals(MessageType.WELCOME, client.readMessageWithTimeout(Duration.ofSeconds(2)).type());
+      assertEquals(MessageType.INTERACTIVITY_STATUS, client.readMessageWithTimeout(Duration.ofSeconds(2)).type());
+
+      client.send(Message.unsolicited(MessageType.COMMAND_EXECUTE, new Payloads.CommandExecute("slow")));
+      assertTrue(started.await(2, TimeUnit.SECONDS));
+      final int commands = RequestDispatcher.MAX_PENDING_REQUESTS * 2;
+      final List<String> expected = new ArrayList<>(List.of("slow"));
+      for (int i = 0; i < commands; i++) {
+        client.send(Message.unsolicited(MessageType.COMMAND_EXECUTE, new Payloads.CommandExecute("command " + i)));
+        expected.add("command " + i);
+      }
+
+      // Nothing was answered, so the pong is the first message
+      final String pingRequestId = UUID.randomUUID().toString();
+      client.send(Message.response(pingRequestId, MessageType.PING, new Payloads.Ping()));
+      final Message<?> pong = client.readMessageWithTimeout(Duration.ofSeconds(2));
+      assertNotNull(pong);
+      assertEquals(MessageType.PONG, pong.type());
+
+      releaseSlow.countDown();
+      awaitCondition(() -> executed.size() == expected.size());
+      assertEquals(expected, executed);
+    }
+  }
+
+  @Test
+  void commandsAfterOneThatThrowsAnErrorStillRun() throws Exception {
+    final Path socket = this.startServer();
+    final List<String> executed = new CopyOnWriteArrayList<>();
+    this.server.enableInteractivity(InteractiveConsoleHooks.builder()
+      .executor(command -> {
+        if (command.equals("broken")) {
+          throw new AssertionError("broken plugin");
+        }
+        executed.add(command);
+      })
+      .build());
+
+    try (TestClient client = TestClient.connect(socket)) {
+      client.send(Message.response(UUID.randomUUID().toString(), MessageType.HELLO, hello(ColorLevel.INDEXED_16)));
+      assertEquals(MessageType.WELCOME, client.readMessageWithTimeout(Duration.ofSeconds(2)).type());
+      assertEquals(MessageType.INTERACTIVITY_STATUS, client.readMessageWithTimeout(Duration.ofSeconds(2)).type());
+
+      client.send(Message.unsolicited(MessageType.COMMAND_EXECUTE, new Payloads.CommandExecute("broken")));
+      client.send(Message.unsolicited(MessageType.COMMAND_EXECUTE, new Payloads.CommandExecute("queued")));
+      awaitCondition(() -> executed.size() == 1);
+      client.send(Message.unsolicited(MessageType.COMMAND_EXECUTE, new Payloads.CommandExecute("later")));
+      awaitCondition(() -> executed.size() == 2);
+      assertEquals(List.of("queued", "later"), executed);
+    }
+  }
+
+  @Test
+  void cancelledAndSupersededRequestsAreNotAnswered() throws Exception {
+    final Path socket = this.startServer();
+    final CountDownLatch started = new CountDownLatch(2);
+    final CountDownLatch never = new CountDownLatch(1);
+    final Set<String> interrupted = ConcurrentHashMap.newKeySet();
+    this.server.enableInteractivity(InteractiveConsoleHooks.builder()
+      .completer((command, cursor) -> {
+        if (command.startsWith("slow")) {
+          started.countDown();
+          try {
+            never.await();
+          } catch (final InterruptedException e) {
+            interrupted.add(command);
+          }
+        }
+        return new Payloads.CompletionResponse(List.of(new Payloads.CompletionResponse.CandidateInfo(command, command, null)));
+      })
+      .build());
+
+    try (TestClient client = TestClient.connect(socket)) {
+      client.send(Message.response(UUID.randomUUID().toString(), MessageType.HELLO, hello(ColorLevel.INDEXED_16)));
+      assertEquals(MessageType.WELCOME, client.readMessageWithTimeout(Duration.ofSeconds(2)).type());
+      assertEquals(MessageType.INTERACTIVITY_STATUS, client.readMessageWithTimeout(Duration.ofSeconds(2)).type());
+
+      final String cancelledRequestId = UUID.randomUUID().toString();
+      client.send(Message.response(cancelledRequestId, MessageType.COMPLETION_REQUEST, new Payloads.CompletionRequest("slow 1", 6)));
+      client.send(Message.response(UUID.randomUUID().toString(), MessageType.COMPLETION_REQUEST, new Payloads.CompletionRequest("slow 2", 6)));
+      assertTrue(started.await(2, TimeUnit.SECONDS));
+      client.send(Message.unsolicited(MessageType.CANCEL, new Payloads.Cancel(cancelledRequestId)));
+      final String latestRequestId = UUID.randomUUID().toString();
+      client.send(Message.response(latestRequestId, MessageType.COMPLETION_REQUEST, new Payloads.CompletionRequest("fast", 4, true)));
+
+      final Message<?> latest = client.readMessageWithTimeout(Duration.ofSeconds(2));
+      assertNotNull(latest);
+      assertEquals(latestRequestId, latest.requestId());
+      assertEquals(MessageType.COMPLETION_RESPONSE, latest.type());
+
+      final long deadline = System.nanoTime() + Duration.ofSeconds(2).toNanos();
+      while (interrupted.size() < 2) {
+        if (System.nanoTime() > deadline) {
+          throw new AssertionError("Timed out waiting for requests to be interrupted: " + interrupted);
+        }
+        Thread.sleep(10L);
+      }
+      assertEquals(Set.of("slow 1", "slow 2"), interrupted);
+
+      // Nothing was queued for the interrupted requests, so the next message is the pong
+      final String pingRequestId = UUID.randomUUID().toString();
+      client.send(Message.response(pingRequestId, MessageType.PING, new Payloads.Ping()));
+      final Message<?> pong = client.readMessageWithTimeout(Duration.ofSeconds(2));
+      assertNotNull(pong);
+      assertEquals(MessageType.PONG, pong.type());
+      assertEquals(pingRequestId, pong.requestId());
+    }
+  }
+
+  @Test
+  void asyncHooksHoldTheirSlotUntilCompleteAndAreCancelled() throws Exception {
+    final Path socket = this.startServer();
+    final Map<String, CompletableFuture<Payloads.CompletionResponse>> pending = new ConcurrentHashMap<>();
+    this.server.enableInteractivity(InteractiveConsoleHooks.builder()
+      .asyncCompleter((command, cursor) -> pending.computeIfAbsent(command, c -> new CompletableFuture<>()))
+      .build());
+
+    try (TestClient client = TestClient.connect(socket)) {
+      client.send(Message.response(UUID.randomUUID().toString(), MessageType.HELLO, hello(ColorLevel.INDEXED_16)));
+      assertEquals(MessageType.WELCOME, client.readMessageWithTimeout(Duration.ofSeconds(2)).type());
+      assertEquals(MessageType.INTERACTIVITY_STATUS, client.readMessageWithTimeout(Duration.ofSeconds(2)).type());
+
+      final String firstRequestId = UUID.randomUUID().toString();
+      client.send(Message.response(firstRequestId, MessageType.COMPLETION_REQUEST, new Payloads.CompletionRequest("first", 5)));
+      final String cancelledRequestId = UUID.randomUUID().toString();
+      client.send(Message.response(cancelledRequestId, MessageType.COMPLETION_REQUEST, new Payloads.CompletionRequest("cancelled", 9)));
+      final String queuedRequestId = UUID.randomUUID().toString();
+      client.send(Message.response(queuedRequestId, MessageType.COMPLETION_REQUEST, new Payloads.CompletionRequest("queued", 6)));
+
+      // Both completion slots are held by incomplete stages, so the third request waits
+      awaitCondition(() -> pending.size() == 2);
+      Thread.sleep(100L);
+      assertEquals(Set.of("first", "cancelled"), pending.keySet());
+
+      client.send(Message.unsolicited(MessageType.CANCEL, new Payloads.Cancel(cancelledRequestId)));
+      awaitCondition(() -> pending.containsKey("queued"));
+      assertTrue(pending.get("cancelled").isCancelled());
+
+      for (final String command : List.of("queued", "first")) {
+        pending.get(command).complete(new Payloads.CompletionResponse(List.of(
+          new Payloads.CompletionResponse.CandidateInfo(command, command, null)
+        )));
+      }
+      final Message<?> queued = client.readMessageWithTimeout(Duration.ofSeconds(2));
+      assertNotNull(queued);
+      assertEquals(queuedRequestId, queued.requestId());
+      assertEquals(MessageType.COMPLETION_RESPONSE, queued.type());
+      final Message<?> first = client.readMessageWithTimeout(Duration.ofSeconds(2));
+      assertNotNull(first);
+      assertEquals(firstRequestId, first.requestId());
+
+      final String pingRequestId = UUID.randomUUID().toString();
+      client.send(Message.response(pingRequestId, MessageType.PING, new Payloads.Ping()));
+      final Message<?> pong = client.readMessageWithTimeout(Duration.ofSeconds(2));
+      assertNotNull(pong);
+      assertEquals(pingRequestId, pong.requestId());
+    }
+  }
+
+  @Test
+  void hungAsyncHooksReleaseTheirSlotAtTheDeadline() throws Exception {
+    final Path socket = this.startServer();
+    final CountDownLatch hung = new CountDownLatch(2);
+    this.server.enableInteractivity(InteractiveConsoleHooks.builder()
+      .asyncCompleter((command, cursor) -> {
+        if (command.equals("hang")) {
+          hung.countDown();
+          return new CompletableFuture<>();
+        }
+        if (command.equals("empty")) {
+          return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.completedFuture(new Payloads.CompletionResponse(List.of()));
+      })
+      .build());
+
+    try (TestClient client = TestClient.connect(socket)) {
+      client.send(Message.response(UUID.randomUUID().toString(), MessageType.HELLO, hello(ColorLevel.INDEXED_16)));
+      assertEquals(MessageType.WELCOME, client.readMessageWithTimeout(Duration.ofSeconds(2)).type());
+      assertEquals(MessageType.INTERACTIVITY_STATUS, client.readMessageWithTimeout(Duration.ofSeconds(2)).type());
+
+      // Both completion slots are taken by stages that never complete
+      for (int i = 0; i < 2; i++) {
+        client.send(Message.response(UUID.randomUUID().toString(), MessageType.COMPLETION_REQUEST, new Payloads.CompletionRequest("hang", 4))
+          .withDeadlineMs(100L));
+      }
+      assertTrue(hung.await(2, TimeUnit.SECONDS));
+      final String emptyRequestId = UUID.randomUUID().toString();
+      client.send(Message.response(emptyRequestId, MessageType.COMPLETION_REQUEST, new Payloads.CompletionRequest("empty", 5)));
+      final String fastRequestId = UUID.randomUUID().toString();
+      client.send(Message.response(fastRequestId, MessageType.COMPLETION_REQUEST, new Payloads.CompletionRequest("fast", 4)));
+
+      // The hung requests time out past their deadline, so their errors are never written
+      final Message<?> empty = client.readMessageWithTimeout(Duration.ofSeconds(2));
+      assertNotNull(empty);
+      assertEquals(emptyRequestId, empty.requestId());
+      assertEquals(MessageType.ERROR, empty.type());
+      assertEquals("Hook completed without a result", ((Payloads.Error) empty.payload()).details());
+      final Message<?> fast = client.readMessageWithTimeout(Duration.ofSeconds(2));
+      assertNotNull(fast);
+      assertEquals(fastRequestId, fast.requestId());
+      assertEquals(MessageType.COMPLETION_RESPONSE, fast.type());
+    }
+  }
+
+  @Test
+  void requestsPastTheirDeadlineAreSkipped() throws Exception {
+    final Path socket = this.startServer();
+    final CountDownLatch started = new CountDownLatch(2);
+    final CountDownLatch releaseSlow = new CountDownLatch(1);
+    final List<String> completed = new CopyOnWriteArrayList<>();
+    this.server.enableInteractivity(InteractiveConsoleHooks.builder()
+      .completer((command, cursor) -> {
+        if (command.startsWith("slow")) {
+          started.countDown();
+          releaseSlow.await();
+        }
+        completed.add(command);
+        return new Payloads.CompletionResponse(List.of(new Payloads.CompletionResponse.CandidateInfo(command, command, null)));
+      })
+      .build());
+
+    try (TestClient client = TestClient.connect(socket)) {
+      client.send(Message.response(UUID.randomUUID().toString(), MessageType.HELLO, hello(ColorLevel.INDEXED_16)));
+      assertEquals(MessageType.WELCOME, client.readMessageWithTimeout(Duration.ofSeconds(2)).type());
+      assertEquals(MessageType.INTERACTIVITY_STATUS, client.readMessageWithTimeout(Duration.ofSeconds(2)).type());
+
+      // Both completion slots are busy, so the request with a deadline waits in the queue past it
+      final Set<String> slowRequestIds = Set.of(UUID.randomUUID().toString(), UUID.randomUUID().toString());
+      for (final String requestId : slowRequestIds) {
+        client.send(Message.response(requestId, MessageType.COMPLETION_REQUEST, new Payloads.CompletionRequest("slow", 4)));
+      }
+      assertTrue(started.await(2, TimeUnit.SECONDS));
+      client.send(Message.response(UUID.randomUUID().toString(), MessageType.COMPLETION_REQUEST, new Payloads.CompletionRequest("late", 4))
+        .withDeadlineMs(50L));
+      Thread.sleep(200L);
+      releaseSlow.countDown();
+
+      final Set<String> answered = new HashSet<>();
+      for (int i = 0; i < 2; i++) {
+        final Message<?> message = client.readMessageWithTimeout(Duration.ofSeconds(2));
+        assertNotNull(message);
+        answered.add(message.requestId());
+      }
+      assertEquals(slowRequestIds, answered);
+
+      final String pingRequestId = UUID.randomUUID().toString();
+      client.send(Message.response(pingRequestId, MessageType.PING, new Payloads.Ping()));
+      final Message<?> pong = client.readMessageWithTimeout(Duration.ofSeconds(2));
+      assertNotNull(pong);
+      assertEquals(pingRequestId, pong.requestId());
+      assertEquals(List.of("slow", "slow"), completed);
+    }
+  }
+
   @Test
   void completionRequestUsesSessionColorContext() throws Exception {
     final Path socket = this.startServer();
@@ -394,10 +1513,15 @@ class EndermuxServerIntegrationTest {
   }
 
   private Path startServer() throws Exception {
+    return this.startServer(ServerOptions.defaults());
+  }
+
+  private Path startServer(final ServerOptions options) throws Exception {
     final Path socket = this.tempDir.resolve("endermux.sock");
     this.server = new EndermuxServer(
       socket,
-      4
+      4,
+      options
     );
     this.server.start();
 
@@ -412,6 +1536,56 @@ class EndermuxServerIntegrationTest {
     return socket;
   }
 
+  // Responses are written ahead of queued log lines, so the pong may arrive anywhere among them
+  private static void assertLogLinesAndPong(
+    final TestClient client,
+    final String pingRequestId,
+    final List<String> expectedLines
+  ) throws IOException {
+    final List<String> lines = new ArrayList<>();
+    boolean pong = false;
+    while (!pong || lines.size() < expectedLines.size()) {
+      final Message<?> message = client.readMessageWithTimeout(Duration.ofSeconds(2));
+      assertNotNull(message);
+      if (message.type() == MessageType.PONG) {
+        assertFalse(pong);
+        assertEquals(pingRequestId, message.requestId());
+        pong = true;
+      } else {
+        assertEquals(MessageType.LOG_FORWARD, message.type());
+        lines.add(((Payloads.LogForward) message.payload()).rendered());
+      }
+    }
+    assertEquals(expectedLines, lines);
+  }
+
+  private static void subscribeToLogs(final TestClient client) throws IOException {
+    subscribeToLogs(client, hello(ColorLevel.INDEXED_16));
+  }
+
+  private static void subscribeToLogs(final TestClient client, final Payloads.Hello hello) throws IOException {
+    client.send(Message.response(UUID.randomUUID().toString(), MessageType.HELLO, hello));
+    assertEquals(MessageType.WELCOME, client.readMessageWithTimeout(Duration.ofSeconds(2)).type());
+    assertEquals(MessageType.INTERACTIVITY_STATUS, client.readMessageWithTimeout(Duration.ofSeconds(2)).type());
+
+    client.send(Message.unsolicited(MessageType.LOG_SUBSCRIBE, new Payloads.LogSubscribe()));
+    final String pingRequestId = UUID.randomUUID().toString();
+    client.send(Message.response(pingRequestId, MessageType.PING, new Payloads.Ping()));
+    final Message<?> pong = client.readMessageWithTimeout(Duration.ofSeconds(2));
+    assertNotNull(pong);
+    assertEquals(pingRequestId, pong.requestId());
+  }
+
+  private static void awaitCondition(final BooleanSupplier condition) throws InterruptedException {
+    final long deadline = System.nanoTime() + Duration.ofSeconds(2).toNanos();
+    while (!condition.getAsBoolean()) {
+      if (System.nanoTime() > deadline) {
+        throw new AssertionError("Timed out waiting for condition");
+      }
+      Thread.sleep(10L);
+    }
+  }
+
   private static Payloads.Hello hello(final ColorLevel colorLevel) {
     return helloWithTransportEpochRange(
       new CapabilityVersionRange(
@@ -422,6 +1596,31 @@ class EndermuxServerIntegrationTest {
     );
   }
 
+  private static Payloads.Hello helloWithEncodingCapabilities(
+    final ColorLevel colorLevel,
+    final Set<String> encodingCapabilities
+  ) {
+    final Map<String, CapabilityVersionRange> capabilities = new HashMap<>(ProtocolCapabilities.clientSupportedCapabilities());
+    for (final String capability : Set.of(
+      ProtocolCapabilities.DEFLATE_STREAM,
+      ProtocolCapabilities.DEFLATE_DICTIONARY,
+      ProtocolCapabilities.BINARY_CODEC
+    )) {
+      if (!encodingCapabilities.contains(capability)) {
+        capabilities.remove(capability);
+      }
+    }
+    return new Payloads.Hello(
+      new CapabilityVersionRange(
+        SocketProtocolConstants.TRANSPORT_EPOCH,
+        SocketProtocolConstants.TRANSPORT_EPOCH
+      ),
+      colorLevel,
+      capabilities,
+      ProtocolCapabilities.clientRequiredCapabilities()
+    );
+  }
+
   private static Payloads.Hello helloWithTransportEpochRange(
     final CapabilityVersionRange transportEpochRange,
     final ColorLevel colorLevel
@@ -439,6 +1638,8 @@ class EndermuxServerIntegrationTest {
     private final DataInputStream input;
     private final DataOutputStream output;
     private final MessageSerializer serializer = MessageSerializer.createStandard();
+    private final BinaryMessageCodec codec = new BinaryMessageCodec(this.serializer);
+    private final Inflater streamInflater = new Inflater(true);
 
     private TestClient(final SocketChannel channel) throws IOException {
       this.channel = channel;
@@ -457,6 +1658,12 @@ class EndermuxServerIntegrationTest {
       FrameCodec.writeFrame(this.output, data);
     }
 
+    void sendBinary(final Message<?> message) throws IOException {
+      final MessageBuffer buffer = new MessageBuffer();
+      this.codec.serialize(message, buffer);
+      FrameCodec.writeFrame(this.output, buffer.toByteArray());
+    }
+
     Message<?> readMessageWithTimeout(final Duration timeout) throws IOException {
       final RawFrame frame = this.readRawFrameWithTimeout(timeout);
       return frame == null ? null : frame.message();
@@ -477,10 +1684,14 @@ class EndermuxServerIntegrationTest {
           final byte[] messageBytes = switch (FrameCompressionType.fromWireValue(compressionType)) {
             case NONE -> payload;
             case GZIP -> ungzip(payload);
+            case DEFLATE_STREAM -> this.inflateStream(payload);
+            case DEFLATE_DICTIONARY -> inflateWithDictionary(payload);
           };
           return new RawFrame(
             compressionType,
-            this.serializer.deserialize(new String(messageBytes, java.nio.charset.StandardCharsets.UTF_8))
+            payload.length,
+            messageBytes.length > 0 && messageBytes[0] == BinaryMessageCodec.ENVELOPE_MARKER,
+            this.codec.deserialize(ByteBuffer.wrap(messageBytes))
           );
         },
         timeout.toMillis(),
@@ -501,7 +1712,44 @@ class EndermuxServerIntegrationTest {
       }
     }
 
-    record RawFrame(int compressionType, Message<?> message) {
+    private byte[] inflateStream(final byte[] payload) throws IOException {
+      // Restore the sync flush marker that is omitted on the wire
+      final byte[] input = Arrays.copyOf(payload, payload.length + 4);
+      input[payload.length + 2] = (byte) 0xff;
+      input[payload.length + 3] = (byte) 0xff;
+      this.streamInflater.setInput(input);
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      final byte[] buffer = new byte[8192];
+      try {
+        int read;
+        while ((read = this.streamInflater.inflate(buffer)) > 0) {
+          out.write(buffer, 0, read);
+        }
+      } catch (final DataFormatException e) {
+        throw new IOException("Corrupt stream compressed frame", e);
+      }
+      return out.toByteArray();
+    }
+
+    private static byte[] inflateWithDictionary(final byte[] payload) throws IOException {
+      final Inflater inflater = new Inflater(true);
+      try {
+        inflater.setDictionary(CompressionDictionary.lookup(Byte.toUnsignedInt(payload[0])));
+        inflater.setInput(payload, 1, payload.length - 1);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        while (!inflater.finished()) {
+          out.write(buffer, 0, inflater.inflate(buffer));
+        }
+        return out.toByteArray();
+      } catch (final DataFormatException e) {
+        throw new IOException("Corrupt dictionary compressed frame", e);
+      } finally {
+        inflater.end();
+      }
+    }
+
+    record RawFrame(int compressionType, int payloadLength, boolean binary, Message<?> message) {
     }
 
     @Override
@@ -509,6 +1757,7 @@ class EndermuxServerIntegrationTest {
       this.output.close();
       this.input.close();
       this.channel.close();
+      this.streamInflater.end();
     }
   }
 }
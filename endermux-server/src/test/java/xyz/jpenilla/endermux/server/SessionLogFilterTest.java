@@ -0,0 +1,47 @@
+package xyz.jpenilla.endermux.server;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import xyz.jpenilla.endermux.protocol.LogLevel;
+import xyz.jpenilla.endermux.protocol.Payloads;
+import xyz.jpenilla.endermux.server.api.LogMetadata;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SessionLogFilterTest {
+
+  @Test
+  void patternsMatchMessages() {
+    final SessionLogFilter filter = SessionLogFilter.compile(patternFilter("joined the game$"));
+
+    assertTrue(filter.test(line("Steve joined the game")));
+    assertFalse(filter.test(line("Steve left the game")));
+  }
+
+  @Test
+  void catastrophicPatternsGiveUpInsteadOfStalling() {
+    final SessionLogFilter filter = SessionLogFilter.compile(patternFilter("^(a+)+$"));
+
+    final long start = System.nanoTime();
+    assertFalse(filter.test(line("a".repeat(64) + "!")));
+    assertTrue(System.nanoTime() - start < 1_000_000_000L, "Match was not bounded");
+    assertTrue(filter.test(line("aaaa")));
+  }
+
+  @Test
+  void patternsOnlySeeTheStartOfLongMessages() {
+    final SessionLogFilter filter = SessionLogFilter.compile(patternFilter("needle"));
+
+    assertTrue(filter.test(line("needle" + "x".repeat(SessionLogFilter.MAX_MATCH_CHARS))));
+    assertFalse(filter.test(line("x".repeat(SessionLogFilter.MAX_MATCH_CHARS) + "needle")));
+  }
+
+  private static Payloads.LogSubscribe.Filter patternFilter(final String pattern) {
+    return new Payloads.LogSubscribe.Filter(null, List.of(), List.of(), null, pattern);
+  }
+
+  private static LogMetadata line(final String message) {
+    return new LogMetadata(LogLevel.INFO, "test", message);
+  }
+}
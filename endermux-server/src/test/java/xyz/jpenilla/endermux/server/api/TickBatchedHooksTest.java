@@ -0,0 +1,207 @@
+package xyz.jpenilla.endermux.server.api;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.kyori.ansi.ColorLevel;
+import org.junit.jupiter.api.Test;
+import xyz.jpenilla.endermux.ansi.ColorLevelContext;
+import xyz.jpenilla.endermux.protocol.Payloads;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TickBatchedHooksTest {
+
+  @Test
+  void identicalCallsShareOneHookCall() {
+    final List<String> calls = new CopyOnWriteArrayList<>();
+    final TickBatchedHooks batch = TickBatchedHooks.builder()
+      .completer((command, cursor) -> {
+        calls.add(command + "@" + cursor + "@" + ColorLevelContext.current());
+        return completion(command);
+      })
+      .build();
+    final InteractiveConsoleHooks.AsyncCommandCompleter completer = batch.hooks().asyncCompleter();
+
+    final CompletableFuture<Payloads.CompletionResponse> first;
+    final CompletableFuture<Payloads.CompletionResponse> second;
+    final CompletableFuture<Payloads.CompletionResponse> otherCursor;
+    final CompletableFuture<Payloads.CompletionResponse> otherColor;
+    try (final ColorLevelContext.Scope _ = ColorLevelContext.push(ColorLevel.INDEXED_16)) {
+      first = completer.completeAsync("say", 3).toCompletableFuture();
+      second = completer.completeAsync("say", 3).toCompletableFuture();
+      otherCursor = completer.completeAsync("say", 2).toCompletableFuture();
+    }
+    try (final ColorLevelContext.Scope _ = ColorLevelContext.push(ColorLevel.TRUE_COLOR)) {
+      otherColor = completer.completeAsync("say", 3).toCompletableFuture();
+    }
+    assertFalse(first.isDone());
+    assertTrue(calls.isEmpty());
+
+    assertEquals(3, batch.drain());
+    assertEquals(List.of("say@3@INDEXED_16", "say@2@INDEXED_16", "say@3@TRUE_COLOR"), calls);
+    assertSame(first.join(), second.join());
+    assertTrue(otherCursor.isDone());
+    assertTrue(otherColor.isDone());
+    assertEquals(0, batch.drain());
+  }
+
+  @Test
+  void callsEverySessionGaveUpOnAreSkipped() {
+    final AtomicInteger calls = new AtomicInteger();
+    final TickBatchedHooks batch = TickBatchedHooks.builder()
+      .highlighter(command -> {
+        calls.incrementAndGet();
+        return new Payloads.SyntaxHighlightResponse(command, command);
+      })
+      .build();
+    final InteractiveConsoleHooks.AsyncCommandHighlighter highlighter = batch.hooks().asyncHighlighter();
+
+    final CompletableFuture<Payloads.SyntaxHighlightResponse> cancelled = highlighter.highlightAsync("stop").toCompletableFuture();
+    final CompletableFuture<Payloads.SyntaxHighlightResponse> abandoned = highlighter.highlightAsync("list").toCompletableFuture();
+    final CompletableFuture<Payloads.SyntaxHighlightResponse> waiting = highlighter.highlightAsync("list").toCompletableFuture();
+    cancelled.cancel(true);
+    abandoned.cancel(true);
+
+    assertEquals(1, batch.drain());
+    assertEquals(1, calls.get());
+    assertEquals("list", waiting.join().command());
+  }
+
+  @Test
+  void failuresReachEveryWaitingSession() {
+    final TickBatchedHooks batch = TickBatchedHooks.builder()
+      .parser((command, cursor) -> {
+        throw new IOException("broken");
+      })
+      .build();
+    final InteractiveConsoleHooks.AsyncCommandParser parser = batch.hooks().asyncParser();
+
+    final CompletableFuture<Payloads.ParseResponse> first = parser.parseAsync("x", 1).toCompletableFuture();
+    final CompletableFuture<Payloads.ParseResponse> second = parser.parseAsync("x", 1).toCompletableFuture();
+    assertEquals(1, batch.drain());
+
+    for (final CompletableFuture<Payloads.ParseResponse> future : List.of(first, second)) {
+      final CompletionException e = assertThrows(CompletionException.class, future::join);
+      assertInstanceOf(IOException.class, e.getCause());
+    }
+  }
+
+  @Test
+  void commandsWaitForTheTickAndRunInOrder() throws Exception {
+    final List<String> executed = new CopyOnWriteArrayList<>();
+    final TickBatchedHooks batch = TickBatchedHooks.builder()
+      .executor(command -> {
+        if (command.equals("fail")) {
+          throw new IOException("Unknown command");
+        }
+        executed.add(command);
+      })
+      .build();
+    final InteractiveConsoleHooks.CommandExecutor executor = batch.hooks().executor();
+
+    final CompletableFuture<Void> commands = CompletableFuture.runAsync(() -> {
+      try {
+        executor.execute("first");
+        executor.execute("first");
+      } catch (final Exception e) {
+        throw new CompletionException(e);
+      }
+    });
+    final CompletableFuture<Void> failing = CompletableFuture.runAsync(() -> {
+      try {
+        executor.execute("fail");
+      } catch (final Exception e) {
+        throw new CompletionException(e);
+      }
+    });
+
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+    int calls = 0;
+    while (calls < 3) {
+      if (System.nanoTime() > deadline) {
+        throw new AssertionError("Timed out waiting for commands to be queued");
+      }
+      calls += batch.drain();
+      Thread.sleep(5L);
+    }
+    commands.get(2, TimeUnit.SECONDS);
+    assertEquals(List.of("first", "first"), executed);
+    final ExecutionException e = assertThrows(ExecutionException.class, () -> failing.get(2, TimeUnit.SECONDS));
+    assertInstanceOf(IOException.class, e.getCause());
+  }
+
+  @Test
+  void commandsThatWaitTooLongAreNotRun() throws Exception {
+    final List<String> executed = new CopyOnWriteArrayList<>();
+    final TickBatchedHooks batch = TickBatchedHooks.builder()
+      .executor(executed::add)
+      .commandTimeout(Duration.ofMillis(50))
+      .build();
+
+    assertThrows(TimeoutException.class, () -> batch.hooks().executor().execute("late"));
+    assertEquals(0, batch.drain());
+    assertTrue(executed.isEmpty());
+  }
+
+  @Test
+  void errorsCancelTheRestOfTheTick() {
+    final TickBatchedHooks batch = TickBatchedHooks.builder()
+      .completer((command, cursor) -> {
+        if (command.equals("broken")) {
+          throw new StackOverflowError();
+        }
+        return completion(command);
+      })
+      .build();
+    final InteractiveConsoleHooks.AsyncCommandCompleter completer = batch.hooks().asyncCompleter();
+
+    final CompletableFuture<Payloads.CompletionResponse> broken = completer.completeAsync("broken", 6).toCompletableFuture();
+    final CompletableFuture<Payloads.CompletionResponse> after = completer.completeAsync("after", 5).toCompletableFuture();
+    assertThrows(StackOverflowError.class, batch::drain);
+
+    final CompletionException e = assertThrows(CompletionException.class, broken::join);
+    assertInstanceOf(StackOverflowError.class, e.getCause());
+    assertTrue(after.isCancelled());
+  }
+
+  @Test
+  void discardedCallsAreCancelledAndLaterCallsFail() {
+    final TickBatchedHooks batch = TickBatchedHooks.builder()
+      .completer((command, cursor) -> completion(command))
+      .executor(command -> {
+      })
+      .build();
+
+    final CompletableFuture<Payloads.CompletionResponse> pending = batch.hooks().asyncCompleter()
+      .completeAsync("say", 3)
+      .toCompletableFuture();
+    batch.discardPending();
+
+    assertTrue(pending.isCancelled());
+    assertEquals(0, batch.drain());
+
+    final CompletableFuture<Payloads.CompletionResponse> later = batch.hooks().asyncCompleter()
+      .completeAsync("say", 3)
+      .toCompletableFuture();
+    final CompletionException e = assertThrows(CompletionException.class, later::join);
+    assertInstanceOf(IllegalStateException.class, e.getCause());
+    assertThrows(IllegalStateException.class, () -> batch.hooks().executor().execute("stop"));
+  }
+
+  private static Payloads.CompletionResponse completion(final String command) {
+    return new Payloads.CompletionResponse(List.of(new Payloads.CompletionResponse.CandidateInfo(command, command, null)));
+  }
+}
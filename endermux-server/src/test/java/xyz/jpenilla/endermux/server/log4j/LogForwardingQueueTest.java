@@ -0,0 +1,112 @@
+package xyz.jpenilla.endermux.server.log4j;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LogForwardingQueueTest {
+
+  @Test
+  void elementsAreForwardedOffTheCallingThreadInOrder() throws Exception {
+    final List<Integer> forwarded = new CopyOnWriteArrayList<>();
+    final List<Thread> threads = new CopyOnWriteArrayList<>();
+    final LogForwardingQueue<Integer> queue = new LogForwardingQueue<>("test", 1024, element -> {
+      threads.add(Thread.currentThread());
+      forwarded.add(element);
+    });
+    try {
+      for (int i = 0; i < 1000; i++) {
+        assertTrue(queue.offer(i));
+      }
+      awaitCondition(() -> forwarded.size() == 1000);
+
+      for (int i = 0; i < 1000; i++) {
+        assertEquals(i, forwarded.get(i));
+      }
+      for (final Thread thread : threads) {
+        assertNotSame(Thread.currentThread(), thread);
+      }
+      assertEquals(0, queue.droppedCount());
+    } finally {
+      queue.close();
+    }
+  }
+
+  @Test
+  void elementsAreDroppedWhileTheQueueIsFull() throws Exception {
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final List<Integer> forwarded = new CopyOnWriteArrayList<>();
+    final LogForwardingQueue<Integer> queue = new LogForwardingQueue<>("test", 4, element -> {
+      started.countDown();
+      try {
+        release.await();
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      forwarded.add(element);
+    });
+    try {
+      // The worker holds the first element, so the next four fill the queue
+      assertTrue(queue.offer(0));
+      assertTrue(started.await(2, TimeUnit.SECONDS));
+      for (int i = 1; i <= 4; i++) {
+        assertTrue(queue.offer(i));
+      }
+      assertFalse(queue.offer(5));
+      assertFalse(queue.offer(6));
+      assertEquals(2, queue.droppedCount());
+
+      release.countDown();
+      awaitCondition(() -> forwarded.size() == 5);
+      assertEquals(List.of(0, 1, 2, 3, 4), forwarded);
+    } finally {
+      queue.close();
+    }
+  }
+
+  @Test
+  void closeStopsTheWorker() throws Exception {
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch never = new CountDownLatch(1);
+    final List<Integer> forwarded = new CopyOnWriteArrayList<>();
+    final LogForwardingQueue<Integer> queue = new LogForwardingQueue<>("test", 16, element -> {
+      started.countDown();
+      try {
+        never.await();
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      forwarded.add(element);
+    });
+
+    assertTrue(queue.offer(0));
+    assertTrue(started.await(2, TimeUnit.SECONDS));
+    assertTrue(queue.offer(1));
+    queue.close();
+
+    awaitCondition(() -> !queue.workerAlive());
+    assertFalse(queue.isRunning());
+    assertFalse(queue.offer(2));
+    assertEquals(0, queue.droppedCount());
+    assertEquals(List.of(0), forwarded);
+  }
+
+  private static void awaitCondition(final BooleanSupplier condition) throws InterruptedException {
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+    while (!condition.getAsBoolean()) {
+      if (System.nanoTime() > deadline) {
+        throw new AssertionError("Timed out waiting for condition");
+      }
+      Thread.sleep(10L);
+    }
+  }
+}
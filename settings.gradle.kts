@@ -14,6 +14,7 @@ plugins {
 
 rootProject.name = "endermux-parent"
 
+include("endermux-benchmarks")
 include("endermux-client")
 include("endermux-common")
 include("endermux-server")